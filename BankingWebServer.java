@@ -3,6 +3,8 @@ import java.io.*;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * BankingWebServer - Servidor Web REST API para Sistema Bancario
@@ -60,18 +62,44 @@ public class BankingWebServer {
         accounts.put("123-4567-1234567890", account1);
     }
     
-    // Handler para archivos estáticos
+    // Handler para archivos estáticos: se cargan una vez en memoria con ETag y variante gzip
     static class StaticFileHandler implements HttpHandler {
+        private final Map<String, StaticFile> files = new HashMap<>();
+        
+        StaticFileHandler() throws IOException {
+            File[] entries = new File("frontend").listFiles();
+            if (entries != null) {
+                for (File file : entries) {
+                    if (file.isFile()) {
+                        String path = "/" + file.getName();
+                        files.put(path, new StaticFile(getContentType(path), readFileBytes(file)));
+                    }
+                }
+            }
+        }
+        
         public void handle(HttpExchange exchange) throws IOException {
             String path = exchange.getRequestURI().getPath();
             if (path.equals("/")) path = "/index.html";
             
-            File file = new File("frontend" + path);
-            if (file.exists() && !file.isDirectory()) {
-                String contentType = getContentType(path);
-                byte[] content = readFileBytes(file);
+            StaticFile file = files.get(path);
+            if (file != null) {
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                boolean gzip = file.gzipped != null && acceptsGzip(acceptEncoding);
+                String etag = gzip ? file.gzipEtag : file.etag;
+                
+                exchange.getResponseHeaders().set("Content-Type", file.contentType);
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
                 
-                exchange.getResponseHeaders().set("Content-Type", contentType);
+                byte[] content = gzip ? file.gzipped : file.content;
+                if (gzip) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
                 exchange.sendResponseHeaders(200, content.length);
                 OutputStream os = exchange.getResponseBody();
                 os.write(content);
@@ -85,6 +113,34 @@ public class BankingWebServer {
             }
         }
         
+        // gzip solo si el cliente lo acepta con q > 0 (gzip;q=0 lo rechaza), o mediante *
+        static boolean acceptsGzip(String acceptEncoding) {
+            if (acceptEncoding == null) return false;
+            Boolean gzip = null;
+            boolean wildcard = false;
+            for (String part : acceptEncoding.split(",")) {
+                String[] fields = part.split(";");
+                String token = fields[0].trim();
+                boolean accepted = true;
+                for (int i = 1; i < fields.length; i++) {
+                    String param = fields[i].trim().toLowerCase();
+                    if (param.startsWith("q=")) {
+                        try {
+                            accepted = Double.parseDouble(param.substring(2).trim()) > 0;
+                        } catch (NumberFormatException e) {
+                            accepted = true;
+                        }
+                    }
+                }
+                if (token.equalsIgnoreCase("gzip") || token.equalsIgnoreCase("x-gzip")) {
+                    gzip = accepted;
+                } else if (token.equals("*")) {
+                    wildcard = accepted;
+                }
+            }
+            return gzip != null ? gzip : wildcard;
+        }
+        
         private String getContentType(String path) {
             if (path.endsWith(".html")) return "text/html";
             if (path.endsWith(".css")) return "text/css";
@@ -96,12 +152,43 @@ public class BankingWebServer {
         private byte[] readFileBytes(File file) throws IOException {
             FileInputStream fis = new FileInputStream(file);
             byte[] content = new byte[(int) file.length()];
-            fis.read(content);
+            int read = 0;
+            while (read < content.length) {
+                int n = fis.read(content, read, content.length - read);
+                if (n < 0) break;
+                read += n;
+            }
             fis.close();
             return content;
         }
     }
     
+    // Archivo estático en memoria: contenido, versión gzip (solo si ahorra al menos un 10%) y ETag fuerte
+    static class StaticFile {
+        final String contentType;
+        final byte[] content;
+        final byte[] gzipped;
+        final String etag;
+        final String gzipEtag;
+        
+        StaticFile(String contentType, byte[] content) throws IOException {
+            this.contentType = contentType;
+            this.content = content;
+            
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            GZIPOutputStream gz = new GZIPOutputStream(out);
+            gz.write(content);
+            gz.close();
+            byte[] compressed = out.toByteArray();
+            this.gzipped = compressed.length <= content.length * 9L / 10 ? compressed : null;
+            
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" + content.length + "\"";
+            this.gzipEtag = "\"" + Long.toHexString(crc.getValue()) + "-" + content.length + "-gz\"";
+        }
+    }
+    
     // Handler para clientes
     static class CustomerHandler implements HttpHandler {
         public void handle(HttpExchange exchange) throws IOException {
@@ -0,0 +1,133 @@
+package com.banksim.benchmarks;
+
+import com.banksim.json.JsonReader;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files, such as those of two releases, and
+ * fails when a benchmark got slower.
+ * 
+ * Usage: {@code BenchmarkDiff baseline.json current.json [thresholdPercent]}
+ * 
+ * A benchmark counts as a regression when its score moved in the wrong
+ * direction (higher time per operation, or lower throughput) by more than
+ * the threshold, 10% by default, and by more than the two runs' combined
+ * error, so noise alone does not fail a build. Exits with status 1 if any
+ * benchmark regressed.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class BenchmarkDiff {
+    
+    private BenchmarkDiff() {
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkDiff <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(2);
+            return;
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        
+        Map<String, Score> baseline = load(args[0]);
+        Map<String, Score> current = load(args[1]);
+        
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score after = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f %9s%n", entry.getKey(), "-", after.score, "new");
+                continue;
+            }
+            
+            double change = (after.score - before.score) / before.score * 100.0;
+            // For throughput a drop is the regression, for time per operation a rise
+            double worse = after.higherIsBetter ? -change : change;
+            boolean regressed = worse > threshold
+                && Math.abs(after.score - before.score) > before.error + after.error;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%% %s %s%n", entry.getKey(), before.score,
+                after.score, change, after.unit, regressed ? "REGRESSION" : "");
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.printf("%-70s %14.3f %14s %9s%n", name, baseline.get(name).score, "-", "removed");
+            }
+        }
+        
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + threshold + "%");
+            System.exit(1);
+        }
+        System.out.println("No regressions above " + threshold + "%");
+    }
+    
+    /**
+     * Reads a JMH JSON result file into scores keyed by benchmark and params
+     */
+    private static Map<String, Score> load(String file) throws IOException {
+        Object document;
+        try (InputStream in = new FileInputStream(file)) {
+            document = new JsonReader(in).nextValue();
+        }
+        if (!(document instanceof List)) {
+            throw new IOException(file + " is not a JMH JSON result file");
+        }
+        
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (Object element : (List<?>) document) {
+            Map<?, ?> run = (Map<?, ?>) element;
+            Map<?, ?> metric = (Map<?, ?>) run.get("primaryMetric");
+            String name = String.valueOf(run.get("benchmark"));
+            Object params = run.get("params");
+            if (params instanceof Map && !((Map<?, ?>) params).isEmpty()) {
+                name += ((Map<?, ?>) params).toString();
+            }
+            String mode = String.valueOf(run.get("mode"));
+            scores.put(name + " (" + mode + ")", new Score(number(metric.get("score")),
+                number(metric.get("scoreError")), String.valueOf(metric.get("scoreUnit")),
+                "thrpt".equals(mode)));
+        }
+        return scores;
+    }
+    
+    // JMH writes "NaN" as a string when a run has too few samples for an error
+    private static double number(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).doubleValue();
+        }
+        try {
+            return Double.parseDouble(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+    
+    private static final class Score {
+        final double score;
+        final double error;
+        final String unit;
+        final boolean higherIsBetter;
+        
+        Score(double score, double error, String unit, boolean higherIsBetter) {
+            this.score = score;
+            this.error = Double.isNaN(error) ? 0.0 : error;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+    }
+}
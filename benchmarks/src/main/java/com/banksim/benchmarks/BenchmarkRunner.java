@@ -0,0 +1,65 @@
+package com.banksim.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Entry point of benchmarks.jar: the standard JMH command line, except
+ * that results are always published as JSON.
+ * 
+ * Unless -rf/-rff are given, results go to results/jmh-&lt;label&gt;.json,
+ * where the label comes from -Dbenchmark.label (for example the release
+ * version) and defaults to "latest". Two such files can be compared with
+ * {@link BenchmarkDiff}.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class BenchmarkRunner {
+    
+    private BenchmarkRunner() {
+    }
+    
+    public static void main(String[] args) throws IOException, RunnerException {
+        CommandLineOptions commandLine;
+        try {
+            commandLine = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        
+        // Listing, help and explicit result settings behave exactly as in JMH
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+                || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()
+                || commandLine.getResultFormat().hasValue() || commandLine.getResult().hasValue()) {
+            Main.main(args);
+            return;
+        }
+        
+        File results = new File("results", "jmh-" + System.getProperty("benchmark.label", "latest") + ".json");
+        File directory = results.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        
+        Options options = new OptionsBuilder()
+            .parent(commandLine)
+            .resultFormat(ResultFormatType.JSON)
+            .result(results.getPath())
+            .build();
+        new Runner(options).run();
+        System.out.println("[BenchmarkRunner] Results written to " + results.getPath());
+    }
+}
@@ -0,0 +1,230 @@
+package com.banksim.benchmarks;
+
+import com.banksim.model.Account;
+import com.banksim.model.Transaction;
+import com.banksim.repository.AccountRepository;
+import com.banksim.repository.TransactionRepository;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * In-memory repositories for benchmarking the service layer without a
+ * database, so results measure BankSim code rather than PostgreSQL.
+ * 
+ * The services still open a connection to demarcate each transaction;
+ * {@link #install()} points db.url at a JDBC driver whose connections
+ * accept and ignore every call. It must run before anything touches
+ * DatabaseConfig.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+final class InMemoryBackend {
+    
+    static final String JDBC_URL = "jdbc:banksim:memory";
+    
+    private InMemoryBackend() {
+    }
+    
+    /**
+     * Registers the no-op driver and makes it the configured database
+     */
+    static synchronized void install() {
+        System.setProperty("db.url", JDBC_URL);
+        try {
+            DriverManager.registerDriver(new NoOpDriver());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot register in-memory driver", e);
+        }
+    }
+    
+    /**
+     * Accounts kept in a map; callers get copies, as they would from JDBC
+     */
+    static final class Accounts extends AccountRepository {
+        
+        private final Map<Integer, Account> byId = new ConcurrentHashMap<>();
+        private final Map<String, Account> byNumber = new ConcurrentHashMap<>();
+        private final AtomicInteger ids = new AtomicInteger();
+        
+        @Override
+        public Account create(Account account) {
+            account.setAccountId(ids.incrementAndGet());
+            Account stored = copy(account);
+            byId.put(stored.getAccountId(), stored);
+            byNumber.put(stored.getAccountNumber(), stored);
+            return account;
+        }
+        
+        @Override
+        public Optional<Account> findById(Integer accountId) {
+            Account stored = byId.get(accountId);
+            return stored != null ? Optional.of(copy(stored)) : Optional.empty();
+        }
+        
+        @Override
+        public Optional<Account> findByAccountNumber(String accountNumber) {
+            Account stored = byNumber.get(accountNumber);
+            return stored != null ? Optional.of(copy(stored)) : Optional.empty();
+        }
+        
+        @Override
+        public Account update(Account account) {
+            Account stored = byId.get(account.getAccountId());
+            if (stored != null) {
+                stored.setBalance(account.getBalance());
+                stored.setStatus(account.getStatus());
+                stored.setUpdatedAt(LocalDateTime.now());
+            }
+            return account;
+        }
+        
+        private static Account copy(Account source) {
+            Account account = new Account(source.getCustomerId(), source.getAccountNumber(),
+                source.getBankCode(), source.getBranchCode(), source.getAccountType());
+            account.setAccountId(source.getAccountId());
+            account.setBalance(source.getBalance());
+            account.setStatus(source.getStatus());
+            account.setCreatedAt(source.getCreatedAt());
+            account.setUpdatedAt(source.getUpdatedAt());
+            return account;
+        }
+    }
+    
+    /**
+     * Transactions per account, newest first. Only the most recent are
+     * kept so a long run does not grow the heap.
+     */
+    static final class Transactions extends TransactionRepository {
+        
+        private static final int RETAINED = 100;
+        
+        private final Map<Integer, Deque<Transaction>> byAccount = new ConcurrentHashMap<>();
+        private final Map<Integer, AtomicInteger> counts = new ConcurrentHashMap<>();
+        private final AtomicInteger ids = new AtomicInteger();
+        
+        @Override
+        public Transaction create(Transaction transaction) {
+            transaction.setTransactionId(ids.incrementAndGet());
+            transaction.setCreatedAt(LocalDateTime.now());
+            Deque<Transaction> history = byAccount.computeIfAbsent(transaction.getAccountId(),
+                id -> new ArrayDeque<>());
+            synchronized (history) {
+                history.addFirst(transaction);
+                if (history.size() > RETAINED) {
+                    history.removeLast();
+                }
+            }
+            counts.computeIfAbsent(transaction.getAccountId(), id -> new AtomicInteger()).incrementAndGet();
+            return transaction;
+        }
+        
+        @Override
+        public List<Transaction> findByAccountId(Integer accountId, int limit, int offset) {
+            Deque<Transaction> history = byAccount.get(accountId);
+            List<Transaction> page = new ArrayList<>(Math.max(0, limit));
+            if (history == null) {
+                return page;
+            }
+            synchronized (history) {
+                int skipped = 0;
+                for (Transaction transaction : history) {
+                    if (page.size() == limit) {
+                        break;
+                    }
+                    if (skipped++ >= offset) {
+                        page.add(transaction);
+                    }
+                }
+            }
+            return page;
+        }
+        
+        @Override
+        public List<Transaction> findByAccountId(Integer accountId) {
+            return findByAccountId(accountId, RETAINED, 0);
+        }
+        
+        @Override
+        public int countByAccountId(Integer accountId) {
+            AtomicInteger count = counts.get(accountId);
+            return count != null ? count.get() : 0;
+        }
+    }
+    
+    /**
+     * Driver whose connections ignore every call, for code that only uses
+     * the connection to begin, commit and roll back
+     */
+    private static final class NoOpDriver implements Driver {
+        
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    Class<?> type = method.getReturnType();
+                    if (type == boolean.class) {
+                        return false;
+                    }
+                    if (type == int.class) {
+                        return 0;
+                    }
+                    if (method.getName().equals("toString")) {
+                        return JDBC_URL;
+                    }
+                    return null;
+                });
+        }
+        
+        @Override
+        public boolean acceptsURL(String url) {
+            return url != null && url.startsWith(JDBC_URL);
+        }
+        
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+        
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+        
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+        
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+        
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
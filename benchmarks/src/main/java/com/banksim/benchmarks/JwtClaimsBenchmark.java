@@ -0,0 +1,86 @@
+package com.banksim.benchmarks;
+
+import com.banksim.util.JwtClaims;
+import com.banksim.util.JwtUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT claim parsing cost: the single-pass byte parser against the previous
+ * replace/split implementation, which is kept here as a baseline.
+ * 
+ * {@code validateTokenCached} is a session's repeat request, served from
+ * the verified-token cache; {@code validateTokenUncached} pays the full
+ * signature check on every call.
+ * 
+ * Run with {@code -prof gc} to compare allocation per operation.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtClaimsBenchmark {
+    
+    private String token;
+    
+    @Setup
+    public void setUp() {
+        token = JwtUtil.generateToken(42, "jdoe", "CUSTOMER");
+    }
+    
+    @Benchmark
+    public JwtClaims parseClaims() {
+        return JwtUtil.parseClaims(token);
+    }
+    
+    @Benchmark
+    public Map<String, String> extractClaims() {
+        return JwtUtil.extractClaims(token);
+    }
+    
+    @Benchmark
+    public boolean validateTokenCached() {
+        return JwtUtil.validateToken(token);
+    }
+    
+    @Benchmark
+    public boolean validateTokenUncached() {
+        JwtUtil.clearTokenCache();
+        return JwtUtil.validateToken(token);
+    }
+    
+    @Benchmark
+    public Map<String, String> legacyReplaceSplit() {
+        Map<String, String> claims = new HashMap<>();
+        String[] parts = token.split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+        payload = payload.replace("{", "").replace("}", "").replace("\"", "");
+        for (String pair : payload.split(",")) {
+            String[] keyValue = pair.split(":", 2);
+            if (keyValue.length == 2) {
+                claims.put(keyValue[0].trim(), keyValue[1].trim());
+            }
+        }
+        return claims;
+    }
+}
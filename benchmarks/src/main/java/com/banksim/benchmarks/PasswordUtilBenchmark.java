@@ -0,0 +1,62 @@
+package com.banksim.benchmarks;
+
+import com.banksim.util.PasswordUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Password verification throughput on a single core.
+ * 
+ * Run with {@code -t N} to see how verification scales across N cores;
+ * each thread gets its own digest so the numbers should stay close to linear.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PasswordUtilBenchmark {
+    
+    @Param({"4", "10"})
+    public int strength;
+    
+    private String storedHash;
+    
+    @Setup
+    public void setUp() {
+        storedHash = PasswordUtil.hashPassword("Abcd1234", strength);
+    }
+    
+    @Benchmark
+    public boolean verifyMatching() {
+        return PasswordUtil.verifyPassword("Abcd1234", storedHash);
+    }
+    
+    @Benchmark
+    public boolean verifyMismatch() {
+        return PasswordUtil.verifyPassword("Wrong1234", storedHash);
+    }
+    
+    @Benchmark
+    public String hash() {
+        return PasswordUtil.hashPassword("Abcd1234", strength);
+    }
+}
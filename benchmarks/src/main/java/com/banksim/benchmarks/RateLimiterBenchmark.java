@@ -0,0 +1,69 @@
+package com.banksim.benchmarks;
+
+import com.banksim.server.RateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of the token-bucket rate limiter.
+ * 
+ * The budget is well under a microsecond per request. {@code hotUser}
+ * measures CAS contention on a single bucket across threads;
+ * {@code spreadUsers} measures the common case of many users.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+    
+    private static final Integer HOT_USER = 1;
+    private static final Integer[] USERS = new Integer[10_000];
+    
+    static {
+        for (int i = 0; i < USERS.length; i++) {
+            USERS[i] = i;
+        }
+    }
+    
+    private RateLimiter.Group group;
+    
+    @Setup
+    public void setUp() {
+        Map<String, String> config = new HashMap<>();
+        config.put("ratelimit.default", "1000000,1000000");
+        group = new RateLimiter(config::get).group("statements");
+    }
+    
+    @Benchmark
+    public long hotUser() {
+        return group.acquire(HOT_USER, "CUSTOMER", System.nanoTime());
+    }
+    
+    @Benchmark
+    public long spreadUsers() {
+        Integer user = USERS[ThreadLocalRandom.current().nextInt(USERS.length)];
+        return group.acquire(user, "CUSTOMER", System.nanoTime());
+    }
+}
@@ -0,0 +1,93 @@
+package com.banksim.benchmarks;
+
+import com.banksim.audit.Actor;
+import com.banksim.audit.AuditWriter;
+import com.banksim.model.Account;
+import com.banksim.model.Transaction;
+import com.banksim.service.TransactionService;
+import com.banksim.service.TransactionService.TransactionServiceException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service-layer cost of deposits, withdrawals, transfers and statements
+ * over {@link InMemoryBackend}: validation, balance arithmetic, model
+ * copies, ETag bookkeeping and queueing audit entries, with the database
+ * taken out of the picture (audit batches are discarded).
+ * 
+ * The accounts start with a balance large enough that no run can exhaust
+ * it, so every withdrawal and transfer takes the success path.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionServiceBenchmark {
+    
+    private static final String FROM = "001-0001-0000000001";
+    private static final String TO = "001-0001-0000000002";
+    private static final BigDecimal AMOUNT = new BigDecimal("12.34");
+    
+    private TransactionService service;
+    
+    @Setup
+    public void setUp() throws TransactionServiceException {
+        InMemoryBackend.install();
+        InMemoryBackend.Accounts accounts = new InMemoryBackend.Accounts();
+        InMemoryBackend.Transactions transactions = new InMemoryBackend.Transactions();
+        accounts.create(account(1, FROM));
+        accounts.create(account(2, TO));
+        AuditWriter audit = new AuditWriter(key -> null, entries -> { });
+        audit.start();
+        service = new TransactionService(accounts, transactions, audit);
+        
+        // Fill the statement so getStatement returns a full page
+        for (int i = 0; i < 50; i++) {
+            service.deposit(FROM, AMOUNT, "Seed", Actor.SYSTEM);
+        }
+    }
+    
+    @Benchmark
+    public Transaction deposit() throws TransactionServiceException {
+        return service.deposit(FROM, AMOUNT, "Benchmark deposit", Actor.SYSTEM);
+    }
+    
+    @Benchmark
+    public Transaction withdraw() throws TransactionServiceException {
+        return service.withdraw(FROM, AMOUNT, "Benchmark withdrawal", Actor.SYSTEM);
+    }
+    
+    @Benchmark
+    public Transaction[] transfer() throws TransactionServiceException {
+        return service.transfer(FROM, TO, AMOUNT, "Benchmark transfer", Actor.SYSTEM);
+    }
+    
+    @Benchmark
+    public List<Transaction> getStatement() throws TransactionServiceException {
+        return service.getStatement(FROM, 20);
+    }
+    
+    private static Account account(int customerId, String number) {
+        Account account = new Account(customerId, number, "001", "0001", Account.AccountType.CHECKING);
+        account.setBalance(new BigDecimal("1000000000000.00"));
+        return account;
+    }
+}
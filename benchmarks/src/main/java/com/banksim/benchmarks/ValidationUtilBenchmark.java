@@ -0,0 +1,81 @@
+package com.banksim.benchmarks;
+
+import com.banksim.util.ValidationUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the request validators run on every write.
+ * 
+ * Each benchmark checks one valid and one invalid input, since regex
+ * validators can be much slower at rejecting than at accepting.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationUtilBenchmark {
+    
+    private String validAccount = "001-0001-0000012345";
+    private String invalidAccount = "001-0001-00000123x5";
+    private String validEmail = "jane.doe@example.com";
+    private String invalidEmail = "jane.doe.example.com";
+    private String validPhone = "+14155550123";
+    private String invalidPhone = "0415-555-0123";
+    private String validUsername = "jdoe_2024";
+    private String invalidUsername = "j";
+    private String validKey = "Secret123";
+    private String invalidKey = "secret";
+    private String input = "Rent <b>March</b> & utilities";
+    
+    @Benchmark
+    public void fullAccountNumber(Blackhole blackhole) {
+        blackhole.consume(ValidationUtil.isValidFullAccountNumber(validAccount));
+        blackhole.consume(ValidationUtil.isValidFullAccountNumber(invalidAccount));
+    }
+    
+    @Benchmark
+    public void email(Blackhole blackhole) {
+        blackhole.consume(ValidationUtil.isValidEmail(validEmail));
+        blackhole.consume(ValidationUtil.isValidEmail(invalidEmail));
+    }
+    
+    @Benchmark
+    public void phone(Blackhole blackhole) {
+        blackhole.consume(ValidationUtil.isValidPhone(validPhone));
+        blackhole.consume(ValidationUtil.isValidPhone(invalidPhone));
+    }
+    
+    @Benchmark
+    public void username(Blackhole blackhole) {
+        blackhole.consume(ValidationUtil.isValidUsername(validUsername));
+        blackhole.consume(ValidationUtil.isValidUsername(invalidUsername));
+    }
+    
+    @Benchmark
+    public void personalKey(Blackhole blackhole) {
+        blackhole.consume(ValidationUtil.isValidPersonalKey(validKey));
+        blackhole.consume(ValidationUtil.isValidPersonalKey(invalidKey));
+    }
+    
+    @Benchmark
+    public String sanitizeInput() {
+        return ValidationUtil.sanitizeInput(input);
+    }
+}
@@ -0,0 +1,153 @@
+package com.banksim.controller;
+
+import com.banksim.json.JsonReader;
+import com.banksim.json.JsonWriter;
+import com.banksim.json.ModelJson;
+import com.banksim.model.Account;
+import com.banksim.model.Customer;
+import com.banksim.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each controller's JSON path: parsing its request body and writing the
+ * models it returns.
+ * 
+ * Lives in the controller package because the request records are
+ * package-private; the parse benchmarks return Object so the generated
+ * harness, which lives in another package, never names them. A statement
+ * of 50 transactions is the largest response a customer routinely fetches.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ControllerJsonBenchmark {
+    
+    private static final int STATEMENT_SIZE = 50;
+    
+    private byte[] cashBody;
+    private byte[] transferBody;
+    private byte[] createAccountBody;
+    private byte[] customerBody;
+    private byte[] authBody;
+    private Account account;
+    private Customer customer;
+    private List<Transaction> statement;
+    private JsonWriter json;
+    
+    @Setup
+    public void setUp() {
+        cashBody = utf8("{\"accountId\": 1001, \"amount\": 250.75, \"description\": \"Salary\"}");
+        transferBody = utf8("{\"fromAccountId\": 1001, \"toAccountId\": 1002, \"amount\": 99.99, "
+            + "\"description\": \"Rent for March\"}");
+        createAccountBody = utf8("{\"customerId\": 42, \"accountType\": \"CHECKING\", \"initialDeposit\": 500.00}");
+        customerBody = utf8("{\"userId\": 7, \"firstName\": \"Jane\", \"lastName\": \"Doe\", "
+            + "\"email\": \"jane.doe@example.com\", \"phone\": \"+14155550123\", "
+            + "\"address\": \"1 Main Street, Springfield\", \"dateOfBirth\": \"1990-04-12\"}");
+        authBody = utf8("{\"username\": \"jdoe\", \"password\": \"Secret123!\"}");
+        
+        account = new Account(42, "001-0001-0000012345", "001", "0001", Account.AccountType.CHECKING);
+        account.setAccountId(1001);
+        account.setBalance(new BigDecimal("10250.75"));
+        
+        customer = new Customer(7, "CUS-000007", "Jane", "Doe", "hash");
+        customer.setCustomerId(7);
+        customer.setPhone("+14155550123");
+        customer.setAddress("1 Main Street, Springfield");
+        customer.setDateOfBirth(LocalDate.of(1990, 4, 12));
+        
+        statement = new ArrayList<>(STATEMENT_SIZE);
+        BigDecimal balance = new BigDecimal("10000.00");
+        for (int i = 0; i < STATEMENT_SIZE; i++) {
+            BigDecimal amount = new BigDecimal("25.50");
+            Transaction transaction = new Transaction(1001, Transaction.TransactionType.DEPOSIT, amount,
+                balance, balance.add(amount), "Deposit #" + i);
+            transaction.setTransactionId(i + 1);
+            statement.add(transaction);
+            balance = balance.add(amount);
+        }
+        
+        json = new JsonWriter();
+    }
+    
+    @Benchmark
+    public Object parseCashRequest() throws IOException {
+        return TransactionController.CashRequest.read(reader(cashBody), "Deposit");
+    }
+    
+    @Benchmark
+    public Object parseTransferRequest() throws IOException {
+        return TransactionController.TransferRequest.read(reader(transferBody));
+    }
+    
+    @Benchmark
+    public Object parseCreateAccountRequest() throws IOException {
+        return AccountController.CreateAccountRequest.read(reader(createAccountBody));
+    }
+    
+    @Benchmark
+    public Object parseCustomerRequest() throws IOException {
+        return CustomerController.CustomerRequest.read(reader(customerBody));
+    }
+    
+    @Benchmark
+    public Object parseAuthRequest() throws IOException {
+        return AuthController.AuthRequest.read(reader(authBody));
+    }
+    
+    @Benchmark
+    public int writeAccount() throws IOException {
+        json.reset();
+        ModelJson.writeAccount(json, account);
+        return json.size();
+    }
+    
+    @Benchmark
+    public int writeCustomer() throws IOException {
+        json.reset();
+        ModelJson.writeCustomer(json, customer);
+        return json.size();
+    }
+    
+    @Benchmark
+    public int writeStatement() throws IOException {
+        json.reset();
+        json.beginObject().name("success").value(true);
+        json.name("transactions");
+        ModelJson.writeTransactions(json, statement);
+        json.name("count").value(statement.size()).endObject();
+        return json.size();
+    }
+    
+    private static JsonReader reader(byte[] body) {
+        return new JsonReader(new ByteArrayInputStream(body));
+    }
+    
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
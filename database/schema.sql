@@ -11,6 +11,7 @@ DROP TABLE IF EXISTS accounts CASCADE;
 DROP TABLE IF EXISTS customers CASCADE;
 DROP TABLE IF EXISTS users CASCADE;
 DROP TABLE IF EXISTS audit_logs CASCADE;
+DROP TABLE IF EXISTS ledger_outbox CASCADE;
 
 -- ============================================================================
 -- USERS TABLE - Authentication and Authorization
@@ -86,10 +87,12 @@ CREATE INDEX idx_accounts_status ON accounts(status);
 
 -- ============================================================================
 -- TRANSACTIONS TABLE - Financial Transactions
+-- Partitioned by month on created_at (see PARTITIONS below), so keys and
+-- unique constraints include created_at
 -- ============================================================================
 CREATE TABLE transactions (
-    transaction_id SERIAL PRIMARY KEY,
-    transaction_uuid UUID UNIQUE NOT NULL DEFAULT gen_random_uuid(),
+    transaction_id SERIAL,
+    transaction_uuid UUID NOT NULL DEFAULT gen_random_uuid(),
     account_id INTEGER NOT NULL REFERENCES accounts(account_id) ON DELETE RESTRICT,
     transaction_type VARCHAR(20) NOT NULL,
     amount DECIMAL(15, 2) NOT NULL,
@@ -99,11 +102,13 @@ CREATE TABLE transactions (
     reference_number VARCHAR(50),
     related_account_id INTEGER REFERENCES accounts(account_id),
     status VARCHAR(20) DEFAULT 'COMPLETED',
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (transaction_id, created_at),
+    CONSTRAINT uq_transactions_uuid UNIQUE (transaction_uuid, created_at),
     CONSTRAINT chk_amount CHECK (amount >= 0),
     CONSTRAINT chk_transaction_type CHECK (transaction_type IN ('DEPOSIT', 'WITHDRAWAL', 'TRANSFER_IN', 'TRANSFER_OUT', 'FEE', 'INTEREST')),
     CONSTRAINT chk_transaction_status CHECK (status IN ('PENDING', 'COMPLETED', 'FAILED', 'REVERSED'))
-);
+) PARTITION BY RANGE (created_at);
 
 CREATE INDEX idx_transactions_account ON transactions(account_id);
 CREATE INDEX idx_transactions_type ON transactions(transaction_type);
@@ -112,9 +117,11 @@ CREATE INDEX idx_transactions_uuid ON transactions(transaction_uuid);
 
 -- ============================================================================
 -- AUDIT LOGS TABLE - Security and Compliance
+-- Partitioned by month on created_at; expired months are archived and
+-- dropped whole (audit.log.retention.days)
 -- ============================================================================
 CREATE TABLE audit_logs (
-    log_id SERIAL PRIMARY KEY,
+    log_id SERIAL,
     user_id INTEGER REFERENCES users(user_id),
     action VARCHAR(100) NOT NULL,
     entity_type VARCHAR(50),
@@ -123,12 +130,64 @@ CREATE TABLE audit_logs (
     new_value TEXT,
     ip_address VARCHAR(45),
     user_agent TEXT,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-);
+    request_id VARCHAR(64),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (log_id, created_at)
+) PARTITION BY RANGE (created_at);
 
 CREATE INDEX idx_audit_user ON audit_logs(user_id);
 CREATE INDEX idx_audit_action ON audit_logs(action);
 CREATE INDEX idx_audit_date ON audit_logs(created_at);
+CREATE INDEX idx_audit_request ON audit_logs(request_id);
+
+-- ============================================================================
+-- LEDGER OUTBOX - Change Events for Downstream Systems
+-- One row per new transaction or status change, written by a trigger in the
+-- same database transaction. event_id is the stream offset read by the
+-- OutboxRelay; rows are deleted after outbox.retention.days
+-- ============================================================================
+CREATE TABLE ledger_outbox (
+    event_id BIGSERIAL PRIMARY KEY,
+    event_type VARCHAR(20) NOT NULL,
+    transaction_id INTEGER NOT NULL,
+    transaction_uuid UUID NOT NULL,
+    account_id INTEGER NOT NULL,
+    related_account_id INTEGER,
+    transaction_type VARCHAR(20) NOT NULL,
+    amount DECIMAL(15, 2) NOT NULL,
+    balance_after DECIMAL(15, 2) NOT NULL,
+    reference_number VARCHAR(50),
+    status VARCHAR(20),
+    occurred_at TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT chk_outbox_event_type CHECK (event_type IN ('CREATED', 'STATUS_CHANGED'))
+);
+
+CREATE INDEX idx_outbox_created ON ledger_outbox(created_at);
+
+-- ============================================================================
+-- PARTITIONS - One per month, named <table>_yYYYYmMM
+-- ============================================================================
+-- The current month and the next three. The application creates later months
+-- ahead of time and archives or drops expired ones (PartitionMaintenance).
+-- Rows outside every monthly range land in the default partitions, which
+-- should stay empty: a month cannot be created while they hold its rows.
+DO $$
+DECLARE
+    v_month TIMESTAMP := date_trunc('month', CURRENT_DATE);
+    v_table TEXT;
+BEGIN
+    FOREACH v_table IN ARRAY ARRAY['transactions', 'audit_logs'] LOOP
+        FOR i IN 0..3 LOOP
+            EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                v_table || '_y' || to_char(v_month + make_interval(months => i), 'YYYY"m"MM'),
+                v_table,
+                v_month + make_interval(months => i),
+                v_month + make_interval(months => i + 1));
+        END LOOP;
+        EXECUTE format('CREATE TABLE %I PARTITION OF %I DEFAULT', v_table || '_default', v_table);
+    END LOOP;
+END $$;
 
 -- ============================================================================
 -- TRIGGERS - Automatic Timestamp Updates
@@ -151,6 +210,48 @@ CREATE TRIGGER update_customers_updated_at BEFORE UPDATE ON customers
 CREATE TRIGGER update_accounts_updated_at BEFORE UPDATE ON accounts
     FOR EACH ROW EXECUTE FUNCTION update_updated_at_column();
 
+-- ============================================================================
+-- TRIGGERS - Ledger Outbox
+-- ============================================================================
+
+-- Records a new transaction, or a change of its status, as an outbox event.
+-- Runs inside the writing transaction, so the event commits or rolls back
+-- with the row it describes. As an AFTER trigger it runs once the row is
+-- written, so the transaction already has an id when it takes an event_id;
+-- the OutboxRelay relies on this to tell a pending offset from a rolled
+-- back one.
+CREATE OR REPLACE FUNCTION capture_ledger_event()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' AND OLD.status IS NOT DISTINCT FROM NEW.status THEN
+        RETURN NULL;
+    END IF;
+    INSERT INTO ledger_outbox (event_type, transaction_id, transaction_uuid, account_id, related_account_id,
+        transaction_type, amount, balance_after, reference_number, status, occurred_at)
+    VALUES (CASE TG_OP WHEN 'INSERT' THEN 'CREATED' ELSE 'STATUS_CHANGED' END,
+        NEW.transaction_id, NEW.transaction_uuid, NEW.account_id, NEW.related_account_id,
+        NEW.transaction_type, NEW.amount, NEW.balance_after, NEW.reference_number, NEW.status,
+        NEW.created_at);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER capture_transactions_ledger_event AFTER INSERT OR UPDATE OF status ON transactions
+    FOR EACH ROW EXECUTE FUNCTION capture_ledger_event();
+
+-- Wakes the relay. Delivered at commit, once per transaction, and never for
+-- a rollback.
+CREATE OR REPLACE FUNCTION notify_ledger_outbox()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_notify('ledger_outbox', '');
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER notify_ledger_outbox AFTER INSERT ON ledger_outbox
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_ledger_outbox();
+
 -- ============================================================================
 -- VIEWS - Business Intelligence
 -- ============================================================================
@@ -251,6 +352,7 @@ $$ LANGUAGE plpgsql;
 -- GRANT USAGE ON SCHEMA public TO banksim_app;
 -- GRANT SELECT, INSERT, UPDATE ON ALL TABLES IN SCHEMA public TO banksim_app;
 -- GRANT USAGE, SELECT ON ALL SEQUENCES IN SCHEMA public TO banksim_app;
+-- GRANT DELETE ON ledger_outbox TO banksim_app;
 -- GRANT EXECUTE ON ALL FUNCTIONS IN SCHEMA public TO banksim_app;
 
 -- ============================================================================
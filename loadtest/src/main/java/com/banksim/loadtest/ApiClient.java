@@ -0,0 +1,158 @@
+package com.banksim.loadtest;
+
+import com.banksim.json.JsonReader;
+import com.banksim.json.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thin client for the BankSim REST API, and the setup that creates the
+ * account holders a run operates on.
+ * 
+ * Requests are sent synchronously on the calling virtual client's thread
+ * over HTTP/1.1, as browsers and mobile clients reach the server.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class ApiClient {
+    
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    
+    private final HttpClient http;
+    private final String baseUrl;
+    
+    /**
+     * Creates a client for a server
+     * 
+     * @param baseUrl Base URL such as http://localhost:8080
+     */
+    public ApiClient(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    }
+    
+    /**
+     * Sends a POST with a JSON body
+     * 
+     * @param path API path
+     * @param token Bearer token, or null
+     * @param body Body, written with {@link JsonWriter#value(Object)}
+     * @return Response with the body as bytes
+     */
+    public HttpResponse<byte[]> post(String path, String token, Map<String, ?> body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = request(path, token)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(json(body)));
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+    
+    /**
+     * Sends a GET
+     * 
+     * @param path API path
+     * @param token Bearer token, or null
+     * @return Response with the body as bytes
+     */
+    public HttpResponse<byte[]> get(String path, String token) throws IOException, InterruptedException {
+        return http.send(request(path, token).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+    
+    /**
+     * Registers account holders, each with two funded accounts
+     * 
+     * @param count Number of users
+     * @param runId Suffix making usernames unique to this run
+     * @return Created users
+     * @throws IOException if the server rejects the setup
+     */
+    public List<VirtualUser> createUsers(int count, String runId) throws IOException, InterruptedException {
+        List<VirtualUser> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String username = "load_" + runId + "_" + i;
+            String password = "LoadTest" + runId + "x1";
+            
+            Map<String, Object> register = new LinkedHashMap<>();
+            register.put("username", username);
+            register.put("password", password);
+            register.put("email", username + "@loadtest.banksim.local");
+            register.put("firstName", "Load");
+            register.put("lastName", "User" + i);
+            register.put("phone", "+1555" + String.format("%07d", i));
+            register.put("personalKey", "LoadKey" + i + "x");
+            Map<String, Object> registered = expect(post("/api/auth/register", null, register), 201, "register");
+            
+            String token = (String) registered.get("accessToken");
+            Object customerId = registered.get("customerId");
+            long[] accounts = new long[2];
+            for (int a = 0; a < accounts.length; a++) {
+                Map<String, Object> account = new LinkedHashMap<>();
+                account.put("customerId", customerId);
+                account.put("accountType", "CHECKING");
+                account.put("initialDeposit", new BigDecimal("1000000.00"));
+                Map<String, Object> created = expect(post("/api/accounts", token, account), 201, "create account");
+                accounts[a] = ((BigDecimal) ((Map<?, ?>) created.get("account")).get("id")).longValue();
+            }
+            users.add(new VirtualUser(username, password, token, accounts));
+        }
+        return Collections.unmodifiableList(users);
+    }
+    
+    /**
+     * Parses a JSON object response body
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parse(byte[] body) throws IOException {
+        Object value = new JsonReader(new ByteArrayInputStream(body)).nextValue();
+        if (!(value instanceof Map)) {
+            throw new IOException("Expected a JSON object");
+        }
+        return (Map<String, Object>) value;
+    }
+    
+    private Map<String, Object> expect(HttpResponse<byte[]> response, int status, String step)
+            throws IOException {
+        if (response.statusCode() != status) {
+            throw new IOException("Setup failed to " + step + ": HTTP " + response.statusCode() + " "
+                + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return parse(response.body());
+    }
+    
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(TIMEOUT)
+            .header("Accept", "application/json");
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+    
+    private static byte[] json(Map<String, ?> body) throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.value(body);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.size());
+        json.writeTo(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,314 @@
+package com.banksim.loadtest;
+
+import com.banksim.BankSimServer;
+import com.banksim.config.DatabaseConfig;
+import com.banksim.config.ServerConfig;
+import com.banksim.json.JsonWriter;
+import com.banksim.metrics.LatencyHistogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop HTTP load generator with a latency report.
+ * 
+ * Requests are scheduled at a fixed rate, one every 1/rate seconds, and
+ * each is picked up by whichever virtual client is free. A slow response
+ * therefore does not slow the schedule down: later requests start late
+ * instead. Latency is measured from the time a request was scheduled to
+ * be sent, not from when a client got round to sending it, which corrects
+ * for coordinated omission; a closed-loop tool would wait politely during
+ * a stall and report only the one slow request. The uncorrected service
+ * time is reported next to it so the difference is visible.
+ * 
+ * Without --target, an embedded BankSimServer is booted in this JVM
+ * against the database configured by db.url, which can be overridden
+ * with -Ddb.url to point at a scratch database. Users and accounts are
+ * created through the API before the warmup starts.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class LoadGenerator {
+    
+    private static final long LATE_THRESHOLD = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final LoadOptions options;
+    private final Workload workload;
+    private final ApiClient client;
+    private final List<VirtualUser> users;
+    private final Map<Workload.Operation, OperationStats> stats = new EnumMap<>(Workload.Operation.class);
+    private final OperationStats total = new OperationStats();
+    private final LongAdder lateStarts = new LongAdder();
+    private final AtomicLong lastCompletion = new AtomicLong();
+    private long measureFrom;
+    
+    LoadGenerator(LoadOptions options, Workload workload, ApiClient client, List<VirtualUser> users) {
+        this.options = options;
+        this.workload = workload;
+        this.client = client;
+        this.users = users;
+        for (Workload.Operation operation : workload.getWeights().keySet()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        Workload workload;
+        try {
+            options = LoadOptions.parse(args);
+            workload = Workload.parse(options.getMix());
+        } catch (IllegalArgumentException e) {
+            System.err.println("[LoadGenerator] " + e.getMessage());
+            System.err.println("Usage: LoadGenerator [--target URL] [--rate N] [--duration S] [--warmup S] "
+                + "[--clients N] [--users N] [--mix op=weight,...] [--report FILE]");
+            System.exit(2);
+            return;
+        }
+        
+        String target = options.getTarget() != null ? options.getTarget() : bootEmbedded();
+        ApiClient client = new ApiClient(target);
+        
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        System.out.println("[LoadGenerator] Creating " + options.getUsers() + " users on " + target);
+        List<VirtualUser> users = client.createUsers(options.getUsers(), runId);
+        
+        LoadGenerator generator = new LoadGenerator(options, workload, client, users);
+        generator.run();
+        generator.printReport(System.out);
+        if (options.getReport() != null) {
+            generator.writeReport(new File(options.getReport()));
+        }
+        System.exit(0);
+    }
+    
+    /**
+     * Starts BankSimServer in this JVM and returns its base URL
+     */
+    private static String bootEmbedded() {
+        System.out.println("[LoadGenerator] Booting embedded server against "
+            + DatabaseConfig.getInstance().getJdbcUrl());
+        BankSimServer.main(new String[0]);
+        return "http://localhost:" + ServerConfig.getInstance().getPort();
+    }
+    
+    /**
+     * Sends the warmup and measured requests, returning when all have completed
+     */
+    void run() throws InterruptedException {
+        double interval = 1_000_000_000.0 / options.getRate();
+        long totalRequests = (long) options.getRate() * (options.getWarmupSeconds() + options.getDurationSeconds());
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        measureFrom = start + TimeUnit.SECONDS.toNanos(options.getWarmupSeconds());
+        AtomicLong sequence = new AtomicLong();
+        
+        System.out.println("[LoadGenerator] " + options.getRate() + " req/s for " + options.getWarmupSeconds()
+            + " s warmup + " + options.getDurationSeconds() + " s measured, " + options.getClients()
+            + " clients, mix " + workload.getWeights());
+        
+        List<Thread> clients = new ArrayList<>(options.getClients());
+        for (int c = 0; c < options.getClients(); c++) {
+            Thread thread = new Thread(() -> {
+                Random random = ThreadLocalRandom.current();
+                long i;
+                while ((i = sequence.getAndIncrement()) < totalRequests) {
+                    long intended = start + (long) (i * interval);
+                    long now;
+                    while ((now = System.nanoTime()) < intended) {
+                        LockSupport.parkNanos(intended - now);
+                    }
+                    
+                    Workload.Operation operation = workload.next(random);
+                    VirtualUser user = users.get(random.nextInt(users.size()));
+                    int status;
+                    long sent = System.nanoTime();
+                    try {
+                        status = operation.execute(client, user, random);
+                    } catch (IOException e) {
+                        status = 0;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long done = System.nanoTime();
+                    
+                    if (intended >= measureFrom) {
+                        if (sent - intended > LATE_THRESHOLD) {
+                            lateStarts.increment();
+                        }
+                        stats.get(operation).record(status, done - intended, done - sent);
+                        total.record(status, done - intended, done - sent);
+                        lastCompletion.accumulateAndGet(done, Math::max);
+                    }
+                }
+            }, "load-client-" + (c + 1));
+            thread.setDaemon(true);
+            clients.add(thread);
+            thread.start();
+        }
+        for (Thread thread : clients) {
+            thread.join();
+        }
+    }
+    
+    /**
+     * Prints throughput and latency percentiles per operation
+     */
+    void printReport(PrintStream out) {
+        double seconds = elapsedSeconds();
+        out.println();
+        out.printf("%-10s %9s %8s %9s %10s %10s %10s %10s %12s%n", "Operation", "Requests", "Errors",
+            "Req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99 ms");
+        for (Map.Entry<Workload.Operation, OperationStats> entry : stats.entrySet()) {
+            printRow(out, entry.getKey().name().toLowerCase(), entry.getValue(), seconds);
+        }
+        printRow(out, "all", total, seconds);
+        out.println();
+        out.println("Latency is measured from each request's scheduled start (coordinated-omission corrected);");
+        out.println("svc p99 is the uncorrected time from send to response.");
+        
+        Map<Integer, Long> statuses = total.statusCounts();
+        out.println("Responses by status: " + statuses);
+        long late = lateStarts.sum();
+        if (late > 0) {
+            out.printf("%d of %d requests started over 1 ms late because every client was busy; "
+                + "their wait is included in the latency%n", late, total.getRequests());
+        }
+        double achieved = total.getRequests() / seconds;
+        if (achieved < options.getRate() * 0.95) {
+            out.printf("Achieved %.1f req/s of the %d req/s requested: the server did not keep up%n",
+                achieved, options.getRate());
+        }
+    }
+    
+    /**
+     * Time from the end of the warmup until the last measured response,
+     * which exceeds the scheduled duration when the server fell behind
+     */
+    private double elapsedSeconds() {
+        double elapsed = (lastCompletion.get() - measureFrom) / 1_000_000_000.0;
+        return Math.max(options.getDurationSeconds(), elapsed);
+    }
+    
+    private static void printRow(PrintStream out, String name, OperationStats s, double seconds) {
+        out.printf("%-10s %9d %8d %9.1f %10.2f %10.2f %10.2f %10.2f %12.2f%n", name, s.getRequests(),
+            s.getErrors(), s.getRequests() / seconds, millis(s.response.getValueAtPercentile(50)),
+            millis(s.response.getValueAtPercentile(99)), millis(s.response.getValueAtPercentile(99.9)),
+            millis(s.response.getMax()), millis(s.service.getValueAtPercentile(99)));
+    }
+    
+    /**
+     * Writes the report as JSON, for comparing runs
+     */
+    void writeReport(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        
+        JsonWriter json = new JsonWriter();
+        double seconds = elapsedSeconds();
+        json.beginObject()
+            .name("rate").value(options.getRate())
+            .name("durationSeconds").value(options.getDurationSeconds())
+            .name("warmupSeconds").value(options.getWarmupSeconds())
+            .name("elapsedSeconds").value(seconds)
+            .name("clients").value(options.getClients())
+            .name("users").value(options.getUsers())
+            .name("mix").value(options.getMix())
+            .name("lateStarts").value(lateStarts.sum());
+        json.name("operations").beginObject();
+        for (Map.Entry<Workload.Operation, OperationStats> entry : stats.entrySet()) {
+            json.name(entry.getKey().name().toLowerCase());
+            writeStats(json, entry.getValue(), seconds);
+        }
+        json.name("all");
+        writeStats(json, total, seconds);
+        json.endObject().endObject();
+        
+        try (OutputStream out = new FileOutputStream(file)) {
+            json.writeTo(out);
+        }
+        System.out.println("[LoadGenerator] Report written to " + file.getPath());
+    }
+    
+    private static void writeStats(JsonWriter json, OperationStats s, double seconds) throws IOException {
+        json.beginObject()
+            .name("requests").value(s.getRequests())
+            .name("errors").value(s.getErrors())
+            .name("throughput").value(s.getRequests() / seconds);
+        json.name("latencyMillis");
+        writePercentiles(json, s.response);
+        json.name("serviceTimeMillis");
+        writePercentiles(json, s.service);
+        json.name("statuses").beginObject();
+        for (Map.Entry<Integer, Long> status : s.statusCounts().entrySet()) {
+            json.name(String.valueOf(status.getKey())).value(status.getValue().longValue());
+        }
+        json.endObject().endObject();
+    }
+    
+    private static void writePercentiles(JsonWriter json, LatencyHistogram histogram) throws IOException {
+        json.beginObject()
+            .name("mean").value(millis((long) histogram.getMean()))
+            .name("p50").value(millis(histogram.getValueAtPercentile(50)))
+            .name("p99").value(millis(histogram.getValueAtPercentile(99)))
+            .name("p999").value(millis(histogram.getValueAtPercentile(99.9)))
+            .name("max").value(millis(histogram.getMax()))
+            .endObject();
+    }
+    
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+    
+    /**
+     * Latencies and outcomes of one operation
+     */
+    static final class OperationStats {
+        final LatencyHistogram response = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder errors = new LongAdder();
+        
+        void record(int status, long responseNanos, long serviceNanos) {
+            response.record(responseNanos);
+            service.record(serviceNanos);
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            // 0 means no response at all
+            if (status == 0 || status >= 400) {
+                errors.increment();
+            }
+        }
+        
+        long getRequests() {
+            return response.getCount();
+        }
+        
+        long getErrors() {
+            return errors.sum();
+        }
+        
+        Map<Integer, Long> statusCounts() {
+            Map<Integer, Long> counts = new TreeMap<>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.banksim.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line settings of the load generator.
+ * 
+ * Options are given as {@code --name value} or {@code --name=value}:
+ * <ul>
+ *   <li>--target: base URL of a running server; without it an embedded
+ *       server is booted against the database in db.url</li>
+ *   <li>--rate: requests per second to send, whatever the response time (100)</li>
+ *   <li>--duration: measured seconds (60)</li>
+ *   <li>--warmup: seconds run before measuring (10)</li>
+ *   <li>--clients: virtual clients sending requests concurrently (64)</li>
+ *   <li>--users: account holders created for the run (50)</li>
+ *   <li>--mix: operation weights (login=5,deposit=30,withdraw=20,transfer=15,statement=30)</li>
+ *   <li>--report: file to write the JSON report to (none)</li>
+ * </ul>
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class LoadOptions {
+    
+    static final String DEFAULT_MIX = "login=5,deposit=30,withdraw=20,transfer=15,statement=30";
+    
+    private final String target;
+    private final int rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final int clients;
+    private final int users;
+    private final String mix;
+    private final String report;
+    
+    private LoadOptions(Map<String, String> values) {
+        this.target = values.get("target");
+        this.rate = positive(values, "rate", 100);
+        this.durationSeconds = positive(values, "duration", 60);
+        this.warmupSeconds = Integer.parseInt(values.getOrDefault("warmup", "10"));
+        this.clients = positive(values, "clients", 64);
+        this.users = positive(values, "users", 50);
+        this.mix = values.getOrDefault("mix", DEFAULT_MIX);
+        this.report = values.get("report");
+        
+        if (warmupSeconds < 0) {
+            throw new IllegalArgumentException("--warmup must not be negative");
+        }
+    }
+    
+    /**
+     * Parses the command line
+     * 
+     * @param args Arguments of main
+     * @return Parsed options
+     * @throws IllegalArgumentException if an option is unknown or invalid
+     */
+    public static LoadOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            String name;
+            String value;
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                name = arg.substring(2, equals);
+                value = arg.substring(equals + 1);
+            } else if (i + 1 < args.length) {
+                name = arg.substring(2);
+                value = args[++i];
+            } else {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            if (!name.matches("target|rate|duration|warmup|clients|users|mix|report")) {
+                throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+            values.put(name, value);
+        }
+        return new LoadOptions(values);
+    }
+    
+    private static int positive(Map<String, String> values, String name, int defaultValue) {
+        int value = values.containsKey(name) ? Integer.parseInt(values.get(name)) : defaultValue;
+        if (value <= 0) {
+            throw new IllegalArgumentException("--" + name + " must be positive");
+        }
+        return value;
+    }
+    
+    /**
+     * Base URL of the server under test, or null to boot one
+     */
+    public String getTarget() {
+        return target;
+    }
+    
+    public int getRate() {
+        return rate;
+    }
+    
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+    
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+    
+    public int getClients() {
+        return clients;
+    }
+    
+    public int getUsers() {
+        return users;
+    }
+    
+    public String getMix() {
+        return mix;
+    }
+    
+    /**
+     * Path of the JSON report, or null for console output only
+     */
+    public String getReport() {
+        return report;
+    }
+}
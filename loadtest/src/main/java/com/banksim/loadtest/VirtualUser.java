@@ -0,0 +1,52 @@
+package com.banksim.loadtest;
+
+/**
+ * Account holder a run acts as: credentials, current access token and
+ * two accounts to move money between.
+ * 
+ * Any virtual client may act as any user, so the token is volatile; a
+ * login replaces it for every client.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class VirtualUser {
+    
+    private final String username;
+    private final String password;
+    private final long[] accountIds;
+    private volatile String token;
+    
+    public VirtualUser(String username, String password, String token, long[] accountIds) {
+        this.username = username;
+        this.password = password;
+        this.token = token;
+        this.accountIds = accountIds.clone();
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getPassword() {
+        return password;
+    }
+    
+    public String getToken() {
+        return token;
+    }
+    
+    public void setToken(String token) {
+        this.token = token;
+    }
+    
+    /**
+     * Gets one of the user's accounts
+     * 
+     * @param index 0 or 1
+     */
+    public long getAccountId(int index) {
+        return accountIds[index];
+    }
+}
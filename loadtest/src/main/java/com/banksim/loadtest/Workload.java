@@ -0,0 +1,140 @@
+package com.banksim.loadtest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.http.HttpResponse;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Weighted mix of API operations, such as
+ * {@code login=5,deposit=30,withdraw=20,transfer=15,statement=30}.
+ * 
+ * Weights are relative; operations left out of the mix are never sent.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class Workload {
+    
+    private static final BigDecimal DEPOSIT = new BigDecimal("10.00");
+    private static final BigDecimal WITHDRAWAL = new BigDecimal("5.00");
+    private static final BigDecimal TRANSFER = new BigDecimal("1.00");
+    
+    /**
+     * One kind of request a virtual client can send
+     */
+    public enum Operation {
+        LOGIN, DEPOSIT, WITHDRAW, TRANSFER, STATEMENT;
+        
+        /**
+         * Sends the request as user
+         * 
+         * @return HTTP status of the response
+         */
+        int execute(ApiClient client, VirtualUser user, Random random) throws IOException, InterruptedException {
+            Map<String, Object> body = new LinkedHashMap<>();
+            switch (this) {
+                case LOGIN: {
+                    body.put("username", user.getUsername());
+                    body.put("password", user.getPassword());
+                    HttpResponse<byte[]> response = client.post("/api/auth/login", null, body);
+                    if (response.statusCode() == 200) {
+                        user.setToken((String) ApiClient.parse(response.body()).get("accessToken"));
+                    }
+                    return response.statusCode();
+                }
+                case DEPOSIT:
+                    body.put("accountId", user.getAccountId(0));
+                    body.put("amount", DEPOSIT);
+                    body.put("description", "Load test deposit");
+                    return client.post("/api/transactions/deposit", user.getToken(), body).statusCode();
+                case WITHDRAW:
+                    body.put("accountId", user.getAccountId(0));
+                    body.put("amount", WITHDRAWAL);
+                    body.put("description", "Load test withdrawal");
+                    return client.post("/api/transactions/withdraw", user.getToken(), body).statusCode();
+                case TRANSFER: {
+                    int from = random.nextInt(2);
+                    body.put("fromAccountId", user.getAccountId(from));
+                    body.put("toAccountId", user.getAccountId(1 - from));
+                    body.put("amount", TRANSFER);
+                    body.put("description", "Load test transfer");
+                    return client.post("/api/transactions/transfer", user.getToken(), body).statusCode();
+                }
+                case STATEMENT:
+                    return client.get("/api/transactions/statement/" + user.getAccountId(random.nextInt(2)),
+                        user.getToken()).statusCode();
+                default:
+                    throw new IllegalStateException("Unknown operation " + this);
+            }
+        }
+    }
+    
+    private final Map<Operation, Integer> weights;
+    private final Operation[] operations;
+    private final int[] cumulative;
+    
+    private Workload(Map<Operation, Integer> weights) {
+        this.weights = weights;
+        this.operations = weights.keySet().toArray(new Operation[0]);
+        this.cumulative = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += weights.get(operations[i]);
+            cumulative[i] = sum;
+        }
+    }
+    
+    /**
+     * Parses a mix such as {@code deposit=3,statement=1}
+     * 
+     * @param mix Comma-separated operation=weight pairs
+     * @return Workload
+     * @throws IllegalArgumentException if the mix is empty or malformed
+     */
+    public static Workload parse(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry: " + entry);
+            }
+            Operation operation = Operation.valueOf(pair[0].trim().toUpperCase());
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + operation);
+            }
+            if (weight > 0) {
+                weights.put(operation, weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Mix has no operations: " + mix);
+        }
+        return new Workload(weights);
+    }
+    
+    /**
+     * Picks an operation with probability proportional to its weight
+     */
+    public Operation next(Random random) {
+        int ticket = random.nextInt(cumulative[cumulative.length - 1]);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (ticket < cumulative[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+    
+    /**
+     * Operations in the mix, with their weights
+     */
+    public Map<Operation, Integer> getWeights() {
+        return weights;
+    }
+}
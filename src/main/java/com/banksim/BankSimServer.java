@@ -1,12 +1,32 @@
 package com.banksim;
 
+import com.banksim.audit.AuditWriter;
 import com.banksim.config.DatabaseConfig;
+import com.banksim.config.ServerConfig;
 import com.banksim.controller.*;
+import com.banksim.jfr.FlightRecording;
+import com.banksim.maintenance.PartitionMaintenance;
+import com.banksim.metrics.MetricsRegistry;
+import com.banksim.outbox.OutboxRelay;
+import com.banksim.server.AdmissionController;
+import com.banksim.server.ConcurrencyLimitFilter;
+import com.banksim.server.ExecutorFilter;
+import com.banksim.server.GradientLimit;
+import com.banksim.server.ServerExecutors;
+import com.banksim.server.ServerLifecycle;
+import com.banksim.server.StaticAssets;
+import com.banksim.session.SessionManager;
+import com.banksim.trace.TraceBuffer;
+import com.banksim.trace.TraceFilter;
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.concurrent.Executors;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main server application for BankSim.
@@ -18,9 +38,6 @@ import java.util.concurrent.Executors;
  */
 public class BankSimServer {
     
-    private static final int PORT = 8080;
-    private static final int THREAD_POOL_SIZE = 10;
-    
     public static void main(String[] args) {
         try {
             System.out.println("╔══════════════════════════════════════════╗");
@@ -34,50 +51,121 @@ public class BankSimServer {
             System.out.println("[1/4] Initializing database connection pool...");
             DatabaseConfig dbConfig = DatabaseConfig.getInstance();
             System.out.println("✓ Database pool initialized (max: 10, min idle: 2)");
+            // Creates upcoming monthly partitions before the first insert needs them
+            PartitionMaintenance partitions = PartitionMaintenance.fromConfig();
+            partitions.start();
+            // Relays ledger events committed through the outbox table to subscribers
+            boolean outboxEnabled = Boolean.parseBoolean(ServerConfig.getInstance().getProperty("outbox.enabled", "true"));
+            OutboxRelay outbox = outboxEnabled ? OutboxRelay.getInstance() : null;
+            if (outbox != null) {
+                outbox.start();
+            }
             System.out.println();
             
             // Create HTTP server
             System.out.println("[2/4] Creating HTTP server...");
-            HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
-            server.setExecutor(Executors.newFixedThreadPool(THREAD_POOL_SIZE));
-            System.out.println("✓ HTTP server created on port " + PORT);
+            ServerConfig serverConfig = ServerConfig.getInstance();
+            if (serverConfig.isJfrEnabled()) {
+                try {
+                    FlightRecording.start(serverConfig.getJfrMaxAge(), serverConfig.getJfrMaxSize(),
+                        serverConfig.getJfrDumpFile());
+                } catch (IOException | ParseException | IllegalStateException e) {
+                    // Diagnostics only: the server runs without a recording
+                    System.err.println("Flight recording not started: " + e.getMessage());
+                }
+            }
+            int port = serverConfig.getPort();
+            HttpServer server = HttpServer.create(new InetSocketAddress(serverConfig.getHost(), port), 0);
+            ExecutorService executor = ServerExecutors.create(serverConfig);
+            server.setExecutor(executor);
+            System.out.println("✓ HTTP server created on port " + port + " ("
+                + serverConfig.getExecutorMode().name().toLowerCase() + " executor)");
             System.out.println();
             
             // Register controllers
             System.out.println("[3/4] Registering REST API controllers...");
             
-            // Authentication endpoints
-            server.createContext("/api/auth/", new AuthController());
-            System.out.println("  → /api/auth/login (POST)");
-            System.out.println("  → /api/auth/register (POST)");
-            System.out.println("  → /api/auth/refresh (POST)");
-            System.out.println("  → /api/auth/change-password (POST)");
+            // Bulkhead of the API context; batches also take permits from it for concurrent reads
+            ConcurrencyLimitFilter concurrency = new ConcurrencyLimitFilter(
+                serverConfig.getMaxConcurrentRequests(), serverConfig.getConcurrencyTimeout());
             
-            // Customer endpoints
-            server.createContext("/api/customers", new CustomerController());
-            System.out.println("  → /api/customers (GET, POST)");
-            System.out.println("  → /api/customers/{id} (GET, PUT)");
-            System.out.println("  → /api/customers/{id}/verify-key (POST)");
-            System.out.println("  → /api/customers/user/{userId} (GET)");
+            // API endpoints share one context and dispatch through the router; events have their own
+            Router router = new Router();
+            new AuthController().register(router);
+            new CustomerController().register(router);
+            new AccountController().register(router);
+            new TransactionController().register(router);
+            new TestController().register(router);
+            new BatchController(concurrency).register(router);
+            new AdminController().register(router);
+            if (serverConfig.isMetricsEnabled()) {
+                new MetricsController().register(router);
+            }
+            ServerLifecycle lifecycle = new ServerLifecycle(server, executor, serverConfig.getShutdownTimeout());
+            HttpContext api = server.createContext("/api/", router);
+            // First, so the request id is set for the rejections of the filters after it
+            api.getFilters().add(new TraceFilter(TraceBuffer.getInstance()));
+            api.getFilters().add(lifecycle.requestTracker());
+            MetricsRegistry metrics = MetricsRegistry.getInstance();
+            metrics.gauge("banksim_http_in_flight_requests", "Requests being handled", lifecycle::getInFlight);
+            if (serverConfig.isAdmissionEnabled()) {
+                GradientLimit limit = new GradientLimit(serverConfig.getAdmissionInitialLimit(),
+                    serverConfig.getAdmissionMinLimit(), serverConfig.getAdmissionMaxLimit(),
+                    serverConfig.getAdmissionTolerance(), serverConfig.getAdmissionWindow());
+                AdmissionController admission = new AdmissionController(limit,
+                    serverConfig.getAdmissionCriticalPaths(), serverConfig.getAdmissionLowPaths());
+                api.getFilters().add(admission);
+                metrics.gauge("banksim_admission_limit", "Current adaptive concurrency limit", admission::getLimit);
+                metrics.gauge("banksim_admission_in_flight", "Requests admitted and not yet finished",
+                    admission::getInFlight);
+                for (AdmissionController.Priority priority : AdmissionController.Priority.values()) {
+                    String name = priority.name().toLowerCase();
+                    metrics.counterFunction("banksim_admission_requests_total",
+                        "Admission decisions, by priority and result",
+                        () -> admission.getAdmitted(priority), "priority", name, "result", "admitted");
+                    metrics.counterFunction("banksim_admission_requests_total",
+                        "Admission decisions, by priority and result",
+                        () -> admission.getRejected(priority), "priority", name, "result", "rejected");
+                }
+            }
+            api.getFilters().add(concurrency);
+            metrics.gauge("banksim_concurrency_queue_length", "Requests waiting for a concurrency permit",
+                concurrency::getQueueLength);
+            metrics.gauge("banksim_sessions_active", "Active user sessions",
+                SessionManager.getInstance()::getActiveSessionCount);
             
-            // Account endpoints
-            server.createContext("/api/accounts", new AccountController());
-            System.out.println("  → /api/accounts (POST)");
-            System.out.println("  → /api/accounts/{id} (GET)");
-            System.out.println("  → /api/accounts/{id}/balance (GET)");
-            System.out.println("  → /api/accounts/customer/{customerId} (GET)");
+            for (String route : router.getRoutes()) {
+                System.out.println("  → " + route);
+            }
             
-            // Transaction endpoints
-            server.createContext("/api/transactions", new TransactionController());
-            System.out.println("  → /api/transactions/deposit (POST)");
-            System.out.println("  → /api/transactions/withdraw (POST)");
-            System.out.println("  → /api/transactions/transfer (POST)");
-            System.out.println("  → /api/transactions/statement/{accountId} (GET)");
-            System.out.println("  → /api/transactions/account/{accountId} (GET)");
+            if (outbox != null) {
+                // Long-polls and streams wait for events, so they get a context and threads of
+                // their own, outside the admission and concurrency limits of the API
+                EventsController events = new EventsController(outbox, lifecycle::isDraining);
+                Router eventsRouter = new Router();
+                events.register(eventsRouter);
+                ExecutorService eventsExecutor = ServerExecutors.newBoundedExecutor("events-worker-",
+                    events.getThreads());
+                HttpContext eventsContext = server.createContext("/api/events/", eventsRouter);
+                // Counted from arrival, through the hand-off, until the worker finishes; the
+                // trace is set on the worker thread, which handles the request
+                eventsContext.getFilters().add(lifecycle.requestTracker());
+                eventsContext.getFilters().add(new ExecutorFilter(eventsExecutor, "events"));
+                eventsContext.getFilters().add(new TraceFilter(TraceBuffer.getInstance()));
+                // Waits end when the server starts draining, so this is quick
+                lifecycle.onDrain("events", timeoutMillis -> {
+                    eventsExecutor.shutdown();
+                    return eventsExecutor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+                });
+                for (String route : eventsRouter.getRoutes()) {
+                    System.out.println("  → " + route + " (own executor)");
+                }
+            }
             
-            // Test endpoints
-            server.createContext("/api/tests", new TestController());
-            System.out.println("  → /api/tests/run-all (GET)");
+            // Frontend assets are served from memory, outside the API filters
+            HttpContext assets = server.createContext("/", StaticAssets.fromConfig("src/main/resources/static"));
+            assets.getFilters().add(lifecycle.requestTracker());
+            System.out.println("  → / (static assets)");
             
             System.out.println("✓ All controllers registered");
             System.out.println();
@@ -89,7 +177,7 @@ public class BankSimServer {
             System.out.println();
             
             System.out.println("╔══════════════════════════════════════════╗");
-            System.out.println("║  Server is running on http://localhost:" + PORT + "  ║");
+            System.out.println("║  Server is running on http://localhost:" + port + "  ║");
             System.out.println("║  Press Ctrl+C to stop                    ║");
             System.out.println("╚══════════════════════════════════════════╝");
             System.out.println();
@@ -101,19 +189,31 @@ public class BankSimServer {
             System.out.println("  Tests:          http://localhost:8080/api/tests/run-all");
             System.out.println();
             
-            // Shutdown hook
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                System.out.println();
-                System.out.println("Shutting down server...");
-                server.stop(0);
-                try {
-                    dbConfig.close();
-                    System.out.println("✓ Database connections closed");
-                } catch (Exception e) {
-                    System.err.println("Error closing database: " + e.getMessage());
-                }
-                System.out.println("✓ Server stopped");
-            }));
+            // Graceful shutdown: drain in-flight requests, then release resources
+            // Queued audit entries are written while the database is still open
+            lifecycle.onDrain("audit", AuditWriter.getInstance()::drain);
+            lifecycle.onShutdown("partitions", partitions::stop);
+            if (outbox != null) {
+                lifecycle.onShutdown("outbox", outbox::stop);
+            }
+            lifecycle.onShutdown("sessions", SessionManager.getInstance()::shutdown);
+            // Values since the last scrape would otherwise be lost
+            String metricsFile = serverConfig.getMetricsShutdownFile();
+            if (!metricsFile.isEmpty()) {
+                lifecycle.onShutdown("metrics", () -> {
+                    try {
+                        metrics.writeTo(Paths.get(metricsFile));
+                        System.out.println("✓ Final metrics written to " + metricsFile);
+                    } catch (IOException e) {
+                        System.err.println("Final metrics not written: " + e.getMessage());
+                    }
+                });
+            }
+            lifecycle.onShutdown("database", () -> {
+                dbConfig.close();
+                System.out.println("✓ Database connections closed");
+            });
+            lifecycle.installShutdownHook();
             
         } catch (IOException e) {
             System.err.println("Failed to start server: " + e.getMessage());
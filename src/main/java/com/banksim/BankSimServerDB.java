@@ -3,6 +3,7 @@ package com.banksim;
 import com.banksim.config.DatabaseConfig;
 import com.banksim.model.User;
 import com.banksim.repository.UserRepository;
+import com.banksim.server.StaticAssets;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -10,9 +11,6 @@ import com.sun.net.httpserver.HttpServer;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.Statement;
@@ -45,7 +43,7 @@ public class BankSimServerDB {
             HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
             
             // Register handlers
-            server.createContext("/", new StaticFileHandler());
+            server.createContext("/", StaticAssets.fromConfig("src/main/resources/static"));
             server.createContext("/api/status", new StatusHandler());
             server.createContext("/api/db/users", new UsersHandler());
             server.createContext("/api/db/test", new DBTestHandler());
@@ -88,54 +86,6 @@ public class BankSimServerDB {
         }
     }
     
-    /**
-     * Handler for static files
-     */
-    static class StaticFileHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            String path = exchange.getRequestURI().getPath();
-            
-            // Default to index.html
-            if (path.equals("/") || path.isEmpty()) {
-                path = "/index.html";
-            }
-            
-            // Security: prevent directory traversal
-            if (path.contains("..")) {
-                sendResponse(exchange, 403, "Forbidden");
-                return;
-            }
-            
-            // Try to serve from static directory
-            Path filePath = Paths.get("src/main/resources/static" + path);
-            
-            if (Files.exists(filePath) && !Files.isDirectory(filePath)) {
-                String contentType = getContentType(path);
-                byte[] content = Files.readAllBytes(filePath);
-                
-                exchange.getResponseHeaders().add("Content-Type", contentType);
-                exchange.sendResponseHeaders(200, content.length);
-                
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(content);
-                }
-            } else {
-                sendResponse(exchange, 404, "File not found: " + path);
-            }
-        }
-        
-        private String getContentType(String path) {
-            if (path.endsWith(".html")) return "text/html;charset=UTF-8";
-            if (path.endsWith(".css")) return "text/css;charset=UTF-8";
-            if (path.endsWith(".js")) return "application/javascript;charset=UTF-8";
-            if (path.endsWith(".json")) return "application/json;charset=UTF-8";
-            if (path.endsWith(".png")) return "image/png";
-            if (path.endsWith(".jpg") || path.endsWith(".jpeg")) return "image/jpeg";
-            return "text/plain;charset=UTF-8";
-        }
-    }
-    
     /**
      * Handler for server status
      */
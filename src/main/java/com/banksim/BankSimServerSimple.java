@@ -1,5 +1,6 @@
 package com.banksim;
 
+import com.banksim.server.StaticAssets;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
@@ -8,8 +9,6 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 
 /**
  * Simple HTTP server for BankSim Enterprise.
@@ -40,7 +39,7 @@ public class BankSimServerSimple {
             
             // Register static file handler
             System.out.println("[2/2] Registering handlers...");
-            server.createContext("/", new StaticFileHandler());
+            server.createContext("/", StaticAssets.fromConfig("src/main/resources/static"));
             server.createContext("/api/status", new StatusHandler());
             System.out.println("  → / (Static files)");
             System.out.println("  → /api/status (Server status)");
@@ -80,53 +79,6 @@ public class BankSimServerSimple {
         }
     }
     
-    /**
-     * Handler for static files (HTML, CSS, JS)
-     */
-    static class StaticFileHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            String path = exchange.getRequestURI().getPath();
-            
-            // Default to index.html
-            if (path.equals("/")) {
-                path = "/index.html";
-            }
-            
-            // Serve static files
-            String filePath = "src/main/resources/static" + path;
-            
-            try {
-                byte[] response = Files.readAllBytes(Paths.get(filePath));
-                
-                // Set content type
-                String contentType = "text/html";
-                if (path.endsWith(".css")) contentType = "text/css";
-                if (path.endsWith(".js")) contentType = "application/javascript";
-                if (path.endsWith(".json")) contentType = "application/json";
-                
-                exchange.getResponseHeaders().set("Content-Type", contentType);
-                exchange.sendResponseHeaders(200, response.length);
-                
-                OutputStream os = exchange.getResponseBody();
-                os.write(response);
-                os.close();
-                
-            } catch (IOException e) {
-                // File not found
-                String notFound = "<h1>404 Not Found</h1><p>File not found: " + path + "</p>";
-                byte[] response = notFound.getBytes(StandardCharsets.UTF_8);
-                
-                exchange.getResponseHeaders().set("Content-Type", "text/html");
-                exchange.sendResponseHeaders(404, response.length);
-                
-                OutputStream os = exchange.getResponseBody();
-                os.write(response);
-                os.close();
-            }
-        }
-    }
-    
     /**
      * Handler for server status API
      */
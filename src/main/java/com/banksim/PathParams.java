@@ -0,0 +1,97 @@
+package com.banksim;
+
+import java.util.Arrays;
+
+/**
+ * Path parameters captured while matching a request against a route template.
+ *
+ * Values are kept as offsets into the request path and only converted when
+ * read, so matching allocates nothing per segment.
+ *
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class PathParams {
+
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private final String path;
+    private String[] names = new String[DEFAULT_CAPACITY];
+    private int[] starts = new int[DEFAULT_CAPACITY];
+    private int[] ends = new int[DEFAULT_CAPACITY];
+    private int size;
+
+    PathParams(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns a parameter as text
+     *
+     * @param name Parameter name from the template
+     * @return Value, or null if the route has no such parameter
+     */
+    public String get(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : path.substring(starts[i], ends[i]);
+    }
+
+    /**
+     * Returns a numeric parameter declared as {@code {name:long}}
+     *
+     * @param name Parameter name from the template
+     * @return Parsed value
+     * @throws NumberFormatException if the parameter is missing or out of range
+     */
+    public long getLong(String name) {
+        int i = indexOf(name);
+        if (i < 0) {
+            throw new NumberFormatException("Missing path parameter: " + name);
+        }
+        long value = 0;
+        for (int p = starts[i]; p < ends[i]; p++) {
+            int digit = path.charAt(p) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + path.substring(starts[i], ends[i]) + "\"");
+            }
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("Value out of range: \"" + path.substring(starts[i], ends[i]) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Number of captured parameters
+     */
+    public int size() {
+        return size;
+    }
+
+    void add(String name, int start, int end) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        names[size] = name;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    void truncate(int newSize) {
+        size = newSize;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,24 @@
+package com.banksim;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Handler for one method and path template registered with the {@link Router}.
+ *
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@FunctionalInterface
+public interface Route {
+
+    /**
+     * Handles a matched request
+     *
+     * @param exchange HTTP exchange
+     * @param params Path parameters captured from the template
+     */
+    void handle(HttpExchange exchange, PathParams params) throws IOException;
+}
@@ -0,0 +1,348 @@
+package com.banksim;
+
+import com.banksim.jfr.HttpExchangeEvent;
+import com.banksim.json.JsonReader;
+import com.banksim.json.JsonResponse;
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.LatencyHistogram;
+import com.banksim.metrics.MetricsRegistry;
+import com.banksim.trace.Trace;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Central request router for the REST API.
+ *
+ * Routes are registered once at startup as a method plus a path template
+ * such as {@code /api/accounts/{id:long}/balance}. Templates are compiled
+ * into a prefix trie keyed by path segment, so dispatch walks one node per
+ * segment with no regular expressions and costs the same however many
+ * endpoints exist. Literal segments take precedence over parameters.
+ *
+ * Parameters are written {@code {name}} for any non-empty segment or
+ * {@code {name:long}} for digits only. A path that matches no template
+ * gets 404; a path that matches with the wrong method gets 405 and an
+ * Allow header. CORS headers and preflight requests are handled here for
+ * every route.
+ *
+ * Each route records its latency and response status class in the
+ * {@link MetricsRegistry}, labelled by template rather than raw path so
+ * the number of series stays bounded; unmatched requests share one series.
+ * It also emits an {@link HttpExchangeEvent} for flight recordings and a
+ * "handle" span on the request's {@link Trace}.
+ *
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class Router implements HttpHandler {
+
+    private static final RouteMetrics UNMATCHED = new RouteMetrics("ANY", "unmatched");
+
+    private final Node root = new Node();
+    private final List<String> routes = new ArrayList<>();
+
+    /**
+     * Registers a route
+     *
+     * @param method HTTP method
+     * @param template Path template
+     * @param route Handler
+     * @return this router
+     * @throws IllegalArgumentException if the template is malformed or already registered for method
+     */
+    public Router add(String method, String template, Route route) {
+        if (!template.startsWith("/")) {
+            throw new IllegalArgumentException("Route template must start with '/': " + template);
+        }
+
+        Node node = root;
+        for (String segment : template.substring(1).split("/", -1)) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                String spec = segment.substring(1, segment.length() - 1);
+                int colon = spec.indexOf(':');
+                String name = colon < 0 ? spec : spec.substring(0, colon);
+                String type = colon < 0 ? "" : spec.substring(colon + 1);
+                if (name.isEmpty() || !(type.isEmpty() || "long".equals(type))) {
+                    throw new IllegalArgumentException("Invalid path parameter '" + segment + "' in " + template);
+                }
+                node = node.paramChild(name, "long".equals(type), template);
+            } else if (segment.isEmpty() || segment.indexOf('{') >= 0 || segment.indexOf('}') >= 0) {
+                throw new IllegalArgumentException("Invalid path segment '" + segment + "' in " + template);
+            } else {
+                node = node.literalChild(segment);
+            }
+        }
+
+        if (node.handlers.putIfAbsent(method, route) != null) {
+            throw new IllegalArgumentException("Route already registered: " + method + " " + template);
+        }
+        node.allow = String.join(", ", node.handlers.keySet()) + ", OPTIONS";
+        node.metrics.put(method, new RouteMetrics(method, template));
+        routes.add(method + " " + template);
+        return this;
+    }
+
+    public Router get(String template, Route route) {
+        return add("GET", template, route);
+    }
+
+    public Router post(String template, Route route) {
+        return add("POST", template, route);
+    }
+
+    public Router put(String template, Route route) {
+        return add("PUT", template, route);
+    }
+
+    public Router delete(String template, Route route) {
+        return add("DELETE", template, route);
+    }
+
+    /**
+     * Returns the registered routes as "METHOD template", in registration order
+     */
+    public List<String> getRoutes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // CORS headers
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers",
+            "Content-Type, Authorization, If-None-Match, X-Request-Id");
+
+        String method = exchange.getRequestMethod();
+        if ("OPTIONS".equals(method)) {
+            exchange.sendResponseHeaders(204, -1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        HttpExchangeEvent event = new HttpExchangeEvent();
+        event.begin();
+        String path = exchange.getRequestURI().getPath();
+        PathParams params = new PathParams(path);
+        Node node = resolve(path, params);
+        if (node == null) {
+            JsonResponse.error(exchange, 404, "Endpoint not found");
+            UNMATCHED.record(start, 404, method, event);
+            return;
+        }
+
+        Route route = node.handlers.get(method);
+        if (route == null) {
+            exchange.getResponseHeaders().set("Allow", node.allow);
+            JsonResponse.error(exchange, 405, "Method not allowed");
+            UNMATCHED.record(start, 405, method, event);
+            return;
+        }
+
+        RouteMetrics metrics = node.metrics.get(method);
+        if (isTooLarge(exchange)) {
+            // Chunked bodies without a length are cut off by JsonReader instead
+            JsonResponse.error(exchange, 413, "Request body larger than " + JsonReader.MAX_BYTES + " bytes");
+            metrics.record(start, 413, method, event);
+            return;
+        }
+        Trace trace = Trace.current();
+        if (trace != null && trace.getRoute() == null) {
+            // The outer request; batch sub-requests show up as handle spans
+            trace.setRoute(metrics.route);
+        }
+        int span = Trace.begin("handle", metrics.route);
+        try {
+            route.handle(exchange, params);
+        } catch (JsonReader.JsonParseException e) {
+            JsonResponse.error(exchange, 400, "Invalid request body: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            // Such as a {name:long} parameter that overflows a long
+            JsonResponse.error(exchange, 400, "Invalid number: " + e.getMessage());
+        } catch (Exception e) {
+            JsonResponse.error(exchange, 500, "Internal server error: " + e.getMessage());
+        } finally {
+            Trace.end(span);
+            metrics.record(start, exchange.getResponseCode(), method, event);
+        }
+    }
+
+    private static boolean isTooLarge(HttpExchange exchange) {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(length.trim()) > JsonReader.MAX_BYTES;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Resolves a path to the node holding its handlers
+     *
+     * @param path Request path starting with '/'
+     * @param params Receives captured parameters
+     * @return Matching node, or null if no template matches
+     */
+    Node resolve(String path, PathParams params) {
+        return path.startsWith("/") ? find(root, path, 0, params) : null;
+    }
+
+    /**
+     * Matches the segment starting after the '/' at pos, backtracking from a
+     * literal to a parameter child when the literal branch dead-ends
+     */
+    private static Node find(Node node, String path, int pos, PathParams params) {
+        if (pos == path.length()) {
+            return node.handlers.isEmpty() ? null : node;
+        }
+
+        int start = pos + 1;
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        int length = end - start;
+        if (length == 0) {
+            return null;
+        }
+
+        for (int i = 0; i < node.literalCount; i++) {
+            String literal = node.literals[i];
+            if (literal.length() == length && path.regionMatches(start, literal, 0, length)) {
+                Node match = find(node.literalNodes[i], path, end, params);
+                if (match != null) {
+                    return match;
+                }
+                break;
+            }
+        }
+
+        Node param = node.param;
+        if (param != null && (!param.numeric || isDigits(path, start, end))) {
+            int mark = params.size();
+            params.add(param.paramName, start, end);
+            Node match = find(param, path, end, params);
+            if (match != null) {
+                return match;
+            }
+            params.truncate(mark);
+        }
+        return null;
+    }
+
+    private static boolean isDigits(String path, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Trie node for one path segment
+     */
+    static final class Node {
+        private String[] literals = new String[0];
+        private Node[] literalNodes = new Node[0];
+        private int literalCount;
+
+        private Node param;
+        private String paramName;
+        private boolean numeric;
+
+        private final Map<String, Route> handlers = new LinkedHashMap<>();
+        private final Map<String, RouteMetrics> metrics = new LinkedHashMap<>();
+        private String allow;
+
+        Route handler(String method) {
+            return handlers.get(method);
+        }
+
+        String allow() {
+            return allow;
+        }
+
+        private Node literalChild(String segment) {
+            for (int i = 0; i < literalCount; i++) {
+                if (literals[i].equals(segment)) {
+                    return literalNodes[i];
+                }
+            }
+            literals = Arrays.copyOf(literals, literalCount + 1);
+            literalNodes = Arrays.copyOf(literalNodes, literalCount + 1);
+            literals[literalCount] = segment;
+            literalNodes[literalCount] = new Node();
+            return literalNodes[literalCount++];
+        }
+
+        private Node paramChild(String name, boolean numeric, String template) {
+            if (param == null) {
+                param = new Node();
+                param.paramName = name;
+                param.numeric = numeric;
+            } else if (!param.paramName.equals(name) || param.numeric != numeric) {
+                throw new IllegalArgumentException("Conflicting path parameter {" + name + "} in " + template
+                    + "; already registered as {" + param.paramName + (param.numeric ? ":long" : "") + "}");
+            }
+            return param;
+        }
+    }
+
+    /**
+     * Latency histogram and per-status-class counters for one route, so
+     * recording a request is a lookup-free increment
+     */
+    private static final class RouteMetrics {
+        private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+        private final String route;
+        private final LatencyHistogram duration;
+        private final Counter[] responses = new Counter[STATUS_CLASSES.length];
+
+        private RouteMetrics(String method, String template) {
+            this.route = template;
+            MetricsRegistry registry = MetricsRegistry.getInstance();
+            duration = registry.histogram("banksim_http_request_duration_seconds",
+                "Time to handle a request, by route", "method", method, "route", template);
+            for (int i = 0; i < STATUS_CLASSES.length; i++) {
+                responses[i] = registry.counter("banksim_http_requests_total",
+                    "Requests handled, by route and status class",
+                    "method", method, "route", template, "status", STATUS_CLASSES[i]);
+            }
+        }
+
+        /**
+         * @param start System.nanoTime() when the request arrived
+         * @param status Response code; a handler that never responded counts as 5xx
+         * @param method Request method
+         * @param event Flight recorder event begun when the request arrived
+         */
+        private void record(long start, int status, String method, HttpExchangeEvent event) {
+            duration.record(System.nanoTime() - start);
+            int index = status / 100 - 1;
+            responses[index >= 0 && index < responses.length ? index : responses.length - 1].increment();
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.method = method;
+                event.route = route;
+                event.status = status;
+                event.commit();
+            }
+        }
+    }
+}
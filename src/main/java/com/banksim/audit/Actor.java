@@ -0,0 +1,38 @@
+package com.banksim.audit;
+
+import com.banksim.model.AuditLog;
+
+/**
+ * Who made a change and from where, for the audit trail.
+ * 
+ * Services that write audited changes take one from the controller, which
+ * knows the authenticated user and the request; the request id is picked
+ * up from the current trace by {@link AuditLog} itself.
+ * 
+ * @param userId Authenticated user, or null for work no user started
+ * @param ipAddress Client address
+ * @param userAgent Client User-Agent header
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public record Actor(Integer userId, String ipAddress, String userAgent) {
+    
+    /**
+     * Changes made by the system itself, such as scheduled jobs and benchmarks
+     */
+    public static final Actor SYSTEM = new Actor(null, null, null);
+    
+    /**
+     * Sets the user and request metadata of an entry
+     * 
+     * @param entry Audit entry
+     * @return entry
+     */
+    public AuditLog applyTo(AuditLog entry) {
+        entry.setUserId(userId);
+        entry.setIpAddress(ipAddress);
+        entry.setUserAgent(userAgent);
+        return entry;
+    }
+}
@@ -0,0 +1,393 @@
+package com.banksim.audit;
+
+import com.banksim.config.ServerConfig;
+
+import javax.crypto.Mac;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks the integrity of audit segment files written by
+ * {@link AuditSegmentWriter}, without touching the database.
+ * 
+ * Every segment is checked on its own, in parallel: each record's HMAC is
+ * recomputed from the previous one under the key, sequence numbers must be
+ * consecutive and the footer's count, last hash and HMAC must match. The
+ * segments are then linked in order: each must start where the previous
+ * one ended, with the hash it ended on, and the first must start the
+ * chain. Finally the chain must reach the record named by the signed
+ * checkpoint, with the same hash. An edited, inserted, removed or
+ * reordered record, a segment swapped or deleted, the newest segments
+ * deleted, and a record or footer rewritten without the key all show up
+ * as problems.
+ * 
+ * Records are hashed straight from the file bytes, so a segment is checked
+ * at the speed of HMAC-SHA256 on one core and the directory at that speed
+ * times the number of threads.
+ * 
+ * Run from the command line with the key from application.properties:
+ * <pre>
+ * java -cp ... com.banksim.audit.AuditSegmentVerifier [dir] [threads] [checkpoint]
+ * </pre>
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class AuditSegmentVerifier {
+    
+    private static final byte[] SEQ_FIELD = "{\"seq\":".getBytes(StandardCharsets.US_ASCII);
+    
+    private final byte[] key;
+    private final int threads;
+    
+    /**
+     * Creates a verifier
+     * 
+     * @param key HMAC key the footers were signed with (audit.segment.key)
+     * @param threads Segments checked at once
+     */
+    public AuditSegmentVerifier(byte[] key, int threads) {
+        this.key = key.clone();
+        this.threads = Math.max(1, threads);
+    }
+    
+    /**
+     * Outcome of checking one segment file on its own
+     * 
+     * @param file Segment file
+     * @param first Sequence number of its first record, or -1 if the header is unreadable
+     * @param prev Hash it continues from, or null if the header is unreadable
+     * @param count Records that passed, up to the first problem
+     * @param last Hash of the last record that passed, prev if none did
+     * @param sealed Whether it ends in a valid footer
+     * @param validLength Bytes up to the end of the last record that passed
+     * @param problem What is wrong with it, or null
+     */
+    public record Segment(Path file, long first, byte[] prev, long count, byte[] last,
+                          boolean sealed, long validLength, String problem) {
+    }
+    
+    /**
+     * The last sealed record, as recorded in the checkpoint file
+     * 
+     * @param last Sequence number of the last sealed record, or -1 if unreadable
+     * @param hash Its hash, or null if unreadable
+     * @param problem What is wrong with the file, or null
+     */
+    public record Checkpoint(long last, byte[] hash, String problem) {
+    }
+    
+    /**
+     * Outcome of checking a directory of segments
+     * 
+     * @param segments Segment files checked
+     * @param records Records whose hashes matched
+     * @param problems Everything found wrong; empty if the chain is intact
+     * @param elapsedNanos Time taken
+     */
+    public record Report(int segments, long records, List<String> problems, long elapsedNanos) {
+        
+        public boolean isValid() {
+            return problems.isEmpty();
+        }
+        
+        public long recordsPerSecond() {
+            return elapsedNanos == 0 ? 0 : records * 1_000_000_000L / elapsedNanos;
+        }
+    }
+    
+    /**
+     * Checks every segment in a directory against the checkpoint kept in
+     * the same directory
+     * 
+     * @param dir Segment directory (audit.segment.dir)
+     * @return Report
+     * @throws IOException if the directory cannot be listed or a file read
+     */
+    public Report verify(Path dir) throws IOException, InterruptedException {
+        return verify(dir, dir.resolve(SegmentFormat.CHECKPOINT_FILE));
+    }
+    
+    /**
+     * Checks every segment in a directory, the links between them and that
+     * the chain reaches the checkpoint. The last segment may be unsealed, as
+     * it is while the server is writing it.
+     * 
+     * @param dir Segment directory (audit.segment.dir)
+     * @param checkpointFile Checkpoint file (audit.segment.checkpoint)
+     * @return Report
+     * @throws IOException if the directory cannot be listed or a file read
+     */
+    public Report verify(Path dir, Path checkpointFile) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        List<Path> files = SegmentFormat.list(dir);
+        List<Segment> segments = new ArrayList<>(files.size());
+        
+        if (!files.isEmpty()) {
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, files.size()), runnable -> {
+                Thread thread = new Thread(runnable, "audit-verify");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<Segment>> results = new ArrayList<>(files.size());
+                for (Path file : files) {
+                    results.add(pool.submit(() -> scan(file, key)));
+                }
+                for (Future<Segment> result : results) {
+                    segments.add(result.get());
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        
+        List<String> problems = new ArrayList<>();
+        Checkpoint checkpoint = readCheckpoint(checkpointFile, key);
+        if (checkpoint == null && !segments.isEmpty()) {
+            problems.add(checkpointFile.getFileName() + ": missing, though segments exist");
+        } else if (checkpoint != null && checkpoint.problem() != null) {
+            problems.add(checkpointFile.getFileName() + ": " + checkpoint.problem());
+            checkpoint = null;
+        }
+        // Written with no record when the chain starts
+        boolean reached = checkpoint == null || checkpoint.last() == 0;
+        long records = 0;
+        long expectedFirst = 1;
+        byte[] expectedPrev = new byte[SegmentFormat.HASH_BYTES];
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            String name = segment.file().getFileName().toString();
+            records += segment.count();
+            if (segment.problem() != null) {
+                problems.add(name + ": " + segment.problem());
+            }
+            if (segment.prev() == null) {
+                // Nothing to link against until a readable header
+                expectedPrev = null;
+                continue;
+            }
+            if (expectedPrev != null && (segment.first() != expectedFirst
+                    || !Arrays.equals(segment.prev(), expectedPrev))) {
+                problems.add(name + ": does not continue the chain at record " + expectedFirst);
+            }
+            if (segment.problem() == null && !segment.sealed() && i < segments.size() - 1) {
+                problems.add(name + ": not sealed but followed by another segment");
+            }
+            expectedFirst = segment.first() + segment.count();
+            expectedPrev = segment.last();
+            if (!reached && segment.sealed() && expectedFirst - 1 == checkpoint.last()) {
+                reached = true;
+                if (!Arrays.equals(segment.last(), checkpoint.hash())) {
+                    problems.add(name + ": record " + checkpoint.last() + " does not match the checkpoint");
+                }
+            }
+        }
+        if (!reached) {
+            problems.add("chain ends before record " + checkpoint.last()
+                + ", the last sealed according to the checkpoint");
+        }
+        return new Report(segments.size(), records, problems, System.nanoTime() - start);
+    }
+    
+    /**
+     * Checks one segment file on its own: its keyed record chain and its
+     * footer.
+     * A record cut short by a crash at the end of an unsealed segment is
+     * left out of validLength but is not a problem.
+     * 
+     * @param file Segment file
+     * @param key HMAC key
+     * @return Segment
+     * @throws IOException if the file cannot be read
+     */
+    public static Segment scan(Path file, byte[] key) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        int end = indexOf(data, 0);
+        if (end < 0) {
+            return new Segment(file, -1, null, 0, null, false, 0, "missing header");
+        }
+        String[] header = new String(data, 0, end, StandardCharsets.US_ASCII).split(" ");
+        long first = header.length == 4 && (header[0] + " " + header[1]).equals(SegmentFormat.HEADER)
+            ? parseField(header[2], "first=") : -1;
+        byte[] prev = first < 0 ? null : SegmentFormat.unhex(field(header[3], "prev="));
+        if (prev == null) {
+            return new Segment(file, -1, null, 0, null, false, 0, "malformed header");
+        }
+        
+        Mac mac = SegmentFormat.mac(key);
+        byte[] last = prev.clone();
+        byte[] next = new byte[SegmentFormat.HASH_BYTES];
+        long count = 0;
+        int pos = end + 1;
+        while (pos < data.length) {
+            int lineEnd = indexOf(data, pos);
+            if (lineEnd < 0) {
+                break;
+            }
+            if (data[pos] == '#') {
+                String problem = checkFooter(new String(data, pos, lineEnd - pos, StandardCharsets.US_ASCII),
+                    mac, first, prev, count, last);
+                if (problem == null && lineEnd + 1 < data.length) {
+                    problem = "data after the footer";
+                }
+                return new Segment(file, first, prev, count, last, problem == null, pos, problem);
+            }
+            
+            int json = pos + SegmentFormat.HASH_HEX + 1;
+            String problem = null;
+            if (json > lineEnd || data[json - 1] != ' ') {
+                problem = "malformed record " + (first + count);
+            } else {
+                SegmentFormat.chain(mac, last, data, json, lineEnd - json, next);
+                if (!SegmentFormat.hexEquals(data, pos, next)) {
+                    problem = "hash mismatch at record " + (first + count);
+                } else if (parseSeq(data, json, lineEnd) != first + count) {
+                    problem = "record " + (first + count) + " has the wrong sequence number";
+                }
+            }
+            if (problem != null) {
+                return new Segment(file, first, prev, count, last, false, pos, problem);
+            }
+            
+            byte[] swap = last;
+            last = next;
+            next = swap;
+            count++;
+            pos = lineEnd + 1;
+        }
+        return new Segment(file, first, prev, count, last, false, pos, null);
+    }
+    
+    /**
+     * Reads the checkpoint file and checks its signature
+     * 
+     * @param file Checkpoint file
+     * @param key HMAC key
+     * @return Checkpoint, or null if there is no file
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static Checkpoint readCheckpoint(Path file, byte[] key) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        String[] fields = Files.readString(file, StandardCharsets.US_ASCII).trim().split(" ");
+        long last = fields.length == 5 && (fields[0] + " " + fields[1]).equals(SegmentFormat.CHECKPOINT)
+            ? parseField(fields[2], "last=") : -1;
+        byte[] hash = last < 0 ? null : SegmentFormat.unhex(field(fields[3], "hash="));
+        if (hash == null) {
+            return new Checkpoint(-1, null, "malformed checkpoint");
+        }
+        String expected = SegmentFormat.signCheckpoint(SegmentFormat.mac(key), last, hash);
+        if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII),
+                String.valueOf(field(fields[4], "mac=")).getBytes(StandardCharsets.US_ASCII))) {
+            return new Checkpoint(-1, null, "checkpoint signature does not verify");
+        }
+        return new Checkpoint(last, hash, null);
+    }
+    
+    private static String checkFooter(String line, Mac mac, long first, byte[] prev, long count, byte[] last) {
+        String[] footer = line.split(" ");
+        if (footer.length != 4 || !footer[0].equals(SegmentFormat.FOOTER)) {
+            return "malformed footer";
+        }
+        if (parseField(footer[1], "count=") != count
+                || !SegmentFormat.hex(last).equals(field(footer[2], "last="))) {
+            return "footer does not match the records";
+        }
+        String expected = SegmentFormat.sign(mac, first, prev, count, last);
+        if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII),
+                String.valueOf(field(footer[3], "mac=")).getBytes(StandardCharsets.US_ASCII))) {
+            return "footer signature does not verify";
+        }
+        return null;
+    }
+    
+    private static int indexOf(byte[] data, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Reads the leading "seq" of a record's JSON, or -1
+     */
+    private static long parseSeq(byte[] data, int from, int end) {
+        if (end - from <= SEQ_FIELD.length) {
+            return -1;
+        }
+        for (int i = 0; i < SEQ_FIELD.length; i++) {
+            if (data[from + i] != SEQ_FIELD[i]) {
+                return -1;
+            }
+        }
+        long value = 0;
+        int i = from + SEQ_FIELD.length;
+        int digits = 0;
+        while (i < end && data[i] >= '0' && data[i] <= '9' && digits < 19) {
+            value = value * 10 + (data[i++] - '0');
+            digits++;
+        }
+        return digits == 0 ? -1 : value;
+    }
+    
+    private static String field(String token, String name) {
+        return token.startsWith(name) ? token.substring(name.length()) : null;
+    }
+    
+    private static long parseField(String token, String name) {
+        String value = field(token, name);
+        try {
+            return value == null ? -1 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Verifies a segment directory and prints the report
+     * 
+     * @param args Optional directory (default audit.segment.dir), thread count
+     *             and checkpoint file (default audit.segment.checkpoint)
+     */
+    public static void main(String[] args) throws Exception {
+        ServerConfig config = ServerConfig.getInstance();
+        Path dir = Path.of(args.length > 0 ? args[0] : config.getProperty("audit.segment.dir", "data/audit"));
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Path checkpoint = args.length > 2 ? Path.of(args[2])
+            : SegmentFormat.checkpointFile(dir, config.getProperty("audit.segment.checkpoint", ""));
+        String key = config.getProperty("audit.segment.key", "");
+        if (key.isEmpty()) {
+            System.err.println("[AuditSegmentVerifier] audit.segment.key is not set");
+            System.exit(2);
+        }
+        
+        Report report = new AuditSegmentVerifier(key.getBytes(StandardCharsets.UTF_8), threads).verify(dir, checkpoint);
+        for (String problem : report.problems()) {
+            System.out.println("[AuditSegmentVerifier] " + problem);
+        }
+        System.out.println("[AuditSegmentVerifier] " + report.segments() + " segments, " + report.records()
+            + " records, " + report.recordsPerSecond() + " records/s: "
+            + (report.isValid() ? "intact" : report.problems().size() + " problems"));
+        System.exit(report.isValid() ? 0 : 1);
+    }
+}
@@ -0,0 +1,375 @@
+package com.banksim.audit;
+
+import com.banksim.json.JsonWriter;
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.MetricsRegistry;
+import com.banksim.model.AuditLog;
+
+import javax.crypto.Mac;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Appends audit entries to local, hash-chained segment files, so the
+ * audit trail can be proven intact without scanning audit_logs.
+ * 
+ * Each entry becomes one line holding its JSON and the HMAC-SHA256, under
+ * audit.segment.key, of the previous line's hash followed by that JSON, so
+ * changing any entry breaks every hash after it and the chain cannot be
+ * rebuilt without the key. The hash is carried forward record by record on
+ * the audit writer thread: one MAC update per entry, never a rescan. A
+ * segment is sealed with a signed footer once it holds
+ * audit.segment.max.records entries or has been open for
+ * audit.segment.seal.interval ms, whichever comes first, and the next one
+ * continues the chain. After every seal the last sealed record is written
+ * to the checkpoint file (audit.segment.checkpoint), so a chain cut short
+ * by deleting its newest segments no longer verifies. See
+ * {@link SegmentFormat} for the layout and {@link AuditSegmentVerifier}
+ * for the checks.
+ * 
+ * Every batch is flushed before the call returns and, with
+ * audit.segment.fsync, forced to disk. On startup the last segment is
+ * checked under the key and against the checkpoint: if the process died
+ * while writing it, a record cut short is dropped and the segment sealed
+ * before a new one starts. Only records whose HMACs verify are ever
+ * sealed; a segment that fails its check, or a chain that stops short of
+ * the checkpoint, is never resealed, and appends fail until it is
+ * investigated.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class AuditSegmentWriter {
+    
+    private final Path dir;
+    private final Path checkpoint;
+    private final byte[] key;
+    private final long maxRecords;
+    private final long sealIntervalNanos;
+    private final boolean fsync;
+    private final Mac mac;
+    private final Bytes record = new Bytes();
+    private final JsonWriter json = new JsonWriter();
+    private final byte[] line = new byte[SegmentFormat.HASH_HEX + 1];
+    
+    private FileChannel channel;
+    private OutputStream out;
+    private long first;
+    private byte[] firstPrev;
+    private byte[] prev = new byte[SegmentFormat.HASH_BYTES];
+    private byte[] next = new byte[SegmentFormat.HASH_BYTES];
+    private long count;
+    private long openedAt;
+    
+    private final Counter appended;
+    private final Counter sealed;
+    private final Counter failures;
+    
+    /**
+     * Creates a writer; the directory is opened on the first append
+     * 
+     * @param properties Looks up a configuration value, returning null if unset
+     */
+    public AuditSegmentWriter(Function<String, String> properties) {
+        this.dir = Path.of(value(properties, "audit.segment.dir", "data/audit"));
+        this.checkpoint = SegmentFormat.checkpointFile(dir, properties.apply("audit.segment.checkpoint"));
+        String secret = value(properties, "audit.segment.key", "");
+        if (secret.isEmpty()) {
+            throw new IllegalArgumentException("audit.segment.key must be set to sign audit segments");
+        }
+        this.key = secret.getBytes(StandardCharsets.UTF_8);
+        this.mac = SegmentFormat.mac(key);
+        this.maxRecords = Long.parseLong(value(properties, "audit.segment.max.records", "100000"));
+        this.sealIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(value(properties, "audit.segment.seal.interval", "60000")));
+        this.fsync = Boolean.parseBoolean(value(properties, "audit.segment.fsync", "true"));
+        if (maxRecords <= 0 || sealIntervalNanos <= 0) {
+            throw new IllegalArgumentException(
+                "audit.segment.max.records and audit.segment.seal.interval must be positive");
+        }
+        
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.appended = registry.counter("banksim_audit_segment_records_total",
+            "Audit entries appended to hash-chained segment files");
+        this.sealed = registry.counter("banksim_audit_segments_sealed_total",
+            "Audit segment files sealed with a signed footer");
+        this.failures = registry.counter("banksim_audit_segment_failures_total",
+            "Audit batches that could not be appended to segment files");
+    }
+    
+    /**
+     * Appends entries to the chain, rolling to a new segment when the
+     * current one is full or has been open for the seal interval. Called
+     * from the audit writer thread, and from request threads under
+     * caller-writes, hence synchronized.
+     * 
+     * @param entries Entries in the order they were recorded
+     * @return true if every entry was appended and flushed
+     */
+    public synchronized boolean append(List<AuditLog> entries) {
+        try {
+            if (out == null) {
+                open();
+            }
+            for (AuditLog entry : entries) {
+                write(entry);
+                if (count == maxRecords) {
+                    roll();
+                }
+            }
+            if (isDue()) {
+                roll();
+            }
+            out.flush();
+            if (fsync) {
+                channel.force(false);
+            }
+            appended.add(entries.size());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            failures.increment();
+            System.err.println("[AuditSegmentWriter] Failed to append " + entries.size()
+                + " audit entries: " + e.getMessage());
+            closeQuietly();
+            return false;
+        }
+    }
+    
+    /**
+     * Seals the current segment if it holds records and has been open for
+     * the seal interval, so a quiet server still signs what it has written.
+     * Called by the audit writer thread each time it wakes.
+     */
+    public synchronized void sealIfDue() {
+        if (out == null || !isDue()) {
+            return;
+        }
+        try {
+            roll();
+        } catch (IOException e) {
+            failures.increment();
+            System.err.println("[AuditSegmentWriter] Failed to seal segment: " + e.getMessage());
+            closeQuietly();
+        }
+    }
+    
+    /**
+     * Seals the current segment so the whole chain verifies; the next
+     * append starts a new one
+     */
+    public synchronized void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            seal();
+        } catch (IOException e) {
+            failures.increment();
+            System.err.println("[AuditSegmentWriter] Failed to seal segment: " + e.getMessage());
+            closeQuietly();
+        }
+    }
+    
+    /**
+     * Picks up the chain where the last segment on disk ends, sealing it
+     * first if the process stopped while it was open. The segment's records
+     * are checked under the key, and the chain must reach the checkpoint,
+     * before anything is signed.
+     */
+    private void open() throws IOException {
+        Files.createDirectories(dir);
+        List<Path> files = SegmentFormat.list(dir);
+        AuditSegmentVerifier.Checkpoint sealedUpTo = AuditSegmentVerifier.readCheckpoint(checkpoint, key);
+        if (sealedUpTo != null && sealedUpTo.problem() != null) {
+            throw new IOException(checkpoint + " fails verification (" + sealedUpTo.problem() + ")");
+        }
+        long start = 1;
+        byte[] startPrev = new byte[SegmentFormat.HASH_BYTES];
+        
+        if (files.isEmpty()) {
+            if (sealedUpTo != null && sealedUpTo.last() > 0) {
+                throw new IOException("No segments in " + dir + ", but " + checkpoint
+                    + " records " + sealedUpTo.last() + " sealed");
+            }
+            if (sealedUpTo == null) {
+                // A checkpoint from the start, so that one can never be missing once segments exist
+                writeCheckpoint(0, startPrev);
+            }
+        } else {
+            if (sealedUpTo == null) {
+                throw new IOException(checkpoint + " is missing, though " + dir + " holds segments");
+            }
+            Path file = files.get(files.size() - 1);
+            AuditSegmentVerifier.Segment last = AuditSegmentVerifier.scan(file, key);
+            if (last.problem() != null) {
+                throw new IOException(file + " fails verification (" + last.problem()
+                    + "); move it aside after investigating");
+            }
+            long end = last.first() + last.count() - 1;
+            if (end < sealedUpTo.last()
+                    || end == sealedUpTo.last() && !Arrays.equals(last.last(), sealedUpTo.hash())) {
+                throw new IOException(file + " ends at record " + end + ", but " + checkpoint
+                    + " records " + sealedUpTo.last() + " sealed; segments are missing");
+            }
+            if (!last.sealed()) {
+                recover(last);
+            }
+            if (end > sealedUpTo.last()) {
+                // Also catches up after a crash between a seal and its checkpoint
+                writeCheckpoint(end, last.last());
+            }
+            start = end + 1;
+            startPrev = last.last();
+        }
+        start(start, startPrev);
+    }
+    
+    private void recover(AuditSegmentVerifier.Segment last) throws IOException {
+        if (last.count() == 0) {
+            Files.delete(last.file());
+            return;
+        }
+        try (FileChannel recovered = FileChannel.open(last.file(), StandardOpenOption.WRITE)) {
+            // Drops a record cut short by the crash
+            recovered.truncate(last.validLength());
+            recovered.position(last.validLength());
+            recovered.write(ByteBuffer.wrap(SegmentFormat.footer(mac, last.first(), last.prev(),
+                last.count(), last.last()).getBytes(StandardCharsets.US_ASCII)));
+            recovered.force(true);
+        }
+        sealed.increment();
+        System.out.println("[AuditSegmentWriter] Sealed " + last.file().getFileName()
+            + " left open by the previous run");
+    }
+    
+    private void start(long start, byte[] startPrev) throws IOException {
+        Path file = dir.resolve(SegmentFormat.fileName(start));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        out = new BufferedOutputStream(Channels.newOutputStream(channel), 65536);
+        first = start;
+        firstPrev = startPrev.clone();
+        prev = startPrev.clone();
+        count = 0;
+        openedAt = System.nanoTime();
+        out.write(SegmentFormat.header(first, firstPrev).getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+    
+    private void write(AuditLog entry) throws IOException {
+        json.reset();
+        json.beginObject()
+            .name("seq").value(first + count)
+            .name("createdAt").string(entry.getCreatedAt())
+            .name("userId").value(entry.getUserId())
+            .name("action").value(entry.getAction())
+            .name("entityType").value(entry.getEntityType())
+            .name("entityId").value(entry.getEntityId())
+            .name("oldValue").value(entry.getOldValue())
+            .name("newValue").value(entry.getNewValue())
+            .name("ipAddress").value(entry.getIpAddress())
+            .name("userAgent").value(entry.getUserAgent())
+            .name("requestId").value(entry.getRequestId())
+            .endObject();
+        record.reset();
+        json.writeTo(record);
+        
+        SegmentFormat.chain(mac, prev, record.array(), 0, record.size(), next);
+        SegmentFormat.writeHex(next, line, 0);
+        line[SegmentFormat.HASH_HEX] = ' ';
+        out.write(line);
+        out.write(record.array(), 0, record.size());
+        out.write('\n');
+        
+        byte[] swap = prev;
+        prev = next;
+        next = swap;
+        count++;
+    }
+    
+    private void seal() throws IOException {
+        Path file = dir.resolve(SegmentFormat.fileName(first));
+        if (count == 0) {
+            // An empty segment would share its name with the next one
+            closeQuietly();
+            Files.deleteIfExists(file);
+            return;
+        }
+        out.write(SegmentFormat.footer(mac, first, firstPrev, count, prev).getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        channel.force(true);
+        closeQuietly();
+        sealed.increment();
+        writeCheckpoint(first + count - 1, prev);
+    }
+    
+    private void roll() throws IOException {
+        seal();
+        start(first + count, prev);
+    }
+    
+    private boolean isDue() {
+        return count > 0 && System.nanoTime() - openedAt >= sealIntervalNanos;
+    }
+    
+    /**
+     * Replaces the checkpoint in one step, so a crash leaves the old one or
+     * the new one
+     */
+    private void writeCheckpoint(long last, byte[] hash) throws IOException {
+        Path parent = checkpoint.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = parent.resolve(checkpoint.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            file.write(ByteBuffer.wrap(SegmentFormat.checkpoint(mac, last, hash).getBytes(StandardCharsets.US_ASCII)));
+            file.force(true);
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Closes the open segment without a footer. After a failure the next
+     * append recovers it from disk, keeping only the records that made it
+     * there whole.
+     */
+    private void closeQuietly() {
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException e) {
+            // The file is rechecked before it is used again
+        }
+        out = null;
+        channel = null;
+    }
+    
+    private static String value(Function<String, String> properties, String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+    
+    /**
+     * Exposes its buffer so a record is hashed and written without a copy
+     */
+    private static final class Bytes extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
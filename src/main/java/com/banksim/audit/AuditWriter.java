@@ -0,0 +1,424 @@
+package com.banksim.audit;
+
+import com.banksim.config.ServerConfig;
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.LatencyHistogram;
+import com.banksim.metrics.MetricsRegistry;
+import com.banksim.model.AuditLog;
+import com.banksim.repository.AuditLogRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Asynchronous, batched writer for audit entries.
+ * 
+ * Request threads hand entries to {@link #record} and carry on; one
+ * background thread writes them in batches of up to audit.batch.size, each
+ * batch one JDBC batch and one commit. The writer wakes when a full batch
+ * is waiting, or audit.flush.interval ms after the last flush, so an
+ * entry's delay is bounded while a busy server still writes large batches.
+ * 
+ * The queue is bounded (audit.queue.capacity) and lock-free: a slot is
+ * reserved with a compare-and-set on the depth before the entry is linked
+ * in, so producers never wait on one another or on the writer.
+ * 
+ * audit.durability chooses what {@link #record} waits for:
+ * <ul>
+ *   <li>async: nothing; entries still queued when the process dies are lost;</li>
+ *   <li>sync: the commit of the batch holding the entry, up to
+ *       audit.sync.timeout ms. Concurrent callers share one commit.</li>
+ * </ul>
+ * audit.overflow chooses what happens when the queue is full:
+ * <ul>
+ *   <li>drop: the entry is discarded and counted;</li>
+ *   <li>block: the caller waits up to audit.overflow.timeout ms for space,
+ *       then drops;</li>
+ *   <li>caller-writes: the caller inserts the entry itself, so nothing is
+ *       lost but the request pays for a database round trip.</li>
+ * </ul>
+ * A batch that fails is retried twice before its entries are counted as
+ * failed. On shutdown the server drains the queue before the pool closes.
+ * 
+ * With audit.segment.enabled, every batch is also appended to hash-chained
+ * segment files by an {@link AuditSegmentWriter} on the same thread, before
+ * the database write, so the file trail holds an entry even when its insert
+ * fails. The thread also seals a segment once its interval is up, and
+ * draining seals the open one.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class AuditWriter {
+    
+    /**
+     * What {@link #record} waits for
+     */
+    public enum Durability { ASYNC, SYNC }
+    
+    /**
+     * What {@link #record} does when the queue is full
+     */
+    public enum Overflow { DROP, BLOCK, CALLER_WRITES }
+    
+    /**
+     * Stores one batch of entries, all or nothing
+     */
+    @FunctionalInterface
+    public interface Sink {
+        void write(List<AuditLog> entries) throws SQLException;
+    }
+    
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 100;
+    
+    private static AuditWriter instance;
+    
+    private final Function<String, String> properties;
+    private final Sink sink;
+    private final AuditSegmentWriter segments;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Durability durability;
+    private final long syncTimeoutNanos;
+    private final Overflow overflow;
+    private final long overflowTimeoutNanos;
+    
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Object space = new Object();
+    private volatile boolean closed;
+    private volatile Thread writer;
+    
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter failed;
+    private final Counter queueFull;
+    private final LatencyHistogram flushTime;
+    
+    /**
+     * Creates a writer; call {@link #start()} to begin writing
+     * 
+     * @param properties Looks up a configuration value, returning null if unset
+     * @param sink Stores batches, such as AuditLogRepository::insertAll
+     */
+    public AuditWriter(Function<String, String> properties, Sink sink) {
+        this(properties, sink, null);
+    }
+    
+    /**
+     * Creates a writer that also appends every entry to segment files
+     * 
+     * @param properties Looks up a configuration value, returning null if unset
+     * @param sink Stores batches, such as AuditLogRepository::insertAll
+     * @param segments Hash-chained segment files, or null for none
+     */
+    public AuditWriter(Function<String, String> properties, Sink sink, AuditSegmentWriter segments) {
+        this.properties = properties;
+        this.sink = sink;
+        this.segments = segments;
+        this.enabled = Boolean.parseBoolean(property("audit.enabled", "true"));
+        this.capacity = Integer.parseInt(property("audit.queue.capacity", "10000"));
+        this.batchSize = Integer.parseInt(property("audit.batch.size", "500"));
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(property("audit.flush.interval", "200")));
+        this.durability = Durability.valueOf(option("audit.durability", "async"));
+        this.syncTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(property("audit.sync.timeout", "1000")));
+        this.overflow = Overflow.valueOf(option("audit.overflow", "drop"));
+        this.overflowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(property("audit.overflow.timeout", "50")));
+        if (capacity <= 0 || batchSize <= 0 || flushIntervalNanos <= 0) {
+            throw new IllegalArgumentException("Audit queue capacity, batch size and flush interval must be positive");
+        }
+        
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("banksim_audit_queue_depth", "Audit entries waiting to be written", depth::get);
+        registry.gauge("banksim_audit_queue_capacity", "Most audit entries that can wait", () -> capacity);
+        this.written = registry.counter("banksim_audit_entries_total",
+            "Audit entries, by outcome", "result", "written");
+        this.dropped = registry.counter("banksim_audit_entries_total",
+            "Audit entries, by outcome", "result", "dropped");
+        this.failed = registry.counter("banksim_audit_entries_total",
+            "Audit entries, by outcome", "result", "failed");
+        this.queueFull = registry.counter("banksim_audit_queue_full_total",
+            "Entries that found the audit queue full, before the overflow policy applied");
+        this.flushTime = registry.histogram("banksim_audit_flush_duration_seconds",
+            "Time to write one batch of audit entries, retries included");
+    }
+    
+    /**
+     * Gets the singleton instance configured from application.properties,
+     * writing through an AuditLogRepository and, with audit.segment.enabled,
+     * to segment files
+     * 
+     * @return AuditWriter instance, already started
+     */
+    public static synchronized AuditWriter getInstance() {
+        if (instance == null) {
+            ServerConfig config = ServerConfig.getInstance();
+            Function<String, String> properties = key -> config.getProperty(key, null);
+            AuditSegmentWriter segments = Boolean.parseBoolean(config.getProperty("audit.segment.enabled", "false"))
+                ? new AuditSegmentWriter(properties) : null;
+            instance = new AuditWriter(properties, new AuditLogRepository()::insertAll, segments);
+            instance.start();
+        }
+        return instance;
+    }
+    
+    /**
+     * Starts the background writer thread; does nothing when audit is disabled
+     */
+    public synchronized void start() {
+        if (!enabled || writer != null) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "audit-writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+    
+    /**
+     * Queues an entry, applying the durability mode and overflow policy
+     * 
+     * @param entry Entry to store
+     * @return true if the entry was queued (async) or committed (sync, caller-writes);
+     *         false if it was dropped, failed or audit is disabled
+     */
+    public boolean record(AuditLog entry) {
+        if (!enabled) {
+            return false;
+        }
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        
+        if (!reserve()) {
+            queueFull.increment();
+            if (overflow == Overflow.CALLER_WRITES) {
+                return writeNow(entry);
+            }
+            if (overflow == Overflow.DROP || !awaitSpace()) {
+                dropped.increment();
+                return false;
+            }
+        }
+        
+        // drain() may have begun since the check above, and the writer thread
+        // may already have seen an empty queue and exited
+        if (closed) {
+            depth.decrementAndGet();
+            dropped.increment();
+            return false;
+        }
+        
+        CompletableFuture<Boolean> committed = durability == Durability.SYNC ? new CompletableFuture<>() : null;
+        queue.offer(new Pending(entry, committed));
+        if (committed != null) {
+            // Flush now instead of at the next interval; callers arriving meanwhile join the batch
+            LockSupport.unpark(writer);
+            return await(committed);
+        }
+        if (depth.get() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+    
+    /**
+     * Stops accepting entries and waits for the queue to be written. Meant
+     * for {@link com.banksim.server.ServerLifecycle#onDrain}.
+     * 
+     * @param timeoutMillis Longest wait
+     * @return true if every queued entry was written or failed
+     */
+    public boolean drain(long timeoutMillis) throws InterruptedException {
+        closed = true;
+        synchronized (space) {
+            space.notifyAll();
+        }
+        Thread thread = writer;
+        if (thread == null) {
+            return depth.get() == 0;
+        }
+        LockSupport.unpark(thread);
+        thread.join(Math.max(1, timeoutMillis));
+        if (thread.isAlive()) {
+            System.err.println("[AuditWriter] " + depth.get() + " audit entries not written before shutdown");
+            return false;
+        }
+        if (segments != null) {
+            segments.close();
+        }
+        return true;
+    }
+    
+    /**
+     * Entries waiting to be written
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+    
+    /**
+     * Checks if audit entries are being recorded (audit.enabled)
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    private boolean reserve() {
+        int current;
+        do {
+            current = depth.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!depth.compareAndSet(current, current + 1));
+        return true;
+    }
+    
+    private boolean awaitSpace() {
+        long deadline = System.nanoTime() + overflowTimeoutNanos;
+        synchronized (space) {
+            while (!reserve()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || closed) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(space, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    private boolean await(CompletableFuture<Boolean> committed) {
+        try {
+            return committed.get(syncTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            // Still queued on timeout; it is written later or counted as failed
+            return false;
+        }
+    }
+    
+    private boolean writeNow(AuditLog entry) {
+        List<AuditLog> single = List.of(entry);
+        if (segments != null) {
+            segments.append(single);
+        }
+        long start = System.nanoTime();
+        boolean stored = store(single);
+        flushTime.record(System.nanoTime() - start);
+        return stored;
+    }
+    
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        List<AuditLog> entries = new ArrayList<>(batchSize);
+        while (!closed || depth.get() > 0) {
+            if (!closed && depth.get() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            Pending next;
+            while ((next = queue.poll()) != null) {
+                depth.decrementAndGet();
+                batch.add(next);
+                if (batch.size() == batchSize) {
+                    flush(batch, entries);
+                }
+            }
+            if (!batch.isEmpty()) {
+                flush(batch, entries);
+            }
+            if (segments != null) {
+                segments.sealIfDue();
+            }
+        }
+    }
+    
+    private void flush(List<Pending> batch, List<AuditLog> entries) {
+        if (overflow == Overflow.BLOCK) {
+            // The polled entries freed their slots
+            synchronized (space) {
+                space.notifyAll();
+            }
+        }
+        for (Pending pending : batch) {
+            entries.add(pending.entry);
+        }
+        if (segments != null) {
+            segments.append(entries);
+        }
+        long start = System.nanoTime();
+        boolean stored = store(entries);
+        flushTime.record(System.nanoTime() - start);
+        for (Pending pending : batch) {
+            if (pending.committed != null) {
+                pending.committed.complete(stored);
+            }
+        }
+        batch.clear();
+        entries.clear();
+    }
+    
+    private boolean store(List<AuditLog> entries) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                sink.write(entries);
+                written.add(entries.size());
+                return true;
+            } catch (SQLException | RuntimeException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    failed.add(entries.size());
+                    System.err.println("[AuditWriter] Failed to write " + entries.size()
+                        + " audit entries after " + attempt + " attempts: " + e.getMessage());
+                    return false;
+                }
+            }
+            try {
+                Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.add(entries.size());
+                return false;
+            }
+        }
+    }
+    
+    private String option(String key, String defaultValue) {
+        return property(key, defaultValue).toUpperCase().replace('-', '_');
+    }
+    
+    private String property(String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+    
+    /**
+     * A queued entry and, in sync mode, the caller waiting for its commit
+     */
+    private record Pending(AuditLog entry, CompletableFuture<Boolean> committed) {
+    }
+}
@@ -0,0 +1,185 @@
+package com.banksim.audit;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Layout of an audit segment file and of the checkpoint, shared by the
+ * writer and the verifier.
+ * 
+ * A segment is UTF-8 text, one line each:
+ * <pre>
+ * #BANKSIM-AUDIT v2 first=&lt;seq&gt; prev=&lt;hash&gt;
+ * &lt;hash&gt; {"seq":&lt;seq&gt;,...entry as JSON...}
+ * ...
+ * #END count=&lt;n&gt; last=&lt;hash&gt; mac=&lt;hmac&gt;
+ * </pre>
+ * A record's hash is HMAC-SHA256 under audit.segment.key of the previous
+ * record's hash followed by the record's JSON bytes, in lowercase hex, so
+ * no record can be rewritten, and no chain rebuilt after it, without the
+ * key. The header names the hash the segment continues from, the last of
+ * the previous segment or 32 zero bytes for the first, so the chain runs
+ * unbroken across segments. The footer is an HMAC-SHA256 over the header
+ * and footer fields; the last hash already covers every record.
+ * 
+ * The checkpoint is a single signed line naming the last sealed record
+ * and its hash, kept apart from the segments so that deleting the newest
+ * segments is caught rather than leaving a shorter chain that still
+ * verifies:
+ * <pre>
+ * #BANKSIM-AUDIT-CHECKPOINT v1 last=&lt;seq&gt; hash=&lt;hash&gt; mac=&lt;hmac&gt;
+ * </pre>
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+final class SegmentFormat {
+    
+    static final int HASH_BYTES = 32;
+    static final int HASH_HEX = HASH_BYTES * 2;
+    static final String HEADER = "#BANKSIM-AUDIT v2";
+    static final String FOOTER = "#END";
+    static final String CHECKPOINT = "#BANKSIM-AUDIT-CHECKPOINT v1";
+    static final String CHECKPOINT_FILE = "audit.checkpoint";
+    
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".seg";
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    
+    private SegmentFormat() {
+    }
+    
+    /**
+     * File name of the segment starting at a sequence number; names sort in
+     * chain order
+     */
+    static String fileName(long first) {
+        return String.format("%s%019d%s", PREFIX, first, SUFFIX);
+    }
+    
+    /**
+     * Segment files in a directory, in chain order
+     */
+    static List<Path> list(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+    
+    /**
+     * The checkpoint file: the configured path, or one in the segment
+     * directory if none is set
+     */
+    static Path checkpointFile(Path dir, String configured) {
+        return configured == null || configured.trim().isEmpty()
+            ? dir.resolve(CHECKPOINT_FILE) : Path.of(configured.trim());
+    }
+    
+    static String header(long first, byte[] prev) {
+        return HEADER + " first=" + first + " prev=" + hex(prev) + "\n";
+    }
+    
+    static String footer(Mac mac, long first, byte[] prev, long count, byte[] last) {
+        return FOOTER + " count=" + count + " last=" + hex(last) + " mac=" + sign(mac, first, prev, count, last) + "\n";
+    }
+    
+    static String sign(Mac mac, long first, byte[] prev, long count, byte[] last) {
+        String fields = "first=" + first + " prev=" + hex(prev) + " count=" + count + " last=" + hex(last);
+        return hex(mac.doFinal(fields.getBytes(StandardCharsets.US_ASCII)));
+    }
+    
+    static String checkpoint(Mac mac, long last, byte[] hash) {
+        return CHECKPOINT + " last=" + last + " hash=" + hex(hash) + " mac=" + signCheckpoint(mac, last, hash) + "\n";
+    }
+    
+    static String signCheckpoint(Mac mac, long last, byte[] hash) {
+        String fields = "checkpoint last=" + last + " hash=" + hex(hash);
+        return hex(mac.doFinal(fields.getBytes(StandardCharsets.US_ASCII)));
+    }
+    
+    /**
+     * Chains one record: the HMAC of the previous hash and the record's
+     * bytes, written to next
+     */
+    static void chain(Mac mac, byte[] prev, byte[] data, int offset, int length, byte[] next) {
+        mac.update(prev);
+        mac.update(data, offset, length);
+        try {
+            mac.doFinal(next, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    static Mac mac(byte[] key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+    
+    static String hex(byte[] bytes) {
+        byte[] chars = new byte[bytes.length * 2];
+        writeHex(bytes, chars, 0);
+        return new String(chars, StandardCharsets.US_ASCII);
+    }
+    
+    static void writeHex(byte[] bytes, byte[] target, int offset) {
+        for (int i = 0; i < bytes.length; i++) {
+            target[offset + 2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            target[offset + 2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+    }
+    
+    /**
+     * Decodes lowercase hex, returning null if it is not a whole hash
+     */
+    static byte[] unhex(String hex) {
+        if (hex == null || hex.length() != HASH_HEX) {
+            return null;
+        }
+        byte[] bytes = new byte[HASH_BYTES];
+        for (int i = 0; i < HASH_BYTES; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+    
+    /**
+     * Compares a hash with its hex form in data without decoding or
+     * allocating
+     */
+    static boolean hexEquals(byte[] data, int offset, byte[] hash) {
+        for (int i = 0; i < HASH_BYTES; i++) {
+            if (data[offset + 2 * i] != HEX[(hash[i] >> 4) & 0xF]
+                    || data[offset + 2 * i + 1] != HEX[hash[i] & 0xF]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,5 +1,12 @@
 package com.banksim.config;
 
+import com.banksim.jdbc.InstrumentedJdbc;
+import com.banksim.jfr.ConnectionAcquireEvent;
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.LatencyHistogram;
+import com.banksim.metrics.MetricsRegistry;
+import com.banksim.trace.Trace;
+
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -23,6 +30,14 @@ public class DatabaseConfig {
     private String jdbcUrl;
     private String username;
     private String password;
+    private InstrumentedJdbc jdbc;
+    // Scope lending one connection to the current thread, see shareConnection()
+    private final ThreadLocal<SharedConnection> sharedConnection = new ThreadLocal<>();
+    
+    private final LatencyHistogram connectTime = MetricsRegistry.getInstance().histogram(
+        "banksim_db_connection_acquire_seconds", "Time to obtain a database connection");
+    private final Counter connectFailures = MetricsRegistry.getInstance().counter(
+        "banksim_db_connection_failures_total", "Database connections that could not be opened");
     
     /**
      * Private constructor to enforce singleton pattern
@@ -68,12 +83,19 @@ public class DatabaseConfig {
     }
     
     /**
-     * Initializes database connection parameters
+     * Initializes database connection parameters. System properties
+     * (-Ddb.url=...) take precedence, so load tests and benchmarks can point
+     * the server at another database without editing the properties file.
      */
     private void initializeDatabase() {
-        jdbcUrl = properties.getProperty("db.url", "jdbc:postgresql://localhost:5432/banksim_db");
-        username = properties.getProperty("db.username", "postgres");
-        password = properties.getProperty("db.password", "postgres");
+        jdbcUrl = setting("db.url", "jdbc:postgresql://localhost:5432/banksim_db");
+        username = setting("db.username", "postgres");
+        password = setting("db.password", "postgres");
+        
+        // Statement timings always feed the metrics; debug.sql.logging also logs every statement
+        jdbc = new InstrumentedJdbc(Boolean.parseBoolean(setting("debug.sql.logging", "false")),
+            Long.parseLong(setting("db.slow.query.threshold", "200")),
+            Boolean.parseBoolean(setting("trace.sql.comments", "false")));
         
         // Load PostgreSQL driver
         try {
@@ -83,11 +105,68 @@ public class DatabaseConfig {
         }
     }
     
+    private String setting(String key, String defaultValue) {
+        return System.getProperty(key, properties.getProperty(key, defaultValue));
+    }
+    
     /**
-     * Gets a database connection
+     * Gets a database connection, recording how long it took to open.
+     * Statements run on it are timed per template (see InstrumentedJdbc).
+     * Inside {@link #shareConnection()} the thread's shared connection is
+     * lent instead.
      */
     public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(jdbcUrl, username, password);
+        SharedConnection scope = sharedConnection.get();
+        return scope != null ? scope.borrow() : openConnection();
+    }
+    
+    /**
+     * Lends one connection to every getConnection() on the current thread
+     * until the returned scope is closed
+     * 
+     * @return Scope to close when done, e.g. in try-with-resources
+     */
+    public SharedConnection shareConnection() {
+        SharedConnection scope = new SharedConnection(this, sharedConnection.get());
+        sharedConnection.set(scope);
+        return scope;
+    }
+    
+    void endScope(SharedConnection scope) {
+        if (sharedConnection.get() == scope) {
+            if (scope.outer() != null) {
+                sharedConnection.set(scope.outer());
+            } else {
+                sharedConnection.remove();
+            }
+        }
+    }
+    
+    /**
+     * Opens a new connection to the database
+     */
+    Connection openConnection() throws SQLException {
+        long start = System.nanoTime();
+        ConnectionAcquireEvent event = new ConnectionAcquireEvent();
+        event.begin();
+        boolean succeeded = false;
+        int span = Trace.begin("db.connect");
+        try {
+            Connection connection = jdbc.wrap(DriverManager.getConnection(jdbcUrl, username, password));
+            succeeded = true;
+            return connection;
+        } catch (SQLException e) {
+            connectFailures.increment();
+            throw e;
+        } finally {
+            Trace.end(span);
+            connectTime.record(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.succeeded = succeeded;
+                event.commit();
+            }
+        }
     }
     
     /**
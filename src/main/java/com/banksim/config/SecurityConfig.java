@@ -3,6 +3,9 @@ package com.banksim.config;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -17,6 +20,8 @@ import java.util.Properties;
  */
 public class SecurityConfig {
     
+    private static final String DEFAULT_KEY_ID = "default";
+    
     private static SecurityConfig instance;
     private Properties properties;
     
@@ -24,12 +29,17 @@ public class SecurityConfig {
     private String jwtSecret;
     private long jwtExpiration;
     private long jwtRefreshExpiration;
+    private Map<String, String> jwtKeys;
+    private String jwtActiveKeyId;
     
     // BCrypt Configuration
     private int bcryptStrength;
     
     // Session Configuration
     private long sessionTimeout;
+    private String sessionMode;
+    private String sessionRevocationFile;
+    private long sessionRevocationPollInterval;
     
     // Security Configuration
     private int maxFailedAttempts;
@@ -89,6 +99,7 @@ public class SecurityConfig {
         properties.setProperty("jwt.refresh.expiration", "86400000"); // 24 hours
         properties.setProperty("security.bcrypt.strength", "10");
         properties.setProperty("security.session.timeout", "1800000"); // 30 minutes
+        properties.setProperty("security.session.mode", "jwt");
         properties.setProperty("security.max.failed.attempts", "5");
     }
     
@@ -100,8 +111,13 @@ public class SecurityConfig {
             jwtSecret = properties.getProperty("jwt.secret");
             jwtExpiration = Long.parseLong(properties.getProperty("jwt.expiration", "3600000"));
             jwtRefreshExpiration = Long.parseLong(properties.getProperty("jwt.refresh.expiration", "86400000"));
+            loadJwtKeys();
             bcryptStrength = Integer.parseInt(properties.getProperty("security.bcrypt.strength", "10"));
             sessionTimeout = Long.parseLong(properties.getProperty("security.session.timeout", "1800000"));
+            sessionMode = properties.getProperty("security.session.mode", "jwt").trim().toLowerCase();
+            sessionRevocationFile = properties.getProperty("security.session.revocation.file", "data/session-revocations.log");
+            sessionRevocationPollInterval = Long.parseLong(
+                properties.getProperty("security.session.revocation.poll.interval", "1000"));
             maxFailedAttempts = Integer.parseInt(properties.getProperty("security.max.failed.attempts", "5"));
             
             // Validate settings
@@ -111,6 +127,7 @@ public class SecurityConfig {
             System.out.println("  - JWT Expiration: " + (jwtExpiration / 1000 / 60) + " minutes");
             System.out.println("  - BCrypt Strength: " + bcryptStrength);
             System.out.println("  - Session Timeout: " + (sessionTimeout / 1000 / 60) + " minutes");
+            System.out.println("  - Session Mode: " + sessionMode);
             System.out.println("  - Max Failed Attempts: " + maxFailedAttempts);
             
         } catch (NumberFormatException e) {
@@ -119,12 +136,47 @@ public class SecurityConfig {
         }
     }
     
+    /**
+     * Loads the JWT signing keys.
+     * 
+     * Keys are listed by id in jwt.keys, each with its own jwt.key.{id}.secret.
+     * New tokens are signed with jwt.active.kid; every listed key still
+     * verifies, so a secret can be rotated by adding a key, switching the
+     * active id, and removing the old key once its tokens have expired.
+     * Without jwt.keys, jwt.secret is used as the single key "default".
+     */
+    private void loadJwtKeys() {
+        Map<String, String> keys = new LinkedHashMap<>();
+        String keyIds = properties.getProperty("jwt.keys");
+        
+        if (keyIds == null || keyIds.trim().isEmpty()) {
+            keys.put(DEFAULT_KEY_ID, jwtSecret);
+            jwtActiveKeyId = DEFAULT_KEY_ID;
+        } else {
+            for (String keyId : keyIds.split(",")) {
+                keyId = keyId.trim();
+                if (!keyId.isEmpty()) {
+                    keys.put(keyId, properties.getProperty("jwt.key." + keyId + ".secret"));
+                }
+            }
+            jwtActiveKeyId = properties.getProperty("jwt.active.kid", keys.keySet().iterator().next()).trim();
+        }
+        
+        jwtKeys = Collections.unmodifiableMap(keys);
+    }
+    
     /**
      * Validates security settings
      */
     private void validateSettings() {
-        if (jwtSecret == null || jwtSecret.length() < 32) {
-            throw new IllegalStateException("JWT secret must be at least 32 characters long");
+        for (Map.Entry<String, String> key : jwtKeys.entrySet()) {
+            if (key.getValue() == null || key.getValue().length() < 32) {
+                throw new IllegalStateException("JWT key '" + key.getKey() + "' must be at least 32 characters long");
+            }
+        }
+        
+        if (!jwtKeys.containsKey(jwtActiveKeyId)) {
+            throw new IllegalStateException("Active JWT key '" + jwtActiveKeyId + "' is not listed in jwt.keys");
         }
         
         if (bcryptStrength < 4 || bcryptStrength > 31) {
@@ -138,6 +190,14 @@ public class SecurityConfig {
         if (sessionTimeout <= 0) {
             throw new IllegalStateException("Session timeout must be positive");
         }
+        
+        if (!"jwt".equals(sessionMode) && !"stateful".equals(sessionMode)) {
+            throw new IllegalStateException("Session mode must be 'jwt' or 'stateful'");
+        }
+        
+        if (sessionRevocationPollInterval <= 0) {
+            throw new IllegalStateException("Session revocation poll interval must be positive");
+        }
     }
     
     /**
@@ -149,6 +209,24 @@ public class SecurityConfig {
         return jwtSecret;
     }
     
+    /**
+     * Gets the JWT signing keys by key id
+     * 
+     * @return Unmodifiable map of key id to secret
+     */
+    public Map<String, String> getJwtKeys() {
+        return jwtKeys;
+    }
+    
+    /**
+     * Gets the id of the key used to sign new tokens
+     * 
+     * @return Active key id
+     */
+    public String getJwtActiveKeyId() {
+        return jwtActiveKeyId;
+    }
+    
     /**
      * Gets the JWT token expiration time in milliseconds
      * 
@@ -185,6 +263,33 @@ public class SecurityConfig {
         return sessionTimeout;
     }
     
+    /**
+     * Checks if stateful (server-side) session mode is enabled
+     * 
+     * @return true if security.session.mode is "stateful"
+     */
+    public boolean isStatefulSessionMode() {
+        return "stateful".equals(sessionMode);
+    }
+    
+    /**
+     * Gets the path of the shared session revocation file
+     * 
+     * @return Revocation file path, or empty to keep revocations in memory only
+     */
+    public String getSessionRevocationFile() {
+        return sessionRevocationFile;
+    }
+    
+    /**
+     * Gets how often revocations written by other nodes are picked up
+     * 
+     * @return Poll interval in milliseconds
+     */
+    public long getSessionRevocationPollInterval() {
+        return sessionRevocationPollInterval;
+    }
+    
     /**
      * Gets the maximum number of failed login attempts before account lock
      * 
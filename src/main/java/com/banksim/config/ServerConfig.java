@@ -0,0 +1,495 @@
+package com.banksim.config;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * HTTP server configuration: listener, request executor and concurrency limits.
+ * 
+ * Thread-safe singleton implementation.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class ServerConfig {
+    
+    /**
+     * How request exchanges are executed
+     */
+    public enum ExecutorMode {
+        /** Fixed pool of platform threads (server.threads) */
+        FIXED,
+        /** One virtual thread per exchange; needs a Java 21+ runtime */
+        VIRTUAL,
+        /** Work-stealing pool of platform threads (server.threads) */
+        FORKJOIN
+    }
+    
+    private static ServerConfig instance;
+    private Properties properties;
+    
+    private int port;
+    private String host;
+    private ExecutorMode executorMode;
+    private int threads;
+    private int maxConcurrentRequests;
+    private long concurrencyTimeout;
+    private long shutdownTimeout;
+    
+    // Admission control
+    private boolean admissionEnabled;
+    private int admissionInitialLimit;
+    private int admissionMinLimit;
+    private int admissionMaxLimit;
+    private double admissionTolerance;
+    private long admissionWindow;
+    private List<String> admissionCriticalPaths;
+    private List<String> admissionLowPaths;
+    
+    // Response compression
+    private boolean compressionEnabled;
+    private int compressionThreshold;
+    private int compressionLevel;
+    
+    // Request batching
+    private int batchMaxRequests;
+    private int batchThreads;
+    
+    // Monitoring
+    private boolean metricsEnabled;
+    private String metricsShutdownFile;
+    private boolean jfrEnabled;
+    private long jfrMaxAge;
+    private long jfrMaxSize;
+    private String jfrDumpFile;
+    private int traceBufferSize;
+    
+    /**
+     * Private constructor to enforce singleton pattern
+     */
+    private ServerConfig() {
+        loadProperties();
+        initializeServerSettings();
+    }
+    
+    /**
+     * Gets the singleton instance of ServerConfig
+     * 
+     * @return ServerConfig instance
+     */
+    public static synchronized ServerConfig getInstance() {
+        if (instance == null) {
+            instance = new ServerConfig();
+        }
+        return instance;
+    }
+    
+    /**
+     * Loads server configuration from application.properties file
+     */
+    private void loadProperties() {
+        properties = new Properties();
+        
+        try {
+            InputStream input = getClass().getClassLoader().getResourceAsStream("application.properties");
+            
+            if (input == null) {
+                input = new FileInputStream("src/main/resources/application.properties");
+            }
+            
+            properties.load(input);
+            
+        } catch (IOException e) {
+            System.err.println("[ServerConfig] Error loading properties: " + e.getMessage());
+            System.err.println("[ServerConfig] Using default server configuration");
+        }
+    }
+    
+    /**
+     * Initializes server settings from loaded properties
+     */
+    private void initializeServerSettings() {
+        try {
+            port = Integer.parseInt(properties.getProperty("server.port", "8080"));
+            host = properties.getProperty("server.host", "0.0.0.0");
+            executorMode = ExecutorMode.valueOf(
+                properties.getProperty("server.executor", "fixed").trim().toUpperCase());
+            threads = Integer.parseInt(properties.getProperty("server.threads", "10"));
+            
+            // Requests in flight default to the DB pool size: every handler holds a connection
+            String dbPoolSize = properties.getProperty("db.pool.maximumPoolSize", "10");
+            maxConcurrentRequests = Integer.parseInt(
+                properties.getProperty("server.max.concurrent.requests", dbPoolSize));
+            concurrencyTimeout = Long.parseLong(properties.getProperty("server.concurrency.timeout", "5000"));
+            shutdownTimeout = Long.parseLong(properties.getProperty("server.shutdown.timeout", "30000"));
+            
+            admissionEnabled = Boolean.parseBoolean(properties.getProperty("server.admission.enabled", "true"));
+            admissionInitialLimit = Integer.parseInt(properties.getProperty("server.admission.initial.limit", "20"));
+            admissionMinLimit = Integer.parseInt(properties.getProperty("server.admission.min.limit", "4"));
+            admissionMaxLimit = Integer.parseInt(properties.getProperty("server.admission.max.limit", "200"));
+            admissionTolerance = Double.parseDouble(properties.getProperty("server.admission.tolerance", "2.0"));
+            admissionWindow = Long.parseLong(properties.getProperty("server.admission.window", "100"));
+            admissionCriticalPaths = parseList(properties.getProperty("server.admission.critical.paths",
+                "/api/transactions/transfer,/api/transactions/deposit,/api/transactions/withdraw,/api/auth/"));
+            admissionLowPaths = parseList(properties.getProperty("server.admission.low.paths", "/api/tests/"));
+            
+            compressionEnabled = Boolean.parseBoolean(properties.getProperty("server.compression.enabled", "true"));
+            compressionThreshold = Integer.parseInt(properties.getProperty("server.compression.threshold", "1024"));
+            compressionLevel = Integer.parseInt(properties.getProperty("server.compression.level", "6"));
+            
+            batchMaxRequests = Integer.parseInt(properties.getProperty("server.batch.max.requests", "20"));
+            batchThreads = Integer.parseInt(properties.getProperty("server.batch.threads", "4"));
+            
+            metricsEnabled = Boolean.parseBoolean(properties.getProperty("metrics.enabled", "true"));
+            metricsShutdownFile = properties.getProperty("metrics.shutdown.file", "logs/metrics-shutdown.prom").trim();
+            jfrEnabled = Boolean.parseBoolean(properties.getProperty("jfr.enabled", "true"));
+            jfrMaxAge = Long.parseLong(properties.getProperty("jfr.max.age", "3600000"));
+            jfrMaxSize = Long.parseLong(properties.getProperty("jfr.max.size", "268435456"));
+            jfrDumpFile = properties.getProperty("jfr.dump.file", "logs/banksim.jfr").trim();
+            traceBufferSize = Integer.parseInt(properties.getProperty("trace.buffer.size", "1024"));
+            
+            validateSettings();
+            
+            System.out.println("[ServerConfig] Server settings initialized:");
+            System.out.println("  - Executor: " + executorMode.name().toLowerCase()
+                + (executorMode == ExecutorMode.VIRTUAL ? "" : " (" + threads + " threads)"));
+            System.out.println("  - Max Concurrent Requests: " + maxConcurrentRequests);
+            System.out.println("  - Admission Control: " + (admissionEnabled
+                ? "adaptive (" + admissionMinLimit + "-" + admissionMaxLimit + ")" : "disabled"));
+            System.out.println("  - Compression: " + (compressionEnabled
+                ? "gzip/deflate above " + compressionThreshold + " bytes" : "disabled"));
+            System.out.println("  - Metrics Endpoint: " + (metricsEnabled ? "/api/metrics" : "disabled"));
+            System.out.println("  - Flight Recording: " + (jfrEnabled ? jfrDumpFile : "disabled"));
+            System.out.println("  - Trace Buffer: " + traceBufferSize + " requests");
+            
+        } catch (IllegalArgumentException e) {
+            System.err.println("[ServerConfig] Error parsing server settings: " + e.getMessage());
+            throw new RuntimeException("Invalid server configuration", e);
+        }
+    }
+    
+    /**
+     * Validates server settings
+     */
+    private void validateSettings() {
+        if (port < 0 || port > 65535) {
+            throw new IllegalStateException("Server port must be between 0 and 65535");
+        }
+        
+        if (threads <= 0) {
+            throw new IllegalStateException("Server threads must be positive");
+        }
+        
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalStateException("Max concurrent requests must be positive");
+        }
+        
+        if (concurrencyTimeout < 0) {
+            throw new IllegalStateException("Concurrency timeout must not be negative");
+        }
+        
+        if (shutdownTimeout < 0) {
+            throw new IllegalStateException("Shutdown timeout must not be negative");
+        }
+        
+        if (admissionMinLimit < 1 || admissionMaxLimit < admissionMinLimit
+                || admissionInitialLimit < admissionMinLimit || admissionInitialLimit > admissionMaxLimit) {
+            throw new IllegalStateException("Admission limits must satisfy 1 <= min <= initial <= max");
+        }
+        
+        if (admissionTolerance < 1.0) {
+            throw new IllegalStateException("Admission tolerance must be at least 1.0");
+        }
+        
+        if (admissionWindow < 0) {
+            throw new IllegalStateException("Admission window must not be negative");
+        }
+        
+        if (compressionThreshold < 0) {
+            throw new IllegalStateException("Compression threshold must not be negative");
+        }
+        
+        if (compressionLevel < 1 || compressionLevel > 9) {
+            throw new IllegalStateException("Compression level must be between 1 and 9");
+        }
+        
+        if (batchMaxRequests <= 0 || batchThreads <= 0) {
+            throw new IllegalStateException("Batch size and threads must be positive");
+        }
+        
+        if (traceBufferSize <= 0) {
+            throw new IllegalStateException("Trace buffer size must be positive");
+        }
+    }
+    
+    private static List<String> parseList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            item = item.trim();
+            if (!item.isEmpty()) {
+                items.add(item);
+            }
+        }
+        return Collections.unmodifiableList(items);
+    }
+    
+    /**
+     * Gets the listening port
+     * 
+     * @return Port number
+     */
+    public int getPort() {
+        return port;
+    }
+    
+    /**
+     * Gets the listening address
+     * 
+     * @return Host name or address
+     */
+    public String getHost() {
+        return host;
+    }
+    
+    /**
+     * Gets the request executor mode
+     * 
+     * @return Executor mode
+     */
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+    
+    /**
+     * Gets the platform thread count for the fixed and forkjoin executors
+     * 
+     * @return Thread count
+     */
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Gets the maximum number of requests handled at once
+     * 
+     * @return Concurrency limit
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+    
+    /**
+     * Gets how long a request waits for a concurrency slot before a 503
+     * 
+     * @return Timeout in milliseconds
+     */
+    public long getConcurrencyTimeout() {
+        return concurrencyTimeout;
+    }
+    
+    /**
+     * Gets how long shutdown waits for in-flight work before closing resources
+     * 
+     * @return Timeout in milliseconds
+     */
+    public long getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+    
+    /**
+     * Checks if adaptive admission control is enabled
+     * 
+     * @return true if requests are shed under overload
+     */
+    public boolean isAdmissionEnabled() {
+        return admissionEnabled;
+    }
+    
+    /**
+     * Gets the starting adaptive concurrency limit
+     * 
+     * @return Initial limit
+     */
+    public int getAdmissionInitialLimit() {
+        return admissionInitialLimit;
+    }
+    
+    /**
+     * Gets the lowest the adaptive limit may fall
+     * 
+     * @return Minimum limit
+     */
+    public int getAdmissionMinLimit() {
+        return admissionMinLimit;
+    }
+    
+    /**
+     * Gets the highest the adaptive limit may rise
+     * 
+     * @return Maximum limit
+     */
+    public int getAdmissionMaxLimit() {
+        return admissionMaxLimit;
+    }
+    
+    /**
+     * Gets how far latency may rise over its baseline before the limit shrinks
+     * 
+     * @return Tolerance ratio
+     */
+    public double getAdmissionTolerance() {
+        return admissionTolerance;
+    }
+    
+    /**
+     * Gets how often the admission limit is recomputed from its samples
+     * 
+     * @return Window in milliseconds
+     */
+    public long getAdmissionWindow() {
+        return admissionWindow;
+    }
+    
+    /**
+     * Gets the path prefixes admitted up to the full limit
+     * 
+     * @return Critical path prefixes
+     */
+    public List<String> getAdmissionCriticalPaths() {
+        return admissionCriticalPaths;
+    }
+    
+    /**
+     * Gets the path prefixes shed first under load
+     * 
+     * @return Low priority path prefixes
+     */
+    public List<String> getAdmissionLowPaths() {
+        return admissionLowPaths;
+    }
+    
+    /**
+     * Checks if responses may be compressed
+     * 
+     * @return true if gzip/deflate is negotiated with clients
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+    
+    /**
+     * Gets the smallest body size worth compressing
+     * 
+     * @return Threshold in bytes
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+    
+    /**
+     * Gets the deflate level used for responses
+     * 
+     * @return Level 1 (fastest) to 9 (smallest)
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+    
+    /**
+     * Gets the most sub-requests one batch may contain
+     * 
+     * @return Maximum batch size
+     */
+    public int getBatchMaxRequests() {
+        return batchMaxRequests;
+    }
+    
+    /**
+     * Gets the number of threads running batched reads concurrently
+     * 
+     * @return Batch worker threads
+     */
+    public int getBatchThreads() {
+        return batchThreads;
+    }
+    
+    /**
+     * Checks if GET /api/metrics is served
+     * 
+     * @return true if the Prometheus endpoint is registered
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+    
+    /**
+     * Gets the file the final metrics are written to on shutdown
+     * 
+     * @return File path, or empty if not written
+     */
+    public String getMetricsShutdownFile() {
+        return metricsShutdownFile;
+    }
+    
+    /**
+     * Checks if the always-on flight recording is started
+     * 
+     * @return true if JFR records continuously
+     */
+    public boolean isJfrEnabled() {
+        return jfrEnabled;
+    }
+    
+    /**
+     * Gets how long recorded data is kept
+     * 
+     * @return Maximum age in milliseconds
+     */
+    public long getJfrMaxAge() {
+        return jfrMaxAge;
+    }
+    
+    /**
+     * Gets how much recorded data is kept on disk
+     * 
+     * @return Maximum size in bytes
+     */
+    public long getJfrMaxSize() {
+        return jfrMaxSize;
+    }
+    
+    /**
+     * Gets the file the recording is written to on exit
+     * 
+     * @return Dump file path
+     */
+    public String getJfrDumpFile() {
+        return jfrDumpFile;
+    }
+    
+    /**
+     * Gets how many recent request traces are kept for /api/admin/traces
+     * 
+     * @return Buffer size, rounded up to a power of two by the buffer
+     */
+    public int getTraceBufferSize() {
+        return traceBufferSize;
+    }
+    
+    /**
+     * Gets a configuration property value with default
+     * 
+     * @param key Property key
+     * @param defaultValue Default value if property not found
+     * @return Property value or default value
+     */
+    public String getProperty(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+}
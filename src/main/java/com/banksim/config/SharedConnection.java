@@ -0,0 +1,116 @@
+package com.banksim.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One database connection lent to every {@link DatabaseConfig#getConnection()}
+ * call made on a thread while the scope is open.
+ * 
+ * Connections are not pooled, so each getConnection() otherwise costs a TCP
+ * connect and an authentication round trip. Work that makes many short calls
+ * in a row on one thread, such as the sub-requests of a batch, opens a scope
+ * and pays that once. The connection is opened on first use and closed with
+ * the scope.
+ * 
+ * Callers keep using try-with-resources: closing a borrowed connection only
+ * returns it to the scope. When the last borrower returns it, a transaction
+ * left open is rolled back and auto-commit restored, as closing a real
+ * connection would. Borrows may nest, so a repository called inside a
+ * service's transaction runs in that transaction.
+ * 
+ * Not thread-safe: a scope belongs to the thread that opened it.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class SharedConnection implements AutoCloseable {
+    
+    private final DatabaseConfig config;
+    private final SharedConnection outer;
+    private Connection connection;
+    private int borrowed;
+    private boolean closed;
+    
+    SharedConnection(DatabaseConfig config, SharedConnection outer) {
+        this.config = config;
+        this.outer = outer;
+    }
+    
+    /**
+     * Scope that was open on this thread before this one
+     */
+    SharedConnection outer() {
+        return outer;
+    }
+    
+    /**
+     * Lends the connection, opening it on first use
+     * 
+     * @return Connection whose close() returns it to this scope
+     * @throws SQLException if the connection cannot be opened
+     */
+    Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Shared connection scope is closed");
+        }
+        if (connection == null || (borrowed == 0 && connection.isClosed())) {
+            connection = config.openConnection();
+        }
+        borrowed++;
+        Connection target = connection;
+        boolean[] returned = new boolean[1];
+        return (Connection) Proxy.newProxyInstance(SharedConnection.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                        if (!returned[0]) {
+                            returned[0] = true;
+                            giveBack(target);
+                        }
+                        return null;
+                    case "isClosed":
+                        return returned[0] || target.isClosed();
+                    default:
+                        try {
+                            return method.invoke(target, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                }
+            });
+    }
+    
+    private void giveBack(Connection target) throws SQLException {
+        borrowed--;
+        if (borrowed == 0 && target == connection && !target.isClosed() && !target.getAutoCommit()) {
+            try {
+                target.rollback();
+            } finally {
+                target.setAutoCommit(true);
+            }
+        }
+    }
+    
+    /**
+     * Ends the scope and closes the connection, if one was opened
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        config.endScope(this);
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("[SharedConnection] Error closing connection: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,20 +1,22 @@
 package com.banksim.controller;
 
+import com.banksim.PathParams;
+import com.banksim.Router;
+import com.banksim.json.JsonReader;
+import com.banksim.json.JsonResponse;
+import com.banksim.json.ModelJson;
 import com.banksim.model.Account;
+import com.banksim.server.RateLimiter;
 import com.banksim.service.AccountService;
-import com.banksim.util.JwtUtil;
+import com.banksim.service.AccountVersions;
+import com.banksim.session.SessionManager;
+import com.banksim.trace.Trace;
+import com.banksim.util.JwtClaims;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * REST controller for account operations.
@@ -23,258 +25,171 @@ import java.util.Map;
  * @version 1.0
  * @since 2024
  */
-public class AccountController implements HttpHandler {
+public class AccountController {
     
     private final AccountService accountService;
+    private final SessionManager sessionManager;
+    private final AccountVersions accountVersions;
     
     public AccountController() {
         this.accountService = new AccountService();
+        this.sessionManager = SessionManager.getInstance();
+        this.accountVersions = AccountVersions.getInstance();
     }
     
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        // CORS headers
-        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
-            return;
-        }
-        
-        // Validate JWT
-        String token = extractToken(exchange);
-        if (token == null || !JwtUtil.validateToken(token)) {
-            sendJsonResponse(exchange, 401, createErrorResponse("Unauthorized"));
-            return;
-        }
-        
-        String path = exchange.getRequestURI().getPath();
-        String method = exchange.getRequestMethod();
+    /**
+     * Registers the account endpoints
+     * 
+     * @param router Application router
+     */
+    public void register(Router router) {
+        RateLimiter.Group accounts = RateLimiter.getInstance().group("accounts");
         
-        try {
-            if (path.equals("/api/accounts") && "POST".equals(method)) {
-                handleCreateAccount(exchange, token);
-            } else if (path.matches("/api/accounts/\\d+") && "GET".equals(method)) {
-                handleGetAccount(exchange, path);
-            } else if (path.matches("/api/accounts/\\d+/balance") && "GET".equals(method)) {
-                handleGetBalance(exchange, path);
-            } else if (path.matches("/api/accounts/customer/\\d+") && "GET".equals(method)) {
-                handleGetCustomerAccounts(exchange, path);
-            } else {
-                sendJsonResponse(exchange, 404, createErrorResponse("Endpoint not found"));
-            }
-        } catch (Exception e) {
-            sendJsonResponse(exchange, 500, createErrorResponse("Internal server error: " + e.getMessage()));
-        }
+        router.post("/api/accounts", SecuredRoute.of(sessionManager, accounts, this::handleCreateAccount));
+        router.get("/api/accounts/{accountId:long}", 
+            SecuredRoute.of(sessionManager, accounts, this::handleGetAccount));
+        router.get("/api/accounts/{accountId:long}/balance", 
+            SecuredRoute.of(sessionManager, accounts, this::handleGetBalance));
+        router.get("/api/accounts/customer/{customerId:long}", 
+            SecuredRoute.of(sessionManager, accounts, this::handleGetCustomerAccounts));
     }
     
     /**
      * POST /api/accounts
      * Request: {"customerId": 1, "accountType": "SAVINGS", "initialDeposit": "1000.00"}
      */
-    private void handleCreateAccount(HttpExchange exchange, String token) throws IOException {
-        Map<String, String> requestBody = parseJsonRequest(exchange);
-        
+    private void handleCreateAccount(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long customerId = Long.parseLong(requestBody.get("customerId"));
-            String accountType = requestBody.get("accountType");
-            BigDecimal initialDeposit = new BigDecimal(requestBody.getOrDefault("initialDeposit", "0"));
-            
-            Account account = accountService.createAccount(customerId, accountType, initialDeposit);
+            CreateAccountRequest request;
+            int span = Trace.begin("parse");
+            try {
+                request = CreateAccountRequest.read(new JsonReader(exchange.getRequestBody()));
+            } finally {
+                Trace.end(span);
+            }
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("account", accountToMap(account));
-            response.put("message", "Account created successfully");
+            Account account = accountService.createAccount(
+                request.customerId(), request.accountType(), request.initialDeposit());
             
-            sendJsonResponse(exchange, 201, response);
+            JsonResponse.send(exchange, 201, json -> {
+                json.beginObject().name("success").value(true);
+                json.name("account");
+                ModelJson.writeAccount(json, account);
+                json.name("message").value("Account created successfully").endObject();
+            });
             
         } catch (AccountService.AccountServiceException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 400, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid number format"));
+            JsonResponse.error(exchange, 400, "Invalid number format");
         }
     }
     
     /**
      * GET /api/accounts/{id}
+     * Supports If-None-Match; answers 304 without querying when unchanged
      */
-    private void handleGetAccount(HttpExchange exchange, String path) throws IOException {
+    private void handleGetAccount(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long accountId = Long.parseLong(path.substring(path.lastIndexOf("/") + 1));
+            Long accountId = params.getLong("accountId");
+            String etag = accountVersions.etag(accountId);
+            if (ConditionalGet.notModified(exchange, etag)) {
+                return;
+            }
             
             Account account = accountService.getAccountById(accountId);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("account", accountToMap(account));
-            
-            sendJsonResponse(exchange, 200, response);
+            ConditionalGet.tag(exchange, etag);
+            JsonResponse.send(exchange, 200, json -> {
+                json.beginObject().name("success").value(true);
+                json.name("account");
+                ModelJson.writeAccount(json, account);
+                json.endObject();
+            });
             
         } catch (AccountService.AccountServiceException e) {
-            sendJsonResponse(exchange, 404, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 404, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid account ID"));
+            JsonResponse.error(exchange, 400, "Invalid account ID");
         }
     }
     
     /**
      * GET /api/accounts/{id}/balance
+     * Supports If-None-Match; answers 304 without querying when unchanged
      */
-    private void handleGetBalance(HttpExchange exchange, String path) throws IOException {
+    private void handleGetBalance(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            String accountIdStr = path.split("/")[3];
-            Long accountId = Long.parseLong(accountIdStr);
+            Long accountId = params.getLong("accountId");
+            String etag = accountVersions.etag(accountId);
+            if (ConditionalGet.notModified(exchange, etag)) {
+                return;
+            }
             
             BigDecimal balance = accountService.getBalance(accountId);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("accountId", accountId);
-            response.put("balance", balance.toString());
-            
-            sendJsonResponse(exchange, 200, response);
+            ConditionalGet.tag(exchange, etag);
+            JsonResponse.send(exchange, 200, json -> json.beginObject()
+                .name("success").value(true)
+                .name("accountId").value(accountId)
+                .name("balance").string(balance)
+                .endObject());
             
         } catch (AccountService.AccountServiceException e) {
-            sendJsonResponse(exchange, 404, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 404, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid account ID"));
+            JsonResponse.error(exchange, 400, "Invalid account ID");
         }
     }
     
     /**
      * GET /api/accounts/customer/{customerId}
      */
-    private void handleGetCustomerAccounts(HttpExchange exchange, String path) throws IOException {
+    private void handleGetCustomerAccounts(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long customerId = Long.parseLong(path.substring(path.lastIndexOf("/") + 1));
+            Long customerId = params.getLong("customerId");
             
             List<Account> accounts = accountService.getCustomerAccounts(customerId);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("accounts", accounts.stream().map(this::accountToMap).toArray());
-            response.put("count", accounts.size());
-            
-            sendJsonResponse(exchange, 200, response);
+            JsonResponse.send(exchange, 200, json -> {
+                json.beginObject().name("success").value(true);
+                json.name("accounts");
+                ModelJson.writeAccounts(json, accounts);
+                json.name("count").value(accounts.size()).endObject();
+            });
             
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid customer ID"));
+            JsonResponse.error(exchange, 400, "Invalid customer ID");
         }
     }
     
     /**
-     * Converts Account to Map
+     * Account creation request body
      */
-    private Map<String, Object> accountToMap(Account account) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", account.getId());
-        map.put("accountNumber", account.getAccountNumber());
-        map.put("customerId", account.getCustomerId());
-        map.put("accountType", account.getAccountType());
-        map.put("balance", account.getBalance().toString());
-        map.put("status", account.getStatus());
-        map.put("createdAt", account.getCreatedAt().toString());
-        return map;
-    }
-    
-    private String extractToken(HttpExchange exchange) {
-        String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            return authHeader.substring(7);
-        }
-        return null;
-    }
-    
-    private Map<String, String> parseJsonRequest(HttpExchange exchange) throws IOException {
-        BufferedReader reader = new BufferedReader(
-            new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
-        
-        StringBuilder body = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            body.append(line);
-        }
-        
-        return parseSimpleJson(body.toString());
-    }
-    
-    private Map<String, String> parseSimpleJson(String json) {
-        Map<String, String> map = new HashMap<>();
+    record CreateAccountRequest(Long customerId, String accountType, BigDecimal initialDeposit) {
         
-        json = json.trim();
-        if (json.startsWith("{")) json = json.substring(1);
-        if (json.endsWith("}")) json = json.substring(0, json.length() - 1);
-        
-        String[] pairs = json.split(",");
-        for (String pair : pairs) {
-            String[] keyValue = pair.split(":", 2);
-            if (keyValue.length == 2) {
-                String key = keyValue[0].trim().replace("\"", "");
-                String value = keyValue[1].trim().replace("\"", "");
-                map.put(key, value);
-            }
-        }
-        
-        return map;
-    }
-    
-    private void sendJsonResponse(HttpExchange exchange, int statusCode, Map<String, Object> data) 
-            throws IOException {
-        
-        String json = mapToJson(data);
-        
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, json.getBytes(StandardCharsets.UTF_8).length);
-        
-        OutputStream os = exchange.getResponseBody();
-        os.write(json.getBytes(StandardCharsets.UTF_8));
-        os.close();
-    }
-    
-    private String mapToJson(Map<String, Object> map) {
-        StringBuilder json = new StringBuilder("{");
-        
-        int count = 0;
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (count > 0) json.append(",");
-            
-            json.append("\"").append(entry.getKey()).append("\":");
-            
-            Object value = entry.getValue();
-            if (value instanceof String) {
-                json.append("\"").append(value).append("\"");
-            } else if (value instanceof Boolean || value instanceof Number) {
-                json.append(value);
-            } else if (value.getClass().isArray()) {
-                json.append("[");
-                Object[] arr = (Object[]) value;
-                for (int i = 0; i < arr.length; i++) {
-                    if (i > 0) json.append(",");
-                    if (arr[i] instanceof Map) {
-                        json.append(mapToJson((Map<String, Object>) arr[i]));
-                    } else {
-                        json.append("\"").append(arr[i]).append("\"");
-                    }
+        static CreateAccountRequest read(JsonReader reader) throws IOException {
+            Long customerId = null;
+            String accountType = null;
+            BigDecimal initialDeposit = null;
+            
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "customerId": customerId = reader.nextLong(); break;
+                    case "accountType": accountType = reader.nextString(); break;
+                    case "initialDeposit": initialDeposit = reader.nextBigDecimal(); break;
+                    default: reader.skipValue(); break;
                 }
-                json.append("]");
-            } else {
-                json.append("\"").append(value.toString()).append("\"");
             }
+            reader.endObject();
             
-            count++;
+            return new CreateAccountRequest(JsonReader.require(customerId, "customerId"), accountType, 
+                initialDeposit != null ? initialDeposit : BigDecimal.ZERO);
         }
-        
-        json.append("}");
-        return json.toString();
-    }
-    
-    private Map<String, Object> createErrorResponse(String message) {
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", false);
-        response.put("error", message);
-        return response;
     }
 }
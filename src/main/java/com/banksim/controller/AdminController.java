@@ -0,0 +1,146 @@
+package com.banksim.controller;
+
+import com.banksim.PathParams;
+import com.banksim.Router;
+import com.banksim.json.JsonResponse;
+import com.banksim.json.JsonWriter;
+import com.banksim.server.RateLimiter;
+import com.banksim.session.SessionManager;
+import com.banksim.trace.Trace;
+import com.banksim.trace.TraceBuffer;
+import com.banksim.util.JwtClaims;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * REST controller for administrators: recent request traces.
+ * 
+ * Traces are read from the {@link TraceBuffer}, so only the last
+ * trace.buffer.size requests can be found. Times are reported in
+ * microseconds.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class AdminController {
+    
+    private static final int DEFAULT_LIMIT = 50;
+    
+    private final SessionManager sessionManager;
+    private final TraceBuffer traces;
+    
+    public AdminController() {
+        this.sessionManager = SessionManager.getInstance();
+        this.traces = TraceBuffer.getInstance();
+    }
+    
+    /**
+     * Registers the admin endpoints
+     * 
+     * @param router Application router
+     */
+    public void register(Router router) {
+        RateLimiter.Group admin = RateLimiter.getInstance().group("admin");
+        router.get("/api/admin/traces", SecuredRoute.of(sessionManager, admin, this::handleListTraces));
+        router.get("/api/admin/traces/{id}", SecuredRoute.of(sessionManager, admin, this::handleGetTrace));
+    }
+    
+    /**
+     * GET /api/admin/traces?limit=50&minMs=100&path=/api/transactions
+     * Lists recent traces, newest first, without their spans
+     */
+    private void handleListTraces(HttpExchange exchange, PathParams params, JwtClaims principal)
+            throws IOException {
+        if (!isAdmin(principal)) {
+            JsonResponse.error(exchange, 403, "Admin role required");
+            return;
+        }
+        
+        int limit = DEFAULT_LIMIT;
+        long minMillis = 0;
+        String path = null;
+        
+        String query = exchange.getRequestURI().getQuery();
+        try {
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    String[] kv = param.split("=");
+                    if (kv.length == 2) {
+                        if ("limit".equals(kv[0])) limit = Integer.parseInt(kv[1]);
+                        if ("minMs".equals(kv[0])) minMillis = Long.parseLong(kv[1]);
+                        if ("path".equals(kv[0])) path = kv[1];
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            JsonResponse.error(exchange, 400, "Invalid number format");
+            return;
+        }
+        
+        List<Trace> recent = traces.recent(Math.max(1, Math.min(limit, traces.capacity())), minMillis, path);
+        JsonResponse.send(exchange, 200, json -> {
+            json.beginObject().name("success").value(true);
+            json.name("traces").beginArray();
+            for (Trace trace : recent) {
+                writeSummary(json.beginObject(), trace);
+                json.endObject();
+            }
+            json.endArray();
+            json.name("count").value(recent.size()).endObject();
+        });
+    }
+    
+    /**
+     * GET /api/admin/traces/{id}
+     * Returns one trace with its spans
+     */
+    private void handleGetTrace(HttpExchange exchange, PathParams params, JwtClaims principal)
+            throws IOException {
+        if (!isAdmin(principal)) {
+            JsonResponse.error(exchange, 403, "Admin role required");
+            return;
+        }
+        
+        Trace trace = traces.find(params.get("id"));
+        if (trace == null) {
+            JsonResponse.error(exchange, 404, "Trace not found or evicted");
+            return;
+        }
+        
+        Trace.Span[] spans = trace.getSpans();
+        JsonResponse.send(exchange, 200, json -> {
+            json.beginObject().name("success").value(true);
+            json.name("trace");
+            writeSummary(json.beginObject(), trace);
+            json.name("spans").beginArray();
+            for (Trace.Span span : spans) {
+                json.beginObject()
+                    .name("name").value(span.name())
+                    .name("detail").value(span.detail())
+                    .name("offsetMicros").value(span.offsetNanos() / 1000)
+                    .name("durationMicros").value(span.durationNanos() < 0 ? -1 : span.durationNanos() / 1000)
+                    .endObject();
+            }
+            json.endArray();
+            json.name("droppedSpans").value(trace.getDroppedSpans());
+            json.endObject().endObject();
+        });
+    }
+    
+    private static void writeSummary(JsonWriter json, Trace trace) throws IOException {
+        json.name("id").value(trace.getId())
+            .name("method").value(trace.getMethod())
+            .name("path").value(trace.getPath())
+            .name("route").value(trace.getRoute())
+            .name("status").value(trace.getStatus())
+            .name("startedAt").value(trace.getStartEpochMillis())
+            .name("durationMicros").value(trace.getDurationNanos() / 1000);
+    }
+    
+    private static boolean isAdmin(JwtClaims principal) {
+        return "ADMIN".equals(principal.getRole());
+    }
+}
@@ -1,65 +1,51 @@
 package com.banksim.controller;
 
+import com.banksim.PathParams;
+import com.banksim.Router;
+import com.banksim.audit.AuditWriter;
+import com.banksim.json.JsonReader;
+import com.banksim.json.JsonResponse;
+import com.banksim.model.AuditLog;
 import com.banksim.service.AuthenticationService;
-import com.banksim.util.JwtUtil;
+import com.banksim.session.SessionManager;
+import com.banksim.util.JwtClaims;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * REST controller for authentication operations.
  * Handles login, registration, and JWT token management.
+ * Logins, failed logins, registrations and password changes are audited.
  * 
  * @author Jorge Pena - REM Consultancy
  * @version 1.0
  * @since 2024
  */
-public class AuthController implements HttpHandler {
+public class AuthController {
     
     private final AuthenticationService authService;
+    private final SessionManager sessionManager;
+    private final AuditWriter audit;
     
     public AuthController() {
         this.authService = new AuthenticationService();
+        this.sessionManager = SessionManager.getInstance();
+        this.audit = AuditWriter.getInstance();
     }
     
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        // Add CORS headers
-        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
-        
-        // Handle preflight OPTIONS request
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
-            return;
-        }
-        
-        String path = exchange.getRequestURI().getPath();
-        String method = exchange.getRequestMethod();
-        
-        try {
-            if (path.equals("/api/auth/login") && "POST".equals(method)) {
-                handleLogin(exchange);
-            } else if (path.equals("/api/auth/register") && "POST".equals(method)) {
-                handleRegister(exchange);
-            } else if (path.equals("/api/auth/refresh") && "POST".equals(method)) {
-                handleRefreshToken(exchange);
-            } else if (path.equals("/api/auth/change-password") && "POST".equals(method)) {
-                handleChangePassword(exchange);
-            } else {
-                sendJsonResponse(exchange, 404, createErrorResponse("Endpoint not found"));
-            }
-        } catch (Exception e) {
-            sendJsonResponse(exchange, 500, createErrorResponse("Internal server error: " + e.getMessage()));
-        }
+    /**
+     * Registers the authentication endpoints
+     * 
+     * @param router Application router
+     */
+    public void register(Router router) {
+        router.post("/api/auth/login", this::handleLogin);
+        router.post("/api/auth/register", this::handleRegister);
+        router.post("/api/auth/refresh", this::handleRefreshToken);
+        router.post("/api/auth/change-password", this::handleChangePassword);
+        router.post("/api/auth/logout", this::handleLogout);
     }
     
     /**
@@ -67,35 +53,41 @@ public class AuthController implements HttpHandler {
      * Request: {"username": "user1", "password": "Pass1234"}
      * Response: {"success": true, "token": "jwt-token", "userId": 1}
      */
-    private void handleLogin(HttpExchange exchange) throws IOException {
-        Map<String, String> requestBody = parseJsonRequest(exchange);
+    private void handleLogin(HttpExchange exchange, PathParams params) throws IOException {
+        AuthRequest request = AuthRequest.read(new JsonReader(exchange.getRequestBody()));
         
-        String username = requestBody.get("username");
-        String password = requestBody.get("password");
+        String username = request.username();
+        String password = request.password();
         
         if (username == null || password == null) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Username and password are required"));
+            JsonResponse.error(exchange, 400, "Username and password are required");
             return;
         }
         
         try {
             Map<String, Object> loginResult = authService.login(username, password);
+            audit(exchange, (Integer) loginResult.get("userId"), "LOGIN", null);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("accessToken", loginResult.get("accessToken"));
-            response.put("refreshToken", loginResult.get("refreshToken"));
-            response.put("userId", loginResult.get("userId"));
-            response.put("username", loginResult.get("username"));
-            response.put("email", loginResult.get("email"));
-            response.put("role", loginResult.get("role"));
-            response.put("expiresIn", loginResult.get("expiresIn"));
-            response.put("message", "Login successful");
-            
-            sendJsonResponse(exchange, 200, response);
+            JsonResponse.send(exchange, 200, json -> {
+                json.beginObject()
+                    .name("success").value(true)
+                    .name("accessToken").value(loginResult.get("accessToken"))
+                    .name("refreshToken").value(loginResult.get("refreshToken"))
+                    .name("userId").value(loginResult.get("userId"))
+                    .name("username").value(loginResult.get("username"))
+                    .name("email").value(loginResult.get("email"))
+                    .name("role").value(loginResult.get("role"))
+                    .name("expiresIn").value(loginResult.get("expiresIn"));
+                if (loginResult.containsKey("sessionId")) {
+                    json.name("sessionId").value(loginResult.get("sessionId"))
+                        .name("customerId").value(loginResult.get("customerId"));
+                }
+                json.name("message").value("Login successful").endObject();
+            });
             
         } catch (AuthenticationService.AuthenticationException e) {
-            sendJsonResponse(exchange, 401, createErrorResponse(e.getMessage()));
+            audit(exchange, null, "LOGIN_FAILED", "username=" + username);
+            JsonResponse.error(exchange, 401, e.getMessage());
         }
     }
     
@@ -106,40 +98,31 @@ public class AuthController implements HttpHandler {
      *           "address": "123 Main St", "dateOfBirth": "1990-01-01", "personalKey": "Abcd1234"}
      * Response: {"success": true, "token": "jwt-token", "userId": 1}
      */
-    private void handleRegister(HttpExchange exchange) throws IOException {
-        Map<String, String> requestBody = parseJsonRequest(exchange);
-        
-        String username = requestBody.get("username");
-        String password = requestBody.get("password");
-        String email = requestBody.get("email");
-        String firstName = requestBody.get("firstName");
-        String lastName = requestBody.get("lastName");
-        String phone = requestBody.get("phone");
-        String address = requestBody.get("address");
-        String dateOfBirth = requestBody.get("dateOfBirth");
-        String personalKey = requestBody.get("personalKey");
+    private void handleRegister(HttpExchange exchange, PathParams params) throws IOException {
+        AuthRequest request = AuthRequest.read(new JsonReader(exchange.getRequestBody()));
         
         try {
-            Map<String, Object> registerResult = authService.register(username, email, password, 
-                                               firstName, lastName, personalKey, phone);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("accessToken", registerResult.get("accessToken"));
-            response.put("refreshToken", registerResult.get("refreshToken"));
-            response.put("userId", registerResult.get("userId"));
-            response.put("username", registerResult.get("username"));
-            response.put("email", registerResult.get("email"));
-            response.put("role", registerResult.get("role"));
-            response.put("customerId", registerResult.get("customerId"));
-            response.put("customerCode", registerResult.get("customerCode"));
-            response.put("expiresIn", registerResult.get("expiresIn"));
-            response.put("message", "Registration successful");
+            Map<String, Object> registerResult = authService.register(request.username(), request.email(), 
+                                               request.password(), request.firstName(), request.lastName(), 
+                                               request.personalKey(), request.phone());
+            audit(exchange, (Integer) registerResult.get("userId"), "REGISTER", null);
             
-            sendJsonResponse(exchange, 201, response);
+            JsonResponse.send(exchange, 201, json -> json.beginObject()
+                .name("success").value(true)
+                .name("accessToken").value(registerResult.get("accessToken"))
+                .name("refreshToken").value(registerResult.get("refreshToken"))
+                .name("userId").value(registerResult.get("userId"))
+                .name("username").value(registerResult.get("username"))
+                .name("email").value(registerResult.get("email"))
+                .name("role").value(registerResult.get("role"))
+                .name("customerId").value(registerResult.get("customerId"))
+                .name("customerCode").value(registerResult.get("customerCode"))
+                .name("expiresIn").value(registerResult.get("expiresIn"))
+                .name("message").value("Registration successful")
+                .endObject());
             
         } catch (AuthenticationService.AuthenticationException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 400, e.getMessage());
         }
     }
     
@@ -148,29 +131,28 @@ public class AuthController implements HttpHandler {
      * Request: {"token": "old-jwt-token"}
      * Response: {"success": true, "token": "new-jwt-token"}
      */
-    private void handleRefreshToken(HttpExchange exchange) throws IOException {
-        Map<String, String> requestBody = parseJsonRequest(exchange);
+    private void handleRefreshToken(HttpExchange exchange, PathParams params) throws IOException {
+        AuthRequest request = AuthRequest.read(new JsonReader(exchange.getRequestBody()));
         
-        String oldToken = requestBody.get("token");
+        String oldToken = request.token();
         
         if (oldToken == null) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Token is required"));
+            JsonResponse.error(exchange, 400, "Token is required");
             return;
         }
         
         try {
             Map<String, Object> refreshResult = authService.refreshToken(oldToken);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("accessToken", refreshResult.get("accessToken"));
-            response.put("expiresIn", refreshResult.get("expiresIn"));
-            response.put("message", "Token refreshed successfully");
-            
-            sendJsonResponse(exchange, 200, response);
+            JsonResponse.send(exchange, 200, json -> json.beginObject()
+                .name("success").value(true)
+                .name("accessToken").value(refreshResult.get("accessToken"))
+                .name("expiresIn").value(refreshResult.get("expiresIn"))
+                .name("message").value("Token refreshed successfully")
+                .endObject());
             
         } catch (AuthenticationService.AuthenticationException e) {
-            sendJsonResponse(exchange, 401, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 401, e.getMessage());
         }
     }
     
@@ -178,139 +160,116 @@ public class AuthController implements HttpHandler {
      * POST /api/auth/change-password
      * Headers: Authorization: Bearer {jwt-token}
      * Request: {"currentPassword": "OldPass1234", "newPassword": "NewPass5678"}
-     * Response: {"success": true, "message": "Password changed successfully"}
+     * Response: {"success": true, "message": "Password changed successfully. Please log in again."}
      */
-    private void handleChangePassword(HttpExchange exchange) throws IOException {
+    private void handleChangePassword(HttpExchange exchange, PathParams params) throws IOException {
         // Extract JWT from Authorization header
         String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            sendJsonResponse(exchange, 401, createErrorResponse("Authorization token required"));
+            JsonResponse.error(exchange, 401, "Authorization token required");
             return;
         }
         
-        String token = authHeader.substring(7);
-        
         // Validate token
-        if (!JwtUtil.validateToken(token)) {
-            sendJsonResponse(exchange, 401, createErrorResponse("Invalid or expired token"));
+        JwtClaims principal = sessionManager.authenticate(authHeader.substring(7));
+        if (principal == null) {
+            JsonResponse.error(exchange, 401, "Invalid or expired token");
             return;
         }
         
-        Map<String, String> requestBody = parseJsonRequest(exchange);
+        AuthRequest request = AuthRequest.read(new JsonReader(exchange.getRequestBody()));
         
-        String currentPassword = requestBody.get("currentPassword");
-        String newPassword = requestBody.get("newPassword");
+        String currentPassword = request.currentPassword();
+        String newPassword = request.newPassword();
         
         if (currentPassword == null || newPassword == null) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Current and new passwords are required"));
+            JsonResponse.error(exchange, 400, "Current and new passwords are required");
             return;
         }
         
         try {
-            Integer userId = JwtUtil.getUserId(token);
-            authService.changePassword(userId, currentPassword, newPassword);
+            authService.changePassword(principal.getUserId(), currentPassword, newPassword);
+            audit(exchange, principal.getUserId(), "PASSWORD_CHANGE", null);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("message", "Password changed successfully");
-            
-            sendJsonResponse(exchange, 200, response);
+            sendMessage(exchange, "Password changed successfully. Please log in again.");
             
         } catch (AuthenticationService.AuthenticationException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 400, e.getMessage());
         }
     }
     
     /**
-     * Parses JSON request body into a Map
+     * POST /api/auth/logout
+     * Headers: Authorization: Bearer {session-id or jwt-token}
+     * Response: {"success": true, "message": "Logged out"}
      */
-    private Map<String, String> parseJsonRequest(HttpExchange exchange) throws IOException {
-        BufferedReader reader = new BufferedReader(
-            new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
-        
-        StringBuilder body = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            body.append(line);
+    private void handleLogout(HttpExchange exchange, PathParams params) throws IOException {
+        String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            JsonResponse.error(exchange, 401, "Authorization token required");
+            return;
         }
         
-        return parseSimpleJson(body.toString());
+        authService.logout(authHeader.substring(7));
+        
+        sendMessage(exchange, "Logged out");
     }
     
-    /**
-     * Simple JSON parser for key-value pairs
-     */
-    private Map<String, String> parseSimpleJson(String json) {
-        Map<String, String> map = new HashMap<>();
-        
-        json = json.trim();
-        if (json.startsWith("{")) json = json.substring(1);
-        if (json.endsWith("}")) json = json.substring(0, json.length() - 1);
-        
-        String[] pairs = json.split(",");
-        for (String pair : pairs) {
-            String[] keyValue = pair.split(":", 2);
-            if (keyValue.length == 2) {
-                String key = keyValue[0].trim().replace("\"", "");
-                String value = keyValue[1].trim().replace("\"", "");
-                map.put(key, value);
-            }
-        }
-        
-        return map;
+    private void audit(HttpExchange exchange, Integer userId, String action, String newValue) {
+        AuditLog entry = new AuditLog(userId, action, "USER", userId);
+        entry.setNewValue(newValue);
+        entry.setIpAddress(exchange.getRemoteAddress().getAddress().getHostAddress());
+        entry.setUserAgent(exchange.getRequestHeaders().getFirst("User-Agent"));
+        audit.record(entry);
     }
     
-    /**
-     * Sends JSON response
-     */
-    private void sendJsonResponse(HttpExchange exchange, int statusCode, Map<String, Object> data) 
-            throws IOException {
-        
-        String json = mapToJson(data);
-        
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, json.getBytes(StandardCharsets.UTF_8).length);
-        
-        OutputStream os = exchange.getResponseBody();
-        os.write(json.getBytes(StandardCharsets.UTF_8));
-        os.close();
+    private void sendMessage(HttpExchange exchange, String message) throws IOException {
+        JsonResponse.send(exchange, 200, json -> json.beginObject()
+            .name("success").value(true)
+            .name("message").value(message)
+            .endObject());
     }
     
     /**
-     * Converts Map to JSON string
+     * Request body shared by the auth endpoints. Each endpoint reads only
+     * the fields it needs.
      */
-    private String mapToJson(Map<String, Object> map) {
-        StringBuilder json = new StringBuilder("{");
+    record AuthRequest(String username, String password, String email, String firstName, String lastName, 
+                       String phone, String personalKey, String token, String currentPassword, 
+                       String newPassword) {
         
-        int count = 0;
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (count > 0) json.append(",");
+        static AuthRequest read(JsonReader reader) throws IOException {
+            String username = null;
+            String password = null;
+            String email = null;
+            String firstName = null;
+            String lastName = null;
+            String phone = null;
+            String personalKey = null;
+            String token = null;
+            String currentPassword = null;
+            String newPassword = null;
             
-            json.append("\"").append(entry.getKey()).append("\":");
-            
-            Object value = entry.getValue();
-            if (value instanceof String) {
-                json.append("\"").append(value).append("\"");
-            } else if (value instanceof Boolean || value instanceof Number) {
-                json.append(value);
-            } else {
-                json.append("\"").append(value.toString()).append("\"");
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "username": username = reader.nextString(); break;
+                    case "password": password = reader.nextString(); break;
+                    case "email": email = reader.nextString(); break;
+                    case "firstName": firstName = reader.nextString(); break;
+                    case "lastName": lastName = reader.nextString(); break;
+                    case "phone": phone = reader.nextString(); break;
+                    case "personalKey": personalKey = reader.nextString(); break;
+                    case "token": token = reader.nextString(); break;
+                    case "currentPassword": currentPassword = reader.nextString(); break;
+                    case "newPassword": newPassword = reader.nextString(); break;
+                    default: reader.skipValue(); break;
+                }
             }
+            reader.endObject();
             
-            count++;
+            return new AuthRequest(username, password, email, firstName, lastName, phone, personalKey, 
+                token, currentPassword, newPassword);
         }
-        
-        json.append("}");
-        return json.toString();
-    }
-    
-    /**
-     * Creates error response
-     */
-    private Map<String, Object> createErrorResponse(String message) {
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", false);
-        response.put("error", message);
-        return response;
     }
 }
@@ -0,0 +1,298 @@
+package com.banksim.controller;
+
+import com.banksim.PathParams;
+import com.banksim.Router;
+import com.banksim.config.DatabaseConfig;
+import com.banksim.config.ServerConfig;
+import com.banksim.config.SharedConnection;
+import com.banksim.json.JsonReader;
+import com.banksim.json.JsonResponse;
+import com.banksim.json.JsonWriter;
+import com.banksim.server.ConcurrencyLimitFilter;
+import com.banksim.server.RateLimiter;
+import com.banksim.session.SessionManager;
+import com.banksim.trace.Trace;
+import com.banksim.util.JwtClaims;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * REST controller that runs several API calls in one request.
+ * 
+ * The caller is authenticated once for the whole batch and each
+ * sub-request is dispatched through the same router as a normal request,
+ * so it gets the same routing, rate limits and error handling. Runs of
+ * consecutive GETs execute concurrently; any other method runs alone, in
+ * order, after everything before it has finished, so a write is always
+ * seen by the reads that follow it.
+ * 
+ * Sub-requests run on the request thread on one shared database
+ * connection, as opening a connection is a TCP connect and an
+ * authentication each time. A run of GETs is split into lanes, each with
+ * its own connection: the request thread's, plus one per free
+ * {@link ConcurrencyLimitFilter} permit, up to server.batch.threads, so a
+ * batch never holds more connections than permits. With no permit free
+ * the run executes on the request thread alone. Deposits, withdrawals and
+ * transfers open a connection of their own for their transaction, as they
+ * do outside a batch, so a failed one leaves nothing behind either way.
+ * 
+ * Streams and long-polls are not batchable: they would hold the batch
+ * open and have their output buffered in memory.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class BatchController {
+    
+    private static final byte[] NO_BODY = new byte[0];
+    // Nested batches, and endpoints that hold the exchange open
+    private static final List<String> UNBATCHABLE_PATHS = List.of("/api/batch", "/api/events/");
+    
+    private final SessionManager sessionManager;
+    private final ConcurrencyLimitFilter concurrency;
+    private final DatabaseConfig dbConfig;
+    private final int maxRequests;
+    private final int threads;
+    private final ExecutorService workers;
+    private Router router;
+    
+    /**
+     * Creates the controller
+     * 
+     * @param concurrency Bulkhead of the API context; extra lanes take permits from it
+     */
+    public BatchController(ConcurrencyLimitFilter concurrency) {
+        this(SessionManager.getInstance(), concurrency, ServerConfig.getInstance().getBatchMaxRequests(),
+            ServerConfig.getInstance().getBatchThreads());
+    }
+    
+    BatchController(SessionManager sessionManager, ConcurrencyLimitFilter concurrency, int maxRequests,
+                    int threads) {
+        this.sessionManager = sessionManager;
+        this.concurrency = concurrency;
+        this.dbConfig = DatabaseConfig.getInstance();
+        this.maxRequests = maxRequests;
+        this.threads = threads;
+        
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Registers the batch endpoint; sub-requests are dispatched through router
+     * 
+     * @param router Application router
+     */
+    public void register(Router router) {
+        this.router = router;
+        router.post("/api/batch",
+            SecuredRoute.of(sessionManager, RateLimiter.getInstance().group("batch"), this::handleBatch));
+    }
+    
+    /**
+     * POST /api/batch
+     * Request: [{"method": "GET", "path": "/api/accounts/1/balance"},
+     *           {"method": "POST", "path": "/api/transactions/deposit", "body": {...}}]
+     * Response: {"success": true, "results": [{"status": 200, "body": {...}}, ...], "count": 2}
+     */
+    private void handleBatch(HttpExchange exchange, PathParams params, JwtClaims principal)
+            throws IOException {
+        List<SubRequest> requests = SubRequest.readAll(new JsonReader(exchange.getRequestBody()));
+        if (requests.isEmpty()) {
+            JsonResponse.error(exchange, 400, "Batch must contain at least one request");
+            return;
+        }
+        if (requests.size() > maxRequests) {
+            JsonResponse.error(exchange, 400, "Batch exceeds " + maxRequests + " requests");
+            return;
+        }
+        
+        BatchExchange[] results = new BatchExchange[requests.size()];
+        // Sub-requests on this thread share one connection
+        SharedConnection connection = dbConfig.shareConnection();
+        try {
+            int start = 0;
+            while (start < requests.size()) {
+                if (!requests.get(start).isRead()) {
+                    results[start] = dispatch(exchange, principal, requests.get(start));
+                    start++;
+                    continue;
+                }
+                int end = start + 1;
+                while (end < requests.size() && requests.get(end).isRead()) {
+                    end++;
+                }
+                runReads(exchange, principal, requests, results, start, end);
+                start = end;
+            }
+        } finally {
+            connection.close();
+        }
+        
+        JsonResponse.send(exchange, 200, json -> {
+            json.beginObject().name("success").value(true);
+            json.name("results").beginArray();
+            for (BatchExchange result : results) {
+                json.beginObject().name("status").value(result.getResponseCode());
+                json.name("body");
+                byte[] body = result.responseBytes();
+                if (body.length == 0) {
+                    json.value((String) null);
+                } else {
+                    json.rawValue(body, 0, body.length);
+                }
+                json.endObject();
+            }
+            json.endArray();
+            json.name("count").value(results.length).endObject();
+        });
+    }
+    
+    /**
+     * Runs the GETs [start, end) and waits for all of them. Request i runs
+     * in lane (i - start) % lanes; lane 0 is the calling thread.
+     */
+    private void runReads(HttpExchange exchange, JwtClaims principal, List<SubRequest> requests,
+                          BatchExchange[] results, int start, int end) throws IOException {
+        // An extra lane opens a connection of its own, so it takes a permit of its own
+        int lanes = 1;
+        while (lanes < end - start && lanes <= threads && concurrency.tryAcquire()) {
+            lanes++;
+        }
+        
+        int step = lanes;
+        List<Future<?>> pending = new ArrayList<>(lanes - 1);
+        // Sub-requests record their spans on the batch request's trace
+        Trace trace = Trace.current();
+        for (int lane = 1; lane < lanes; lane++) {
+            int first = start + lane;
+            pending.add(workers.submit(() -> {
+                Trace previous = Trace.attach(trace);
+                SharedConnection connection = dbConfig.shareConnection();
+                try {
+                    runLane(exchange, principal, requests, results, first, end, step);
+                } finally {
+                    connection.close();
+                    Trace.attach(previous);
+                    concurrency.release();
+                }
+                return null;
+            }));
+        }
+        runLane(exchange, principal, requests, results, start, end, step);
+        
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for batch requests");
+            } catch (ExecutionException e) {
+                throw new IOException("Batch request failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+    
+    private void runLane(HttpExchange exchange, JwtClaims principal, List<SubRequest> requests,
+                         BatchExchange[] results, int first, int end, int step) throws IOException {
+        for (int i = first; i < end; i += step) {
+            results[i] = dispatch(exchange, principal, requests.get(i));
+        }
+    }
+    
+    private BatchExchange dispatch(HttpExchange exchange, JwtClaims principal, SubRequest request)
+            throws IOException {
+        URI uri;
+        try {
+            uri = new URI(request.path());
+        } catch (URISyntaxException e) {
+            uri = null;
+        }
+        
+        String path = uri != null ? uri.getPath() : null;
+        
+        BatchExchange sub = new BatchExchange(exchange, principal, request.method(),
+            path != null ? uri : URI.create("/"), request.body());
+        if (path == null || !path.startsWith("/api/")) {
+            JsonResponse.error(sub, 400, "Invalid batch path: " + request.path());
+        } else if (!isBatchable(path)) {
+            JsonResponse.error(sub, 400, "Path cannot be batched: " + request.path());
+        } else {
+            router.handle(sub);
+        }
+        return sub;
+    }
+    
+    private static boolean isBatchable(String path) {
+        for (String prefix : UNBATCHABLE_PATHS) {
+            if (path.startsWith(prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * One entry of the batch request body
+     */
+    record SubRequest(String method, String path, byte[] body) {
+        
+        boolean isRead() {
+            return "GET".equals(method);
+        }
+        
+        static List<SubRequest> readAll(JsonReader reader) throws IOException {
+            List<SubRequest> requests = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                requests.add(read(reader));
+            }
+            reader.endArray();
+            return requests;
+        }
+        
+        static SubRequest read(JsonReader reader) throws IOException {
+            String method = null;
+            String path = null;
+            Object body = null;
+            
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "method": method = reader.nextString(); break;
+                    case "path": path = reader.nextString(); break;
+                    case "body": body = reader.nextValue(); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+            
+            byte[] encoded = NO_BODY;
+            if (body != null) {
+                JsonWriter json = new JsonWriter();
+                json.value(body);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(json.size());
+                json.writeTo(out);
+                encoded = out.toByteArray();
+            }
+            return new SubRequest(method != null ? method.toUpperCase() : "GET",
+                JsonReader.require(path, "path"), encoded);
+        }
+    }
+}
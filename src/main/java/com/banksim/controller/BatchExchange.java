@@ -0,0 +1,169 @@
+package com.banksim.controller;
+
+import com.banksim.util.JwtClaims;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory exchange for one sub-request of a batch.
+ * 
+ * It carries the caller already authenticated by the enclosing batch
+ * request, so {@link SecuredRoute} skips token validation, and captures the
+ * status and body the route writes. Only the Authorization and User-Agent
+ * headers are inherited from the batch request, the latter for the audit
+ * trail: conditional and encoding headers would make no sense for a body
+ * embedded in another response.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+final class BatchExchange extends HttpExchange {
+    
+    private final HttpExchange parent;
+    private final JwtClaims principal;
+    private final String method;
+    private final URI uri;
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private InputStream requestBody;
+    private OutputStream responseBody = body;
+    private int responseCode = -1;
+    
+    BatchExchange(HttpExchange parent, JwtClaims principal, String method, URI uri, byte[] requestBody) {
+        this.parent = parent;
+        this.principal = principal;
+        this.method = method;
+        this.uri = uri;
+        this.requestBody = new ByteArrayInputStream(requestBody);
+        String authorization = parent.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null) {
+            requestHeaders.set("Authorization", authorization);
+        }
+        String userAgent = parent.getRequestHeaders().getFirst("User-Agent");
+        if (userAgent != null) {
+            requestHeaders.set("User-Agent", userAgent);
+        }
+        requestHeaders.set("Content-Type", "application/json");
+    }
+    
+    /**
+     * Caller authenticated by the enclosing batch request
+     */
+    JwtClaims principal() {
+        return principal;
+    }
+    
+    /**
+     * Response body written by the route
+     */
+    byte[] responseBytes() {
+        return body.toByteArray();
+    }
+    
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+    
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+    
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+    
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+    
+    @Override
+    public HttpContext getHttpContext() {
+        return parent.getHttpContext();
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+    
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+    
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseCode != -1) {
+            throw new IOException("Headers already sent");
+        }
+        responseCode = rCode;
+    }
+    
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return parent.getRemoteAddress();
+    }
+    
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+    
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return parent.getLocalAddress();
+    }
+    
+    @Override
+    public String getProtocol() {
+        return parent.getProtocol();
+    }
+    
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+    
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+    
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            requestBody = i;
+        }
+        if (o != null) {
+            responseBody = o;
+        }
+    }
+    
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return parent.getPrincipal();
+    }
+}
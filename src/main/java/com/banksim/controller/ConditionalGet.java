@@ -0,0 +1,80 @@
+package com.banksim.controller;
+
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.MetricsRegistry;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * If-None-Match handling for account reads.
+ *
+ * Tags are weak, so a gzip and an identity response share one tag, and
+ * comparison ignores the W/ prefix as RFC 9110 requires for If-None-Match.
+ * Revalidations are counted as hits (304) and misses; requests without
+ * If-None-Match are not cache lookups and are not counted.
+ *
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+final class ConditionalGet {
+
+    private static final Counter HITS = MetricsRegistry.getInstance().counter("banksim_cache_requests_total",
+        "Cache lookups, by cache and result", "cache", "etag", "result", "hit");
+    private static final Counter MISSES = MetricsRegistry.getInstance().counter("banksim_cache_requests_total",
+        "Cache lookups, by cache and result", "cache", "etag", "result", "miss");
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * Answers 304 if the client's copy is current. Call before querying.
+     *
+     * @param exchange HTTP exchange
+     * @param etag Current entity tag
+     * @return true if a 304 was sent and the handler should stop
+     */
+    static boolean notModified(HttpExchange exchange, String etag) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        if (!matches(ifNoneMatch, etag)) {
+            MISSES.increment();
+            return false;
+        }
+        HITS.increment();
+        tag(exchange, etag);
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return true;
+    }
+
+    /**
+     * Sets the validators on a successful response, so clients revalidate
+     * with If-None-Match rather than reuse it blindly
+     *
+     * @param exchange HTTP exchange
+     * @param etag Entity tag taken before the query
+     */
+    static void tag(HttpExchange exchange, String etag) {
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "private, no-cache");
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        String opaque = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || opaque(candidate).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -1,20 +1,21 @@
 package com.banksim.controller;
 
+import com.banksim.PathParams;
+import com.banksim.Router;
+import com.banksim.json.JsonReader;
+import com.banksim.json.JsonResponse;
+import com.banksim.json.ModelJson;
 import com.banksim.model.Customer;
+import com.banksim.server.RateLimiter;
 import com.banksim.service.CustomerService;
-import com.banksim.util.JwtUtil;
+import com.banksim.session.SessionManager;
+import com.banksim.trace.Trace;
+import com.banksim.util.JwtClaims;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * REST controller for customer operations.
@@ -23,55 +24,34 @@ import java.util.Map;
  * @version 1.0
  * @since 2024
  */
-public class CustomerController implements HttpHandler {
+public class CustomerController {
     
     private final CustomerService customerService;
+    private final SessionManager sessionManager;
     
     public CustomerController() {
         this.customerService = new CustomerService();
+        this.sessionManager = SessionManager.getInstance();
     }
     
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        // CORS headers
-        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
-            return;
-        }
-        
-        // Validate JWT
-        String token = extractToken(exchange);
-        if (token == null || !JwtUtil.validateToken(token)) {
-            sendJsonResponse(exchange, 401, createErrorResponse("Unauthorized"));
-            return;
-        }
-        
-        String path = exchange.getRequestURI().getPath();
-        String method = exchange.getRequestMethod();
+    /**
+     * Registers the customer endpoints
+     * 
+     * @param router Application router
+     */
+    public void register(Router router) {
+        RateLimiter.Group customers = RateLimiter.getInstance().group("customers");
         
-        try {
-            if (path.equals("/api/customers") && "POST".equals(method)) {
-                handleCreateCustomer(exchange);
-            } else if (path.equals("/api/customers") && "GET".equals(method)) {
-                handleGetAllCustomers(exchange);
-            } else if (path.matches("/api/customers/\\d+") && "GET".equals(method)) {
-                handleGetCustomer(exchange, path);
-            } else if (path.matches("/api/customers/\\d+") && "PUT".equals(method)) {
-                handleUpdateCustomer(exchange, path);
-            } else if (path.matches("/api/customers/\\d+/verify-key") && "POST".equals(method)) {
-                handleVerifyPersonalKey(exchange, path);
-            } else if (path.matches("/api/customers/user/\\d+") && "GET".equals(method)) {
-                handleGetCustomerByUserId(exchange, path);
-            } else {
-                sendJsonResponse(exchange, 404, createErrorResponse("Endpoint not found"));
-            }
-        } catch (Exception e) {
-            sendJsonResponse(exchange, 500, createErrorResponse("Internal server error: " + e.getMessage()));
-        }
+        router.post("/api/customers", SecuredRoute.of(sessionManager, customers, this::handleCreateCustomer));
+        router.get("/api/customers", SecuredRoute.of(sessionManager, customers, this::handleGetAllCustomers));
+        router.get("/api/customers/{customerId:long}", 
+            SecuredRoute.of(sessionManager, customers, this::handleGetCustomer));
+        router.put("/api/customers/{customerId:long}", 
+            SecuredRoute.of(sessionManager, customers, this::handleUpdateCustomer));
+        router.post("/api/customers/{customerId:long}/verify-key", 
+            SecuredRoute.of(sessionManager, customers, this::handleVerifyPersonalKey));
+        router.get("/api/customers/user/{userId:long}", 
+            SecuredRoute.of(sessionManager, customers, this::handleGetCustomerByUserId));
     }
     
     /**
@@ -80,91 +60,85 @@ public class CustomerController implements HttpHandler {
      *           "phone": "1234567890", "address": "123 Main St", "dateOfBirth": "1990-01-01", 
      *           "personalKey": "Abcd1234"}
      */
-    private void handleCreateCustomer(HttpExchange exchange) throws IOException {
-        Map<String, String> requestBody = parseJsonRequest(exchange);
-        
+    private void handleCreateCustomer(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long userId = Long.parseLong(requestBody.get("userId"));
-            String firstName = requestBody.get("firstName");
-            String lastName = requestBody.get("lastName");
-            String email = requestBody.get("email");
-            String phone = requestBody.get("phone");
-            String address = requestBody.get("address");
-            LocalDate dateOfBirth = LocalDate.parse(requestBody.get("dateOfBirth"));
-            String personalKey = requestBody.get("personalKey");
+            CustomerRequest request;
+            int span = Trace.begin("parse");
+            try {
+                request = CustomerRequest.read(new JsonReader(exchange.getRequestBody()));
+            } finally {
+                Trace.end(span);
+            }
             
-            Customer customer = customerService.createCustomer(
-                userId, firstName, lastName, email, phone, address, dateOfBirth, personalKey);
+            Long userId = JsonReader.require(request.userId(), "userId");
+            LocalDate dateOfBirth = LocalDate.parse(JsonReader.require(request.dateOfBirth(), "dateOfBirth"));
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("customer", customerToMap(customer));
-            response.put("message", "Customer created successfully");
+            Customer customer = customerService.createCustomer(
+                userId, request.firstName(), request.lastName(), request.email(), request.phone(), 
+                request.address(), dateOfBirth, request.personalKey());
             
-            sendJsonResponse(exchange, 201, response);
+            sendCustomer(exchange, 201, customer, "Customer created successfully");
             
+        } catch (JsonReader.JsonParseException e) {
+            JsonResponse.error(exchange, 400, "Invalid input: " + e.getMessage());
         } catch (CustomerService.CustomerServiceException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 400, e.getMessage());
         } catch (Exception e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid input: " + e.getMessage()));
+            JsonResponse.error(exchange, 400, "Invalid input: " + e.getMessage());
         }
     }
     
     /**
      * GET /api/customers
      */
-    private void handleGetAllCustomers(HttpExchange exchange) throws IOException {
+    private void handleGetAllCustomers(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         List<Customer> customers = customerService.getAllCustomers();
         
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", true);
-        response.put("customers", customers.stream().map(this::customerToMap).toArray());
-        response.put("count", customers.size());
-        
-        sendJsonResponse(exchange, 200, response);
+        JsonResponse.send(exchange, 200, json -> {
+            json.beginObject().name("success").value(true);
+            json.name("customers");
+            ModelJson.writeCustomers(json, customers);
+            json.name("count").value(customers.size()).endObject();
+        });
     }
     
     /**
      * GET /api/customers/{id}
      */
-    private void handleGetCustomer(HttpExchange exchange, String path) throws IOException {
+    private void handleGetCustomer(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long customerId = Long.parseLong(path.substring(path.lastIndexOf("/") + 1));
+            Long customerId = params.getLong("customerId");
             
             Customer customer = customerService.getCustomerById(customerId);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("customer", customerToMap(customer));
-            
-            sendJsonResponse(exchange, 200, response);
+            sendCustomer(exchange, 200, customer, null);
             
         } catch (CustomerService.CustomerServiceException e) {
-            sendJsonResponse(exchange, 404, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 404, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid customer ID"));
+            JsonResponse.error(exchange, 400, "Invalid customer ID");
         }
     }
     
     /**
      * GET /api/customers/user/{userId}
      */
-    private void handleGetCustomerByUserId(HttpExchange exchange, String path) throws IOException {
+    private void handleGetCustomerByUserId(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long userId = Long.parseLong(path.substring(path.lastIndexOf("/") + 1));
+            Long userId = params.getLong("userId");
             
             Customer customer = customerService.getCustomerByUserId(userId);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("customer", customerToMap(customer));
-            
-            sendJsonResponse(exchange, 200, response);
+            sendCustomer(exchange, 200, customer, null);
             
         } catch (CustomerService.CustomerServiceException e) {
-            sendJsonResponse(exchange, 404, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 404, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid user ID"));
+            JsonResponse.error(exchange, 400, "Invalid user ID");
         }
     }
     
@@ -173,32 +147,29 @@ public class CustomerController implements HttpHandler {
      * Request: {"firstName": "John", "lastName": "Doe", "email": "john@email.com", 
      *           "phone": "1234567890", "address": "123 Main St"}
      */
-    private void handleUpdateCustomer(HttpExchange exchange, String path) throws IOException {
+    private void handleUpdateCustomer(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long customerId = Long.parseLong(path.substring(path.lastIndexOf("/") + 1));
-            
-            Map<String, String> requestBody = parseJsonRequest(exchange);
+            Long customerId = params.getLong("customerId");
             
-            String firstName = requestBody.get("firstName");
-            String lastName = requestBody.get("lastName");
-            String email = requestBody.get("email");
-            String phone = requestBody.get("phone");
-            String address = requestBody.get("address");
+            CustomerRequest request;
+            int span = Trace.begin("parse");
+            try {
+                request = CustomerRequest.read(new JsonReader(exchange.getRequestBody()));
+            } finally {
+                Trace.end(span);
+            }
             
             Customer customer = customerService.updateCustomer(
-                customerId, firstName, lastName, email, phone, address);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("customer", customerToMap(customer));
-            response.put("message", "Customer updated successfully");
+                customerId, request.firstName(), request.lastName(), request.email(), 
+                request.phone(), request.address());
             
-            sendJsonResponse(exchange, 200, response);
+            sendCustomer(exchange, 200, customer, "Customer updated successfully");
             
         } catch (CustomerService.CustomerServiceException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 400, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid customer ID"));
+            JsonResponse.error(exchange, 400, "Invalid customer ID");
         }
     }
     
@@ -207,144 +178,82 @@ public class CustomerController implements HttpHandler {
      * Request: {"personalKey": "Abcd1234"}
      * Response: {"success": true, "verified": true}
      */
-    private void handleVerifyPersonalKey(HttpExchange exchange, String path) throws IOException {
+    private void handleVerifyPersonalKey(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            String customerId = path.split("/")[3];
-            Long id = Long.parseLong(customerId);
-            
-            Map<String, String> requestBody = parseJsonRequest(exchange);
-            String personalKey = requestBody.get("personalKey");
+            Long id = params.getLong("customerId");
             
-            boolean verified = customerService.verifyPersonalKey(id, personalKey);
+            CustomerRequest request;
+            int span = Trace.begin("parse");
+            try {
+                request = CustomerRequest.read(new JsonReader(exchange.getRequestBody()));
+            } finally {
+                Trace.end(span);
+            }
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("verified", verified);
-            response.put("message", verified ? "Personal key verified" : "Personal key does not match");
+            boolean verified = customerService.verifyPersonalKey(id, request.personalKey());
             
-            sendJsonResponse(exchange, 200, response);
+            JsonResponse.send(exchange, 200, json -> json.beginObject()
+                .name("success").value(true)
+                .name("verified").value(verified)
+                .name("message").value(verified ? "Personal key verified" : "Personal key does not match")
+                .endObject());
             
         } catch (CustomerService.CustomerServiceException e) {
-            sendJsonResponse(exchange, 404, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 404, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid customer ID"));
+            JsonResponse.error(exchange, 400, "Invalid customer ID");
         }
     }
     
-    /**
-     * Converts Customer to Map
-     */
-    private Map<String, Object> customerToMap(Customer customer) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", customer.getId());
-        map.put("userId", customer.getUserId());
-        map.put("customerCode", customer.getCustomerCode());
-        map.put("firstName", customer.getFirstName());
-        map.put("lastName", customer.getLastName());
-        map.put("email", customer.getEmail());
-        map.put("phone", customer.getPhone());
-        map.put("address", customer.getAddress());
-        map.put("dateOfBirth", customer.getDateOfBirth().toString());
-        map.put("verified", customer.isVerified());
-        map.put("createdAt", customer.getCreatedAt().toString());
-        return map;
-    }
-    
-    private String extractToken(HttpExchange exchange) {
-        String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            return authHeader.substring(7);
-        }
-        return null;
-    }
-    
-    private Map<String, String> parseJsonRequest(HttpExchange exchange) throws IOException {
-        BufferedReader reader = new BufferedReader(
-            new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
-        
-        StringBuilder body = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            body.append(line);
-        }
-        
-        return parseSimpleJson(body.toString());
-    }
-    
-    private Map<String, String> parseSimpleJson(String json) {
-        Map<String, String> map = new HashMap<>();
-        
-        json = json.trim();
-        if (json.startsWith("{")) json = json.substring(1);
-        if (json.endsWith("}")) json = json.substring(0, json.length() - 1);
-        
-        String[] pairs = json.split(",");
-        for (String pair : pairs) {
-            String[] keyValue = pair.split(":", 2);
-            if (keyValue.length == 2) {
-                String key = keyValue[0].trim().replace("\"", "");
-                String value = keyValue[1].trim().replace("\"", "");
-                map.put(key, value);
-            }
-        }
-        
-        return map;
-    }
-    
-    private void sendJsonResponse(HttpExchange exchange, int statusCode, Map<String, Object> data) 
+    private void sendCustomer(HttpExchange exchange, int statusCode, Customer customer, String message) 
             throws IOException {
-        
-        String json = mapToJson(data);
-        
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, json.getBytes(StandardCharsets.UTF_8).length);
-        
-        OutputStream os = exchange.getResponseBody();
-        os.write(json.getBytes(StandardCharsets.UTF_8));
-        os.close();
+        JsonResponse.send(exchange, statusCode, json -> {
+            json.beginObject().name("success").value(true);
+            json.name("customer");
+            ModelJson.writeCustomer(json, customer);
+            if (message != null) {
+                json.name("message").value(message);
+            }
+            json.endObject();
+        });
     }
     
-    private String mapToJson(Map<String, Object> map) {
-        StringBuilder json = new StringBuilder("{");
+    /**
+     * Customer create, update and verify-key request body. Each endpoint
+     * reads only the fields it needs.
+     */
+    record CustomerRequest(Long userId, String firstName, String lastName, String email, String phone, 
+                           String address, String dateOfBirth, String personalKey) {
         
-        int count = 0;
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (count > 0) json.append(",");
-            
-            json.append("\"").append(entry.getKey()).append("\":");
+        static CustomerRequest read(JsonReader reader) throws IOException {
+            Long userId = null;
+            String firstName = null;
+            String lastName = null;
+            String email = null;
+            String phone = null;
+            String address = null;
+            String dateOfBirth = null;
+            String personalKey = null;
             
-            Object value = entry.getValue();
-            if (value instanceof String) {
-                json.append("\"").append(value).append("\"");
-            } else if (value instanceof Boolean || value instanceof Number) {
-                json.append(value);
-            } else if (value.getClass().isArray()) {
-                json.append("[");
-                Object[] arr = (Object[]) value;
-                for (int i = 0; i < arr.length; i++) {
-                    if (i > 0) json.append(",");
-                    if (arr[i] instanceof Map) {
-                        json.append(mapToJson((Map<String, Object>) arr[i]));
-                    } else {
-                        json.append("\"").append(arr[i]).append("\"");
-                    }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "userId": userId = reader.nextLong(); break;
+                    case "firstName": firstName = reader.nextString(); break;
+                    case "lastName": lastName = reader.nextString(); break;
+                    case "email": email = reader.nextString(); break;
+                    case "phone": phone = reader.nextString(); break;
+                    case "address": address = reader.nextString(); break;
+                    case "dateOfBirth": dateOfBirth = reader.nextString(); break;
+                    case "personalKey": personalKey = reader.nextString(); break;
+                    default: reader.skipValue(); break;
                 }
-                json.append("]");
-            } else {
-                json.append("\"").append(value.toString()).append("\"");
             }
+            reader.endObject();
             
-            count++;
+            return new CustomerRequest(userId, firstName, lastName, email, phone, address, 
+                dateOfBirth, personalKey);
         }
-        
-        json.append("}");
-        return json.toString();
-    }
-    
-    private Map<String, Object> createErrorResponse(String message) {
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", false);
-        response.put("error", message);
-        return response;
     }
 }
@@ -0,0 +1,297 @@
+package com.banksim.controller;
+
+import com.banksim.PathParams;
+import com.banksim.Router;
+import com.banksim.config.ServerConfig;
+import com.banksim.json.JsonResponse;
+import com.banksim.json.JsonWriter;
+import com.banksim.json.ModelJson;
+import com.banksim.model.LedgerEvent;
+import com.banksim.outbox.OutboxRelay;
+import com.banksim.server.RateLimiter;
+import com.banksim.session.SessionManager;
+import com.banksim.util.JwtClaims;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * REST controller streaming ledger changes from the {@link OutboxRelay}
+ * to downstream systems, in place of polling recent transactions.
+ * 
+ * Consumers keep the offset of the last event they handled and resume
+ * after it, by long-poll or Server-Sent Events. Offsets older than
+ * outbox.retention.days are gone. Both endpoints need the ADMIN role, as
+ * they expose every account.
+ * 
+ * Streams and long-polls hold a thread while they wait, so they run in a
+ * context of their own, on an executor of {@link #getThreads()} threads and
+ * outside the admission and concurrency limits of the API. At most
+ * outbox.stream.max.clients streams are open at once, each for at most
+ * outbox.stream.max.duration ms before the client reconnects with
+ * Last-Event-ID, and at most outbox.longpoll.max.clients long-polls wait
+ * at once. Clients past either cap get 503 with Retry-After. Waits end
+ * early when the server starts shutting down.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class EventsController {
+    
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    // Waits are cut in slices this long to notice a shutdown
+    private static final long WAIT_SLICE_MILLIS = 1000;
+    // How soon a disconnected stream client reconnects
+    private static final long RETRY_MILLIS = 1000;
+    // Threads beyond the caps, for polls that do not wait and for rejections
+    private static final int SPARE_THREADS = 2;
+    
+    private final SessionManager sessionManager;
+    private final OutboxRelay relay;
+    private final BooleanSupplier stopping;
+    private final long maxWaitMillis;
+    private final int maxLongPolls;
+    private final int maxStreams;
+    private final long maxStreamNanos;
+    private final long heartbeatMillis;
+    private final AtomicInteger streams = new AtomicInteger();
+    private final AtomicInteger longPolls = new AtomicInteger();
+    
+    /**
+     * Creates the controller
+     * 
+     * @param relay Relay the events come from
+     * @param stopping Tells waits to end, such as ServerLifecycle::isDraining
+     */
+    public EventsController(OutboxRelay relay, BooleanSupplier stopping) {
+        ServerConfig config = ServerConfig.getInstance();
+        this.sessionManager = SessionManager.getInstance();
+        this.relay = relay;
+        this.stopping = stopping;
+        this.maxWaitMillis = Long.parseLong(config.getProperty("outbox.longpoll.max.wait", "30000"));
+        this.maxLongPolls = Integer.parseInt(config.getProperty("outbox.longpoll.max.clients", "16"));
+        this.maxStreams = Integer.parseInt(config.getProperty("outbox.stream.max.clients", "8"));
+        this.maxStreamNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(config.getProperty("outbox.stream.max.duration", "300000")));
+        this.heartbeatMillis = Long.parseLong(config.getProperty("outbox.stream.heartbeat", "15000"));
+    }
+    
+    /**
+     * Threads the event context needs: one per stream and long-poll, and a few more
+     */
+    public int getThreads() {
+        return maxStreams + maxLongPolls + SPARE_THREADS;
+    }
+    
+    /**
+     * Registers the event endpoints
+     * 
+     * @param router Router of the /api/events/ context
+     */
+    public void register(Router router) {
+        RateLimiter.Group events = RateLimiter.getInstance().group("events");
+        router.get("/api/events/ledger", SecuredRoute.of(sessionManager, events, this::handlePoll));
+        router.get("/api/events/ledger/stream", SecuredRoute.of(sessionManager, events, this::handleStream));
+    }
+    
+    /**
+     * GET /api/events/ledger?after=120&limit=100&wait=25000
+     * Returns events after the offset, waiting up to wait ms for one when
+     * there are none yet. Without after, starts at the newest event.
+     */
+    private void handlePoll(HttpExchange exchange, PathParams params, JwtClaims principal) throws IOException {
+        if (!isAdmin(principal)) {
+            JsonResponse.error(exchange, 403, "Admin role required");
+            return;
+        }
+        if (relay.getPosition() < 0) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            JsonResponse.error(exchange, 503, "Event stream is starting");
+            return;
+        }
+        
+        long after;
+        int limit;
+        long waitMillis;
+        try {
+            after = parse(exchange, "after", relay.getPosition());
+            limit = (int) Math.max(1, Math.min(MAX_LIMIT, parse(exchange, "limit", DEFAULT_LIMIT)));
+            waitMillis = Math.max(0, Math.min(maxWaitMillis, parse(exchange, "wait", 0)));
+        } catch (NumberFormatException e) {
+            JsonResponse.error(exchange, 400, "Invalid number format");
+            return;
+        }
+        if (after < 0) {
+            JsonResponse.error(exchange, 400, "after must be an offset of 0 or more");
+            return;
+        }
+        
+        if (waitMillis > 0 && longPolls.incrementAndGet() > maxLongPolls) {
+            longPolls.decrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "5");
+            JsonResponse.error(exchange, 503, "Too many long-polls");
+            return;
+        }
+        
+        List<LedgerEvent> events;
+        try {
+            events = relay.read(after, limit);
+            if (events.isEmpty() && waitMillis > 0 && await(after, waitMillis)) {
+                events = relay.read(after, limit);
+            }
+        } catch (SQLException e) {
+            JsonResponse.error(exchange, 500, "Database error: " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            JsonResponse.error(exchange, 503, "Server shutting down");
+            return;
+        } finally {
+            if (waitMillis > 0) {
+                longPolls.decrementAndGet();
+            }
+        }
+        
+        List<LedgerEvent> result = events;
+        long next = result.isEmpty() ? after : result.get(result.size() - 1).offset();
+        JsonResponse.send(exchange, 200, json -> {
+            json.beginObject().name("success").value(true);
+            json.name("events").beginArray();
+            for (LedgerEvent event : result) {
+                ModelJson.writeLedgerEvent(json, event);
+            }
+            json.endArray();
+            json.name("count").value(result.size())
+                .name("nextOffset").value(next)
+                .endObject();
+        });
+    }
+    
+    /**
+     * GET /api/events/ledger/stream?after=120
+     * Streams events as Server-Sent Events with the offset as the event id.
+     * Resumes after the Last-Event-ID header, else after, else at the
+     * newest event. A comment line is sent when idle so proxies keep the
+     * connection open.
+     */
+    private void handleStream(HttpExchange exchange, PathParams params, JwtClaims principal) throws IOException {
+        if (!isAdmin(principal)) {
+            JsonResponse.error(exchange, 403, "Admin role required");
+            return;
+        }
+        if (relay.getPosition() < 0) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            JsonResponse.error(exchange, 503, "Event stream is starting");
+            return;
+        }
+        
+        long cursor;
+        try {
+            String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+            cursor = lastEventId != null ? Long.parseLong(lastEventId.trim())
+                : parse(exchange, "after", relay.getPosition());
+        } catch (NumberFormatException e) {
+            JsonResponse.error(exchange, 400, "Invalid number format");
+            return;
+        }
+        if (cursor < 0) {
+            JsonResponse.error(exchange, 400, "Last-Event-ID and after must be offsets of 0 or more");
+            return;
+        }
+        
+        if (streams.incrementAndGet() > maxStreams) {
+            streams.decrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "5");
+            JsonResponse.error(exchange, 503, "Too many event streams");
+            return;
+        }
+        
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                stream(os, cursor);
+            }
+        } catch (SQLException e) {
+            // Headers are sent; the client reconnects with Last-Event-ID
+            System.err.println("[EventsController] Event stream ended: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            streams.decrementAndGet();
+        }
+    }
+    
+    private void stream(OutputStream os, long cursor) throws IOException, SQLException, InterruptedException {
+        long deadline = System.nanoTime() + maxStreamNanos;
+        JsonWriter json = new JsonWriter();
+        os.write(("retry: " + RETRY_MILLIS + "\n\n").getBytes(StandardCharsets.US_ASCII));
+        os.flush();
+        
+        while (!stopping.getAsBoolean() && !relay.isClosed() && System.nanoTime() - deadline < 0) {
+            List<LedgerEvent> events = relay.read(cursor, MAX_LIMIT);
+            for (LedgerEvent event : events) {
+                json.reset();
+                ModelJson.writeLedgerEvent(json, event);
+                os.write(("id: " + event.offset() + "\nevent: ledger\ndata: ").getBytes(StandardCharsets.US_ASCII));
+                json.writeTo(os);
+                os.write('\n');
+                os.write('\n');
+                cursor = event.offset();
+            }
+            if (!events.isEmpty()) {
+                os.flush();
+                continue;
+            }
+            if (!await(cursor, heartbeatMillis)) {
+                // Also how a client that went away is noticed
+                os.write(": keep-alive\n\n".getBytes(StandardCharsets.US_ASCII));
+                os.flush();
+            }
+        }
+    }
+    
+    /**
+     * Waits for an event after the offset, giving up early on shutdown
+     */
+    private boolean await(long after, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!stopping.getAsBoolean() && !relay.isClosed()) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            if (relay.awaitAfter(after, Math.min(remaining, WAIT_SLICE_MILLIS))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static long parse(HttpExchange exchange, String name, long defaultValue) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                String[] kv = param.split("=");
+                if (kv.length == 2 && name.equals(kv[0])) {
+                    return Long.parseLong(kv[1]);
+                }
+            }
+        }
+        return defaultValue;
+    }
+    
+    private static boolean isAdmin(JwtClaims principal) {
+        return "ADMIN".equals(principal.getRole());
+    }
+}
@@ -0,0 +1,71 @@
+package com.banksim.controller;
+
+import com.banksim.PathParams;
+import com.banksim.Router;
+import com.banksim.metrics.MetricsRegistry;
+import com.banksim.server.ResponseCompression;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * REST controller exposing the metrics registry to Prometheus.
+ * 
+ * The endpoint is unauthenticated, like any scrape target, so it should be
+ * reachable only from the monitoring network; set metrics.enabled=false to
+ * leave it unregistered.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class MetricsController {
+    
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    
+    private final MetricsRegistry registry;
+    private final ResponseCompression compression;
+    
+    public MetricsController() {
+        this.registry = MetricsRegistry.getInstance();
+        this.compression = ResponseCompression.fromConfig();
+    }
+    
+    /**
+     * Registers the metrics endpoint
+     * 
+     * @param router Application router
+     */
+    public void register(Router router) {
+        router.get("/api/metrics", this::handleScrape);
+    }
+    
+    /**
+     * GET /api/metrics
+     * Returns every registered metric in the Prometheus text format
+     */
+    private void handleScrape(HttpExchange exchange, PathParams params) throws IOException {
+        byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+        
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        
+        ResponseCompression.Encoding encoding = compression.select(exchange, body.length);
+        if (encoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding.token());
+            exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = compression.wrap(exchange.getResponseBody(), encoding)) {
+                os.write(body);
+            }
+            return;
+        }
+        
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
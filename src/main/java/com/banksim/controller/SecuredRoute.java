@@ -0,0 +1,64 @@
+package com.banksim.controller;
+
+import com.banksim.PathParams;
+import com.banksim.Route;
+import com.banksim.json.JsonResponse;
+import com.banksim.server.RateLimiter;
+import com.banksim.session.SessionManager;
+import com.banksim.trace.Trace;
+import com.banksim.util.JwtClaims;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Route that requires an authenticated caller.
+ *
+ * {@link #of} adapts it to a plain {@link Route} that resolves the bearer
+ * credential through the {@link SessionManager} and answers 401 before the
+ * handler runs when it is missing or invalid, then applies the caller's
+ * rate limit for the route's endpoint group. Sub-requests of a batch
+ * arrive already authenticated and skip the token check. Both checks are
+ * timed as the request's "auth" span.
+ *
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@FunctionalInterface
+interface SecuredRoute {
+
+    void handle(HttpExchange exchange, PathParams params, JwtClaims principal) throws IOException;
+
+    static Route of(SessionManager sessionManager, RateLimiter.Group rateLimit, SecuredRoute route) {
+        return (exchange, params) -> {
+            JwtClaims principal;
+            boolean allowed;
+            int span = Trace.begin("auth");
+            try {
+                principal = exchange instanceof BatchExchange
+                    ? ((BatchExchange) exchange).principal()
+                    : sessionManager.authenticate(extractToken(exchange));
+                allowed = principal != null && rateLimit.check(exchange, principal);
+            } finally {
+                Trace.end(span);
+            }
+            if (principal == null) {
+                JsonResponse.error(exchange, 401, "Unauthorized");
+                return;
+            }
+            if (!allowed) {
+                return;
+            }
+            route.handle(exchange, params, principal);
+        };
+    }
+
+    static String extractToken(HttpExchange exchange) {
+        String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            return authHeader.substring(7);
+        }
+        return null;
+    }
+}
@@ -1,18 +1,22 @@
 package com.banksim.controller;
 
+import com.banksim.PathParams;
+import com.banksim.Router;
+import com.banksim.audit.Actor;
+import com.banksim.json.JsonReader;
+import com.banksim.json.JsonResponse;
+import com.banksim.json.ModelJson;
 import com.banksim.model.Transaction;
+import com.banksim.server.RateLimiter;
+import com.banksim.service.AccountVersions;
 import com.banksim.service.TransactionService;
-import com.banksim.util.JwtUtil;
+import com.banksim.session.SessionManager;
+import com.banksim.trace.Trace;
+import com.banksim.util.JwtClaims;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,80 +27,63 @@ import java.util.Map;
  * @version 1.0
  * @since 2024
  */
-public class TransactionController implements HttpHandler {
+public class TransactionController {
     
     private final TransactionService transactionService;
+    private final SessionManager sessionManager;
+    private final AccountVersions accountVersions;
     
     public TransactionController() {
         this.transactionService = new TransactionService();
+        this.sessionManager = SessionManager.getInstance();
+        this.accountVersions = AccountVersions.getInstance();
     }
     
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        // CORS headers
-        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
-        
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
-            return;
-        }
-        
-        // Validate JWT
-        String token = extractToken(exchange);
-        if (token == null || !JwtUtil.validateToken(token)) {
-            sendJsonResponse(exchange, 401, createErrorResponse("Unauthorized"));
-            return;
-        }
-        
-        String path = exchange.getRequestURI().getPath();
-        String method = exchange.getRequestMethod();
+    /**
+     * Registers the transaction endpoints
+     * 
+     * @param router Application router
+     */
+    public void register(Router router) {
+        RateLimiter.Group statements = RateLimiter.getInstance().group("statements");
+        RateLimiter.Group transactions = RateLimiter.getInstance().group("transactions");
         
-        try {
-            if (path.equals("/api/transactions/deposit") && "POST".equals(method)) {
-                handleDeposit(exchange);
-            } else if (path.equals("/api/transactions/withdraw") && "POST".equals(method)) {
-                handleWithdraw(exchange);
-            } else if (path.equals("/api/transactions/transfer") && "POST".equals(method)) {
-                handleTransfer(exchange);
-            } else if (path.matches("/api/transactions/statement/\\d+") && "GET".equals(method)) {
-                handleGetStatement(exchange, path);
-            } else if (path.matches("/api/transactions/account/\\d+") && "GET".equals(method)) {
-                handleGetAccountTransactions(exchange, path);
-            } else {
-                sendJsonResponse(exchange, 404, createErrorResponse("Endpoint not found"));
-            }
-        } catch (Exception e) {
-            sendJsonResponse(exchange, 500, createErrorResponse("Internal server error: " + e.getMessage()));
-        }
+        router.post("/api/transactions/deposit", 
+            SecuredRoute.of(sessionManager, transactions, this::handleDeposit));
+        router.post("/api/transactions/withdraw", 
+            SecuredRoute.of(sessionManager, transactions, this::handleWithdraw));
+        router.post("/api/transactions/transfer", 
+            SecuredRoute.of(sessionManager, transactions, this::handleTransfer));
+        router.get("/api/transactions/statement/{accountId:long}", 
+            SecuredRoute.of(sessionManager, statements, this::handleGetStatement));
+        router.get("/api/transactions/account/{accountId:long}", 
+            SecuredRoute.of(sessionManager, statements, this::handleGetAccountTransactions));
     }
     
     /**
      * POST /api/transactions/deposit
      * Request: {"accountId": 1, "amount": "100.00", "description": "Deposit"}
      */
-    private void handleDeposit(HttpExchange exchange) throws IOException {
-        Map<String, String> requestBody = parseJsonRequest(exchange);
-        
+    private void handleDeposit(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long accountId = Long.parseLong(requestBody.get("accountId"));
-            BigDecimal amount = new BigDecimal(requestBody.get("amount"));
-            String description = requestBody.getOrDefault("description", "Deposit");
-            
-            Transaction transaction = transactionService.deposit(accountId, amount, description);
+            CashRequest request;
+            int span = Trace.begin("parse");
+            try {
+                request = CashRequest.read(new JsonReader(exchange.getRequestBody()), "Deposit");
+            } finally {
+                Trace.end(span);
+            }
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("transaction", transactionToMap(transaction));
-            response.put("message", "Deposit successful");
+            Transaction transaction = transactionService.deposit(
+                request.accountId(), request.amount(), request.description(), actor(exchange, principal));
             
-            sendJsonResponse(exchange, 200, response);
+            sendTransaction(exchange, transaction, "Deposit successful");
             
         } catch (TransactionService.TransactionServiceException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 400, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid number format"));
+            JsonResponse.error(exchange, 400, "Invalid number format");
         }
     }
     
@@ -104,27 +91,26 @@ public class TransactionController implements HttpHandler {
      * POST /api/transactions/withdraw
      * Request: {"accountId": 1, "amount": "50.00", "description": "Withdrawal"}
      */
-    private void handleWithdraw(HttpExchange exchange) throws IOException {
-        Map<String, String> requestBody = parseJsonRequest(exchange);
-        
+    private void handleWithdraw(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long accountId = Long.parseLong(requestBody.get("accountId"));
-            BigDecimal amount = new BigDecimal(requestBody.get("amount"));
-            String description = requestBody.getOrDefault("description", "Withdrawal");
-            
-            Transaction transaction = transactionService.withdraw(accountId, amount, description);
+            CashRequest request;
+            int span = Trace.begin("parse");
+            try {
+                request = CashRequest.read(new JsonReader(exchange.getRequestBody()), "Withdrawal");
+            } finally {
+                Trace.end(span);
+            }
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("transaction", transactionToMap(transaction));
-            response.put("message", "Withdrawal successful");
+            Transaction transaction = transactionService.withdraw(
+                request.accountId(), request.amount(), request.description(), actor(exchange, principal));
             
-            sendJsonResponse(exchange, 200, response);
+            sendTransaction(exchange, transaction, "Withdrawal successful");
             
         } catch (TransactionService.TransactionServiceException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 400, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid number format"));
+            JsonResponse.error(exchange, 400, "Invalid number format");
         }
     }
     
@@ -132,39 +118,49 @@ public class TransactionController implements HttpHandler {
      * POST /api/transactions/transfer
      * Request: {"fromAccountId": 1, "toAccountId": 2, "amount": "75.00", "description": "Transfer"}
      */
-    private void handleTransfer(HttpExchange exchange) throws IOException {
-        Map<String, String> requestBody = parseJsonRequest(exchange);
-        
+    private void handleTransfer(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long fromAccountId = Long.parseLong(requestBody.get("fromAccountId"));
-            Long toAccountId = Long.parseLong(requestBody.get("toAccountId"));
-            BigDecimal amount = new BigDecimal(requestBody.get("amount"));
-            String description = requestBody.getOrDefault("description", "Transfer");
+            TransferRequest request;
+            int span = Trace.begin("parse");
+            try {
+                request = TransferRequest.read(new JsonReader(exchange.getRequestBody()));
+            } finally {
+                Trace.end(span);
+            }
             
             Map<String, Transaction> transactions = transactionService.transfer(
-                fromAccountId, toAccountId, amount, description);
+                request.fromAccountId(), request.toAccountId(), request.amount(), request.description(),
+                actor(exchange, principal));
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("withdrawalTransaction", transactionToMap(transactions.get("withdrawal")));
-            response.put("depositTransaction", transactionToMap(transactions.get("deposit")));
-            response.put("message", "Transfer successful");
-            
-            sendJsonResponse(exchange, 200, response);
+            JsonResponse.send(exchange, 200, json -> {
+                json.beginObject().name("success").value(true);
+                json.name("withdrawalTransaction");
+                ModelJson.writeTransaction(json, transactions.get("withdrawal"));
+                json.name("depositTransaction");
+                ModelJson.writeTransaction(json, transactions.get("deposit"));
+                json.name("message").value("Transfer successful").endObject();
+            });
             
         } catch (TransactionService.TransactionServiceException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 400, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid number format"));
+            JsonResponse.error(exchange, 400, "Invalid number format");
         }
     }
     
     /**
      * GET /api/transactions/statement/{accountId}?limit=10&offset=0
+     * Supports If-None-Match; answers 304 without querying when unchanged
      */
-    private void handleGetStatement(HttpExchange exchange, String path) throws IOException {
+    private void handleGetStatement(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long accountId = Long.parseLong(path.substring(path.lastIndexOf("/") + 1));
+            Long accountId = params.getLong("accountId");
+            String etag = accountVersions.etag(accountId);
+            if (ConditionalGet.notModified(exchange, etag)) {
+                return;
+            }
             
             // Parse query parameters
             String query = exchange.getRequestURI().getQuery();
@@ -172,8 +168,8 @@ public class TransactionController implements HttpHandler {
             int offset = 0;
             
             if (query != null) {
-                String[] params = query.split("&");
-                for (String param : params) {
+                String[] pairs = query.split("&");
+                for (String param : pairs) {
                     String[] kv = param.split("=");
                     if (kv.length == 2) {
                         if ("limit".equals(kv[0])) limit = Integer.parseInt(kv[1]);
@@ -184,158 +180,125 @@ public class TransactionController implements HttpHandler {
             
             List<Transaction> transactions = transactionService.getStatement(accountId, limit, offset);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("accountId", accountId);
-            response.put("transactions", transactions.stream().map(this::transactionToMap).toArray());
-            response.put("count", transactions.size());
-            
-            sendJsonResponse(exchange, 200, response);
+            ConditionalGet.tag(exchange, etag);
+            sendTransactions(exchange, accountId, transactions);
             
         } catch (TransactionService.TransactionServiceException e) {
-            sendJsonResponse(exchange, 404, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 404, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid account ID"));
+            JsonResponse.error(exchange, 400, "Invalid account ID");
         }
     }
     
     /**
      * GET /api/transactions/account/{accountId}
+     * Supports If-None-Match; answers 304 without querying when unchanged
      */
-    private void handleGetAccountTransactions(HttpExchange exchange, String path) throws IOException {
+    private void handleGetAccountTransactions(HttpExchange exchange, PathParams params, JwtClaims principal) 
+            throws IOException {
         try {
-            Long accountId = Long.parseLong(path.substring(path.lastIndexOf("/") + 1));
+            Long accountId = params.getLong("accountId");
+            String etag = accountVersions.etag(accountId);
+            if (ConditionalGet.notModified(exchange, etag)) {
+                return;
+            }
             
             List<Transaction> transactions = transactionService.getAllTransactions(accountId);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("accountId", accountId);
-            response.put("transactions", transactions.stream().map(this::transactionToMap).toArray());
-            response.put("count", transactions.size());
-            
-            sendJsonResponse(exchange, 200, response);
+            ConditionalGet.tag(exchange, etag);
+            sendTransactions(exchange, accountId, transactions);
             
         } catch (TransactionService.TransactionServiceException e) {
-            sendJsonResponse(exchange, 404, createErrorResponse(e.getMessage()));
+            JsonResponse.error(exchange, 404, e.getMessage());
         } catch (NumberFormatException e) {
-            sendJsonResponse(exchange, 400, createErrorResponse("Invalid account ID"));
+            JsonResponse.error(exchange, 400, "Invalid account ID");
         }
     }
     
     /**
-     * Converts Transaction to Map
+     * User and client behind a request, for the audit trail of money movements
      */
-    private Map<String, Object> transactionToMap(Transaction transaction) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", transaction.getId());
-        map.put("transactionUuid", transaction.getTransactionUuid());
-        map.put("accountId", transaction.getAccountId());
-        map.put("transactionType", transaction.getTransactionType());
-        map.put("amount", transaction.getAmount().toString());
-        map.put("balanceAfter", transaction.getBalanceAfter().toString());
-        map.put("description", transaction.getDescription());
-        map.put("createdAt", transaction.getCreatedAt().toString());
-        return map;
+    private static Actor actor(HttpExchange exchange, JwtClaims principal) {
+        return new Actor(principal.getUserId(), exchange.getRemoteAddress().getAddress().getHostAddress(),
+            exchange.getRequestHeaders().getFirst("User-Agent"));
     }
     
-    private String extractToken(HttpExchange exchange) {
-        String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            return authHeader.substring(7);
-        }
-        return null;
+    private void sendTransaction(HttpExchange exchange, Transaction transaction, String message) 
+            throws IOException {
+        JsonResponse.send(exchange, 200, json -> {
+            json.beginObject().name("success").value(true);
+            json.name("transaction");
+            ModelJson.writeTransaction(json, transaction);
+            json.name("message").value(message).endObject();
+        });
     }
     
-    private Map<String, String> parseJsonRequest(HttpExchange exchange) throws IOException {
-        BufferedReader reader = new BufferedReader(
-            new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
-        
-        StringBuilder body = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            body.append(line);
-        }
-        
-        return parseSimpleJson(body.toString());
+    private void sendTransactions(HttpExchange exchange, Long accountId, List<Transaction> transactions) 
+            throws IOException {
+        JsonResponse.send(exchange, 200, json -> {
+            json.beginObject()
+                .name("success").value(true)
+                .name("accountId").value(accountId);
+            json.name("transactions");
+            ModelJson.writeTransactions(json, transactions);
+            json.name("count").value(transactions.size()).endObject();
+        });
     }
     
-    private Map<String, String> parseSimpleJson(String json) {
-        Map<String, String> map = new HashMap<>();
-        
-        json = json.trim();
-        if (json.startsWith("{")) json = json.substring(1);
-        if (json.endsWith("}")) json = json.substring(0, json.length() - 1);
+    /**
+     * Deposit or withdrawal request body
+     */
+    record CashRequest(Long accountId, BigDecimal amount, String description) {
         
-        String[] pairs = json.split(",");
-        for (String pair : pairs) {
-            String[] keyValue = pair.split(":", 2);
-            if (keyValue.length == 2) {
-                String key = keyValue[0].trim().replace("\"", "");
-                String value = keyValue[1].trim().replace("\"", "");
-                map.put(key, value);
+        static CashRequest read(JsonReader reader, String defaultDescription) throws IOException {
+            Long accountId = null;
+            BigDecimal amount = null;
+            String description = null;
+            
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "accountId": accountId = reader.nextLong(); break;
+                    case "amount": amount = reader.nextBigDecimal(); break;
+                    case "description": description = reader.nextString(); break;
+                    default: reader.skipValue(); break;
+                }
             }
+            reader.endObject();
+            
+            return new CashRequest(JsonReader.require(accountId, "accountId"), 
+                JsonReader.require(amount, "amount"), 
+                description != null ? description : defaultDescription);
         }
-        
-        return map;
     }
     
-    private void sendJsonResponse(HttpExchange exchange, int statusCode, Map<String, Object> data) 
-            throws IOException {
-        
-        String json = mapToJson(data);
-        
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, json.getBytes(StandardCharsets.UTF_8).length);
-        
-        OutputStream os = exchange.getResponseBody();
-        os.write(json.getBytes(StandardCharsets.UTF_8));
-        os.close();
-    }
-    
-    private String mapToJson(Map<String, Object> map) {
-        StringBuilder json = new StringBuilder("{");
+    /**
+     * Transfer request body
+     */
+    record TransferRequest(Long fromAccountId, Long toAccountId, BigDecimal amount, String description) {
         
-        int count = 0;
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (count > 0) json.append(",");
-            
-            json.append("\"").append(entry.getKey()).append("\":");
+        static TransferRequest read(JsonReader reader) throws IOException {
+            Long fromAccountId = null;
+            Long toAccountId = null;
+            BigDecimal amount = null;
+            String description = null;
             
-            Object value = entry.getValue();
-            if (value instanceof String) {
-                json.append("\"").append(value).append("\"");
-            } else if (value instanceof Boolean || value instanceof Number) {
-                json.append(value);
-            } else if (value instanceof Map) {
-                json.append(mapToJson((Map<String, Object>) value));
-            } else if (value.getClass().isArray()) {
-                json.append("[");
-                Object[] arr = (Object[]) value;
-                for (int i = 0; i < arr.length; i++) {
-                    if (i > 0) json.append(",");
-                    if (arr[i] instanceof Map) {
-                        json.append(mapToJson((Map<String, Object>) arr[i]));
-                    } else {
-                        json.append("\"").append(arr[i]).append("\"");
-                    }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "fromAccountId": fromAccountId = reader.nextLong(); break;
+                    case "toAccountId": toAccountId = reader.nextLong(); break;
+                    case "amount": amount = reader.nextBigDecimal(); break;
+                    case "description": description = reader.nextString(); break;
+                    default: reader.skipValue(); break;
                 }
-                json.append("]");
-            } else {
-                json.append("\"").append(value.toString()).append("\"");
             }
+            reader.endObject();
             
-            count++;
+            return new TransferRequest(JsonReader.require(fromAccountId, "fromAccountId"), 
+                JsonReader.require(toAccountId, "toAccountId"), 
+                JsonReader.require(amount, "amount"), 
+                description != null ? description : "Transfer");
         }
-        
-        json.append("}");
-        return json.toString();
-    }
-    
-    private Map<String, Object> createErrorResponse(String message) {
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", false);
-        response.put("error", message);
-        return response;
     }
 }
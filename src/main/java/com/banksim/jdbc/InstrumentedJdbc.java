@@ -0,0 +1,331 @@
+package com.banksim.jdbc;
+
+import com.banksim.jfr.SqlStatementEvent;
+import com.banksim.metrics.MetricsRegistry;
+import com.banksim.trace.Trace;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Instrumented JDBC layer: wraps connections so every statement executed
+ * through them is timed and counted per statement template (see
+ * {@link StatementMetrics}).
+ * 
+ * Statements slower than the threshold are logged with their template and
+ * the types of their parameters, never the values. With debug.sql.logging
+ * every statement is logged that way.
+ * 
+ * Each execution is also a {@link SqlStatementEvent} for flight recordings
+ * and a "db" span on the request's {@link Trace}. With trace.sql.comments
+ * the request id is appended to the SQL sent to the driver as a comment,
+ * so it shows up in the database's own logs and pg_stat_activity; metrics
+ * stay keyed by the SQL as written.
+ * 
+ * Wrappers are dynamic proxies, as the driver's objects implement the
+ * whole JDBC interfaces and only a handful of calls are observed; every
+ * other call, including unwrap, goes straight to the driver.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class InstrumentedJdbc {
+    
+    private final boolean logAll;
+    private final long slowThresholdNanos;
+    private final boolean sqlComments;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    
+    /**
+     * Creates the layer and registers its connection gauge
+     * 
+     * @param logAll Log every statement (debug.sql.logging)
+     * @param slowThresholdMillis Log statements taking at least this long; negative disables
+     */
+    public InstrumentedJdbc(boolean logAll, long slowThresholdMillis) {
+        this(logAll, slowThresholdMillis, false);
+    }
+    
+    /**
+     * Creates the layer and registers its connection gauge
+     * 
+     * @param logAll Log every statement (debug.sql.logging)
+     * @param slowThresholdMillis Log statements taking at least this long; negative disables
+     * @param sqlComments Tag SQL sent to the driver with the request id (trace.sql.comments)
+     */
+    public InstrumentedJdbc(boolean logAll, long slowThresholdMillis, boolean sqlComments) {
+        this.logAll = logAll;
+        this.slowThresholdNanos = slowThresholdMillis < 0 ? Long.MAX_VALUE
+            : TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.sqlComments = sqlComments;
+        MetricsRegistry.getInstance().gauge("banksim_db_connections_open",
+            "Database connections currently open", openConnections::get);
+    }
+    
+    /**
+     * Wraps a connection fresh from the driver
+     * 
+     * @param connection Driver connection
+     * @return Instrumented connection
+     */
+    public Connection wrap(Connection connection) {
+        openConnections.incrementAndGet();
+        return proxy(Connection.class, new ConnectionHandler(connection));
+    }
+    
+    /**
+     * Connections opened through this layer and not yet closed
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+    
+    /**
+     * Normalizes SQL to the template used for metrics and logging
+     * 
+     * @param sql SQL text
+     * @return SQL with literals and comments replaced and whitespace collapsed
+     */
+    public static String template(String sql) {
+        return StatementMetrics.normalize(sql);
+    }
+    
+    /**
+     * Appends the current request id as a comment, when enabled and inside a request.
+     * Ids are validated by Trace.isValidId, so they cannot close the comment.
+     */
+    private String tag(String sql) {
+        String id = sqlComments ? Trace.currentId() : null;
+        return id == null ? sql : sql + " /* request_id=" + id + " */";
+    }
+    
+    private Object[] tagged(Object[] args) {
+        if (!sqlComments || args == null || args.length == 0 || !(args[0] instanceof String)) {
+            return args;
+        }
+        Object[] copy = args.clone();
+        copy[0] = tag((String) args[0]);
+        return copy;
+    }
+    
+    private void finish(StatementMetrics metrics, long start, SqlStatementEvent event, int span,
+                        String[] parameterTypes, int parameterCount, long rows, boolean failed) {
+        long elapsed = System.nanoTime() - start;
+        Trace.end(span);
+        event.end();
+        if (event.shouldCommit()) {
+            event.statement = metrics.template;
+            event.rows = rows;
+            event.failed = failed;
+            event.commit();
+        }
+        metrics.duration.record(elapsed);
+        if (failed) {
+            metrics.errors.increment();
+        } else if (rows > 0) {
+            metrics.rows.add(rows);
+        }
+        if (logAll || elapsed >= slowThresholdNanos) {
+            log(metrics, elapsed, parameterTypes, parameterCount, rows, failed);
+        }
+    }
+    
+    private void log(StatementMetrics metrics, long elapsedNanos, String[] parameterTypes, int parameterCount,
+                     long rows, boolean failed) {
+        StringBuilder line = new StringBuilder(128 + metrics.template.length());
+        line.append("[InstrumentedJdbc] ")
+            .append(elapsedNanos >= slowThresholdNanos ? "Slow statement " : "Statement ")
+            .append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)).append(" ms");
+        if (failed) {
+            line.append(", failed");
+        } else if (rows >= 0) {
+            line.append(", ").append(rows).append(" rows");
+        }
+        line.append(": ").append(metrics.template);
+        if (parameterCount > 0) {
+            line.append(" params=[");
+            for (int i = 0; i < parameterCount; i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                // Setter name without "set", e.g. BigDecimal; values are never logged
+                String setter = parameterTypes[i];
+                line.append(setter == null ? "unset" : setter.substring(3));
+            }
+            line.append(']');
+        }
+        System.out.println(line);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(InstrumentedJdbc.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+    
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * Hands out instrumented statements and tracks the connection's close
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+        
+        private final Connection target;
+        private boolean closed;
+        
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (!closed) {
+                    closed = true;
+                    openConnections.decrementAndGet();
+                }
+                return InstrumentedJdbc.invoke(target, method, args);
+            }
+            
+            boolean prepare = name.startsWith("prepare");
+            Object result = InstrumentedJdbc.invoke(target, method, prepare ? tagged(args) : args);
+            if (result instanceof PreparedStatement && prepare) {
+                StatementHandler handler = new StatementHandler((Statement) result,
+                    StatementMetrics.forSql((String) args[0]));
+                // Proxy the declared type, so prepareCall still yields a CallableStatement
+                return proxy(method.getReturnType(), handler);
+            }
+            if (result instanceof Statement && name.equals("createStatement")) {
+                return proxy(Statement.class, new StatementHandler((Statement) result, null));
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * Times executions and records the parameter types set on a statement.
+     * A plain statement has no metrics of its own; each execute names its SQL.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        
+        private final Statement target;
+        private final StatementMetrics prepared;
+        private String[] parameterTypes = new String[8];
+        private int parameterCount;
+        private StatementMetrics lastExecuted;
+        
+        StatementHandler(Statement target, StatementMetrics prepared) {
+            this.target = target;
+            this.prepared = prepared;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            if (name.startsWith("set") && prepared != null && args != null && args.length >= 2
+                    && args[0] instanceof Integer) {
+                recordParameter((Integer) args[0], name);
+            } else if (name.equals("clearParameters")) {
+                parameterCount = 0;
+                Arrays.fill(parameterTypes, null);
+            } else if (name.equals("getResultSet")) {
+                ResultSet resultSet = (ResultSet) InstrumentedJdbc.invoke(target, method, args);
+                return resultSet == null || lastExecuted == null ? resultSet : countRows(resultSet, lastExecuted);
+            }
+            return InstrumentedJdbc.invoke(target, method, args);
+        }
+        
+        private Object execute(Method method, Object[] args) throws Throwable {
+            StatementMetrics metrics = args != null && args.length > 0 && args[0] instanceof String
+                ? StatementMetrics.forSql((String) args[0]) : prepared;
+            if (metrics == null) {
+                // executeBatch on a plain statement: the batched SQL is not known here
+                return InstrumentedJdbc.invoke(target, method, args);
+            }
+            lastExecuted = metrics;
+            
+            SqlStatementEvent event = new SqlStatementEvent();
+            event.begin();
+            int span = Trace.begin("db", metrics.template);
+            long start = System.nanoTime();
+            Object result;
+            try {
+                // Only SQL passed to execute needs tagging; a prepared statement was tagged when prepared
+                result = InstrumentedJdbc.invoke(target, method, prepared == null ? tagged(args) : args);
+            } catch (Throwable e) {
+                finish(metrics, start, event, span, parameterTypes, parameterCount, -1, true);
+                throw e;
+            }
+            
+            if (result instanceof ResultSet) {
+                // Rows are counted as they are read, after this timing ends
+                finish(metrics, start, event, span, parameterTypes, parameterCount, -1, false);
+                return countRows((ResultSet) result, metrics);
+            }
+            finish(metrics, start, event, span, parameterTypes, parameterCount, updateCount(result), false);
+            return result;
+        }
+        
+        private void recordParameter(int index, String setter) {
+            if (index < 1 || index > 1024) {
+                return;
+            }
+            if (index > parameterTypes.length) {
+                parameterTypes = Arrays.copyOf(parameterTypes, Math.max(index, parameterTypes.length * 2));
+            }
+            parameterTypes[index - 1] = setter;
+            parameterCount = Math.max(parameterCount, index);
+        }
+        
+        private long updateCount(Object result) {
+            if (result instanceof Integer || result instanceof Long) {
+                return ((Number) result).longValue();
+            }
+            if (result instanceof int[]) {
+                long total = 0;
+                for (int count : (int[]) result) {
+                    total += Math.max(0, count);
+                }
+                return total;
+            }
+            if (result instanceof long[]) {
+                long total = 0;
+                for (long count : (long[]) result) {
+                    total += Math.max(0, count);
+                }
+                return total;
+            }
+            // execute(): true means a result set, whose rows are counted when read
+            return -1;
+        }
+        
+        private ResultSet countRows(ResultSet resultSet, StatementMetrics metrics) {
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+                Object result = InstrumentedJdbc.invoke(resultSet, method, args);
+                if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+                    metrics.rows.increment();
+                }
+                return result;
+            });
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.banksim.jdbc;
+
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.LatencyHistogram;
+import com.banksim.metrics.MetricsRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timings, row counts and errors for one statement template.
+ * 
+ * A template is the SQL text with literals replaced by '?', comments
+ * removed and whitespace collapsed, so a prepared statement and the same query built by string
+ * concatenation share one entry and no customer data reaches the metrics
+ * or the log. Entries are cached by the SQL text as written; past
+ * MAX_TEMPLATES distinct templates further ones share an "other" entry to
+ * keep the number of series bounded.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+final class StatementMetrics {
+    
+    private static final int MAX_TEMPLATES = 200;
+    private static final int MAX_CACHED_SQL = 2000;
+    private static final String OTHER = "other";
+    
+    private static final Map<String, StatementMetrics> BY_SQL = new ConcurrentHashMap<>();
+    private static final Map<String, StatementMetrics> BY_TEMPLATE = new ConcurrentHashMap<>();
+    
+    final String template;
+    final LatencyHistogram duration;
+    final Counter rows;
+    final Counter errors;
+    
+    private StatementMetrics(String template) {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.template = template;
+        this.duration = registry.histogram("banksim_db_statement_duration_seconds",
+            "Time to execute a statement, by template", "statement", template);
+        this.rows = registry.counter("banksim_db_statement_rows_total",
+            "Rows read or written, by statement template", "statement", template);
+        this.errors = registry.counter("banksim_db_statement_errors_total",
+            "Statements that failed, by template", "statement", template);
+    }
+    
+    /**
+     * Gets the entry for a SQL text, normalizing it on first sight
+     * 
+     * @param sql SQL as passed to the driver
+     * @return Metrics for its template
+     */
+    static StatementMetrics forSql(String sql) {
+        StatementMetrics metrics = BY_SQL.get(sql);
+        if (metrics != null) {
+            return metrics;
+        }
+        metrics = forTemplate(normalize(sql));
+        // Literal-laden SQL from plain statements can be unbounded; only the templates must be kept
+        if (BY_SQL.size() < MAX_CACHED_SQL) {
+            BY_SQL.put(sql, metrics);
+        }
+        return metrics;
+    }
+    
+    private static StatementMetrics forTemplate(String template) {
+        StatementMetrics metrics = BY_TEMPLATE.get(template);
+        if (metrics != null) {
+            return metrics;
+        }
+        synchronized (BY_TEMPLATE) {
+            metrics = BY_TEMPLATE.get(template);
+            if (metrics == null) {
+                if (BY_TEMPLATE.size() >= MAX_TEMPLATES) {
+                    return BY_TEMPLATE.computeIfAbsent(OTHER, StatementMetrics::new);
+                }
+                metrics = new StatementMetrics(template);
+                BY_TEMPLATE.put(template, metrics);
+            }
+            return metrics;
+        }
+    }
+    
+    /**
+     * Replaces string and numeric literals with '?', drops comments and
+     * collapses whitespace
+     * 
+     * @param sql SQL text
+     * @return Template safe to log and export
+     */
+    static String normalize(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // Skip to the closing quote; '' is an escaped quote inside the literal
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                out.append('?');
+                i++;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int close = sql.indexOf("*/", i + 2);
+                i = close < 0 ? length : close + 2;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int close = sql.indexOf('\n', i + 2);
+                i = close < 0 ? length : close;
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (out.length() > 0 && out.charAt(out.length() - 1) != ' ' && i < length) {
+                    out.append(' ');
+                }
+            } else if (isDigit(c) && (out.length() == 0 || !isIdentifierPart(out.charAt(out.length() - 1)))) {
+                while (i < length && (isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                out.append('?');
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        // A trailing comment leaves the space before it
+        int end = out.length();
+        return end > 0 && out.charAt(end - 1) == ' ' ? out.substring(0, end - 1) : out.toString();
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
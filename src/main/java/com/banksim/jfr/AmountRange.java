@@ -0,0 +1,41 @@
+package com.banksim.jfr;
+
+import java.math.BigDecimal;
+
+/**
+ * Order-of-magnitude ranges for amounts recorded in events, so a
+ * recording shows the size of a movement without its exact value.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class AmountRange {
+    
+    private static final BigDecimal[] UPPER_BOUNDS = {
+        BigDecimal.TEN, BigDecimal.valueOf(100), BigDecimal.valueOf(1_000),
+        BigDecimal.valueOf(10_000), BigDecimal.valueOf(100_000)
+    };
+    private static final String[] LABELS = {"<10", "10-100", "100-1K", "1K-10K", "10K-100K", ">=100K"};
+    
+    private AmountRange() {
+    }
+    
+    /**
+     * Gets the range label for an amount
+     * 
+     * @param amount Amount, may be null
+     * @return Label such as "100-1K", or "none"
+     */
+    public static String of(BigDecimal amount) {
+        if (amount == null) {
+            return "none";
+        }
+        for (int i = 0; i < UPPER_BOUNDS.length; i++) {
+            if (amount.compareTo(UPPER_BOUNDS[i]) < 0) {
+                return LABELS[i];
+            }
+        }
+        return LABELS[LABELS.length - 1];
+    }
+}
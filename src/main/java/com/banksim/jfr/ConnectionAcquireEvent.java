@@ -0,0 +1,28 @@
+package com.banksim.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Time spent obtaining a database connection.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@Name("com.banksim.ConnectionAcquire")
+@Label("Connection Acquire")
+@Category({"BankSim", "Database"})
+@Description("Obtaining a JDBC connection from the driver")
+@StackTrace(false)
+@Threshold("5 ms")
+public class ConnectionAcquireEvent extends Event {
+    
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,67 @@
+package com.banksim.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Always-on flight recording. The JDK's low-overhead "default" settings
+ * plus the BankSim events are kept in a bounded ring on disk (jfr.max.age,
+ * jfr.max.size), so after a latency spike the last stretch of history can
+ * be saved with {@code jcmd <pid> JFR.dump name=banksim}; it is also
+ * written to jfr.dump.file when the JVM exits.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class FlightRecording {
+    
+    private static final List<Class<? extends Event>> EVENTS = List.of(HttpExchangeEvent.class,
+        ConnectionAcquireEvent.class, SqlStatementEvent.class, PasswordHashEvent.class,
+        JwtValidationEvent.class, TransactionEvent.class);
+    
+    private FlightRecording() {
+    }
+    
+    /**
+     * Starts the recording
+     * 
+     * @param maxAgeMillis Oldest data kept
+     * @param maxSizeBytes Most data kept on disk
+     * @param dumpFile File written when the JVM exits
+     * @return Running recording
+     */
+    public static Recording start(long maxAgeMillis, long maxSizeBytes, String dumpFile)
+            throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName("banksim");
+        for (Class<? extends Event> type : EVENTS) {
+            // Thresholds come from each event's @Threshold
+            recording.enable(type);
+        }
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofMillis(maxAgeMillis));
+        recording.setMaxSize(maxSizeBytes);
+        
+        Path path = Paths.get(dumpFile);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        recording.setDestination(path);
+        recording.setDumpOnExit(true);
+        recording.start();
+        
+        System.out.println("[FlightRecording] Recording started (max age " + maxAgeMillis / 60_000
+            + " min, max size " + maxSizeBytes / (1024 * 1024) + " MB), dumped to " + path + " on exit");
+        return recording;
+    }
+}
@@ -0,0 +1,35 @@
+package com.banksim.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * One API request, from routing to the response being sent.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@Name("com.banksim.HttpExchange")
+@Label("HTTP Exchange")
+@Category({"BankSim", "HTTP"})
+@Description("An API request handled by the router")
+@StackTrace(false)
+@Threshold("10 ms")
+public class HttpExchangeEvent extends Event {
+    
+    @Label("Method")
+    public String method;
+    
+    @Label("Route")
+    @Description("Path template, or 'unmatched'")
+    public String route;
+    
+    @Label("Status")
+    public int status;
+}
@@ -0,0 +1,31 @@
+package com.banksim.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Authenticating a bearer token.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@Name("com.banksim.JwtValidation")
+@Label("JWT Validation")
+@Category({"BankSim", "Security"})
+@Description("Checking a token, from the verified-token cache or by signature")
+@StackTrace(false)
+@Threshold("1 ms")
+public class JwtValidationEvent extends Event {
+    
+    @Label("Cache Hit")
+    public boolean cacheHit;
+    
+    @Label("Valid")
+    public boolean valid;
+}
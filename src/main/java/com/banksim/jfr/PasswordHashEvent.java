@@ -0,0 +1,36 @@
+package com.banksim.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Hashing a new password or one attempt to verify it. Deliberately slow,
+ * so every occurrence is recorded.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@Name("com.banksim.PasswordHash")
+@Label("Password Hash")
+@Category({"BankSim", "Security"})
+@Description("Key stretching for a password hash or verification")
+@StackTrace(false)
+public class PasswordHashEvent extends Event {
+    
+    @Label("Operation")
+    @Description("hash or verify")
+    public String operation;
+    
+    @Label("Strength")
+    @Description("Work factor; 2^strength digest rounds")
+    public int strength;
+    
+    @Label("Matched")
+    @Description("Whether a verification matched; false for hashing")
+    public boolean matched;
+}
@@ -0,0 +1,36 @@
+package com.banksim.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * One statement execution. The SQL is the redacted template, so no
+ * parameter values are recorded. Keeps the stack trace, which names the
+ * repository method that ran it.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@Name("com.banksim.SqlStatement")
+@Label("SQL Statement")
+@Category({"BankSim", "Database"})
+@Description("A statement executed through the instrumented JDBC layer")
+@Threshold("10 ms")
+public class SqlStatementEvent extends Event {
+    
+    @Label("Statement")
+    @Description("SQL template with literals replaced by '?'")
+    public String statement;
+    
+    @Label("Rows")
+    @Description("Rows updated, or -1 for queries, whose rows are read afterwards")
+    public long rows;
+    
+    @Label("Failed")
+    public boolean failed;
+}
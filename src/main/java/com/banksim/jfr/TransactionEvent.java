@@ -0,0 +1,80 @@
+package com.banksim.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.math.BigDecimal;
+
+/**
+ * One TransactionService operation. Accounts are identified by their
+ * internal ids, never account numbers, and amounts by {@link AmountRange}.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+@Name("com.banksim.Transaction")
+@Label("Transaction Operation")
+@Category({"BankSim", "Business"})
+@Description("A deposit, withdrawal, transfer or statement read")
+@StackTrace(false)
+public class TransactionEvent extends Event {
+    
+    @Label("Operation")
+    public String operation;
+    
+    @Label("Account Id")
+    @Description("Internal id of the account, or 0 if it was not found")
+    public int accountId;
+    
+    @Label("Counterparty Account Id")
+    @Description("Destination of a transfer, otherwise 0")
+    public int counterpartyAccountId;
+    
+    @Label("Amount Range")
+    public String amountRange;
+    
+    @Label("Succeeded")
+    public boolean succeeded;
+    
+    /**
+     * Creates and begins an event
+     * 
+     * @param operation Operation name, such as "deposit"
+     * @param amount Amount moved, or null for reads
+     * @return Started event
+     */
+    public static TransactionEvent start(String operation, BigDecimal amount) {
+        TransactionEvent event = new TransactionEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.amountRange = AmountRange.of(amount);
+            event.begin();
+        }
+        return event;
+    }
+    
+    /**
+     * Ends the event and commits it if recording is enabled
+     * 
+     * @param accountId Account id, or null if unknown
+     * @param counterpartyAccountId Counterparty account id, or null
+     * @param succeeded true if the operation completed
+     */
+    public void finish(Integer accountId, Integer counterpartyAccountId, boolean succeeded) {
+        if (!isEnabled()) {
+            return;
+        }
+        end();
+        if (shouldCommit()) {
+            this.accountId = accountId != null ? accountId : 0;
+            this.counterpartyAccountId = counterpartyAccountId != null ? counterpartyAccountId : 0;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,620 @@
+package com.banksim.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming JSON pull parser reading UTF-8 straight from an InputStream.
+ *
+ * Request bodies are decoded as they are read, without first collecting the
+ * body into a String. Callers walk the document with beginObject/nextName/
+ * next* and skip fields they do not know. Scalar reads are lenient in the
+ * same way the old controller parsers were: numbers may arrive quoted
+ * ("100.00") or bare (100.00), and nextString accepts bare literals.
+ *
+ * Bodies come from unauthenticated clients, so nesting deeper than
+ * {@link #MAX_DEPTH} and bodies over {@link #MAX_BYTES} fail the parse
+ * rather than exhausting the stack or the heap.
+ *
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class JsonReader {
+
+    /**
+     * Token types returned by {@link #peek()}
+     */
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    /**
+     * Deepest nesting of objects and arrays accepted
+     */
+    public static final int MAX_DEPTH = 64;
+
+    /**
+     * Largest body read, in bytes
+     */
+    public static final long MAX_BYTES = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    // Scopes kept on the nesting stack
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int EXPECT_NAME = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int EMPTY_ARRAY = 6;
+    private static final int NONEMPTY_ARRAY = 7;
+    private static final int EXPECT_VALUE = 8;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private long consumed;
+
+    private int[] stack = new int[16];
+    private int depth = 1;
+
+    private char[] chars = new char[64];
+
+    /**
+     * Creates a reader over a UTF-8 encoded stream. The stream is not closed.
+     *
+     * @param in Request body
+     */
+    public JsonReader(InputStream in) {
+        this.in = in;
+        this.stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Returns the type of the next token without consuming it
+     *
+     * @return Next token
+     * @throws IOException if the input is malformed or cannot be read
+     */
+    public Token peek() throws IOException {
+        int c = nextNonWhitespace();
+        switch (stack[depth - 1]) {
+            case EMPTY_OBJECT:
+                return c == '}' ? Token.END_OBJECT : Token.NAME;
+            case NONEMPTY_OBJECT:
+                return c == '}' ? Token.END_OBJECT : Token.NAME;
+            case EXPECT_NAME:
+                return Token.NAME;
+            case EMPTY_ARRAY:
+            case NONEMPTY_ARRAY:
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_DOCUMENT:
+                if (c == -1) {
+                    return Token.END_DOCUMENT;
+                }
+                break;
+            default:
+                break;
+        }
+
+        if (c == ',' && stack[depth - 1] == NONEMPTY_ARRAY) {
+            pos++;
+            stack[depth - 1] = EXPECT_VALUE;
+            c = nextNonWhitespace();
+        }
+        switch (c) {
+            case '{': return Token.BEGIN_OBJECT;
+            case '[': return Token.BEGIN_ARRAY;
+            case '"': return Token.STRING;
+            case 't':
+            case 'f': return Token.BOOLEAN;
+            case 'n': return Token.NULL;
+            case -1: return Token.END_DOCUMENT;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Consumes the opening brace of an object
+     */
+    public void beginObject() throws IOException {
+        beforeValue();
+        expect('{');
+        push(EMPTY_OBJECT);
+    }
+
+    /**
+     * Consumes the closing brace of the current object
+     */
+    public void endObject() throws IOException {
+        int scope = stack[depth - 1];
+        if (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT) {
+            throw syntaxError("Expected end of object");
+        }
+        nextNonWhitespace();
+        expect('}');
+        depth--;
+    }
+
+    /**
+     * Consumes the opening bracket of an array
+     */
+    public void beginArray() throws IOException {
+        beforeValue();
+        expect('[');
+        push(EMPTY_ARRAY);
+    }
+
+    /**
+     * Consumes the closing bracket of the current array
+     */
+    public void endArray() throws IOException {
+        int scope = stack[depth - 1];
+        if (scope != EMPTY_ARRAY && scope != NONEMPTY_ARRAY) {
+            throw syntaxError("Expected end of array");
+        }
+        nextNonWhitespace();
+        expect(']');
+        depth--;
+    }
+
+    /**
+     * Returns true if the current object or array has another element
+     */
+    public boolean hasNext() throws IOException {
+        int scope = stack[depth - 1];
+        int c = nextNonWhitespace();
+        switch (scope) {
+            case EMPTY_OBJECT:
+                return c != '}';
+            case EMPTY_ARRAY:
+                return c != ']';
+            case NONEMPTY_OBJECT:
+            case NONEMPTY_ARRAY:
+                if (c == ',') {
+                    pos++;
+                    stack[depth - 1] = scope == NONEMPTY_OBJECT ? EXPECT_NAME : EXPECT_VALUE;
+                    return true;
+                }
+                if (c == (scope == NONEMPTY_OBJECT ? '}' : ']')) {
+                    return false;
+                }
+                throw syntaxError("Expected ',' or end of " + (scope == NONEMPTY_OBJECT ? "object" : "array"));
+            case EXPECT_NAME:
+            case EXPECT_VALUE:
+                return true;
+            default:
+                return c != -1;
+        }
+    }
+
+    /**
+     * Consumes the next property name and the colon following it
+     *
+     * @return Property name
+     */
+    public String nextName() throws IOException {
+        int scope = stack[depth - 1];
+        if (scope == NONEMPTY_OBJECT) {
+            if (nextNonWhitespace() != ',') {
+                throw syntaxError("Expected ','");
+            }
+            pos++;
+        } else if (scope != EMPTY_OBJECT && scope != EXPECT_NAME) {
+            throw syntaxError("Expected a value, not a name");
+        }
+
+        if (nextNonWhitespace() != '"') {
+            throw syntaxError("Expected property name");
+        }
+        pos++;
+        String name = readQuoted();
+        if (nextNonWhitespace() != ':') {
+            throw syntaxError("Expected ':'");
+        }
+        pos++;
+        stack[depth - 1] = DANGLING_NAME;
+        return name;
+    }
+
+    /**
+     * Reads a string value. Bare numbers and booleans are returned as their
+     * literal text.
+     *
+     * @return String value, or null for a JSON null
+     */
+    public String nextString() throws IOException {
+        beforeValue();
+        int c = nextNonWhitespace();
+        if (c == '"') {
+            pos++;
+            return readQuoted();
+        }
+        if (c == '{' || c == '[') {
+            throw syntaxError("Expected a scalar value");
+        }
+        int length = readLiteral();
+        if (isNull(length)) {
+            return null;
+        }
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Reads an integral value, quoted or bare
+     *
+     * @return Long value, or null for a JSON null
+     * @throws NumberFormatException if the value is not an integer
+     */
+    public Long nextLong() throws IOException {
+        String text = nextString();
+        if (text == null) {
+            return null;
+        }
+        return Long.parseLong(text.trim());
+    }
+
+    /**
+     * Reads a decimal value, quoted or bare
+     *
+     * @return BigDecimal value, or null for a JSON null
+     * @throws NumberFormatException if the value is not a number
+     */
+    public BigDecimal nextBigDecimal() throws IOException {
+        String text = nextString();
+        if (text == null) {
+            return null;
+        }
+        return new BigDecimal(text.trim());
+    }
+
+    /**
+     * Reads a boolean value, quoted or bare
+     *
+     * @return Boolean value, or null for a JSON null
+     */
+    public Boolean nextBoolean() throws IOException {
+        String text = nextString();
+        if (text == null) {
+            return null;
+        }
+        if ("true".equals(text)) {
+            return Boolean.TRUE;
+        }
+        if ("false".equals(text)) {
+            return Boolean.FALSE;
+        }
+        throw syntaxError("Expected a boolean");
+    }
+
+    /**
+     * Skips the next value, including nested objects and arrays
+     */
+    public void skipValue() throws IOException {
+        int c = nextNonWhitespaceAfterSeparator();
+        if (c == '{') {
+            beginObject();
+            while (hasNext()) {
+                nextName();
+                skipValue();
+            }
+            endObject();
+        } else if (c == '[') {
+            beginArray();
+            while (hasNext()) {
+                skipValue();
+            }
+            endArray();
+        } else {
+            nextString();
+        }
+    }
+
+    /**
+     * Reads the next value as plain Java objects: objects become a
+     * LinkedHashMap, arrays an ArrayList, numbers a BigDecimal. For payloads
+     * whose shape is not known up front; typed fields should use the next*
+     * methods instead.
+     *
+     * @return Value, or null for a JSON null
+     */
+    public Object nextValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> object = new LinkedHashMap<>();
+                beginObject();
+                while (hasNext()) {
+                    String name = nextName();
+                    object.put(name, nextValue());
+                }
+                endObject();
+                return object;
+            case BEGIN_ARRAY:
+                List<Object> array = new ArrayList<>();
+                beginArray();
+                while (hasNext()) {
+                    array.add(nextValue());
+                }
+                endArray();
+                return array;
+            case NUMBER:
+                return nextBigDecimal();
+            case BOOLEAN:
+                return nextBoolean();
+            default:
+                return nextString();
+        }
+    }
+
+    /**
+     * Returns a required value, failing the parse if it was absent
+     *
+     * @param value Value read from the document
+     * @param name Property name, for the error message
+     * @return value
+     * @throws JsonParseException if value is null
+     */
+    public static <T> T require(T value, String name) throws JsonParseException {
+        if (value == null) {
+            throw new JsonParseException("Missing required field: " + name);
+        }
+        return value;
+    }
+
+    private void beforeValue() throws IOException {
+        int scope = stack[depth - 1];
+        switch (scope) {
+            case DANGLING_NAME:
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                break;
+            case EMPTY_ARRAY:
+            case EXPECT_VALUE:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                if (nextNonWhitespace() != ',') {
+                    throw syntaxError("Expected ','");
+                }
+                pos++;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                throw syntaxError("Multiple top-level values");
+            default:
+                throw syntaxError("Expected a name, not a value");
+        }
+    }
+
+    /**
+     * Returns the first character of the next value, stepping over an array
+     * separator without changing the scope
+     */
+    private int nextNonWhitespaceAfterSeparator() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == ',' && stack[depth - 1] == NONEMPTY_ARRAY) {
+            pos++;
+            stack[depth - 1] = EXPECT_VALUE;
+            c = nextNonWhitespace();
+        }
+        return c;
+    }
+
+    private void push(int scope) throws JsonParseException {
+        // The document scope does not count as nesting
+        if (depth > MAX_DEPTH) {
+            throw syntaxError("Nesting deeper than " + MAX_DEPTH + " levels");
+        }
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = scope;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (nextNonWhitespace() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    private boolean isNull(int length) {
+        return length == 4 && chars[0] == 'n' && chars[1] == 'u' && chars[2] == 'l' && chars[3] == 'l';
+    }
+
+    /**
+     * Reads an unquoted literal (number, true, false, null) into chars
+     */
+    private int readLiteral() throws IOException {
+        int length = 0;
+        while (true) {
+            if (pos == limit && !fill()) {
+                break;
+            }
+            int b = buffer[pos];
+            if (b == ',' || b == '}' || b == ']' || b == ':' || b == ' ' || b == '\t'
+                    || b == '\r' || b == '\n') {
+                break;
+            }
+            if (b < 0x20 || b == '"' || b == '{' || b == '[') {
+                throw syntaxError("Unexpected character in literal");
+            }
+            ensureChars(length + 1);
+            chars[length++] = (char) (b & 0xFF);
+            pos++;
+        }
+        if (length == 0) {
+            throw syntaxError("Expected a value");
+        }
+        return length;
+    }
+
+    /**
+     * Reads the rest of a quoted string; the opening quote is already consumed
+     */
+    private String readQuoted() throws IOException {
+        int length = 0;
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            int b = buffer[pos++] & 0xFF;
+            if (b == '"') {
+                return new String(chars, 0, length);
+            }
+            ensureChars(length + 2);
+            if (b == '\\') {
+                chars[length++] = readEscape();
+            } else if (b < 0x80) {
+                if (b < 0x20) {
+                    throw syntaxError("Unescaped control character in string");
+                }
+                chars[length++] = (char) b;
+            } else {
+                length = decodeMultiByte(b, length);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = readByte();
+        switch (c) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = Character.digit(readByte(), 16);
+                    if (h < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | h;
+                }
+                return (char) value;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Decodes a 2, 3 or 4 byte UTF-8 sequence starting with lead into chars
+     */
+    private int decodeMultiByte(int lead, int length) throws IOException {
+        int codePoint;
+        int extra;
+        if ((lead & 0xE0) == 0xC0) {
+            codePoint = lead & 0x1F;
+            extra = 1;
+        } else if ((lead & 0xF0) == 0xE0) {
+            codePoint = lead & 0x0F;
+            extra = 2;
+        } else if ((lead & 0xF8) == 0xF0) {
+            codePoint = lead & 0x07;
+            extra = 3;
+        } else {
+            throw syntaxError("Invalid UTF-8 sequence");
+        }
+        for (int i = 0; i < extra; i++) {
+            int b = readByte();
+            if ((b & 0xC0) != 0x80) {
+                throw syntaxError("Invalid UTF-8 sequence");
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            chars[length++] = Character.highSurrogate(codePoint);
+            chars[length++] = Character.lowSurrogate(codePoint);
+        } else {
+            chars[length++] = (char) codePoint;
+        }
+        return length;
+    }
+
+    private int readByte() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            int b = buffer[pos];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return b & 0xFF;
+            }
+            pos++;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        consumed += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        if (consumed + n > MAX_BYTES) {
+            throw new JsonParseException("Body larger than " + MAX_BYTES + " bytes");
+        }
+        limit = n;
+        return true;
+    }
+
+    private void ensureChars(int needed) {
+        if (needed > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(needed, chars.length * 2));
+        }
+    }
+
+    private JsonParseException syntaxError(String message) {
+        return new JsonParseException(message + " at offset " + (consumed + pos));
+    }
+
+    /**
+     * Thrown when a request body is not well-formed JSON or lacks a required field
+     */
+    public static class JsonParseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public JsonParseException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.banksim.json;
+
+import com.banksim.server.ResponseCompression;
+import com.banksim.trace.Trace;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Sends JSON responses built with a per-thread {@link JsonWriter}.
+ *
+ * The body is encoded once into a reused buffer and copied to the exchange
+ * with an exact Content-Length, so a response costs no Map, no String and
+ * no fresh byte array. Bodies large enough to be worth it are compressed
+ * per {@link ResponseCompression} and streamed chunked instead. Encoding
+ * and sending are timed as the request's "serialize" span.
+ *
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class JsonResponse {
+
+    // Buffers that grew past this are dropped after use rather than pinned per thread
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<JsonWriter> WRITERS = ThreadLocal.withInitial(JsonWriter::new);
+
+    /**
+     * Writes a response body
+     */
+    @FunctionalInterface
+    public interface Body {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    private JsonResponse() {
+    }
+
+    // Loaded on first response so the codec itself needs no server config
+    private static final class Compression {
+        static final ResponseCompression INSTANCE = ResponseCompression.fromConfig();
+    }
+
+    /**
+     * Sends a JSON response
+     *
+     * @param exchange HTTP exchange
+     * @param statusCode HTTP status
+     * @param body Writes the response document
+     */
+    public static void send(HttpExchange exchange, int statusCode, Body body) throws IOException {
+        int span = Trace.begin("serialize");
+        JsonWriter json = WRITERS.get();
+        json.reset();
+        try {
+            body.write(json);
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+
+            ResponseCompression.Encoding encoding = Compression.INSTANCE.select(exchange, json.size());
+            if (encoding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", encoding.token());
+                exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+                exchange.sendResponseHeaders(statusCode, 0);
+                try (OutputStream os = Compression.INSTANCE.wrap(exchange.getResponseBody(), encoding)) {
+                    json.writeTo(os);
+                }
+                return;
+            }
+
+            exchange.sendResponseHeaders(statusCode, json.size());
+
+            OutputStream os = exchange.getResponseBody();
+            json.writeTo(os);
+            os.close();
+        } finally {
+            if (json.capacity() > MAX_RETAINED_CAPACITY) {
+                WRITERS.remove();
+            }
+            Trace.end(span);
+        }
+    }
+
+    /**
+     * Sends {"success": false, "error": message}
+     *
+     * @param exchange HTTP exchange
+     * @param statusCode HTTP status
+     * @param message Error message
+     */
+    public static void error(HttpExchange exchange, int statusCode, String message) throws IOException {
+        send(exchange, statusCode, json -> json.beginObject()
+            .name("success").value(false)
+            .name("error").value(message)
+            .endObject());
+    }
+}
@@ -0,0 +1,386 @@
+package com.banksim.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Streaming JSON writer encoding UTF-8 into a reusable byte buffer.
+ *
+ * Values are written in document order with no intermediate Map or String.
+ * When constructed over an OutputStream the buffer is flushed to it as it
+ * fills; otherwise it grows and the finished document is copied out with
+ * {@link #writeTo(OutputStream)}, which lets callers send an exact
+ * Content-Length.
+ *
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class JsonWriter {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int count;
+
+    // needsComma[d] is true once the container at depth d holds an element
+    private boolean[] needsComma = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    /**
+     * Creates a writer that buffers the whole document in memory
+     */
+    public JsonWriter() {
+        this(null, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a writer that flushes to out whenever its buffer fills
+     *
+     * @param out Destination stream
+     */
+    public JsonWriter(OutputStream out) {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    private JsonWriter(OutputStream out, int capacity) {
+        this.out = out;
+        this.buffer = new byte[capacity];
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        depth--;
+        writeByte(']');
+        return this;
+    }
+
+    /**
+     * Writes a property name; the next call must write its value
+     */
+    public JsonWriter name(String name) throws IOException {
+        if (needsComma[depth]) {
+            writeByte(',');
+        }
+        needsComma[depth] = true;
+        writeQuoted(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            writeBytes(NULL);
+        } else {
+            writeQuoted(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    /**
+     * Writes a number bare. Integer and Long are formatted without
+     * allocating; null is written as JSON null.
+     */
+    public JsonWriter value(Number value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            writeBytes(NULL);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            writeLong(value.longValue());
+        } else if (value instanceof BigDecimal) {
+            writeAscii(((BigDecimal) value).toPlainString());
+        } else {
+            writeAscii(value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Writes any value: strings, numbers and booleans natively, maps as
+     * objects, collections and arrays as arrays, anything else as its
+     * quoted toString()
+     */
+    public JsonWriter value(Object value) throws IOException {
+        if (value == null) {
+            beforeValue();
+            writeBytes(NULL);
+        } else if (value instanceof String) {
+            value((String) value);
+        } else if (value instanceof Number) {
+            value((Number) value);
+        } else if (value instanceof Boolean) {
+            value(((Boolean) value).booleanValue());
+        } else if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                name(String.valueOf(entry.getKey()));
+                value(entry.getValue());
+            }
+            endObject();
+        } else if (value instanceof Collection) {
+            beginArray();
+            for (Object element : (Collection<?>) value) {
+                value(element);
+            }
+            endArray();
+        } else if (value instanceof Object[]) {
+            beginArray();
+            for (Object element : (Object[]) value) {
+                value(element);
+            }
+            endArray();
+        } else {
+            value(value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Writes the quoted toString() of a value such as a date, UUID or
+     * enum, or null
+     */
+    public JsonWriter string(Object value) throws IOException {
+        return value(value == null ? null : value.toString());
+    }
+
+    /**
+     * Writes an already encoded JSON value verbatim, such as a response
+     * body produced by another writer. The caller guarantees it is valid.
+     */
+    public JsonWriter rawValue(byte[] json, int offset, int length) throws IOException {
+        beforeValue();
+        ensure(length);
+        System.arraycopy(json, offset, buffer, count, length);
+        count += length;
+        return this;
+    }
+
+    /**
+     * Number of bytes currently buffered
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Capacity of the internal buffer
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Copies the buffered bytes to out
+     */
+    public void writeTo(OutputStream target) throws IOException {
+        target.write(buffer, 0, count);
+    }
+
+    /**
+     * Writes buffered bytes to the destination stream, if there is one
+     */
+    public void flush() throws IOException {
+        if (out != null) {
+            out.write(buffer, 0, count);
+            count = 0;
+            out.flush();
+        }
+    }
+
+    /**
+     * Clears the writer so the buffer can be reused for another document
+     */
+    public void reset() {
+        count = 0;
+        depth = 0;
+        afterName = false;
+        needsComma[0] = false;
+    }
+
+    /**
+     * Returns the buffered document as a String
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count, StandardCharsets.UTF_8);
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (needsComma[depth]) {
+            writeByteUnchecked(',');
+        }
+        needsComma[depth] = true;
+    }
+
+    private void push() {
+        depth++;
+        if (depth == needsComma.length) {
+            needsComma = Arrays.copyOf(needsComma, depth * 2);
+        }
+        needsComma[depth] = false;
+    }
+
+    private void writeQuoted(String s) throws IOException {
+        // Worst case: 6 bytes per char for \\u escapes
+        ensure(2 + s.length() * 6);
+        byte[] buf = buffer;
+        int n = count;
+        buf[n++] = '"';
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    buf[n++] = (byte) c;
+                    continue;
+                }
+                buf[n++] = '\\';
+                switch (c) {
+                    case '"': buf[n++] = '"'; break;
+                    case '\\': buf[n++] = '\\'; break;
+                    case '\n': buf[n++] = 'n'; break;
+                    case '\r': buf[n++] = 'r'; break;
+                    case '\t': buf[n++] = 't'; break;
+                    case '\b': buf[n++] = 'b'; break;
+                    case '\f': buf[n++] = 'f'; break;
+                    default:
+                        buf[n++] = 'u';
+                        buf[n++] = '0';
+                        buf[n++] = '0';
+                        buf[n++] = HEX[c >> 4];
+                        buf[n++] = HEX[c & 0xF];
+                        break;
+                }
+            } else if (c < 0x800) {
+                buf[n++] = (byte) (0xC0 | (c >> 6));
+                buf[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[n++] = (byte) (0xF0 | (cp >> 18));
+                buf[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[n++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf[n++] = '?';
+            } else {
+                buf[n++] = (byte) (0xE0 | (c >> 12));
+                buf[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buf[n++] = '"';
+        count = n;
+    }
+
+    private void writeLong(long v) throws IOException {
+        if (v == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+        ensure(20);
+        if (v < 0) {
+            buffer[count++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long p = 10; digits < 19 && p <= v; p *= 10) {
+            digits++;
+        }
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + (v % 10));
+            v /= 10;
+        }
+        count = end;
+    }
+
+    private void writeAscii(String s) throws IOException {
+        int len = s.length();
+        ensure(len);
+        for (int i = 0; i < len; i++) {
+            buffer[count++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void writeByte(char b) throws IOException {
+        ensure(1);
+        buffer[count++] = (byte) b;
+    }
+
+    private void writeByteUnchecked(char b) {
+        if (count == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    private void ensure(int needed) throws IOException {
+        if (count + needed <= buffer.length) {
+            return;
+        }
+        if (out != null && count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+            if (needed <= buffer.length) {
+                return;
+            }
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + needed));
+    }
+}
@@ -0,0 +1,127 @@
+package com.banksim.json;
+
+import com.banksim.model.Account;
+import com.banksim.model.Customer;
+import com.banksim.model.LedgerEvent;
+import com.banksim.model.Transaction;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Serializes domain models straight into a {@link JsonWriter}.
+ *
+ * Amounts are written as strings, as the API has always returned them, so
+ * clients never see a lossy floating point value.
+ *
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class ModelJson {
+
+    private ModelJson() {
+    }
+
+    /**
+     * Writes a transaction object
+     */
+    public static void writeTransaction(JsonWriter json, Transaction transaction) throws IOException {
+        json.beginObject()
+            .name("id").value(transaction.getTransactionId())
+            .name("transactionUuid").string(transaction.getTransactionUuid())
+            .name("accountId").value(transaction.getAccountId())
+            .name("transactionType").string(transaction.getTransactionType())
+            .name("amount").string(transaction.getAmount())
+            .name("balanceAfter").string(transaction.getBalanceAfter())
+            .name("description").value(transaction.getDescription())
+            .name("createdAt").string(transaction.getCreatedAt())
+            .endObject();
+    }
+
+    /**
+     * Writes an array of transactions
+     */
+    public static void writeTransactions(JsonWriter json, List<Transaction> transactions) throws IOException {
+        json.beginArray();
+        for (Transaction transaction : transactions) {
+            writeTransaction(json, transaction);
+        }
+        json.endArray();
+    }
+
+    /**
+     * Writes an account object
+     */
+    public static void writeAccount(JsonWriter json, Account account) throws IOException {
+        json.beginObject()
+            .name("id").value(account.getAccountId())
+            .name("accountNumber").value(account.getAccountNumber())
+            .name("customerId").value(account.getCustomerId())
+            .name("accountType").string(account.getAccountType())
+            .name("balance").string(account.getBalance())
+            .name("status").string(account.getStatus())
+            .name("createdAt").string(account.getCreatedAt())
+            .endObject();
+    }
+
+    /**
+     * Writes an array of accounts
+     */
+    public static void writeAccounts(JsonWriter json, List<Account> accounts) throws IOException {
+        json.beginArray();
+        for (Account account : accounts) {
+            writeAccount(json, account);
+        }
+        json.endArray();
+    }
+
+    /**
+     * Writes a customer object. The personal key hash is never included.
+     */
+    public static void writeCustomer(JsonWriter json, Customer customer) throws IOException {
+        json.beginObject()
+            .name("id").value(customer.getCustomerId())
+            .name("userId").value(customer.getUserId())
+            .name("customerCode").value(customer.getCustomerCode())
+            .name("firstName").value(customer.getFirstName())
+            .name("lastName").value(customer.getLastName())
+            .name("phone").value(customer.getPhone())
+            .name("address").value(customer.getAddress())
+            .name("dateOfBirth").string(customer.getDateOfBirth())
+            .name("verified").value(customer.isVerified())
+            .name("createdAt").string(customer.getCreatedAt())
+            .endObject();
+    }
+
+    /**
+     * Writes an array of customers
+     */
+    public static void writeCustomers(JsonWriter json, List<Customer> customers) throws IOException {
+        json.beginArray();
+        for (Customer customer : customers) {
+            writeCustomer(json, customer);
+        }
+        json.endArray();
+    }
+
+    /**
+     * Writes a ledger event; amounts are strings, as for transactions
+     */
+    public static void writeLedgerEvent(JsonWriter json, LedgerEvent event) throws IOException {
+        json.beginObject()
+            .name("offset").value(event.offset())
+            .name("type").value(event.type())
+            .name("transactionId").value(event.transactionId())
+            .name("transactionUuid").string(event.transactionUuid())
+            .name("accountId").value(event.accountId())
+            .name("relatedAccountId").value(event.relatedAccountId())
+            .name("transactionType").value(event.transactionType())
+            .name("amount").string(event.amount())
+            .name("balanceAfter").string(event.balanceAfter())
+            .name("referenceNumber").value(event.referenceNumber())
+            .name("status").value(event.status())
+            .name("occurredAt").string(event.occurredAt())
+            .endObject();
+    }
+}
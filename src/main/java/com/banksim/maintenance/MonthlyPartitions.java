@@ -0,0 +1,105 @@
+package com.banksim.maintenance;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Naming and date arithmetic for tables partitioned by month on created_at.
+ * 
+ * Each month of a table is a partition named {@code <table>_yYYYYmMM},
+ * such as {@code audit_logs_y2024m05}, covering [first day of the month,
+ * first day of the next month). The schema script creates the first
+ * months with the same names.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class MonthlyPartitions {
+    
+    private static final Pattern SUFFIX = Pattern.compile("_y(\\d{4})m(\\d{2})");
+    
+    private MonthlyPartitions() {
+    }
+    
+    /**
+     * Name of a table's partition for a month
+     * 
+     * @param table Partitioned table
+     * @param month Month
+     * @return Partition name
+     */
+    public static String partitionName(String table, YearMonth month) {
+        return String.format("%s_y%04dm%02d", table, month.getYear(), month.getMonthValue());
+    }
+    
+    /**
+     * Month covered by a partition of a table
+     * 
+     * @param table Partitioned table
+     * @param partition Partition name
+     * @return Month, or null if the name is not a monthly partition of table
+     */
+    public static YearMonth monthOf(String table, String partition) {
+        if (!partition.startsWith(table)) {
+            return null;
+        }
+        Matcher matcher = SUFFIX.matcher(partition.substring(table.length()));
+        if (!matcher.matches()) {
+            return null;
+        }
+        int month = Integer.parseInt(matcher.group(2));
+        return month >= 1 && month <= 12 ? YearMonth.of(Integer.parseInt(matcher.group(1)), month) : null;
+    }
+    
+    /**
+     * DDL creating a month's partition unless it exists. Names come from
+     * {@link #partitionName}, so they need no quoting.
+     * 
+     * @param table Partitioned table
+     * @param month Month
+     * @return CREATE TABLE statement
+     */
+    public static String createSql(String table, YearMonth month) {
+        return "CREATE TABLE IF NOT EXISTS " + partitionName(table, month) + " PARTITION OF " + table
+            + " FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')";
+    }
+    
+    /**
+     * Months to create so that inserts never fall outside a partition:
+     * the current month and monthsAhead more
+     * 
+     * @param today Current date
+     * @param monthsAhead Months created in advance
+     * @return Months in order
+     */
+    public static List<YearMonth> upcoming(LocalDate today, int monthsAhead) {
+        List<YearMonth> months = new ArrayList<>(monthsAhead + 1);
+        YearMonth current = YearMonth.from(today);
+        for (int i = 0; i <= monthsAhead; i++) {
+            months.add(current.plusMonths(i));
+        }
+        return months;
+    }
+    
+    /**
+     * Checks if every row of a month is older than the retention period,
+     * so the whole partition can go
+     * 
+     * @param month Partition month
+     * @param today Current date
+     * @param retentionDays Days rows are kept; 0 or less keeps everything
+     * @return true if the partition has expired
+     */
+    public static boolean isExpired(YearMonth month, LocalDate today, int retentionDays) {
+        if (retentionDays <= 0) {
+            return false;
+        }
+        // The newest row is from the last day of the month; it expires once the next month is past retention
+        return !month.plusMonths(1).atDay(1).isAfter(today.minusDays(retentionDays));
+    }
+}
@@ -0,0 +1,253 @@
+package com.banksim.maintenance;
+
+import com.banksim.config.DatabaseConfig;
+import com.banksim.config.ServerConfig;
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.MetricsRegistry;
+import org.postgresql.PGConnection;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the monthly partitions of transactions and audit_logs in shape:
+ * creates months ahead of time and removes months past their retention.
+ * 
+ * Retention removes a whole partition, detaching and dropping it, instead
+ * of deleting rows: no table scan, no dead tuples for vacuum, and the
+ * indexes of the remaining months, such as idx_audit_date, stay as small
+ * as the data they cover. With partition.retention.mode=archive the month
+ * is first copied out with COPY to a gzipped CSV in partition.archive.dir;
+ * it is dropped only once the archive is safely on disk, so a failed run
+ * changes nothing and is simply retried.
+ * 
+ * Runs at startup and every partition.maintenance.interval ms on a daemon
+ * thread. Each table is handled on its own, so a failure on one does not
+ * hold back the other.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class PartitionMaintenance {
+    
+    /**
+     * What happens to a month past retention
+     */
+    public enum Mode { ARCHIVE, DROP }
+    
+    private static final String LIST_PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i " +
+        "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent " +
+        "WHERE p.relname = ? ORDER BY c.relname";
+    
+    private final DatabaseConfig dbConfig;
+    private final Map<String, Integer> retentionDays = new LinkedHashMap<>();
+    private final int monthsAhead;
+    private final long intervalMillis;
+    private final Mode mode;
+    private final Path archiveDir;
+    private final String lockTimeout;
+    private final Counter runFailures;
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * Creates the job
+     * 
+     * @param properties Looks up a configuration value, returning null if unset
+     * @param dbConfig Database connections
+     */
+    public PartitionMaintenance(Function<String, String> properties, DatabaseConfig dbConfig) {
+        this.dbConfig = dbConfig;
+        this.retentionDays.put("transactions", Integer.parseInt(value(properties, "transactions.retention.days", "0")));
+        this.retentionDays.put("audit_logs", Integer.parseInt(value(properties, "audit.log.retention.days", "365")));
+        this.monthsAhead = Integer.parseInt(value(properties, "partition.months.ahead", "3"));
+        this.intervalMillis = Long.parseLong(value(properties, "partition.maintenance.interval", "21600000"));
+        this.mode = Mode.valueOf(value(properties, "partition.retention.mode", "archive").toUpperCase());
+        this.archiveDir = Path.of(value(properties, "partition.archive.dir", "data/archive"));
+        this.lockTimeout = Long.parseLong(value(properties, "partition.lock.timeout", "5000")) + "ms";
+        this.runFailures = MetricsRegistry.getInstance().counter("banksim_partition_maintenance_failures_total",
+            "Partition maintenance runs that failed for a table");
+    }
+    
+    /**
+     * Creates the job from application.properties
+     * 
+     * @return PartitionMaintenance, not yet started
+     */
+    public static PartitionMaintenance fromConfig() {
+        ServerConfig config = ServerConfig.getInstance();
+        return new PartitionMaintenance(key -> config.getProperty(key, null), DatabaseConfig.getInstance());
+    }
+    
+    /**
+     * Runs now, then every partition.maintenance.interval ms
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "partition-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stops the schedule; a run in progress finishes its current statement
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+    
+    /**
+     * Creates upcoming months and removes expired ones for every table
+     */
+    public void runOnce() {
+        LocalDate today = LocalDate.now();
+        for (Map.Entry<String, Integer> table : retentionDays.entrySet()) {
+            try {
+                maintain(table.getKey(), table.getValue(), today);
+            } catch (SQLException | IOException | RuntimeException e) {
+                // Caught broadly: an exception escaping a scheduled run would cancel every later run
+                runFailures.increment();
+                System.err.println("[PartitionMaintenance] " + table.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    private void maintain(String table, int retention, LocalDate today) throws SQLException, IOException {
+        List<YearMonth> existing = new ArrayList<>();
+        try (Connection conn = dbConfig.getConnection()) {
+            warnIfDefaultUsed(conn, table);
+            try (Statement stmt = conn.createStatement()) {
+                for (YearMonth month : MonthlyPartitions.upcoming(today, monthsAhead)) {
+                    stmt.execute(MonthlyPartitions.createSql(table, month));
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(LIST_PARTITIONS_SQL)) {
+                stmt.setString(1, table);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        YearMonth month = MonthlyPartitions.monthOf(table, rs.getString(1));
+                        if (month != null) {
+                            existing.add(month);
+                        }
+                    }
+                }
+            }
+        }
+        
+        for (YearMonth month : existing) {
+            if (MonthlyPartitions.isExpired(month, today, retention)) {
+                remove(table, month);
+            }
+        }
+    }
+    
+    private void remove(String table, YearMonth month) throws SQLException, IOException {
+        String partition = MonthlyPartitions.partitionName(table, month);
+        try (Connection conn = dbConfig.getConnection()) {
+            if (mode == Mode.ARCHIVE) {
+                Path file = archive(conn, partition);
+                System.out.println("[PartitionMaintenance] Archived " + partition + " to " + file);
+            }
+            
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                // Detaching locks the parent; give up rather than queue traffic behind the lock
+                stmt.execute("SET LOCAL lock_timeout = '" + lockTimeout + "'");
+                stmt.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition);
+                stmt.execute("DROP TABLE " + partition);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        MetricsRegistry.getInstance().counter("banksim_partitions_dropped_total",
+            "Expired monthly partitions removed, by table", "table", table).increment();
+        System.out.println("[PartitionMaintenance] Dropped " + partition);
+    }
+    
+    /**
+     * Copies a partition to archiveDir/partition.csv.gz. The file is written
+     * under a temporary name, forced to disk and then renamed, so an archive
+     * that exists is always complete.
+     */
+    private Path archive(Connection conn, String partition) throws SQLException, IOException {
+        Files.createDirectories(archiveDir);
+        Path file = archiveDir.resolve(partition + ".csv.gz");
+        Path partial = archiveDir.resolve(partition + ".csv.gz.tmp");
+        
+        long rows;
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)), 65536)) {
+            rows = conn.unwrap(PGConnection.class).getCopyAPI()
+                .copyOut("COPY " + partition + " TO STDOUT WITH (FORMAT csv, HEADER)", out);
+        }
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        
+        MetricsRegistry.getInstance().counter("banksim_partition_archived_rows_total",
+            "Rows copied to archive files before their partition was dropped").add(rows);
+        return file;
+    }
+    
+    /**
+     * A month cannot be created while the default partition holds rows for
+     * it, so rows landing there are reported before they block a run
+     */
+    private void warnIfDefaultUsed(Connection conn, String table) throws SQLException {
+        String partition = table + "_default";
+        try (PreparedStatement exists = conn.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            exists.setString(1, partition);
+            try (ResultSet rs = exists.executeQuery()) {
+                if (!rs.next() || !rs.getBoolean(1)) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM " + partition + ")")) {
+            if (rs.next() && rs.getBoolean(1)) {
+                System.err.println("[PartitionMaintenance] " + partition + " holds rows outside every "
+                    + "monthly partition; move them into their month's partition");
+            }
+        }
+    }
+    
+    private static String value(Function<String, String> properties, String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+}
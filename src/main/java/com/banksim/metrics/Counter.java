@@ -0,0 +1,44 @@
+package com.banksim.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter. Increments are striped across cells, so concurrent
+ * writers do not contend on one cache line, and never allocate.
+ * 
+ * Obtained from {@link MetricsRegistry#counter}.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class Counter {
+    
+    private final LongAdder value = new LongAdder();
+    
+    Counter() {
+    }
+    
+    /**
+     * Adds one
+     */
+    public void increment() {
+        value.increment();
+    }
+    
+    /**
+     * Adds a non-negative amount
+     * 
+     * @param amount Amount to add
+     */
+    public void add(long amount) {
+        value.add(amount);
+    }
+    
+    /**
+     * Current total
+     */
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,267 @@
+package com.banksim.metrics;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Application-wide registry of counters, gauges and latency histograms,
+ * exported in the Prometheus text exposition format.
+ * 
+ * Metrics are registered once, typically when a component is created, and
+ * the returned handle is kept in a field; recording through the handle is
+ * lock-free and allocation-free. Registering the same name and labels
+ * again returns the existing metric, so components created more than once
+ * share it. Values a component already tracks, such as a queue length,
+ * are exported through a supplier read at scrape time.
+ * 
+ * Labels are given as alternating names and values:
+ * {@code counter("banksim_x_total", "Help", "type", "DEPOSIT")}.
+ * 
+ * Thread-safe singleton implementation.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class MetricsRegistry {
+    
+    /**
+     * Upper bounds of the exported histogram buckets, in seconds
+     */
+    private static final double[] BUCKETS_SECONDS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final long[] BUCKETS_NANOS = new long[BUCKETS_SECONDS.length];
+    private static final String[] BUCKET_LABELS = new String[BUCKETS_SECONDS.length];
+    
+    static {
+        for (int i = 0; i < BUCKETS_SECONDS.length; i++) {
+            BUCKETS_NANOS[i] = Math.round(BUCKETS_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+            BUCKET_LABELS[i] = BigDecimal.valueOf(BUCKETS_SECONDS[i]).stripTrailingZeros().toPlainString();
+        }
+    }
+    
+    private static MetricsRegistry instance;
+    
+    private final Map<String, Family> families = new LinkedHashMap<>();
+    
+    /**
+     * Gets the singleton instance
+     * 
+     * @return MetricsRegistry instance
+     */
+    public static synchronized MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+        return instance;
+    }
+    
+    /**
+     * Registers a counter
+     * 
+     * @param name Metric name, ending in _total
+     * @param help Description
+     * @param labels Alternating label names and values
+     * @return Counter to increment
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, "counter", labels, new Counter());
+    }
+    
+    /**
+     * Exports a count kept elsewhere as a counter
+     * 
+     * @param name Metric name, ending in _total
+     * @param help Description
+     * @param value Reads the current count
+     * @param labels Alternating label names and values
+     */
+    public void counterFunction(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, "counter", labels, value);
+    }
+    
+    /**
+     * Exports a value that can go up and down
+     * 
+     * @param name Metric name
+     * @param help Description
+     * @param value Reads the current value
+     * @param labels Alternating label names and values
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        register(name, help, "gauge", labels, value);
+    }
+    
+    /**
+     * Registers a latency histogram, exported in seconds
+     * 
+     * @param name Metric name, ending in _seconds
+     * @param help Description
+     * @param labels Alternating label names and values
+     * @return Histogram to record nanoseconds into
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) register(name, help, "histogram", labels, new LatencyHistogram());
+    }
+    
+    private synchronized Object register(String name, String help, String type, String[] labels, Object metric) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs for " + name);
+        }
+        Family family = families.get(name);
+        if (family == null) {
+            family = new Family(help, type);
+            families.put(name, family);
+        } else if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        
+        String key = formatLabels(labels);
+        Object existing = family.metrics.get(key);
+        if (existing != null && existing.getClass() == metric.getClass()) {
+            return existing;
+        }
+        // A supplier registered again replaces the old one, which may belong to a discarded instance
+        family.metrics.put(key, metric);
+        return metric;
+    }
+    
+    /**
+     * Writes every metric in the Prometheus text format, version 0.0.4
+     * 
+     * @return Exposition text
+     */
+    public String scrape() {
+        List<Map.Entry<String, Family>> snapshot;
+        List<List<Map.Entry<String, Object>>> metrics = new ArrayList<>();
+        synchronized (this) {
+            snapshot = new ArrayList<>(families.entrySet());
+            for (Map.Entry<String, Family> entry : snapshot) {
+                metrics.add(new ArrayList<>(entry.getValue().metrics.entrySet()));
+            }
+        }
+        
+        StringBuilder out = new StringBuilder(8192);
+        for (int f = 0; f < snapshot.size(); f++) {
+            String name = snapshot.get(f).getKey();
+            Family family = snapshot.get(f).getValue();
+            out.append("# HELP ").append(name).append(' ').append(escapeHelp(family.help)).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> entry : metrics.get(f)) {
+                writeMetric(out, name, entry.getKey(), entry.getValue());
+            }
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Writes every metric to a file in the Prometheus text format. The file
+     * is replaced in one step, so a reader never sees it half written.
+     * 
+     * @param file Destination
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, scrape(), StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static void writeMetric(StringBuilder out, String name, String labels, Object metric) {
+        if (metric instanceof Counter) {
+            sample(out, name, labels, ((Counter) metric).get());
+        } else if (metric instanceof LongSupplier) {
+            sample(out, name, labels, ((LongSupplier) metric).getAsLong());
+        } else if (metric instanceof DoubleSupplier) {
+            out.append(name).append(labels).append(' ')
+                .append(formatDouble(((DoubleSupplier) metric).getAsDouble())).append('\n');
+        } else {
+            LatencyHistogram histogram = (LatencyHistogram) metric;
+            long sum = histogram.getSum();
+            long[] cumulative = histogram.getCumulativeCounts(BUCKETS_NANOS);
+            for (int i = 0; i < BUCKETS_SECONDS.length; i++) {
+                sample(out, name + "_bucket", withLabel(labels, "le", BUCKET_LABELS[i]),
+                    cumulative[i]);
+            }
+            long count = cumulative[BUCKETS_SECONDS.length];
+            sample(out, name + "_bucket", withLabel(labels, "le", "+Inf"), count);
+            out.append(name).append("_sum").append(labels).append(' ')
+                .append(formatDouble(sum / 1_000_000_000.0)).append('\n');
+            sample(out, name + "_count", labels, count);
+        }
+    }
+    
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+    
+    static String formatLabels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"").append(escapeLabel(labels[i + 1])).append('"');
+        }
+        return out.append('}').toString();
+    }
+    
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+    
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+    
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+    
+    private static String formatDouble(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+    
+    /**
+     * Metrics sharing a name, keyed by their formatted labels
+     */
+    private static final class Family {
+        final String help;
+        final String type;
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package com.banksim.model;
 
+import com.banksim.trace.Trace;
+
 import java.time.LocalDateTime;
 
 /**
  * AuditLog entity for tracking security and compliance events.
  * Records all significant actions performed by users in the system.
+ * Entries created while handling a request carry its request id, so an
+ * audit row can be matched to the request's trace and log lines.
  * 
  * @author Jorge Pena - REM Consultancy
  * @version 1.0
@@ -21,6 +25,7 @@ public class AuditLog {
     private String newValue;
     private String ipAddress;
     private String userAgent;
+    private String requestId;
     private LocalDateTime createdAt;
     
     /**
@@ -28,6 +33,7 @@ public class AuditLog {
      */
     public AuditLog() {
         this.createdAt = LocalDateTime.now();
+        this.requestId = Trace.currentId();
     }
     
     /**
@@ -192,6 +198,22 @@ public class AuditLog {
         this.userAgent = userAgent;
     }
     
+    /**
+     * Gets the id of the request that caused the entry
+     * @return Request id, or null outside a request
+     */
+    public String getRequestId() {
+        return requestId;
+    }
+    
+    /**
+     * Sets the request id
+     * @param requestId Request id (X-Request-Id)
+     */
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+    
     /**
      * Gets the creation timestamp
      * @return Created date/time
@@ -217,6 +239,7 @@ public class AuditLog {
                 ", entityType='" + entityType + '\'' +
                 ", entityId=" + entityId +
                 ", ipAddress='" + ipAddress + '\'' +
+                ", requestId='" + requestId + '\'' +
                 ", createdAt=" + createdAt +
                 '}';
     }
@@ -0,0 +1,35 @@
+package com.banksim.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Change to the ledger, read from the ledger_outbox table.
+ * 
+ * Events are written by a database trigger in the same transaction as the
+ * transaction row they describe, so an event exists exactly when its change
+ * committed. The offset orders the stream and lets a consumer resume.
+ * 
+ * @param offset Position in the stream (ledger_outbox.event_id)
+ * @param type CREATED for a new transaction, STATUS_CHANGED for a new status
+ * @param transactionId Transaction ID
+ * @param transactionUuid Transaction UUID
+ * @param accountId Account the transaction belongs to
+ * @param relatedAccountId Other account of a transfer, or null
+ * @param transactionType Transaction type
+ * @param amount Amount moved
+ * @param balanceAfter Account balance after the transaction
+ * @param referenceNumber Reference number, or null
+ * @param status Transaction status
+ * @param occurredAt When the transaction was created
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public record LedgerEvent(long offset, String type, Integer transactionId, UUID transactionUuid,
+                          Integer accountId, Integer relatedAccountId, String transactionType,
+                          BigDecimal amount, BigDecimal balanceAfter, String referenceNumber,
+                          String status, LocalDateTime occurredAt) {
+}
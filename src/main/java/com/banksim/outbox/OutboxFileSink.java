@@ -0,0 +1,143 @@
+package com.banksim.outbox;
+
+import com.banksim.json.JsonWriter;
+import com.banksim.json.ModelJson;
+import com.banksim.model.LedgerEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Appends relayed ledger events to a local file, one JSON object per line,
+ * for consumers that tail a file instead of calling the API.
+ * 
+ * The file is its own checkpoint: on startup the offset of its last line
+ * tells the relay where to resume, and a line cut short by a crash is cut
+ * off first. Events at or before that offset are skipped, so a restart
+ * neither repeats nor loses events. Each batch is flushed and, with
+ * outbox.file.fsync, forced to disk.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class OutboxFileSink implements OutboxRelay.Listener, Closeable {
+    
+    private static final byte[] OFFSET_FIELD = "{\"offset\":".getBytes(StandardCharsets.US_ASCII);
+    // The last line is looked for in this much of the end of the file
+    private static final int TAIL_BYTES = 64 * 1024;
+    
+    private final FileChannel channel;
+    private final OutputStream out;
+    private final boolean fsync;
+    private final JsonWriter json = new JsonWriter();
+    private long lastOffset;
+    
+    /**
+     * Opens the file for appending, creating it if needed
+     * 
+     * @param file Event file
+     * @param fsync Whether every batch is forced to disk
+     * @throws IOException if the file cannot be opened
+     */
+    public OutboxFileSink(Path file, boolean fsync) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        this.lastOffset = recover(channel);
+        channel.position(channel.size());
+        this.out = new BufferedOutputStream(Channels.newOutputStream(channel), 65536);
+        this.fsync = fsync;
+    }
+    
+    @Override
+    public synchronized void onEvents(List<LedgerEvent> events) throws IOException {
+        for (LedgerEvent event : events) {
+            if (event.offset() <= lastOffset) {
+                continue;
+            }
+            json.reset();
+            ModelJson.writeLedgerEvent(json, event);
+            json.writeTo(out);
+            out.write('\n');
+            lastOffset = event.offset();
+        }
+        out.flush();
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+    
+    /**
+     * Offset of the last event in the file, 0 if it is empty
+     */
+    public synchronized long getLastOffset() {
+        return lastOffset;
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+    
+    /**
+     * Cuts off an incomplete last line and returns the offset of the last
+     * complete one
+     */
+    private static long recover(FileChannel channel) throws IOException {
+        long length = channel.size();
+        int tail = (int) Math.min(length, TAIL_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(tail);
+        channel.read(buffer, length - tail);
+        byte[] bytes = buffer.array();
+        
+        int end = tail;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        if (end == 0 && length > tail) {
+            throw new IOException("No complete line at the end of the ledger event file");
+        }
+        if (end < tail) {
+            channel.truncate(length - tail + end);
+        }
+        if (end == 0) {
+            return 0;
+        }
+        int start = end - 1;
+        while (start > 0 && bytes[start - 1] != '\n') {
+            start--;
+        }
+        return parseOffset(bytes, start, end - 1);
+    }
+    
+    private static long parseOffset(byte[] line, int from, int end) throws IOException {
+        int i = from + OFFSET_FIELD.length;
+        if (i > end || !Arrays.equals(line, from, i, OFFSET_FIELD, 0, OFFSET_FIELD.length)) {
+            throw new IOException("Last line of the ledger event file does not start with an offset");
+        }
+        long offset = 0;
+        int digits = 0;
+        while (i < end && line[i] >= '0' && line[i] <= '9') {
+            offset = offset * 10 + (line[i++] - '0');
+            digits++;
+        }
+        if (digits == 0) {
+            throw new IOException("Last line of the ledger event file does not start with an offset");
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,511 @@
+package com.banksim.outbox;
+
+import com.banksim.config.ServerConfig;
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.MetricsRegistry;
+import com.banksim.model.LedgerEvent;
+import com.banksim.repository.OutboxRepository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Streams ledger events from the transactional outbox to subscribers, in
+ * offset order, within milliseconds of their commit.
+ * 
+ * A trigger writes one ledger_outbox row per new transaction or status
+ * change, in the writing transaction, and announces it with NOTIFY at
+ * commit. The relay thread LISTENs, so it wakes as soon as events commit
+ * instead of polling, and reads just the new rows by offset. It falls back
+ * to checking every outbox.poll.interval ms should a notification be lost.
+ * 
+ * Offsets are taken from a sequence when a row is inserted, so they can
+ * commit out of order: a missing offset may still be committing, or may
+ * belong to a transaction that rolled back and never appear. The relay
+ * stops at a missing offset and notes the transaction id above every
+ * transaction running at that moment, one of which holds the offset if it
+ * is still to commit. Only once the oldest running transaction is past
+ * that id, read before the rows, is the offset known to be rolled back and
+ * skipped. However long a writing transaction runs, its event is never
+ * passed over, so subscribers see every committed event once, in order; a
+ * transaction left open holds the stream back until it ends.
+ * 
+ * Events are handed to:
+ * <ul>
+ *   <li>in-process {@link Listener}s, on the relay thread;</li>
+ *   <li>readers by offset, such as long-poll and SSE clients, through
+ *       {@link #read} and {@link #awaitAfter}. The last outbox.buffer.size
+ *       events are served from memory; older offsets, back to
+ *       outbox.retention.days, are read from the table.</li>
+ * </ul>
+ * The relay starts at the newest event, or, when the file sink is enabled,
+ * where the file ends, so the file has no holes across restarts.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class OutboxRelay {
+    
+    /**
+     * Receives events in offset order on the relay thread. Should be quick:
+     * the stream waits for it.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onEvents(List<LedgerEvent> events) throws IOException;
+    }
+    
+    /**
+     * Where events come from: the ledger_outbox table, or a fake in tests
+     */
+    public interface Source {
+        
+        /**
+         * Events with after &lt; offset &lt;= upTo, in offset order
+         */
+        List<LedgerEvent> findAfter(long after, long upTo, int limit) throws SQLException;
+        
+        /**
+         * Offset of the newest event, 0 if none
+         */
+        long latestOffset() throws SQLException;
+        
+        /**
+         * Oldest transaction id still running (pg_snapshot_xmin)
+         */
+        long oldestRunningTransaction() throws SQLException;
+        
+        /**
+         * Transaction id above every transaction started so far
+         * (pg_snapshot_xmax)
+         */
+        long nextTransaction() throws SQLException;
+        
+        /**
+         * Waits until events may have been committed, or the timeout
+         */
+        void awaitChange(long timeoutMillis) throws SQLException, InterruptedException;
+        
+        /**
+         * Deletes events older than the retention period
+         */
+        int deleteOlderThan(int retentionDays) throws SQLException;
+        
+        /**
+         * Releases anything held open for {@link #awaitChange}
+         */
+        void close();
+    }
+    
+    // How often a missing offset is looked for again while it is awaited
+    private static final long GAP_RECHECK_MILLIS = 10;
+    
+    private static OutboxRelay instance;
+    
+    private final Source source;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final int retentionDays;
+    private final long cleanupIntervalNanos;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    
+    // Delivered events, oldest first from head - size; guarded by this
+    private final LedgerEvent[] ring;
+    private int head;
+    private int size;
+    // Offset up to which events are no longer buffered
+    private long bufferFloor = -1;
+    
+    private volatile long position = -1;
+    // Missing offset awaited, and the transaction id every transaction that could hold it is below
+    private long gapOffset = -1;
+    private long gapHorizon;
+    private volatile boolean closed;
+    private Thread relay;
+    
+    private final Counter relayed;
+    private final Counter gapsSkipped;
+    private final Counter listenerFailures;
+    private final Counter relayFailures;
+    
+    /**
+     * Creates a relay; call {@link #start()} to begin relaying
+     * 
+     * @param properties Looks up a configuration value, returning null if unset
+     * @param source Where events are read from
+     */
+    public OutboxRelay(Function<String, String> properties, Source source) {
+        this.source = source;
+        this.batchSize = Integer.parseInt(value(properties, "outbox.batch.size", "500"));
+        this.pollIntervalMillis = Long.parseLong(value(properties, "outbox.poll.interval", "1000"));
+        this.retentionDays = Integer.parseInt(value(properties, "outbox.retention.days", "7"));
+        this.cleanupIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(value(properties, "outbox.cleanup.interval", "3600000")));
+        this.ring = new LedgerEvent[Integer.parseInt(value(properties, "outbox.buffer.size", "10000"))];
+        if (batchSize <= 0 || pollIntervalMillis <= 0 || ring.length == 0) {
+            throw new IllegalArgumentException("Outbox batch size, poll interval and buffer size must be positive");
+        }
+        
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("banksim_outbox_position", "Offset of the last ledger event relayed", () -> position);
+        this.relayed = registry.counter("banksim_outbox_events_total", "Ledger events relayed to subscribers");
+        this.gapsSkipped = registry.counter("banksim_outbox_gaps_skipped_total",
+            "Missing outbox offsets skipped once every transaction that could hold them had ended");
+        this.listenerFailures = registry.counter("banksim_outbox_listener_failures_total",
+            "Ledger event batches a listener failed to handle");
+        this.relayFailures = registry.counter("banksim_outbox_relay_failures_total",
+            "Outbox reads that failed and were retried");
+    }
+    
+    /**
+     * Gets the singleton instance configured from application.properties,
+     * reading the ledger_outbox table, with the file sink subscribed when
+     * outbox.file.enabled
+     * 
+     * @return OutboxRelay, not yet started
+     */
+    public static synchronized OutboxRelay getInstance() {
+        if (instance == null) {
+            ServerConfig config = ServerConfig.getInstance();
+            Function<String, String> properties = key -> config.getProperty(key, null);
+            instance = new OutboxRelay(properties, new DatabaseSource(new OutboxRepository()));
+            if (Boolean.parseBoolean(value(properties, "outbox.file.enabled", "false"))) {
+                try {
+                    OutboxFileSink sink = new OutboxFileSink(
+                        Path.of(value(properties, "outbox.file.path", "data/outbox/ledger-events.jsonl")),
+                        Boolean.parseBoolean(value(properties, "outbox.file.fsync", "false")));
+                    instance.subscribe(sink);
+                    if (sink.getLastOffset() > 0) {
+                        instance.resumeFrom(sink.getLastOffset());
+                    }
+                } catch (IOException e) {
+                    System.err.println("[OutboxRelay] Ledger event file disabled: " + e.getMessage());
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * Adds an in-process listener for events relayed from now on
+     * 
+     * @param listener Listener; closed on {@link #stop()} if Closeable
+     */
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Sets the offset to relay after, instead of the newest event. Call
+     * before {@link #start()}.
+     * 
+     * @param offset Offset already delivered
+     */
+    public synchronized void resumeFrom(long offset) {
+        position = offset;
+        bufferFloor = offset;
+    }
+    
+    /**
+     * Starts the relay thread
+     */
+    public synchronized void start() {
+        if (relay != null) {
+            return;
+        }
+        relay = new Thread(this::run, "outbox-relay");
+        relay.setDaemon(true);
+        relay.start();
+    }
+    
+    /**
+     * Stops relaying, wakes every waiting reader and closes Closeable
+     * listeners
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            thread = relay;
+        }
+        if (thread != null) {
+            try {
+                // The relay notices within one wait for notifications
+                thread.join(pollIntervalMillis + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Listener listener : listeners) {
+            if (listener instanceof Closeable) {
+                try {
+                    ((Closeable) listener).close();
+                } catch (IOException e) {
+                    System.err.println("[OutboxRelay] Failed to close listener: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Relays the events that are ready: those following the current offset
+     * without a gap, or past a gap no running transaction can fill. The
+     * relay thread calls this whenever events may have committed.
+     * 
+     * @return Events relayed
+     * @throws SQLException if the outbox cannot be read
+     */
+    public int poll() throws SQLException {
+        if (position < 0) {
+            resumeFrom(source.latestOffset());
+        }
+        long expected = position + 1;
+        // Taken before the read, so a transaction that ended before it has its rows in the read
+        long oldestRunning = gapOffset == expected ? source.oldestRunningTransaction() : -1;
+        List<LedgerEvent> rows = source.findAfter(position, Long.MAX_VALUE, batchSize);
+        List<LedgerEvent> ready = new ArrayList<>(rows.size());
+        for (LedgerEvent event : rows) {
+            if (event.offset() != expected) {
+                if (gapOffset != expected) {
+                    // Whatever holds the offset is running now, with an id from its own write, so below the next id
+                    gapOffset = expected;
+                    gapHorizon = source.nextTransaction();
+                    break;
+                }
+                if (oldestRunning < gapHorizon) {
+                    break;
+                }
+                gapsSkipped.increment();
+                System.err.println("[OutboxRelay] Skipping outbox offsets " + expected + " to "
+                    + (event.offset() - 1) + ", rolled back");
+            }
+            ready.add(event);
+            expected = event.offset() + 1;
+        }
+        if (ready.isEmpty()) {
+            return 0;
+        }
+        
+        synchronized (this) {
+            for (LedgerEvent event : ready) {
+                int slot = head;
+                if (size == ring.length) {
+                    bufferFloor = ring[slot].offset();
+                } else {
+                    size++;
+                }
+                ring[slot] = event;
+                head = (head + 1) % ring.length;
+            }
+            position = ready.get(ready.size() - 1).offset();
+            notifyAll();
+        }
+        relayed.add(ready.size());
+        
+        List<LedgerEvent> batch = Collections.unmodifiableList(ready);
+        for (Listener listener : listeners) {
+            try {
+                listener.onEvents(batch);
+            } catch (IOException | RuntimeException e) {
+                // One failing subscriber must not hold back the others
+                listenerFailures.increment();
+                System.err.println("[OutboxRelay] Listener failed on offsets " + ready.get(0).offset()
+                    + " to " + position + ": " + e.getMessage());
+            }
+        }
+        return ready.size();
+    }
+    
+    /**
+     * Reads relayed events after an offset, from memory when buffered and
+     * from the outbox table otherwise
+     * 
+     * @param after Offset the reader has seen
+     * @param limit Most events to return
+     * @return Events in offset order, empty if none were relayed after it
+     * @throws SQLException if the outbox cannot be read
+     */
+    public List<LedgerEvent> read(long after, int limit) throws SQLException {
+        long upTo;
+        synchronized (this) {
+            upTo = position;
+            if (after >= upTo) {
+                return List.of();
+            }
+            if (after >= bufferFloor) {
+                List<LedgerEvent> events = new ArrayList<>(Math.min(limit, size));
+                for (int i = firstAfter(after); i < size && events.size() < limit; i++) {
+                    events.add(buffered(i));
+                }
+                return events;
+            }
+        }
+        return source.findAfter(after, upTo, limit);
+    }
+    
+    /**
+     * Waits until an event after an offset is relayed
+     * 
+     * @param after Offset the reader has seen
+     * @param timeoutMillis Longest wait
+     * @return true if there are events to read
+     */
+    public synchronized boolean awaitAfter(long after, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (position <= after && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return position > after;
+    }
+    
+    /**
+     * Offset of the last event relayed, -1 before the relay has started
+     */
+    public long getPosition() {
+        return position;
+    }
+    
+    /**
+     * Checks if the relay has been stopped
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+    
+    private void run() {
+        long nextCleanup = System.nanoTime();
+        while (!closed) {
+            try {
+                if (poll() == batchSize) {
+                    continue;
+                }
+                if (retentionDays > 0 && System.nanoTime() - nextCleanup >= 0) {
+                    nextCleanup = System.nanoTime() + cleanupIntervalNanos;
+                    int deleted = source.deleteOlderThan(retentionDays);
+                    if (deleted > 0) {
+                        System.out.println("[OutboxRelay] Deleted " + deleted + " ledger events past retention");
+                    }
+                }
+                source.awaitChange(gapOffset > position ? GAP_RECHECK_MILLIS : pollIntervalMillis);
+            } catch (SQLException | RuntimeException e) {
+                relayFailures.increment();
+                System.err.println("[OutboxRelay] " + e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMillis);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        source.close();
+    }
+    
+    /**
+     * Index, oldest first, of the first buffered event after an offset
+     */
+    private int firstAfter(long after) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffered(mid).offset() <= after) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private LedgerEvent buffered(int index) {
+        return ring[(head - size + index + ring.length) % ring.length];
+    }
+    
+    private static String value(Function<String, String> properties, String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+    
+    /**
+     * Reads the ledger_outbox table and waits on its notification channel
+     */
+    private static final class DatabaseSource implements Source {
+        
+        private final OutboxRepository repository;
+        private Connection listening;
+        
+        DatabaseSource(OutboxRepository repository) {
+            this.repository = repository;
+        }
+        
+        @Override
+        public List<LedgerEvent> findAfter(long after, long upTo, int limit) throws SQLException {
+            return repository.findAfter(after, upTo, limit);
+        }
+        
+        @Override
+        public long latestOffset() throws SQLException {
+            return repository.findLatestOffset();
+        }
+        
+        @Override
+        public long oldestRunningTransaction() throws SQLException {
+            return repository.findOldestRunningTransaction();
+        }
+        
+        @Override
+        public long nextTransaction() throws SQLException {
+            return repository.findNextTransaction();
+        }
+        
+        @Override
+        public void awaitChange(long timeoutMillis) throws SQLException {
+            try {
+                if (listening == null) {
+                    // Events committed before LISTEN sent no notification: look again at once
+                    listening = repository.listen();
+                    return;
+                }
+                OutboxRepository.awaitNotification(listening, (int) timeoutMillis);
+            } catch (SQLException e) {
+                // Listened again on the next wait, after the relay backs off
+                close();
+                throw e;
+            }
+        }
+        
+        @Override
+        public int deleteOlderThan(int retentionDays) throws SQLException {
+            return repository.deleteOlderThan(retentionDays);
+        }
+        
+        @Override
+        public void close() {
+            if (listening != null) {
+                try {
+                    listening.close();
+                } catch (SQLException e) {
+                    // Already broken
+                }
+                listening = null;
+            }
+        }
+    }
+}
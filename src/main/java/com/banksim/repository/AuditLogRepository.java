@@ -0,0 +1,70 @@
+package com.banksim.repository;
+
+import com.banksim.config.DatabaseConfig;
+import com.banksim.model.AuditLog;
+import java.sql.*;
+import java.util.List;
+
+/**
+ * Repository for AuditLog entity data access operations.
+ * 
+ * Entries are only ever inserted, in batches, by the audit writer.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class AuditLogRepository {
+    
+    private static final String INSERT_SQL = "INSERT INTO audit_logs (user_id, action, entity_type, entity_id, " +
+        "old_value, new_value, ip_address, user_agent, request_id, created_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private final DatabaseConfig dbConfig;
+    
+    public AuditLogRepository() {
+        this.dbConfig = DatabaseConfig.getInstance();
+    }
+    
+    /**
+     * Inserts entries as one JDBC batch in a single transaction: one round
+     * trip and one commit for the whole batch. Either every entry is stored
+     * or none is.
+     * 
+     * @param entries Entries to store
+     * @throws SQLException if error occurs
+     */
+    public void insertAll(List<AuditLog> entries) throws SQLException {
+        try (Connection conn = dbConfig.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                for (AuditLog entry : entries) {
+                    setNullableInt(stmt, 1, entry.getUserId());
+                    stmt.setString(2, entry.getAction());
+                    stmt.setString(3, entry.getEntityType());
+                    setNullableInt(stmt, 4, entry.getEntityId());
+                    stmt.setString(5, entry.getOldValue());
+                    stmt.setString(6, entry.getNewValue());
+                    stmt.setString(7, entry.getIpAddress());
+                    stmt.setString(8, entry.getUserAgent());
+                    stmt.setString(9, entry.getRequestId());
+                    stmt.setTimestamp(10, Timestamp.valueOf(entry.getCreatedAt()));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+    
+    private static void setNullableInt(PreparedStatement stmt, int index, Integer value) throws SQLException {
+        if (value != null) {
+            stmt.setInt(index, value);
+        } else {
+            stmt.setNull(index, Types.INTEGER);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.banksim.repository;
+
+import com.banksim.config.DatabaseConfig;
+import com.banksim.model.LedgerEvent;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for the ledger_outbox table.
+ * 
+ * Events are inserted by a trigger on transactions, never by the
+ * application. Reads go by offset over the primary key, so following the
+ * stream costs an index range scan of the new rows only, however large the
+ * ledger grows. Inserts are announced on the ledger_outbox notification
+ * channel at commit.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class OutboxRepository {
+    
+    private static final String CHANNEL = "ledger_outbox";
+    
+    private static final String FIND_AFTER_SQL = "SELECT * FROM ledger_outbox " +
+        "WHERE event_id > ? AND event_id <= ? ORDER BY event_id LIMIT ?";
+    
+    private final DatabaseConfig dbConfig;
+    
+    public OutboxRepository() {
+        this.dbConfig = DatabaseConfig.getInstance();
+    }
+    
+    /**
+     * Finds events in offset order
+     * 
+     * @param after Offset to read after
+     * @param upTo Highest offset to return
+     * @param limit Most events to return
+     * @return Events with after &lt; offset &lt;= upTo
+     * @throws SQLException if error occurs
+     */
+    public List<LedgerEvent> findAfter(long after, long upTo, int limit) throws SQLException {
+        List<LedgerEvent> events = new ArrayList<>();
+        
+        try (Connection conn = dbConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(FIND_AFTER_SQL)) {
+            
+            stmt.setLong(1, after);
+            stmt.setLong(2, upTo);
+            stmt.setInt(3, limit);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    events.add(mapResultSetToEvent(rs));
+                }
+            }
+        }
+        
+        return events;
+    }
+    
+    /**
+     * Gets the offset of the newest event
+     * 
+     * @return Offset, or 0 if the outbox is empty
+     * @throws SQLException if error occurs
+     */
+    public long findLatestOffset() throws SQLException {
+        try (Connection conn = dbConfig.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(event_id), 0) FROM ledger_outbox")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+    
+    /**
+     * Gets the oldest transaction id still running: every transaction
+     * below it has committed or rolled back
+     * 
+     * @return pg_snapshot_xmin of the current snapshot
+     * @throws SQLException if error occurs
+     */
+    public long findOldestRunningTransaction() throws SQLException {
+        return querySnapshot("SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint");
+    }
+    
+    /**
+     * Gets the transaction id above every transaction started so far, so a
+     * transaction running now is below it
+     * 
+     * @return pg_snapshot_xmax of the current snapshot
+     * @throws SQLException if error occurs
+     */
+    public long findNextTransaction() throws SQLException {
+        return querySnapshot("SELECT pg_snapshot_xmax(pg_current_snapshot())::text::bigint");
+    }
+    
+    /**
+     * Deletes events older than the retention period
+     * 
+     * @param retentionDays Days events are kept
+     * @return Events deleted
+     * @throws SQLException if error occurs
+     */
+    public int deleteOlderThan(int retentionDays) throws SQLException {
+        String sql = "DELETE FROM ledger_outbox WHERE created_at < CURRENT_TIMESTAMP - make_interval(days => ?)";
+        
+        try (Connection conn = dbConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, retentionDays);
+            return stmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Opens a connection subscribed to outbox notifications. The caller
+     * keeps it open for {@link #awaitNotification} and closes it.
+     * 
+     * @return Listening connection
+     * @throws SQLException if error occurs
+     */
+    public Connection listen() throws SQLException {
+        Connection conn = dbConfig.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("LISTEN " + CHANNEL);
+            return conn;
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Waits for a notification on a listening connection
+     * 
+     * @param conn Connection from {@link #listen()}
+     * @param timeoutMillis Longest wait
+     * @return true if events were committed since the last call
+     * @throws SQLException if the connection failed
+     */
+    public static boolean awaitNotification(Connection conn, int timeoutMillis) throws SQLException {
+        PGNotification[] notifications = conn.unwrap(PGConnection.class).getNotifications(Math.max(1, timeoutMillis));
+        return notifications != null && notifications.length > 0;
+    }
+    
+    private long querySnapshot(String sql) throws SQLException {
+        try (Connection conn = dbConfig.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+    
+    private LedgerEvent mapResultSetToEvent(ResultSet rs) throws SQLException {
+        return new LedgerEvent(
+            rs.getLong("event_id"),
+            rs.getString("event_type"),
+            rs.getInt("transaction_id"),
+            (UUID) rs.getObject("transaction_uuid"),
+            rs.getInt("account_id"),
+            (Integer) rs.getObject("related_account_id"),
+            rs.getString("transaction_type"),
+            rs.getBigDecimal("amount"),
+            rs.getBigDecimal("balance_after"),
+            rs.getString("reference_number"),
+            rs.getString("status"),
+            rs.getTimestamp("occurred_at").toLocalDateTime()
+        );
+    }
+}
@@ -238,7 +238,9 @@ public class TransactionRepository {
     }
     
     /**
-     * Finds recent transactions across all accounts
+     * Finds recent transactions across all accounts. Systems following new
+     * transactions should read the ledger event stream (OutboxRelay)
+     * instead of polling this.
      * 
      * @param limit Number of records
      * @return List of recent transactions
@@ -0,0 +1,155 @@
+package com.banksim.server;
+
+import com.banksim.json.JsonResponse;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control and load shedding in front of the controllers.
+ * 
+ * Every request is classified by path into a {@link Priority}. A request
+ * is admitted while the number in flight is below the adaptive
+ * {@link GradientLimit} scaled by its priority's share, so as latency
+ * rises and the limit falls, test endpoints are shed first, then reads
+ * such as statements, and money movement last. Shed requests get an
+ * immediate 503 with Retry-After instead of queueing in the executor
+ * until the client times out.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class AdmissionController extends Filter {
+    
+    /**
+     * Request priority with the share of the limit it may use
+     */
+    public enum Priority {
+        CRITICAL(1.0),
+        NORMAL(0.8),
+        LOW(0.5);
+        
+        private final double share;
+        
+        Priority(double share) {
+            this.share = share;
+        }
+        
+        public double getShare() {
+            return share;
+        }
+    }
+    
+    private static final Priority[] PRIORITIES = Priority.values();
+    
+    private final GradientLimit limit;
+    private final String[] criticalPaths;
+    private final String[] lowPaths;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder[] admitted = new LongAdder[PRIORITIES.length];
+    private final LongAdder[] rejected = new LongAdder[PRIORITIES.length];
+    
+    /**
+     * Creates the controller
+     * 
+     * @param limit Adaptive concurrency limit
+     * @param criticalPaths Path prefixes admitted up to the full limit
+     * @param lowPaths Path prefixes shed first; everything else is NORMAL
+     */
+    public AdmissionController(GradientLimit limit, List<String> criticalPaths, List<String> lowPaths) {
+        this.limit = limit;
+        this.criticalPaths = criticalPaths.toArray(new String[0]);
+        this.lowPaths = lowPaths.toArray(new String[0]);
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            admitted[i] = new LongAdder();
+            rejected[i] = new LongAdder();
+        }
+    }
+    
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            chain.doFilter(exchange);
+            return;
+        }
+        
+        Priority priority = classify(exchange.getRequestURI().getPath());
+        int allowed = Math.max(1, (int) (limit.getLimit() * priority.share));
+        int current = inFlight.incrementAndGet();
+        
+        if (current > allowed) {
+            inFlight.decrementAndGet();
+            rejected[priority.ordinal()].increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            JsonResponse.error(exchange, 503, "Service overloaded, please retry");
+            return;
+        }
+        
+        admitted[priority.ordinal()].increment();
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            inFlight.decrementAndGet();
+            limit.onSample(System.nanoTime() - start, current, exchange.getResponseCode() == 503);
+        }
+    }
+    
+    @Override
+    public String description() {
+        return "Adaptive admission control";
+    }
+    
+    /**
+     * Classifies a request path
+     * 
+     * @param path Request path
+     * @return Priority
+     */
+    public Priority classify(String path) {
+        for (String prefix : criticalPaths) {
+            if (path.startsWith(prefix)) {
+                return Priority.CRITICAL;
+            }
+        }
+        for (String prefix : lowPaths) {
+            if (path.startsWith(prefix)) {
+                return Priority.LOW;
+            }
+        }
+        return Priority.NORMAL;
+    }
+    
+    /**
+     * Current adaptive limit
+     */
+    public int getLimit() {
+        return limit.getLimit();
+    }
+    
+    /**
+     * Requests currently admitted and running
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    /**
+     * Requests admitted so far at a priority
+     */
+    public long getAdmitted(Priority priority) {
+        return admitted[priority.ordinal()].sum();
+    }
+    
+    /**
+     * Requests shed so far at a priority
+     */
+    public long getRejected(Priority priority) {
+        return rejected[priority.ordinal()].sum();
+    }
+}
@@ -0,0 +1,123 @@
+package com.banksim.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming gzip or deflate encoder over a pooled {@link Deflater}.
+ * 
+ * Works like GZIPOutputStream / DeflaterOutputStream but borrows its
+ * deflater and output buffer from a {@link ResponseCompression} pool
+ * instead of allocating a native zlib stream per response. Closing the
+ * stream finishes the encoding, closes the target and returns the
+ * deflater to the pool.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class CompressingOutputStream extends OutputStream {
+    
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+    
+    private final OutputStream out;
+    private final ResponseCompression.Slot slot;
+    private final ResponseCompression owner;
+    private final boolean gzip;
+    private boolean closed;
+    
+    CompressingOutputStream(OutputStream out, ResponseCompression.Slot slot, ResponseCompression owner, 
+                            boolean gzip) throws IOException {
+        this.out = out;
+        this.slot = slot;
+        this.owner = owner;
+        this.gzip = gzip;
+        if (gzip) {
+            out.write(GZIP_HEADER);
+        }
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return;
+        }
+        if (gzip) {
+            slot.crc.update(b, off, len);
+        }
+        Deflater deflater = slot.deflater;
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            drain(Deflater.NO_FLUSH);
+        }
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        if (!closed) {
+            drain(Deflater.SYNC_FLUSH);
+            out.flush();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            Deflater deflater = slot.deflater;
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain(Deflater.NO_FLUSH);
+            }
+            if (gzip) {
+                writeTrailer(slot.crc, deflater);
+            }
+        } finally {
+            try {
+                out.close();
+            } finally {
+                owner.release(slot);
+            }
+        }
+    }
+    
+    private void drain(int flush) throws IOException {
+        byte[] buffer = slot.buffer;
+        int n;
+        do {
+            n = slot.deflater.deflate(buffer, 0, buffer.length, flush);
+            if (n > 0) {
+                out.write(buffer, 0, n);
+            }
+        } while (n == buffer.length);
+    }
+    
+    private void writeTrailer(CRC32 crc, Deflater deflater) throws IOException {
+        byte[] trailer = slot.buffer;
+        writeIntLE(trailer, 0, (int) crc.getValue());
+        writeIntLE(trailer, 4, (int) deflater.getBytesRead());
+        out.write(trailer, 0, 8);
+    }
+    
+    private static void writeIntLE(byte[] b, int off, int v) {
+        b[off] = (byte) v;
+        b[off + 1] = (byte) (v >> 8);
+        b[off + 2] = (byte) (v >> 16);
+        b[off + 3] = (byte) (v >> 24);
+    }
+}
@@ -0,0 +1,111 @@
+package com.banksim.server;
+
+import com.banksim.json.JsonResponse;
+import com.banksim.trace.Trace;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulkhead limiting how many requests run their handler at once.
+ * 
+ * With virtual threads the executor no longer caps concurrency, so this
+ * keeps in-flight requests at or below the database pool size. Waiting
+ * requests queue on a fair semaphore, which only parks a thread (cheap
+ * for virtual threads), and get 503 with Retry-After if no slot frees up
+ * within the timeout.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class ConcurrencyLimitFilter extends Filter {
+    
+    private final Semaphore permits;
+    private final int limit;
+    private final long timeoutMillis;
+    
+    /**
+     * Creates the filter
+     * 
+     * @param limit Maximum requests in flight
+     * @param timeoutMillis Maximum wait for a slot
+     */
+    public ConcurrencyLimitFilter(int limit, long timeoutMillis) {
+        this.permits = new Semaphore(limit, true);
+        this.limit = limit;
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        boolean acquired;
+        int span = Trace.begin("queue");
+        try {
+            acquired = permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            Trace.end(span);
+        }
+        
+        if (!acquired) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            JsonResponse.error(exchange, 503, "Server busy, please retry");
+            return;
+        }
+        
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            permits.release();
+        }
+    }
+    
+    /**
+     * Takes a slot without waiting, for work a request hands to other
+     * threads. Queued requests keep their turn: this fails while any wait.
+     * Give the slot back with {@link #release()}.
+     * 
+     * @return true if a slot was taken
+     */
+    public boolean tryAcquire() {
+        try {
+            // A zero timeout honours fairness, unlike the untimed tryAcquire()
+            return permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    /**
+     * Returns a slot taken with {@link #tryAcquire()}
+     */
+    public void release() {
+        permits.release();
+    }
+    
+    @Override
+    public String description() {
+        return "Limits concurrent requests to " + limit;
+    }
+    
+    /**
+     * Number of requests currently holding a slot
+     */
+    public int getInFlight() {
+        return limit - permits.availablePermits();
+    }
+    
+    /**
+     * Number of requests waiting for a slot (estimate)
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+}
@@ -0,0 +1,72 @@
+package com.banksim.server;
+
+import com.banksim.json.JsonResponse;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the rest of a context's chain on an executor of its own.
+ * 
+ * HttpServer has one executor for every context, so requests that wait
+ * for a long time, such as event streams, would hold threads the rest of
+ * the API needs. This hands them off to a separate executor and frees the
+ * server thread at once. A request that finds the executor full gets 503
+ * with Retry-After. Install it right after the request tracker, so the
+ * filters after it run on the thread that handles the request. The
+ * request stays in flight from the moment the tracker counts it until the
+ * handed-off chain finishes, through {@link ServerLifecycle#handOff()}.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class ExecutorFilter extends Filter {
+    
+    private final Executor executor;
+    private final String name;
+    
+    /**
+     * Creates the filter
+     * 
+     * @param executor Executor the requests run on; rejects when full
+     * @param name Name for logs
+     */
+    public ExecutorFilter(Executor executor, String name) {
+        this.executor = executor;
+        this.name = name;
+    }
+    
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        Runnable done = ServerLifecycle.handOff();
+        try {
+            executor.execute(() -> {
+                try {
+                    chain.doFilter(exchange);
+                } catch (IOException | RuntimeException e) {
+                    // The server thread is gone, so nothing else closes the exchange
+                    System.err.println("[ExecutorFilter] " + name + " request failed: " + e.getMessage());
+                    exchange.close();
+                } finally {
+                    done.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            try {
+                exchange.getResponseHeaders().set("Retry-After", "5");
+                JsonResponse.error(exchange, 503, "Server busy, please retry");
+            } finally {
+                done.run();
+            }
+        }
+    }
+    
+    @Override
+    public String description() {
+        return "Runs " + name + " requests on their own executor";
+    }
+}
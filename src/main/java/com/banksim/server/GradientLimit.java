@@ -0,0 +1,175 @@
+package com.banksim.server;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive concurrency limit driven by observed latency.
+ * 
+ * Keeps a slow-moving average of request latency as the no-load baseline
+ * and compares each new sample against it. While latency stays within
+ * {@code tolerance} times the baseline the limit grows by roughly its
+ * square root, probing for capacity; as latency climbs the gradient
+ * (baseline / sample) shrinks the limit proportionally. An overload signal
+ * (a request rejected downstream) cuts the limit multiplicatively, in AIMD
+ * fashion. Growth is skipped while fewer than half the slots are in use,
+ * so an idle server does not inflate its limit.
+ * 
+ * Every request completion reports a sample, so samples are only gathered
+ * on the hot path, into adders and compare-and-set maxima without a lock.
+ * The limit is recomputed once per window from the window's mean latency
+ * and peak concurrency, by whichever request first finds the window over.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class GradientLimit {
+    
+    private static final double SMOOTHING = 0.2;
+    private static final double BASELINE_WEIGHT = 0.01;
+    private static final double BACKOFF_RATIO = 0.9;
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final long windowNanos;
+    
+    // Samples of the current window
+    private final LongAdder rttSum = new LongAdder();
+    private final LongAdder rttCount = new LongAdder();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicBoolean overloaded = new AtomicBoolean();
+    private final AtomicLong windowStart;
+    private final AtomicBoolean updating = new AtomicBoolean();
+    
+    // Only written by the request closing a window
+    private double limit;
+    private volatile double baselineRtt;
+    private volatile int currentLimit;
+    
+    /**
+     * Creates a limit
+     * 
+     * @param initialLimit Starting limit
+     * @param minLimit Lowest the limit may fall
+     * @param maxLimit Highest the limit may rise
+     * @param tolerance Latency growth over baseline accepted before shrinking (e.g. 2.0)
+     * @param windowMillis How often the limit is recomputed; 0 for every sample
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, long windowMillis) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Require 1 <= min <= initial <= max");
+        }
+        if (tolerance < 1.0) {
+            throw new IllegalArgumentException("Tolerance must be at least 1.0");
+        }
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Window must not be negative");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.limit = initialLimit;
+        this.currentLimit = initialLimit;
+        this.windowStart = new AtomicLong(System.nanoTime());
+    }
+    
+    /**
+     * Current concurrency limit
+     */
+    public int getLimit() {
+        return currentLimit;
+    }
+    
+    /**
+     * Current latency baseline in nanoseconds
+     */
+    public long getBaselineRtt() {
+        return (long) baselineRtt;
+    }
+    
+    /**
+     * Records a completed request
+     * 
+     * @param rttNanos Request latency
+     * @param inFlight Requests in flight when this one started, itself included
+     * @param overloaded True if the request was shed or rejected downstream
+     */
+    public void onSample(long rttNanos, int inFlight, boolean overloaded) {
+        if (overloaded) {
+            // Read first, so a burst of rejections does not keep writing the line
+            if (!this.overloaded.get()) {
+                this.overloaded.set(true);
+            }
+        } else if (rttNanos > 0) {
+            rttSum.add(rttNanos);
+            rttCount.increment();
+            int peak = peakInFlight.get();
+            while (inFlight > peak && !peakInFlight.compareAndSet(peak, inFlight)) {
+                peak = peakInFlight.get();
+            }
+        }
+        
+        long now = System.nanoTime();
+        if (now - windowStart.get() >= windowNanos && updating.compareAndSet(false, true)) {
+            try {
+                closeWindow(now);
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+    
+    /**
+     * Folds the window's samples into the limit; samples that race with
+     * this count towards the next window
+     */
+    private void closeWindow(long now) {
+        windowStart.set(now);
+        if (overloaded.getAndSet(false)) {
+            rttSum.reset();
+            rttCount.reset();
+            peakInFlight.set(0);
+            update(limit * BACKOFF_RATIO);
+            return;
+        }
+        long count = rttCount.sumThenReset();
+        long sum = rttSum.sumThenReset();
+        int inFlight = peakInFlight.getAndSet(0);
+        // Read apart, so a sample racing the close may be in one and not the other
+        if (count == 0 || sum <= 0) {
+            return;
+        }
+        double rtt = (double) sum / count;
+        
+        double baseline = baselineRtt;
+        if (baseline == 0) {
+            baseline = rtt;
+        } else {
+            baseline += (rtt - baseline) * BASELINE_WEIGHT;
+            // After a sustained slowdown recovers, let the baseline follow quickly
+            if (baseline > rtt * 2) {
+                baseline *= 0.95;
+            }
+        }
+        baselineRtt = baseline;
+        
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * baseline / rtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        
+        if (newLimit > limit && inFlight < limit / 2) {
+            return;
+        }
+        
+        update(limit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+    }
+    
+    private void update(double newLimit) {
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        currentLimit = (int) limit;
+    }
+}
@@ -0,0 +1,299 @@
+package com.banksim.server;
+
+import com.banksim.config.ServerConfig;
+import com.banksim.json.JsonResponse;
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.MetricsRegistry;
+import com.banksim.model.User;
+import com.banksim.util.JwtClaims;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Per-user token-bucket rate limiting keyed by the JWT subject.
+ * 
+ * Each endpoint group keeps one bucket per user. Buckets use the generic
+ * cell rate algorithm: the whole bucket state is a single "theoretical
+ * arrival time" updated with one CAS, so acquiring is lock-free and
+ * allocation-free once the bucket exists. A bucket that has been full for
+ * longer than ratelimit.idle.timeout is evicted by a background sweeper.
+ * 
+ * Rates are "requests per second,burst" and resolve from most to least
+ * specific: ratelimit.group.{group}.{ROLE}, ratelimit.group.{group},
+ * ratelimit.role.{ROLE}, ratelimit.default.
+ * 
+ * Thread-safe singleton implementation.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class RateLimiter {
+    
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final String DEFAULT_RATE = "20,40";
+    
+    private static RateLimiter instance;
+    
+    private final Function<String, String> properties;
+    private final boolean enabled;
+    private final long idleTimeoutNanos;
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+    
+    /**
+     * Creates a limiter
+     * 
+     * @param properties Looks up a configuration value, returning null if unset
+     */
+    public RateLimiter(Function<String, String> properties) {
+        this.properties = properties;
+        this.enabled = Boolean.parseBoolean(property("ratelimit.enabled", "true"));
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(property("ratelimit.idle.timeout", "600000")));
+    }
+    
+    /**
+     * Gets the singleton instance configured from application.properties
+     * 
+     * @return RateLimiter instance
+     */
+    public static synchronized RateLimiter getInstance() {
+        if (instance == null) {
+            ServerConfig config = ServerConfig.getInstance();
+            instance = new RateLimiter(key -> config.getProperty(key, null));
+            instance.startSweeper();
+        }
+        return instance;
+    }
+    
+    /**
+     * Returns the bucket group for an endpoint group, creating it on first use.
+     * Call once at route registration and keep the result.
+     * 
+     * @param name Endpoint group name
+     * @return Group
+     */
+    public Group group(String name) {
+        return groups.computeIfAbsent(name, Group::new);
+    }
+    
+    /**
+     * Checks if rate limiting is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Evicts buckets that have been full for longer than the idle timeout
+     * 
+     * @param nowNanos Current System.nanoTime()
+     * @return Number of buckets evicted
+     */
+    public int evictIdle(long nowNanos) {
+        int evicted = 0;
+        for (Group group : groups.values()) {
+            int before = group.buckets.size();
+            group.buckets.values().removeIf(bucket -> nowNanos - bucket.tat.get() > idleTimeoutNanos);
+            evicted += before - group.buckets.size();
+        }
+        return evicted;
+    }
+    
+    private void startSweeper() {
+        if (!enabled) {
+            return;
+        }
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ratelimit-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, Math.min(60_000, TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos)));
+        sweeper.scheduleWithFixedDelay(() -> evictIdle(System.nanoTime()), interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    private String property(String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+    
+    private Policy resolve(String group, String role) {
+        String spec = properties.apply("ratelimit.group." + group + "." + role);
+        if (spec == null) {
+            spec = properties.apply("ratelimit.group." + group);
+        }
+        if (spec == null) {
+            spec = properties.apply("ratelimit.role." + role);
+        }
+        if (spec == null) {
+            spec = property("ratelimit.default", DEFAULT_RATE);
+        }
+        return Policy.parse(spec.trim());
+    }
+    
+    /**
+     * Rate and burst for one group and role
+     */
+    static final class Policy {
+        final double ratePerSecond;
+        final int burst;
+        final long intervalNanos;
+        final long toleranceNanos;
+        
+        Policy(double ratePerSecond, int burst) {
+            if (ratePerSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Rate must be positive and burst at least 1");
+            }
+            this.ratePerSecond = ratePerSecond;
+            this.burst = burst;
+            this.intervalNanos = Math.max(1, (long) (NANOS_PER_SECOND / ratePerSecond));
+            this.toleranceNanos = intervalNanos * (burst - 1);
+        }
+        
+        static Policy parse(String spec) {
+            int comma = spec.indexOf(',');
+            double rate = Double.parseDouble(comma < 0 ? spec : spec.substring(0, comma).trim());
+            int burst = comma < 0 ? (int) Math.ceil(rate) : Integer.parseInt(spec.substring(comma + 1).trim());
+            return new Policy(rate, burst);
+        }
+    }
+    
+    /**
+     * Bucket state: the time at which the bucket will be full again
+     */
+    static final class Bucket {
+        final Policy policy;
+        final AtomicLong tat;
+        
+        Bucket(Policy policy, long nowNanos) {
+            this.policy = policy;
+            this.tat = new AtomicLong(nowNanos);
+        }
+    }
+    
+    /**
+     * Buckets for one endpoint group
+     */
+    public final class Group {
+        
+        private final String name;
+        private final Map<String, Policy> rolePolicies = new HashMap<>();
+        private final Policy defaultPolicy;
+        private final Map<Integer, Bucket> buckets = new ConcurrentHashMap<>();
+        private final Counter allowed;
+        private final Counter rejected;
+        
+        private Group(String name) {
+            this.name = name;
+            MetricsRegistry registry = MetricsRegistry.getInstance();
+            this.allowed = registry.counter("banksim_ratelimit_requests_total",
+                "Rate-limited requests, by endpoint group and result", "group", name, "result", "allowed");
+            this.rejected = registry.counter("banksim_ratelimit_requests_total",
+                "Rate-limited requests, by endpoint group and result", "group", name, "result", "rejected");
+            for (User.Role role : User.Role.values()) {
+                rolePolicies.put(role.name(), resolve(name, role.name()));
+            }
+            this.defaultPolicy = resolve(name, "DEFAULT");
+        }
+        
+        /**
+         * Takes a token for a user
+         * 
+         * @param userId User ID (JWT subject)
+         * @param role User role
+         * @param nowNanos Current System.nanoTime()
+         * @return Tokens remaining (>= 0) if allowed, or minus the nanoseconds
+         *         until a token is available if denied
+         */
+        public long acquire(Integer userId, String role, long nowNanos) {
+            return acquire(userId, policyFor(role), nowNanos);
+        }
+        
+        private long acquire(Integer userId, Policy policy, long nowNanos) {
+            Bucket bucket = buckets.get(userId);
+            if (bucket == null) {
+                Bucket fresh = new Bucket(policy, nowNanos);
+                bucket = buckets.putIfAbsent(userId, fresh);
+                if (bucket == null) {
+                    bucket = fresh;
+                }
+            }
+            if (bucket.policy != policy) {
+                // Role changed: restart with a full bucket under the new policy
+                bucket = new Bucket(policy, nowNanos);
+                buckets.put(userId, bucket);
+            }
+            
+            long interval = policy.intervalNanos;
+            long tolerance = policy.toleranceNanos;
+            while (true) {
+                long tat = bucket.tat.get();
+                long base = tat - nowNanos > 0 ? tat : nowNanos;
+                long wait = base - nowNanos - tolerance;
+                if (wait > 0) {
+                    return -wait;
+                }
+                long newTat = base + interval;
+                if (bucket.tat.compareAndSet(tat, newTat)) {
+                    return Math.max(0, (tolerance + interval - (newTat - nowNanos)) / interval);
+                }
+            }
+        }
+        
+        private Policy policyFor(String role) {
+            return role == null ? defaultPolicy : rolePolicies.getOrDefault(role, defaultPolicy);
+        }
+        
+        /**
+         * Applies the limit to a request, setting X-RateLimit-* headers and
+         * answering 429 with Retry-After when the user is over their rate
+         * 
+         * @param exchange HTTP exchange
+         * @param principal Authenticated caller
+         * @return true if the request may proceed
+         */
+        public boolean check(HttpExchange exchange, JwtClaims principal) throws IOException {
+            if (!enabled || principal.getUserId() == null) {
+                return true;
+            }
+            
+            Policy policy = policyFor(principal.getRole());
+            long result = acquire(principal.getUserId(), policy, System.nanoTime());
+            
+            exchange.getResponseHeaders().set("X-RateLimit-Limit", Integer.toString(policy.burst));
+            if (result >= 0) {
+                exchange.getResponseHeaders().set("X-RateLimit-Remaining", Long.toString(result));
+                allowed.increment();
+                return true;
+            }
+            
+            rejected.increment();
+            long retryAfterSeconds = Math.max(1, (-result + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+            exchange.getResponseHeaders().set("X-RateLimit-Remaining", "0");
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfterSeconds));
+            JsonResponse.error(exchange, 429, "Rate limit exceeded for " + name);
+            return false;
+        }
+        
+        /**
+         * Number of live buckets in this group
+         */
+        public int size() {
+            return buckets.size();
+        }
+        
+        public String getName() {
+            return name;
+        }
+    }
+}
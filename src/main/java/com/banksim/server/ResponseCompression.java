@@ -0,0 +1,187 @@
+package com.banksim.server;
+
+import com.banksim.config.ServerConfig;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Negotiated gzip/deflate response compression with pooled deflaters.
+ * 
+ * A response is compressed when compression is enabled, its body is at
+ * least the configured threshold, and the client's Accept-Encoding allows
+ * gzip or deflate (gzip preferred). Compressed bodies are streamed as a
+ * chunked response. Deflaters hold native zlib memory, so a bounded pool
+ * per encoding reuses them rather than allocating and finalizing one per
+ * response.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class ResponseCompression {
+    
+    /**
+     * Supported content codings
+     */
+    public enum Encoding {
+        GZIP("gzip"),
+        DEFLATE("deflate");
+        
+        private final String token;
+        
+        Encoding(String token) {
+            this.token = token;
+        }
+        
+        public String token() {
+            return token;
+        }
+    }
+    
+    private static final int BUFFER_SIZE = 8192;
+    private static final int POOL_SIZE = 64;
+    
+    private final boolean enabled;
+    private final int threshold;
+    private final int level;
+    private final BlockingQueue<Slot> gzipPool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Slot> deflatePool = new ArrayBlockingQueue<>(POOL_SIZE);
+    
+    /**
+     * Creates a compressor
+     * 
+     * @param enabled Whether compression is applied at all
+     * @param threshold Minimum body size in bytes to compress
+     * @param level Deflater level 1-9
+     */
+    public ResponseCompression(boolean enabled, int threshold, int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9");
+        }
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.level = level;
+    }
+    
+    /**
+     * Creates a compressor from application.properties
+     */
+    public static ResponseCompression fromConfig() {
+        ServerConfig config = ServerConfig.getInstance();
+        return new ResponseCompression(config.isCompressionEnabled(), config.getCompressionThreshold(),
+            config.getCompressionLevel());
+    }
+    
+    /**
+     * Chooses the encoding for a response body
+     * 
+     * @param exchange HTTP exchange
+     * @param bodyLength Uncompressed body length
+     * @return Encoding, or null to send the body as is
+     */
+    public Encoding select(HttpExchange exchange, long bodyLength) {
+        if (!enabled || bodyLength < threshold) {
+            return null;
+        }
+        return negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    }
+    
+    /**
+     * Picks gzip or deflate from an Accept-Encoding header, honoring q=0
+     * 
+     * @param acceptEncoding Header value, may be null
+     * @return Preferred acceptable encoding, or null
+     */
+    public static Encoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        boolean gzip = false;
+        boolean deflate = false;
+        boolean wildcard = false;
+        
+        int start = 0;
+        int length = acceptEncoding.length();
+        while (start < length) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int semicolon = acceptEncoding.indexOf(';', start);
+            int tokenEnd = semicolon >= 0 && semicolon < end ? semicolon : end;
+            String token = acceptEncoding.substring(start, tokenEnd).trim();
+            boolean accepted = semicolon < 0 || semicolon >= end || !isZeroQuality(acceptEncoding, semicolon + 1, end);
+            
+            if (token.equalsIgnoreCase("gzip") || token.equalsIgnoreCase("x-gzip")) {
+                gzip = accepted;
+            } else if (token.equalsIgnoreCase("deflate")) {
+                deflate = accepted;
+            } else if (token.equals("*")) {
+                wildcard = accepted;
+            }
+            start = end + 1;
+        }
+        
+        if (gzip || (wildcard && !acceptEncoding.toLowerCase().contains("gzip"))) {
+            return Encoding.GZIP;
+        }
+        return deflate ? Encoding.DEFLATE : null;
+    }
+    
+    private static boolean isZeroQuality(String header, int start, int end) {
+        String params = header.substring(start, end).trim().toLowerCase();
+        if (!params.startsWith("q=")) {
+            return false;
+        }
+        try {
+            return Double.parseDouble(params.substring(2).trim()) <= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Wraps a response stream with a compressing encoder
+     * 
+     * @param out Response body stream
+     * @param encoding Chosen encoding
+     * @return Stream to write the uncompressed body to; closing it closes out
+     */
+    public OutputStream wrap(OutputStream out, Encoding encoding) throws IOException {
+        boolean gzip = encoding == Encoding.GZIP;
+        Slot slot = (gzip ? gzipPool : deflatePool).poll();
+        if (slot == null) {
+            slot = new Slot(new Deflater(level, gzip), gzip);
+        }
+        return new CompressingOutputStream(out, slot, this, gzip);
+    }
+    
+    void release(Slot slot) {
+        slot.deflater.reset();
+        slot.crc.reset();
+        if (!(slot.gzip ? gzipPool : deflatePool).offer(slot)) {
+            slot.deflater.end();
+        }
+    }
+    
+    /**
+     * A pooled deflater with its output buffer and checksum
+     */
+    static final class Slot {
+        final Deflater deflater;
+        final boolean gzip;
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        final CRC32 crc = new CRC32();
+        
+        Slot(Deflater deflater, boolean gzip) {
+            this.deflater = deflater;
+            this.gzip = gzip;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.banksim.server;
+
+import com.banksim.config.ServerConfig;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executor that runs HTTP exchanges.
+ * 
+ * The build targets Java 17, so virtual threads are created reflectively
+ * through {@code Executors.newVirtualThreadPerTaskExecutor()}. On an older
+ * runtime the virtual mode falls back to the fork-join pool with a warning.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class ServerExecutors {
+    
+    private ServerExecutors() {
+    }
+    
+    /**
+     * Creates the executor for the configured mode
+     * 
+     * @param config Server configuration
+     * @return Executor for HttpServer.setExecutor
+     */
+    public static ExecutorService create(ServerConfig config) {
+        switch (config.getExecutorMode()) {
+            case VIRTUAL:
+                ExecutorService virtual = newVirtualThreadExecutor();
+                if (virtual != null) {
+                    return virtual;
+                }
+                System.err.println("[ServerExecutors] Virtual threads need Java 21+ (running "
+                    + Runtime.version().feature() + "); using forkjoin executor");
+                return newForkJoinExecutor(config.getThreads());
+            case FORKJOIN:
+                return newForkJoinExecutor(config.getThreads());
+            case FIXED:
+            default:
+                return Executors.newFixedThreadPool(config.getThreads(), namedThreads("http-worker-"));
+        }
+    }
+    
+    /**
+     * Creates an executor of at most the given number of threads that
+     * rejects work when all are busy, for use with {@link ExecutorFilter}.
+     * Threads are started on demand and end after a minute idle.
+     * 
+     * @param prefix Thread name prefix
+     * @param threads Maximum threads
+     * @return Executor that never queues
+     */
+    public static ExecutorService newBoundedExecutor(String prefix, int threads) {
+        return new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            namedThreads(prefix));
+    }
+    
+    /**
+     * Returns true if this runtime supports virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+    
+    private static ExecutorService newVirtualThreadExecutor() {
+        if (!isVirtualThreadSupported()) {
+            return null;
+        }
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("[ServerExecutors] Could not create virtual thread executor: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private static ExecutorService newForkJoinExecutor(int parallelism) {
+        AtomicInteger counter = new AtomicInteger();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("http-forkjoin-" + counter.incrementAndGet());
+            return thread;
+        };
+        // FIFO (async) mode suits independent request tasks better than LIFO
+        return new ForkJoinPool(parallelism, factory, null, true);
+    }
+    
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,280 @@
+package com.banksim.server;
+
+import com.banksim.json.JsonResponse;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Orderly shutdown that lets in-flight requests finish.
+ * 
+ * Shutdown runs in stages against one deadline (server.shutdown.timeout):
+ * <ol>
+ *   <li>stop admitting: requests that still arrive get 503 with
+ *       Connection: close so clients retry on another instance;</li>
+ *   <li>drain: wait for every request already admitted to complete, then
+ *       close the listening socket and stop the request executor;</li>
+ *   <li>run drain tasks, such as asynchronous queues that must be flushed
+ *       while the database is still available;</li>
+ *   <li>run shutdown tasks, such as writing the final metrics and closing
+ *       the database, in registration order.</li>
+ * </ol>
+ * Stages that find the deadline already spent are still run, but only get
+ * what is left of it, so a stuck request cannot hold up the shutdown forever.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class ServerLifecycle {
+    
+    /**
+     * Work that must finish before the database closes, such as an async queue
+     */
+    @FunctionalInterface
+    public interface DrainTask {
+        /**
+         * Drains within the timeout
+         * 
+         * @param timeoutMillis Time left before the shutdown deadline
+         * @return true if everything was drained
+         */
+        boolean drain(long timeoutMillis) throws InterruptedException;
+    }
+    
+    // Request counted by a tracker further up the filter chain on this thread
+    private static final ThreadLocal<Tracked> TRACKED = new ThreadLocal<>();
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Object idle = new Object();
+    private final List<String> drainNames = new ArrayList<>();
+    private final List<DrainTask> drainTasks = new ArrayList<>();
+    private final List<String> shutdownNames = new ArrayList<>();
+    private final List<Runnable> shutdownTasks = new ArrayList<>();
+    
+    /**
+     * Creates the lifecycle for a server
+     * 
+     * @param server HTTP server
+     * @param executor Executor handling its requests
+     * @param timeoutMillis Deadline for the whole shutdown
+     */
+    public ServerLifecycle(HttpServer server, ExecutorService executor, long timeoutMillis) {
+        this.server = server;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    /**
+     * Filter counting requests in flight; add it first to every context
+     */
+    public Filter requestTracker() {
+        return new RequestTracker();
+    }
+    
+    /**
+     * Carries the current request over to another thread, for a filter that
+     * hands the rest of the chain off: the request stays in flight after its
+     * filter chain returns, until the returned task runs. Run it once, when
+     * the request is done, whether or not the hand-off succeeded.
+     * 
+     * @return Task that ends the request; does nothing if no tracker counted it
+     */
+    public static Runnable handOff() {
+        Tracked tracked = TRACKED.get();
+        if (tracked == null) {
+            return () -> { };
+        }
+        TRACKED.remove();
+        tracked.handedOff = true;
+        return tracked;
+    }
+    
+    /**
+     * Registers work to drain after requests finish but before shutdown tasks
+     * 
+     * @param name Name for the shutdown log
+     * @param task Drain task
+     */
+    public synchronized void onDrain(String name, DrainTask task) {
+        drainNames.add(name);
+        drainTasks.add(task);
+    }
+    
+    /**
+     * Registers a final step, run in registration order
+     * 
+     * @param name Name for the shutdown log
+     * @param task Shutdown task
+     */
+    public synchronized void onShutdown(String name, Runnable task) {
+        shutdownNames.add(name);
+        shutdownTasks.add(task);
+    }
+    
+    /**
+     * Runs {@link #shutdown()} when the JVM receives SIGTERM or Ctrl+C
+     */
+    public void installShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "server-shutdown"));
+    }
+    
+    /**
+     * Checks if the server has started shutting down
+     */
+    public boolean isDraining() {
+        return draining.get();
+    }
+    
+    /**
+     * Number of requests currently being handled
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    /**
+     * Shuts down in stages within the configured deadline. Only the first
+     * call has any effect.
+     */
+    public void shutdown() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        System.out.println("[ServerLifecycle] Shutting down; draining " + inFlight.get()
+            + " in-flight requests (timeout " + timeoutMillis + " ms)");
+        
+        try {
+            boolean drained = awaitIdle(deadline);
+            // Only once idle: on JDK 17 stop(n) waits all n seconds even with no
+            // exchange open (JDK-8304065), which would eat the drain tasks' time
+            server.stop(0);
+            executor.shutdown();
+            executor.awaitTermination(Math.max(0, TimeUnit.NANOSECONDS.toMillis(remaining(deadline))),
+                TimeUnit.MILLISECONDS);
+            if (drained) {
+                System.out.println("[ServerLifecycle] All requests completed in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+            } else {
+                System.err.println("[ServerLifecycle] Deadline reached with " + inFlight.get()
+                    + " requests still in flight");
+            }
+            
+            List<String> names;
+            List<DrainTask> drains;
+            synchronized (this) {
+                names = new ArrayList<>(drainNames);
+                drains = new ArrayList<>(drainTasks);
+            }
+            for (int i = 0; i < drains.size(); i++) {
+                long left = Math.max(0, TimeUnit.NANOSECONDS.toMillis(remaining(deadline)));
+                if (!drains.get(i).drain(left)) {
+                    System.err.println("[ServerLifecycle] " + names.get(i) + " did not drain before the deadline");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            System.err.println("[ServerLifecycle] Error while draining: " + e.getMessage());
+        }
+        
+        List<String> names;
+        List<Runnable> tasks;
+        synchronized (this) {
+            names = new ArrayList<>(shutdownNames);
+            tasks = new ArrayList<>(shutdownTasks);
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                tasks.get(i).run();
+            } catch (RuntimeException e) {
+                System.err.println("[ServerLifecycle] " + names.get(i) + " failed: " + e.getMessage());
+            }
+        }
+        System.out.println("[ServerLifecycle] Stopped after "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+    }
+    
+    private boolean awaitIdle(long deadline) throws InterruptedException {
+        synchronized (idle) {
+            while (inFlight.get() > 0) {
+                long left = remaining(deadline);
+                if (left <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(idle, left);
+            }
+        }
+        return true;
+    }
+    
+    private static long remaining(long deadline) {
+        return deadline - System.nanoTime();
+    }
+    
+    /**
+     * Counts requests and turns new ones away once shutdown has begun
+     */
+    private class RequestTracker extends Filter {
+        
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            Tracked tracked = new Tracked();
+            inFlight.incrementAndGet();
+            try {
+                // Checked after counting, so a request is either drained or rejected
+                if (draining.get()) {
+                    exchange.getResponseHeaders().set("Connection", "close");
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    JsonResponse.error(exchange, 503, "Server is shutting down");
+                    return;
+                }
+                TRACKED.set(tracked);
+                chain.doFilter(exchange);
+            } finally {
+                TRACKED.remove();
+                if (!tracked.handedOff) {
+                    tracked.run();
+                }
+            }
+        }
+        
+        @Override
+        public String description() {
+            return "Tracks in-flight requests for graceful shutdown";
+        }
+    }
+    
+    /**
+     * One counted request; running it ends the request, once
+     */
+    private final class Tracked implements Runnable {
+        
+        private final AtomicBoolean ended = new AtomicBoolean();
+        // Set on the request thread before its tracker returns
+        private boolean handedOff;
+        
+        @Override
+        public void run() {
+            if (ended.compareAndSet(false, true) && inFlight.decrementAndGet() == 0 && draining.get()) {
+                synchronized (idle) {
+                    idle.notifyAll();
+                }
+            }
+        }
+    }
+}
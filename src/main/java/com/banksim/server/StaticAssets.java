@@ -0,0 +1,389 @@
+package com.banksim.server;
+
+import com.banksim.config.ServerConfig;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Serves a directory of static files from memory.
+ * 
+ * Every file under the root is read once at startup, or memory-mapped when
+ * larger than the map threshold, and text assets get a gzip variant
+ * compressed ahead of time at the best level. Requests are answered from
+ * that snapshot with strong ETags and Cache-Control, so a hit does no disk
+ * I/O and no compression work. Lookups only ever match loaded paths, which
+ * also rules out directory traversal.
+ * 
+ * HTML is sent with no-cache so the app shell is always revalidated (a
+ * cheap 304); other assets may be cached for static.max.age seconds. In
+ * dev mode a watcher thread reloads the snapshot whenever the directory
+ * changes.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class StaticAssets implements HttpHandler {
+    
+    private static final int CHUNK_SIZE = 64 * 1024;
+    
+    private final Path root;
+    private final long maxAgeSeconds;
+    private final long mapThreshold;
+    private volatile Map<String, Asset> assets;
+    
+    /**
+     * Loads every file under a directory
+     * 
+     * @param root Directory to serve
+     * @param maxAgeSeconds Cache lifetime for non-HTML assets
+     * @param mapThreshold Files at least this large are memory-mapped instead of read
+     */
+    public StaticAssets(Path root, long maxAgeSeconds, long mapThreshold) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.mapThreshold = mapThreshold;
+        reload();
+    }
+    
+    /**
+     * Creates the handler from application.properties, starting the
+     * watcher when static.dev.mode is set
+     * 
+     * @param defaultRoot Directory used when static.root is not configured
+     */
+    public static StaticAssets fromConfig(String defaultRoot) throws IOException {
+        ServerConfig config = ServerConfig.getInstance();
+        StaticAssets assets = new StaticAssets(Path.of(config.getProperty("static.root", defaultRoot)),
+            Long.parseLong(config.getProperty("static.max.age", "3600")),
+            Long.parseLong(config.getProperty("static.map.threshold", "1048576")));
+        if (Boolean.parseBoolean(config.getProperty("static.dev.mode", "false"))) {
+            assets.watch();
+        }
+        return assets;
+    }
+    
+    /**
+     * Rebuilds the snapshot from disk and swaps it in
+     */
+    public void reload() throws IOException {
+        Map<String, Asset> loaded = new HashMap<>();
+        if (Files.isDirectory(root)) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String path = "/" + root.relativize(file).toString().replace('\\', '/');
+                loaded.put(path, load(file, path));
+            }
+        }
+        assets = Collections.unmodifiableMap(loaded);
+        System.out.println("[StaticAssets] Loaded " + loaded.size() + " assets from " + root);
+    }
+    
+    /**
+     * Finds an asset; a path ending in / resolves to its index.html
+     * 
+     * @param path Request path
+     * @return Asset, or null if not loaded
+     */
+    public Asset find(String path) {
+        if (path.isEmpty() || path.endsWith("/")) {
+            path = path + "index.html";
+        }
+        return assets.get(path);
+    }
+    
+    /**
+     * Number of assets in the current snapshot
+     */
+    public int size() {
+        return assets.size();
+    }
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        boolean head = method.equals("HEAD");
+        if (!head && !method.equals("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        
+        Asset asset = find(exchange.getRequestURI().getPath());
+        if (asset == null) {
+            byte[] body = "404 Not Found".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain;charset=UTF-8");
+            exchange.sendResponseHeaders(404, head ? -1 : body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                if (!head) {
+                    os.write(body);
+                }
+            }
+            return;
+        }
+        
+        boolean gzip = asset.gzipped != null
+            && ResponseCompression.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"))
+                == ResponseCompression.Encoding.GZIP;
+        String etag = gzip ? asset.gzipEtag : asset.etag;
+        
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", asset.contentType);
+        headers.set("ETag", etag);
+        headers.set("Cache-Control", asset.contentType.startsWith("text/html")
+            ? "no-cache" : "public, max-age=" + maxAgeSeconds);
+        if (asset.gzipped != null) {
+            headers.set("Vary", "Accept-Encoding");
+        }
+        
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null && matches(ifNoneMatch, etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        
+        if (gzip) {
+            headers.set("Content-Encoding", "gzip");
+        }
+        long length = gzip ? asset.gzipped.length : asset.length();
+        if (head) {
+            headers.set("Content-Length", Long.toString(length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (gzip) {
+                os.write(asset.gzipped);
+            } else {
+                asset.writeTo(os);
+            }
+        }
+    }
+    
+    /**
+     * Reloads the snapshot whenever a file under the root changes.
+     * Runs on a daemon thread; meant for development.
+     */
+    public void watch() throws IOException {
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        registerDirectories(watcher);
+        
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    // Let a burst of editor writes settle, then reload once
+                    Thread.sleep(100);
+                    do {
+                        key.pollEvents();
+                        key.reset();
+                    } while ((key = watcher.poll()) != null);
+                    reload();
+                    registerDirectories(watcher);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ClosedWatchServiceException e) {
+                // Shutting down
+            } catch (IOException e) {
+                System.err.println("[StaticAssets] Watcher stopped: " + e.getMessage());
+            }
+        }, "static-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("[StaticAssets] Watching " + root + " for changes");
+    }
+    
+    private void registerDirectories(WatchService watcher) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        List<Path> directories;
+        try (Stream<Path> walk = Files.walk(root)) {
+            directories = walk.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+        for (Path directory : directories) {
+            directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        }
+    }
+    
+    private Asset load(Path file, String path) throws IOException {
+        String contentType = contentType(path);
+        long size = Files.size(file);
+        
+        if (size >= mapThreshold) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return new Asset(contentType, null, mapped, etag(mapped.duplicate(), size), null);
+            }
+        }
+        
+        byte[] content = Files.readAllBytes(file);
+        byte[] gzipped = isCompressible(contentType) ? gzip(content) : null;
+        // Keep the variant only when it saves at least a tenth
+        if (gzipped != null && gzipped.length > content.length * 9L / 10) {
+            gzipped = null;
+        }
+        return new Asset(contentType, content, null, etag(ByteBuffer.wrap(content), size), gzipped);
+    }
+    
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 3 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gz.write(content);
+        }
+        return out.toByteArray();
+    }
+    
+    private static String etag(ByteBuffer content, long size) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content);
+            byte[] hash = digest.digest();
+            StringBuilder tag = new StringBuilder("\"").append(Long.toString(size, 36)).append('-');
+            for (int i = 0; i < 8; i++) {
+                tag.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return tag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    static boolean matches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith("application/javascript")
+            || contentType.startsWith("application/json") || contentType.startsWith("image/svg+xml");
+    }
+    
+    private static String contentType(String path) {
+        int dot = path.lastIndexOf('.');
+        String extension = dot < 0 ? "" : path.substring(dot + 1).toLowerCase();
+        switch (extension) {
+            case "html": case "htm": return "text/html;charset=UTF-8";
+            case "css": return "text/css;charset=UTF-8";
+            case "js": return "application/javascript;charset=UTF-8";
+            case "json": return "application/json;charset=UTF-8";
+            case "svg": return "image/svg+xml";
+            case "png": return "image/png";
+            case "jpg": case "jpeg": return "image/jpeg";
+            case "gif": return "image/gif";
+            case "ico": return "image/x-icon";
+            case "woff2": return "font/woff2";
+            case "pdf": return "application/pdf";
+            case "txt": return "text/plain;charset=UTF-8";
+            default: return "application/octet-stream";
+        }
+    }
+    
+    /**
+     * A loaded file: its bytes on the heap or mapped, its strong ETag and
+     * an optional gzip variant
+     */
+    public static final class Asset {
+        private final String contentType;
+        private final byte[] content;
+        private final ByteBuffer mapped;
+        private final String etag;
+        private final String gzipEtag;
+        private final byte[] gzipped;
+        
+        Asset(String contentType, byte[] content, ByteBuffer mapped, String etag, byte[] gzipped) {
+            this.contentType = contentType;
+            this.content = content;
+            this.mapped = mapped;
+            this.etag = etag;
+            this.gzipEtag = etag.substring(0, etag.length() - 1) + "-gz\"";
+            this.gzipped = gzipped;
+        }
+        
+        public String getContentType() {
+            return contentType;
+        }
+        
+        public String getEtag() {
+            return etag;
+        }
+        
+        public long length() {
+            return content != null ? content.length : mapped.capacity();
+        }
+        
+        public boolean isMapped() {
+            return mapped != null;
+        }
+        
+        /**
+         * Gets the precompressed body, or null if the asset is sent as is
+         */
+        public byte[] getGzipped() {
+            return gzipped;
+        }
+        
+        void writeTo(OutputStream out) throws IOException {
+            if (content != null) {
+                out.write(content);
+                return;
+            }
+            ByteBuffer source = mapped.duplicate();
+            byte[] chunk = new byte[Math.min(CHUNK_SIZE, source.remaining())];
+            while (source.hasRemaining()) {
+                int n = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+    }
+}
@@ -21,10 +21,12 @@ public class AccountService {
     
     private final AccountRepository accountRepository;
     private final CustomerRepository customerRepository;
+    private final AccountVersions accountVersions;
     
     public AccountService() {
         this.accountRepository = new AccountRepository();
         this.customerRepository = new CustomerRepository();
+        this.accountVersions = AccountVersions.getInstance();
     }
     
     /**
@@ -157,6 +159,7 @@ public class AccountService {
             
             account.setStatus(status);
             accountRepository.update(account);
+            accountVersions.bump(account.getAccountId());
             
         } catch (SQLException e) {
             throw new AccountServiceException("Database error: " + e.getMessage());
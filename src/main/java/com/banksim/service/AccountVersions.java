@@ -0,0 +1,78 @@
+package com.banksim.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory change counter per account, used to validate cached reads.
+ * 
+ * Every write that changes an account's balance, status or transaction
+ * history bumps its counter once the change is committed. Read endpoints
+ * take the tag before they query, so a response can only carry a tag that
+ * is older than its data, never newer: a racing write costs one extra full
+ * read, but never a 304 over stale content.
+ * 
+ * Tags embed a per-process epoch so that tags issued before a restart never
+ * match. The counter only sees writes made through this process; it is
+ * meant for a single server instance in front of the database.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class AccountVersions {
+    
+    private static AccountVersions instance;
+    
+    private final String epoch;
+    private final ConcurrentHashMap<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+    
+    /**
+     * Creates a counter set with its own epoch
+     */
+    public AccountVersions() {
+        this.epoch = Long.toString(System.currentTimeMillis(), 36);
+    }
+    
+    /**
+     * Gets the singleton instance of AccountVersions
+     * 
+     * @return AccountVersions instance
+     */
+    public static synchronized AccountVersions getInstance() {
+        if (instance == null) {
+            instance = new AccountVersions();
+        }
+        return instance;
+    }
+    
+    /**
+     * Records a committed change to an account
+     * 
+     * @param accountId Account ID
+     */
+    public void bump(long accountId) {
+        versions.computeIfAbsent(accountId, id -> new AtomicLong()).incrementAndGet();
+    }
+    
+    /**
+     * Gets an account's current version; 0 until its first change
+     * 
+     * @param accountId Account ID
+     * @return Version number
+     */
+    public long version(long accountId) {
+        AtomicLong version = versions.get(accountId);
+        return version == null ? 0 : version.get();
+    }
+    
+    /**
+     * Builds the weak entity tag for an account's current state
+     * 
+     * @param accountId Account ID
+     * @return Quoted weak ETag, e.g. W/"42.lq3k9z.7"
+     */
+    public String etag(long accountId) {
+        return "W/\"" + accountId + '.' + epoch + '.' + version(accountId) + '"';
+    }
+}
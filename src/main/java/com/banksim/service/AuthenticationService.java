@@ -5,6 +5,9 @@ import com.banksim.model.Customer;
 import com.banksim.model.User;
 import com.banksim.repository.CustomerRepository;
 import com.banksim.repository.UserRepository;
+import com.banksim.session.Session;
+import com.banksim.session.SessionManager;
+import com.banksim.util.JwtClaims;
 import com.banksim.util.JwtUtil;
 import com.banksim.util.PasswordUtil;
 import com.banksim.util.ValidationUtil;
@@ -25,11 +28,13 @@ public class AuthenticationService {
     private final UserRepository userRepository;
     private final CustomerRepository customerRepository;
     private final SecurityConfig securityConfig;
+    private final SessionManager sessionManager;
     
     public AuthenticationService() {
         this.userRepository = new UserRepository();
         this.customerRepository = new CustomerRepository();
         this.securityConfig = SecurityConfig.getInstance();
+        this.sessionManager = SessionManager.getInstance();
     }
     
     /**
@@ -75,6 +80,7 @@ public class AuthenticationService {
                 // Lock account if max attempts reached
                 if (user.getFailedLoginAttempts() >= securityConfig.getMaxFailedAttempts()) {
                     userRepository.lockAccount(user.getUserId());
+                    sessionManager.revokeUser(user.getUserId());
                     throw new AuthenticationException("Account locked due to too many failed attempts");
                 }
                 
@@ -99,6 +105,15 @@ public class AuthenticationService {
             response.put("role", user.getRole().name());
             response.put("expiresIn", securityConfig.getJwtExpiration());
             
+            // Stateful mode: issue an opaque session id alongside the tokens
+            if (sessionManager.isStateful()) {
+                Optional<Customer> customerOpt = customerRepository.findByUserId(user.getUserId());
+                Session session = sessionManager.createSession(user.getUserId(), user.getUsername(),
+                    user.getRole().name(), customerOpt.map(Customer::getCustomerId).orElse(null));
+                response.put("sessionId", session.getSessionId());
+                response.put("customerId", session.getCustomerId());
+            }
+            
             return response;
             
         } catch (SQLException e) {
@@ -188,28 +203,36 @@ public class AuthenticationService {
     public Map<String, Object> refreshToken(String refreshToken) throws AuthenticationException {
         try {
             // Validate refresh token
-            if (!JwtUtil.validateToken(refreshToken)) {
+            JwtClaims claims = sessionManager.authenticate(refreshToken);
+            if (claims == null) {
                 throw new AuthenticationException("Invalid or expired refresh token");
             }
             
             // Extract user information
-            Integer userId = JwtUtil.getUserId(refreshToken);
-            String username = JwtUtil.getUsername(refreshToken);
-            String role = JwtUtil.getRole(refreshToken);
+            Integer userId = claims.getUserId();
+            String username = claims.getUsername();
+            String role = claims.getRole();
             
             if (userId == null || username == null || role == null) {
                 throw new AuthenticationException("Invalid token claims");
             }
             
-            // Verify user still exists and is active
-            Optional<User> userOpt = userRepository.findById(userId);
-            if (!userOpt.isPresent()) {
-                throw new AuthenticationException("User not found");
-            }
-            
-            User user = userOpt.get();
-            if (!user.isActive() || user.isLocked()) {
-                throw new AuthenticationException("User account is not active");
+            // Verify user still exists and is active; stateful mode relies on the
+            // revocation list (lockouts revoke immediately) instead of a DB read
+            if (sessionManager.isStateful()) {
+                if (sessionManager.isRevoked(userId, claims.getIssuedAt())) {
+                    throw new AuthenticationException("User account is not active");
+                }
+            } else {
+                Optional<User> userOpt = userRepository.findById(userId);
+                if (!userOpt.isPresent()) {
+                    throw new AuthenticationException("User not found");
+                }
+                
+                User user = userOpt.get();
+                if (!user.isActive() || user.isLocked()) {
+                    throw new AuthenticationException("User account is not active");
+                }
             }
             
             // Generate new access token
@@ -226,6 +249,18 @@ public class AuthenticationService {
         }
     }
     
+    /**
+     * Ends a session. JWTs are stateless, so for them the client simply
+     * discards the token.
+     * 
+     * @param credential Session ID or JWT from the Authorization header
+     */
+    public void logout(String credential) {
+        if (sessionManager.isStateful() && credential != null && credential.indexOf('.') < 0) {
+            sessionManager.revokeSession(credential);
+        }
+    }
+    
     /**
      * Validates JWT token
      * 
@@ -233,7 +268,7 @@ public class AuthenticationService {
      * @return true if valid, false otherwise
      */
     public boolean validateToken(String token) {
-        return JwtUtil.validateToken(token);
+        return sessionManager.authenticate(token) != null;
     }
     
     /**
@@ -247,7 +282,7 @@ public class AuthenticationService {
     }
     
     /**
-     * Changes user password
+     * Changes user password and revokes the user's existing sessions and tokens
      * 
      * @param userId User ID
      * @param oldPassword Current password
@@ -283,6 +318,9 @@ public class AuthenticationService {
             
             userRepository.update(user);
             
+            // Sessions and tokens issued with the old password stop working
+            sessionManager.revokeUser(userId);
+            
         } catch (SQLException e) {
             throw new AuthenticationException("Database error during password change: " + e.getMessage());
         }
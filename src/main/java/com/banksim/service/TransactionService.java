@@ -1,6 +1,9 @@
 package com.banksim.service;
 
+import com.banksim.audit.Actor;
+import com.banksim.audit.AuditWriter;
 import com.banksim.model.Account;
+import com.banksim.model.AuditLog;
 import com.banksim.model.Transaction;
 import com.banksim.repository.AccountRepository;
 import com.banksim.repository.TransactionRepository;
@@ -10,10 +13,20 @@ import java.sql.SQLException;
 import java.util.List;
 import java.util.Optional;
 import com.banksim.config.DatabaseConfig;
+import com.banksim.config.SharedConnection;
+import com.banksim.jfr.TransactionEvent;
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.MetricsRegistry;
+import com.banksim.trace.Trace;
 
 /**
  * Service for banking transaction operations.
- * Handles deposits, withdrawals, and transfers with proper transaction management.
+ * Handles deposits, withdrawals, and transfers with proper transaction management:
+ * each runs in its own connection scope, so the repositories it calls join
+ * its transaction whether or not the request is part of a batch.
+ * Every operation is recorded as a {@link TransactionEvent} for flight recordings.
+ * Committed balance changes are audited through the {@link AuditWriter},
+ * which writes them after the request, in batches.
  * 
  * @author Jorge Pena - REM Consultancy
  * @version 1.0
@@ -21,14 +34,44 @@ import com.banksim.config.DatabaseConfig;
  */
 public class TransactionService {
     
+    // Success and failure counters per transaction type, indexed by recordOutcome
+    private static final Counter[] OUTCOMES = registerOutcomes();
+    
     private final AccountRepository accountRepository;
     private final TransactionRepository transactionRepository;
     private final DatabaseConfig dbConfig;
+    private final AccountVersions accountVersions;
+    private final AuditWriter audit;
     
     public TransactionService() {
-        this.accountRepository = new AccountRepository();
-        this.transactionRepository = new TransactionRepository();
+        this(new AccountRepository(), new TransactionRepository());
+    }
+    
+    /**
+     * Creates the service over the given repositories, such as in-memory
+     * ones for benchmarks
+     * 
+     * @param accountRepository Account repository
+     * @param transactionRepository Transaction repository
+     */
+    public TransactionService(AccountRepository accountRepository, TransactionRepository transactionRepository) {
+        this(accountRepository, transactionRepository, AuditWriter.getInstance());
+    }
+    
+    /**
+     * Creates the service over the given repositories and audit writer
+     * 
+     * @param accountRepository Account repository
+     * @param transactionRepository Transaction repository
+     * @param audit Writer for the audit trail
+     */
+    public TransactionService(AccountRepository accountRepository, TransactionRepository transactionRepository,
+                              AuditWriter audit) {
+        this.accountRepository = accountRepository;
+        this.transactionRepository = transactionRepository;
         this.dbConfig = DatabaseConfig.getInstance();
+        this.accountVersions = AccountVersions.getInstance();
+        this.audit = audit;
     }
     
     /**
@@ -37,18 +80,28 @@ public class TransactionService {
      * @param accountNumber Account number
      * @param amount Amount to deposit
      * @param description Transaction description
+     * @param actor Who asked for it, for the audit trail
      * @return Created transaction
      * @throws TransactionServiceException if deposit fails
      */
-    public Transaction deposit(String accountNumber, BigDecimal amount, String description) 
+    public Transaction deposit(String accountNumber, BigDecimal amount, String description, Actor actor) 
             throws TransactionServiceException {
         
+        TransactionEvent event = TransactionEvent.start("deposit", amount);
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            recordOutcome(Transaction.TransactionType.DEPOSIT, false);
+            event.finish(null, null, false);
             throw new TransactionServiceException("Deposit amount must be positive");
         }
         
+        Account account = null;
         Connection conn = null;
+        SharedConnection scope = null;
+        boolean committed = false;
+        int span = Trace.begin("service", "deposit");
         try {
+            // The repositories borrow this connection, so they run in its transaction
+            scope = dbConfig.shareConnection();
             conn = dbConfig.getConnection();
             conn.setAutoCommit(false);
             
@@ -58,7 +111,7 @@ public class TransactionService {
                 throw new TransactionServiceException("Account not found: " + accountNumber);
             }
             
-            Account account = accountOpt.get();
+            account = accountOpt.get();
             
             // Check account is active
             if (!account.isActive()) {
@@ -86,6 +139,8 @@ public class TransactionService {
             transaction = transactionRepository.create(transaction);
             
             conn.commit();
+            committed = true;
+            audit(transaction, actor);
             return transaction;
             
         } catch (SQLException e) {
@@ -98,14 +153,28 @@ public class TransactionService {
             }
             throw new TransactionServiceException("Database error during deposit: " + e.getMessage());
         } finally {
+            Trace.end(span);
+            recordOutcome(Transaction.TransactionType.DEPOSIT, committed);
+            event.finish(account != null ? account.getAccountId() : null, null, committed);
+            // Bumped on failure too: a write may have landed before the error
+            if (account != null) {
+                accountVersions.bump(account.getAccountId());
+            }
             if (conn != null) {
                 try {
+                    // Re-enabling auto-commit would commit whatever a failure left behind
+                    if (!committed) {
+                        conn.rollback();
+                    }
                     conn.setAutoCommit(true);
                     conn.close();
                 } catch (SQLException e) {
                     // Log error
                 }
             }
+            if (scope != null) {
+                scope.close();
+            }
         }
     }
     
@@ -115,18 +184,28 @@ public class TransactionService {
      * @param accountNumber Account number
      * @param amount Amount to withdraw
      * @param description Transaction description
+     * @param actor Who asked for it, for the audit trail
      * @return Created transaction
      * @throws TransactionServiceException if withdrawal fails
      */
-    public Transaction withdraw(String accountNumber, BigDecimal amount, String description) 
+    public Transaction withdraw(String accountNumber, BigDecimal amount, String description, Actor actor) 
             throws TransactionServiceException {
         
+        TransactionEvent event = TransactionEvent.start("withdraw", amount);
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            recordOutcome(Transaction.TransactionType.WITHDRAWAL, false);
+            event.finish(null, null, false);
             throw new TransactionServiceException("Withdrawal amount must be positive");
         }
         
+        Account account = null;
         Connection conn = null;
+        SharedConnection scope = null;
+        boolean committed = false;
+        int span = Trace.begin("service", "withdraw");
         try {
+            // The repositories borrow this connection, so they run in its transaction
+            scope = dbConfig.shareConnection();
             conn = dbConfig.getConnection();
             conn.setAutoCommit(false);
             
@@ -136,7 +215,7 @@ public class TransactionService {
                 throw new TransactionServiceException("Account not found: " + accountNumber);
             }
             
-            Account account = accountOpt.get();
+            account = accountOpt.get();
             
             // Check account is active
             if (!account.isActive()) {
@@ -169,6 +248,8 @@ public class TransactionService {
             transaction = transactionRepository.create(transaction);
             
             conn.commit();
+            committed = true;
+            audit(transaction, actor);
             return transaction;
             
         } catch (SQLException e) {
@@ -181,14 +262,28 @@ public class TransactionService {
             }
             throw new TransactionServiceException("Database error during withdrawal: " + e.getMessage());
         } finally {
+            Trace.end(span);
+            recordOutcome(Transaction.TransactionType.WITHDRAWAL, committed);
+            event.finish(account != null ? account.getAccountId() : null, null, committed);
+            // Bumped on failure too: a write may have landed before the error
+            if (account != null) {
+                accountVersions.bump(account.getAccountId());
+            }
             if (conn != null) {
                 try {
+                    // Re-enabling auto-commit would commit whatever a failure left behind
+                    if (!committed) {
+                        conn.rollback();
+                    }
                     conn.setAutoCommit(true);
                     conn.close();
                 } catch (SQLException e) {
                     // Log error
                 }
             }
+            if (scope != null) {
+                scope.close();
+            }
         }
     }
     
@@ -199,23 +294,36 @@ public class TransactionService {
      * @param toAccountNumber Destination account
      * @param amount Amount to transfer
      * @param description Transaction description
+     * @param actor Who asked for it, for the audit trail
      * @return Array of two transactions [withdrawal, deposit]
      * @throws TransactionServiceException if transfer fails
      */
     public Transaction[] transfer(String fromAccountNumber, String toAccountNumber, 
-                                  BigDecimal amount, String description) 
+                                  BigDecimal amount, String description, Actor actor) 
             throws TransactionServiceException {
         
+        TransactionEvent event = TransactionEvent.start("transfer", amount);
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            recordOutcome(Transaction.TransactionType.TRANSFER_OUT, false);
+            event.finish(null, null, false);
             throw new TransactionServiceException("Transfer amount must be positive");
         }
         
         if (fromAccountNumber.equals(toAccountNumber)) {
+            recordOutcome(Transaction.TransactionType.TRANSFER_OUT, false);
+            event.finish(null, null, false);
             throw new TransactionServiceException("Cannot transfer to the same account");
         }
         
+        Account fromAccount = null;
+        Account toAccount = null;
         Connection conn = null;
+        SharedConnection scope = null;
+        boolean committed = false;
+        int span = Trace.begin("service", "transfer");
         try {
+            // The repositories borrow this connection, so they run in its transaction
+            scope = dbConfig.shareConnection();
             conn = dbConfig.getConnection();
             conn.setAutoCommit(false);
             
@@ -231,8 +339,8 @@ public class TransactionService {
                 throw new TransactionServiceException("Destination account not found: " + toAccountNumber);
             }
             
-            Account fromAccount = fromAccountOpt.get();
-            Account toAccount = toAccountOpt.get();
+            fromAccount = fromAccountOpt.get();
+            toAccount = toAccountOpt.get();
             
             // Check both accounts are active
             if (!fromAccount.isActive()) {
@@ -285,6 +393,9 @@ public class TransactionService {
             depositTx = transactionRepository.create(depositTx);
             
             conn.commit();
+            committed = true;
+            audit(withdrawalTx, actor);
+            audit(depositTx, actor);
             
             return new Transaction[] { withdrawalTx, depositTx };
             
@@ -298,14 +409,34 @@ public class TransactionService {
             }
             throw new TransactionServiceException("Database error during transfer: " + e.getMessage());
         } finally {
+            Trace.end(span);
+            // A failed transfer is attributed to its outgoing leg only
+            recordOutcome(Transaction.TransactionType.TRANSFER_OUT, committed);
+            if (committed) {
+                recordOutcome(Transaction.TransactionType.TRANSFER_IN, true);
+            }
+            event.finish(fromAccount != null ? fromAccount.getAccountId() : null,
+                toAccount != null ? toAccount.getAccountId() : null, committed);
+            // Bumped on failure too: a write may have landed before the error
+            if (fromAccount != null && toAccount != null) {
+                accountVersions.bump(fromAccount.getAccountId());
+                accountVersions.bump(toAccount.getAccountId());
+            }
             if (conn != null) {
                 try {
+                    // Re-enabling auto-commit would commit whatever a failure left behind
+                    if (!committed) {
+                        conn.rollback();
+                    }
                     conn.setAutoCommit(true);
                     conn.close();
                 } catch (SQLException e) {
                     // Log error
                 }
             }
+            if (scope != null) {
+                scope.close();
+            }
         }
     }
     
@@ -319,6 +450,10 @@ public class TransactionService {
      */
     public List<Transaction> getStatement(String accountNumber, int limit) 
             throws TransactionServiceException {
+        TransactionEvent event = TransactionEvent.start("statement", null);
+        Integer accountId = null;
+        boolean succeeded = false;
+        int span = Trace.begin("service", "statement");
         try {
             Optional<Account> accountOpt = accountRepository.findByAccountNumber(accountNumber);
             if (!accountOpt.isPresent()) {
@@ -326,10 +461,16 @@ public class TransactionService {
             }
             
             Account account = accountOpt.get();
-            return transactionRepository.findByAccountId(account.getAccountId(), limit, 0);
+            accountId = account.getAccountId();
+            List<Transaction> transactions = transactionRepository.findByAccountId(account.getAccountId(), limit, 0);
+            succeeded = true;
+            return transactions;
             
         } catch (SQLException e) {
             throw new TransactionServiceException("Database error: " + e.getMessage());
+        } finally {
+            Trace.end(span);
+            event.finish(accountId, null, succeeded);
         }
     }
     
@@ -342,6 +483,10 @@ public class TransactionService {
      */
     public List<Transaction> getAllTransactions(String accountNumber) 
             throws TransactionServiceException {
+        TransactionEvent event = TransactionEvent.start("all-transactions", null);
+        Integer accountId = null;
+        boolean succeeded = false;
+        int span = Trace.begin("service", "all-transactions");
         try {
             Optional<Account> accountOpt = accountRepository.findByAccountNumber(accountNumber);
             if (!accountOpt.isPresent()) {
@@ -349,10 +494,16 @@ public class TransactionService {
             }
             
             Account account = accountOpt.get();
-            return transactionRepository.findByAccountId(account.getAccountId());
+            accountId = account.getAccountId();
+            List<Transaction> transactions = transactionRepository.findByAccountId(account.getAccountId());
+            succeeded = true;
+            return transactions;
             
         } catch (SQLException e) {
             throw new TransactionServiceException("Database error: " + e.getMessage());
+        } finally {
+            Trace.end(span);
+            event.finish(accountId, null, succeeded);
         }
     }
     
@@ -364,6 +515,10 @@ public class TransactionService {
      * @throws TransactionServiceException if error occurs
      */
     public int getTransactionCount(String accountNumber) throws TransactionServiceException {
+        TransactionEvent event = TransactionEvent.start("transaction-count", null);
+        Integer accountId = null;
+        boolean succeeded = false;
+        int span = Trace.begin("service", "transaction-count");
         try {
             Optional<Account> accountOpt = accountRepository.findByAccountNumber(accountNumber);
             if (!accountOpt.isPresent()) {
@@ -371,10 +526,16 @@ public class TransactionService {
             }
             
             Account account = accountOpt.get();
-            return transactionRepository.countByAccountId(account.getAccountId());
+            accountId = account.getAccountId();
+            int count = transactionRepository.countByAccountId(account.getAccountId());
+            succeeded = true;
+            return count;
             
         } catch (SQLException e) {
             throw new TransactionServiceException("Database error: " + e.getMessage());
+        } finally {
+            Trace.end(span);
+            event.finish(accountId, null, succeeded);
         }
     }
     
@@ -386,11 +547,57 @@ public class TransactionService {
      * @throws TransactionServiceException if error occurs
      */
     public List<Transaction> getRecentTransactions(int limit) throws TransactionServiceException {
+        TransactionEvent event = TransactionEvent.start("recent-transactions", null);
+        boolean succeeded = false;
+        int span = Trace.begin("service", "recent-transactions");
         try {
-            return transactionRepository.findRecent(limit);
+            List<Transaction> transactions = transactionRepository.findRecent(limit);
+            succeeded = true;
+            return transactions;
         } catch (SQLException e) {
             throw new TransactionServiceException("Database error: " + e.getMessage());
+        } finally {
+            Trace.end(span);
+            event.finish(null, null, succeeded);
+        }
+    }
+    
+    /**
+     * Queues the audit entry for a committed balance change
+     * 
+     * @param transaction Committed transaction
+     * @param actor User and request behind it
+     */
+    private void audit(Transaction transaction, Actor actor) {
+        AuditLog entry = actor.applyTo(new AuditLog(null, transaction.getTransactionType().name(), "ACCOUNT",
+            transaction.getAccountId()));
+        entry.setOldValue("balance=" + transaction.getBalanceBefore());
+        entry.setNewValue("balance=" + transaction.getBalanceAfter() + ", amount=" + transaction.getAmount()
+            + ", transactionId=" + transaction.getTransactionId());
+        audit.record(entry);
+    }
+    
+    /**
+     * Counts a completed or failed operation
+     * 
+     * @param type Transaction type
+     * @param success true if the transaction committed
+     */
+    private static void recordOutcome(Transaction.TransactionType type, boolean success) {
+        OUTCOMES[type.ordinal() * 2 + (success ? 0 : 1)].increment();
+    }
+    
+    private static Counter[] registerOutcomes() {
+        Transaction.TransactionType[] types = Transaction.TransactionType.values();
+        Counter[] counters = new Counter[types.length * 2];
+        for (Transaction.TransactionType type : types) {
+            for (int outcome = 0; outcome < 2; outcome++) {
+                counters[type.ordinal() * 2 + outcome] = MetricsRegistry.getInstance().counter(
+                    "banksim_transactions_total", "Money movements, by transaction type and outcome",
+                    "type", type.name(), "outcome", outcome == 0 ? "success" : "failure");
+            }
         }
+        return counters;
     }
     
     /**
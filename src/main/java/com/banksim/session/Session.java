@@ -0,0 +1,143 @@
+package com.banksim.session;
+
+import com.banksim.util.JwtClaims;
+
+/**
+ * Server-side session record used in stateful session mode.
+ * Identity fields are fixed at login; only the last-activity timestamp
+ * moves, which is what gives the session its sliding expiry.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class Session {
+    
+    private final String sessionId;
+    private final Integer userId;
+    private final String username;
+    private final String role;
+    private final Integer customerId;
+    private final long createdAt;
+    private volatile long lastActivity;
+    
+    /**
+     * Creates a session
+     * 
+     * @param sessionId Opaque session ID
+     * @param userId User ID
+     * @param username Username
+     * @param role User role
+     * @param customerId Customer ID, or null for users without a customer profile
+     * @param createdAt Creation time in epoch milliseconds
+     */
+    public Session(String sessionId, Integer userId, String username, String role,
+                   Integer customerId, long createdAt) {
+        this.sessionId = sessionId;
+        this.userId = userId;
+        this.username = username;
+        this.role = role;
+        this.customerId = customerId;
+        this.createdAt = createdAt;
+        this.lastActivity = createdAt;
+    }
+    
+    /**
+     * Gets the session ID
+     * @return Opaque session ID
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+    
+    /**
+     * Gets the user ID
+     * @return User ID
+     */
+    public Integer getUserId() {
+        return userId;
+    }
+    
+    /**
+     * Gets the username
+     * @return Username
+     */
+    public String getUsername() {
+        return username;
+    }
+    
+    /**
+     * Gets the user role
+     * @return Role name
+     */
+    public String getRole() {
+        return role;
+    }
+    
+    /**
+     * Gets the customer ID
+     * @return Customer ID or null
+     */
+    public Integer getCustomerId() {
+        return customerId;
+    }
+    
+    /**
+     * Gets the creation time
+     * @return Creation time in epoch milliseconds
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+    
+    /**
+     * Gets the time of the last request made with this session
+     * @return Last activity in epoch milliseconds
+     */
+    public long getLastActivity() {
+        return lastActivity;
+    }
+    
+    /**
+     * Records activity, extending the session's sliding expiry
+     * 
+     * @param now Current time in epoch milliseconds
+     */
+    void touch(long now) {
+        if (now > lastActivity) {
+            lastActivity = now;
+        }
+    }
+    
+    /**
+     * Checks if the session has been idle longer than the timeout
+     * 
+     * @param now Current time in epoch milliseconds
+     * @param timeout Idle timeout in milliseconds
+     * @return true if expired, false otherwise
+     */
+    boolean isExpired(long now, long timeout) {
+        return now - lastActivity >= timeout;
+    }
+    
+    /**
+     * Gets the session as a principal for controllers
+     * 
+     * @param timeout Idle timeout in milliseconds
+     * @return Claims view of this session
+     */
+    JwtClaims toClaims(long timeout) {
+        return new JwtClaims(userId, username, role, createdAt, lastActivity + timeout);
+    }
+    
+    @Override
+    public String toString() {
+        return "Session{" +
+                "userId=" + userId +
+                ", username='" + username + '\'' +
+                ", role='" + role + '\'' +
+                ", customerId=" + customerId +
+                ", lastActivity=" + lastActivity +
+                '}';
+    }
+}
@@ -0,0 +1,132 @@
+package com.banksim.session;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+/**
+ * Hashed timing wheel for session expiry.
+ * 
+ * Sessions are scheduled into the bucket of their current deadline.
+ * Touching a session only moves its last-activity timestamp; when the
+ * wheel reaches the bucket, the expiry check either drops the session or
+ * reschedules it at its new deadline. Scheduling is a lock-free queue
+ * offer from any request thread, and each tick only visits one bucket.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+final class SessionExpiryWheel {
+    
+    private final Queue<Entry>[] buckets;
+    private final long tickMillis;
+    private final int mask;
+    // Advanced by the sweeper thread, read by request threads in schedule()
+    private volatile long currentTick;
+    
+    /**
+     * Creates a wheel
+     * 
+     * @param bucketCount Number of buckets (rounded up to a power of two)
+     * @param tickMillis Duration of one tick in milliseconds
+     * @param startTime Wheel start time in epoch milliseconds
+     */
+    SessionExpiryWheel(int bucketCount, long tickMillis, long startTime) {
+        int size = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+        this.buckets = newBuckets(size);
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.currentTick = startTime / tickMillis;
+    }
+    
+    /**
+     * Schedules a session for an expiry check at the given deadline
+     * 
+     * @param session Session to check
+     * @param deadline Deadline in epoch milliseconds
+     */
+    void schedule(Session session, long deadline) {
+        long tick = Math.max(deadline / tickMillis, currentTick + 1);
+        buckets[(int) (tick & mask)].offer(new Entry(session, tick));
+    }
+    
+    /**
+     * Advances the wheel to the given time, handing every session whose
+     * deadline has passed to {@code expireCheck}. The check returns the
+     * session's next deadline, or a negative value once it has expired.
+     * 
+     * Called from a single sweeper thread.
+     * 
+     * @param now Current time in epoch milliseconds
+     * @param expireCheck Returns the next deadline, or -1 if the session was removed
+     * @return Number of sessions removed
+     */
+    int advance(long now, DeadlineCheck expireCheck) {
+        long targetTick = now / tickMillis;
+        int removed = 0;
+        
+        while (currentTick < targetTick) {
+            currentTick++;
+            Queue<Entry> bucket = buckets[(int) (currentTick & mask)];
+            
+            // Entries beyond this tick belong to a later revolution
+            int pending = bucket.size();
+            for (int i = 0; i < pending; i++) {
+                Entry entry = bucket.poll();
+                if (entry == null) {
+                    break;
+                }
+                if (entry.tick > currentTick) {
+                    bucket.offer(entry);
+                    continue;
+                }
+                long nextDeadline = expireCheck.check(entry.session);
+                if (nextDeadline < 0) {
+                    removed++;
+                } else {
+                    schedule(entry.session, nextDeadline);
+                }
+            }
+        }
+        
+        return removed;
+    }
+    
+    /**
+     * Drops scheduled entries matching a filter, e.g. after a revocation
+     * 
+     * @param filter Entries to drop
+     */
+    void removeIf(Predicate<Session> filter) {
+        for (Queue<Entry> bucket : buckets) {
+            bucket.removeIf(entry -> filter.test(entry.session));
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Queue<Entry>[] newBuckets(int size) {
+        return (Queue<Entry>[]) new Queue<?>[size];
+    }
+    
+    /**
+     * Expiry decision for a session whose deadline was reached
+     */
+    @FunctionalInterface
+    interface DeadlineCheck {
+        long check(Session session);
+    }
+    
+    private static final class Entry {
+        private final Session session;
+        private final long tick;
+        
+        private Entry(Session session, long tick) {
+            this.session = session;
+            this.tick = tick;
+        }
+    }
+}
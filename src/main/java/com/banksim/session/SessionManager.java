@@ -0,0 +1,271 @@
+package com.banksim.session;
+
+import com.banksim.config.SecurityConfig;
+import com.banksim.util.JwtClaims;
+import com.banksim.util.JwtUtil;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticates requests and manages server-side sessions.
+ * 
+ * In the default "jwt" mode requests carry a JWT and this class only adds
+ * revocation checks on top of {@link JwtUtil#authenticate}. In "stateful"
+ * mode login also issues an opaque session ID that maps to an in-memory
+ * {@link Session} with sliding expiry (security.session.timeout). Either
+ * way, revocations and lockouts apply on the next request without a
+ * database lookup.
+ * 
+ * Thread-safe singleton implementation.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class SessionManager {
+    
+    private static final int SESSION_ID_BYTES = 32;
+    private static final int WHEEL_BUCKETS = 512;
+    private static final long WHEEL_TICK_MILLIS = 1000;
+    
+    private static SessionManager instance;
+    
+    private final boolean stateful;
+    private final long sessionTimeout;
+    private final long revocationRetention;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SessionExpiryWheel expiryWheel;
+    private final SessionRevocationStore revocationStore;
+    private final SecureRandom random = new SecureRandom();
+    private final ScheduledExecutorService sweeper;
+    
+    /**
+     * Private constructor to enforce singleton pattern
+     */
+    private SessionManager() {
+        this(SecurityConfig.getInstance());
+    }
+    
+    private SessionManager(SecurityConfig config) {
+        this(config.isStatefulSessionMode(), config.getSessionTimeout(),
+            Math.max(config.getSessionTimeout(), config.getJwtRefreshExpiration()),
+            revocationPath(config.getSessionRevocationFile()), config.getSessionRevocationPollInterval());
+    }
+    
+    /**
+     * Creates a session manager with explicit settings; the server uses
+     * {@link #getInstance()}
+     * 
+     * @param stateful true to issue opaque session IDs at login
+     * @param sessionTimeout Idle timeout of a session in milliseconds
+     * @param revocationRetention How long revocations are kept in memory, in milliseconds
+     * @param revocationFile Shared revocation file, or null to keep revocations in memory only
+     * @param pollInterval Sweep and revocation poll interval in milliseconds
+     */
+    SessionManager(boolean stateful, long sessionTimeout, long revocationRetention,
+                   Path revocationFile, long pollInterval) {
+        this.stateful = stateful;
+        this.sessionTimeout = sessionTimeout;
+        this.revocationRetention = revocationRetention;
+        this.expiryWheel = new SessionExpiryWheel(WHEEL_BUCKETS, WHEEL_TICK_MILLIS, System.currentTimeMillis());
+        this.revocationStore = new SessionRevocationStore(revocationFile);
+        
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        
+        System.out.println("[SessionManager] Session mode: " + (stateful ? "stateful" : "jwt"));
+    }
+    
+    /**
+     * Gets the singleton instance of SessionManager
+     * Thread-safe lazy initialization
+     * 
+     * @return SessionManager instance
+     */
+    public static synchronized SessionManager getInstance() {
+        if (instance == null) {
+            instance = new SessionManager();
+        }
+        return instance;
+    }
+    
+    /**
+     * Checks if stateful session mode is enabled
+     * 
+     * @return true in stateful mode, false in JWT-only mode
+     */
+    public boolean isStateful() {
+        return stateful;
+    }
+    
+    /**
+     * Creates a session for a user who just logged in
+     * 
+     * @param userId User ID
+     * @param username Username
+     * @param role User role
+     * @param customerId Customer ID, or null
+     * @return New session
+     */
+    public Session createSession(Integer userId, String username, String role, Integer customerId) {
+        long now = System.currentTimeMillis();
+        Session session = new Session(newSessionId(), userId, username, role, customerId, now);
+        sessions.put(session.getSessionId(), session);
+        expiryWheel.schedule(session, now + sessionTimeout);
+        return session;
+    }
+    
+    /**
+     * Authenticates a bearer credential, which is either an opaque
+     * session ID (stateful mode) or a JWT
+     * 
+     * @param credential Bearer credential from the Authorization header
+     * @return Principal for the caller, or null if unauthenticated
+     */
+    public JwtClaims authenticate(String credential) {
+        if (credential == null) {
+            return null;
+        }
+        
+        if (stateful && credential.indexOf('.') < 0) {
+            Session session = getSession(credential);
+            return session != null ? session.toClaims(sessionTimeout) : null;
+        }
+        
+        JwtClaims claims = JwtUtil.authenticate(credential);
+        if (claims == null || revocationStore.isUserRevoked(claims.getUserId(), claims.getIssuedAt())) {
+            return null;
+        }
+        return claims;
+    }
+    
+    /**
+     * Looks up a live session and extends its sliding expiry
+     * 
+     * @param sessionId Session ID
+     * @return Session, or null if unknown, expired or revoked
+     */
+    public Session getSession(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        
+        long now = System.currentTimeMillis();
+        if (session.isExpired(now, sessionTimeout)
+                || revocationStore.isSessionRevoked(sessionId)
+                || revocationStore.isUserRevoked(session.getUserId(), session.getCreatedAt())) {
+            sessions.remove(sessionId, session);
+            return null;
+        }
+        
+        session.touch(now);
+        return session;
+    }
+    
+    /**
+     * Checks if credentials issued to a user at a given time were revoked
+     * 
+     * @param userId User ID
+     * @param issuedAt Issue time in epoch milliseconds
+     * @return true if revoked
+     */
+    public boolean isRevoked(Integer userId, long issuedAt) {
+        return revocationStore.isUserRevoked(userId, issuedAt);
+    }
+    
+    /**
+     * Ends a single session on this and every other node
+     * 
+     * @param sessionId Session ID
+     */
+    public void revokeSession(String sessionId) {
+        revocationStore.revokeSession(sessionId, System.currentTimeMillis());
+        sessions.remove(sessionId);
+    }
+    
+    /**
+     * Revokes every session and token issued to a user so far, e.g. on
+     * account lock or password change
+     * 
+     * @param userId User ID
+     */
+    public void revokeUser(Integer userId) {
+        revocationStore.revokeUser(userId, System.currentTimeMillis());
+        sessions.values().removeIf(session -> userId.equals(session.getUserId()));
+        expiryWheel.removeIf(session -> userId.equals(session.getUserId()));
+    }
+    
+    /**
+     * Gets the number of live sessions on this node
+     * 
+     * @return Session count
+     */
+    public int getActiveSessionCount() {
+        return sessions.size();
+    }
+    
+    /**
+     * Stops the background sweeper
+     */
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+    
+    /**
+     * Expires idle sessions and picks up revocations from other nodes
+     */
+    private void sweep() {
+        sweep(System.currentTimeMillis());
+    }
+    
+    /**
+     * Runs one sweep as of the given time
+     * 
+     * @param now Current time in epoch milliseconds
+     */
+    void sweep(long now) {
+        try {
+            revocationStore.poll();
+            revocationStore.prune(now - revocationRetention);
+            expiryWheel.advance(now, session -> {
+                if (sessions.get(session.getSessionId()) != session) {
+                    return -1;
+                }
+                if (session.isExpired(now, sessionTimeout)
+                        || revocationStore.isSessionRevoked(session.getSessionId())
+                        || revocationStore.isUserRevoked(session.getUserId(), session.getCreatedAt())) {
+                    sessions.remove(session.getSessionId(), session);
+                    return -1;
+                }
+                return session.getLastActivity() + sessionTimeout;
+            });
+        } catch (IOException e) {
+            System.err.println("[SessionManager] Error reading revocations: " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("[SessionManager] Session sweep failed: " + e.getMessage());
+        }
+    }
+    
+    private static Path revocationPath(String revocationFile) {
+        return revocationFile == null || revocationFile.isEmpty() ? null : Paths.get(revocationFile);
+    }
+    
+    private String newSessionId() {
+        byte[] bytes = new byte[SESSION_ID_BYTES];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,204 @@
+package com.banksim.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * File-backed revocation list shared by every node pointing at the same file.
+ * 
+ * Revocations are appended as text lines under an exclusive file lock and
+ * applied to in-memory maps straight away. Each node polls the file from
+ * its last read offset to pick up revocations written by other nodes, so
+ * checking a request is a map lookup and never touches the disk.
+ * 
+ * Line format: {@code U <userId> <revokedAt>} revokes everything a user was
+ * issued before {@code revokedAt}; {@code S <sessionId> <revokedAt>}
+ * revokes a single session.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+final class SessionRevocationStore {
+    
+    private final Path file;
+    private final Map<Integer, Long> revokedUsers = new ConcurrentHashMap<>();
+    private final Map<String, Long> revokedSessions = new ConcurrentHashMap<>();
+    private long readOffset;
+    
+    /**
+     * Opens the store and loads existing revocations
+     * 
+     * @param file Revocation file, or null to keep revocations in memory only
+     */
+    SessionRevocationStore(Path file) {
+        this.file = file;
+        if (file != null) {
+            try {
+                Path parent = file.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                poll();
+            } catch (IOException e) {
+                System.err.println("[SessionRevocationStore] Error preparing revocation file: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Revokes every session and token issued to a user up to now
+     * 
+     * @param userId User ID
+     * @param revokedAt Revocation time in epoch milliseconds
+     */
+    void revokeUser(Integer userId, long revokedAt) {
+        revokedUsers.merge(userId, revokedAt, Math::max);
+        append("U " + userId + " " + revokedAt + "\n");
+    }
+    
+    /**
+     * Revokes a single session
+     * 
+     * @param sessionId Session ID
+     * @param revokedAt Revocation time in epoch milliseconds
+     */
+    void revokeSession(String sessionId, long revokedAt) {
+        revokedSessions.put(sessionId, revokedAt);
+        append("S " + sessionId + " " + revokedAt + "\n");
+    }
+    
+    /**
+     * Checks if credentials issued at a given time have been revoked
+     * 
+     * @param userId User ID
+     * @param issuedAt Issue time in epoch milliseconds
+     * @return true if the user was revoked at or after {@code issuedAt}
+     */
+    boolean isUserRevoked(Integer userId, long issuedAt) {
+        Long revokedAt = revokedUsers.get(userId);
+        return revokedAt != null && issuedAt <= revokedAt;
+    }
+    
+    /**
+     * Checks if a session has been revoked
+     * 
+     * @param sessionId Session ID
+     * @return true if revoked
+     */
+    boolean isSessionRevoked(String sessionId) {
+        return revokedSessions.containsKey(sessionId);
+    }
+    
+    /**
+     * Applies revocations appended to the file since the last poll
+     * 
+     * @return Number of revocations applied
+     * @throws IOException if the file cannot be read
+     */
+    @SuppressWarnings("try") // the lock is held for the body, not used in it
+    synchronized int poll() throws IOException {
+        if (file == null || !Files.exists(file)) {
+            return 0;
+        }
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+            
+            long size = channel.size();
+            if (size < readOffset) {
+                // File was truncated or replaced; start over
+                readOffset = 0;
+            }
+            if (size == readOffset) {
+                return 0;
+            }
+            
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - readOffset, Integer.MAX_VALUE));
+            while (buffer.hasRemaining() && channel.read(buffer, readOffset + buffer.position()) > 0) {
+                // keep reading
+            }
+            
+            String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+            int lastNewline = text.lastIndexOf('\n');
+            if (lastNewline < 0) {
+                return 0;
+            }
+            
+            int applied = 0;
+            for (String line : text.substring(0, lastNewline).split("\n")) {
+                if (apply(line)) {
+                    applied++;
+                }
+            }
+            readOffset += text.substring(0, lastNewline + 1).getBytes(StandardCharsets.UTF_8).length;
+            return applied;
+        }
+    }
+    
+    /**
+     * Drops in-memory revocations older than a cutoff; anything issued
+     * before then has expired on its own
+     * 
+     * @param cutoff Cutoff in epoch milliseconds
+     */
+    void prune(long cutoff) {
+        revokedUsers.values().removeIf(revokedAt -> revokedAt < cutoff);
+        revokedSessions.values().removeIf(revokedAt -> revokedAt < cutoff);
+    }
+    
+    private boolean apply(String line) {
+        String[] fields = line.trim().split(" ");
+        if (fields.length != 3) {
+            return false;
+        }
+        try {
+            long revokedAt = Long.parseLong(fields[2]);
+            if ("U".equals(fields[0])) {
+                revokedUsers.merge(Integer.valueOf(fields[1]), revokedAt, Math::max);
+                return true;
+            }
+            if ("S".equals(fields[0])) {
+                revokedSessions.put(fields[1], revokedAt);
+                return true;
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("[SessionRevocationStore] Skipping malformed line: " + line);
+        }
+        return false;
+    }
+    
+    @SuppressWarnings("try") // the lock is held for the body, not used in it
+    private synchronized void append(String line) {
+        if (file == null) {
+            return;
+        }
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileLock lock = channel.lock()) {
+            
+            long end = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            if (readOffset == end) {
+                // Already applied; the next poll need not read it back
+                readOffset = channel.size();
+            }
+            
+        } catch (IOException e) {
+            System.err.println("[SessionRevocationStore] Error writing revocation: " + e.getMessage());
+        }
+    }
+}
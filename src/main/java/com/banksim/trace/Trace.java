@@ -0,0 +1,269 @@
+package com.banksim.trace;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Timeline of one request: its correlation id and the timed spans
+ * (auth, parse, service, db, serialize) recorded while handling it.
+ * 
+ * The trace of the request being handled is bound to the thread by
+ * {@link TraceFilter}, so services and the JDBC layer reach it through
+ * {@link #current()} without it being passed down. Spans are opened with
+ * {@link #begin} and closed with {@link #end} in a finally block; both
+ * are no-ops on a thread with no trace and neither allocates. Batch
+ * workers attach the parent request's trace, so span recording is
+ * synchronized on the trace.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class Trace {
+    
+    /** Most spans kept per trace; later ones are counted as dropped */
+    static final int MAX_SPANS = 128;
+    private static final int MAX_ID_LENGTH = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+    
+    private final String id;
+    private final String method;
+    private final String path;
+    private final long startEpochMillis;
+    private final long startNanos;
+    private volatile String route;
+    private volatile int status;
+    private volatile long durationNanos = -1;
+    
+    private String[] spanNames = new String[16];
+    private String[] spanDetails = new String[16];
+    private long[] spanStarts = new long[16];
+    private long[] spanDurations = new long[16];
+    private int spanCount;
+    private int droppedSpans;
+    
+    /**
+     * Creates a trace starting now
+     * 
+     * @param id Correlation id
+     * @param method Request method
+     * @param path Request path
+     */
+    public Trace(String id, String method, String path) {
+        this.id = id;
+        this.method = method;
+        this.path = path;
+        this.startEpochMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Gets the trace bound to the current thread
+     * 
+     * @return Trace, or null outside a traced request
+     */
+    public static Trace current() {
+        return CURRENT.get();
+    }
+    
+    /**
+     * Gets the correlation id of the current request
+     * 
+     * @return Id, or null outside a traced request
+     */
+    public static String currentId() {
+        Trace trace = CURRENT.get();
+        return trace != null ? trace.id : null;
+    }
+    
+    /**
+     * Binds a trace to the current thread
+     * 
+     * @param trace Trace, or null to unbind
+     * @return Trace previously bound, to restore afterwards
+     */
+    public static Trace attach(Trace trace) {
+        Trace previous = CURRENT.get();
+        if (trace == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(trace);
+        }
+        return previous;
+    }
+    
+    /**
+     * Opens a span on the current trace
+     * 
+     * @param name Stage, such as "db"
+     * @return Handle for {@link #end}, or -1 if there is no trace
+     */
+    public static int begin(String name) {
+        return begin(name, null);
+    }
+    
+    /**
+     * Opens a span on the current trace
+     * 
+     * @param name Stage, such as "db"
+     * @param detail What the stage worked on, such as a SQL template; may be null
+     * @return Handle for {@link #end}, or -1 if there is no trace
+     */
+    public static int begin(String name, String detail) {
+        Trace trace = CURRENT.get();
+        return trace != null ? trace.open(name, detail) : -1;
+    }
+    
+    /**
+     * Closes a span opened on this thread
+     * 
+     * @param span Handle from {@link #begin}
+     */
+    public static void end(int span) {
+        if (span >= 0) {
+            Trace trace = CURRENT.get();
+            if (trace != null) {
+                trace.close(span);
+            }
+        }
+    }
+    
+    /**
+     * Checks a client-supplied request id: up to 64 letters, digits, '.',
+     * '_' or '-', so it is safe to echo, log and embed in SQL comments
+     * 
+     * @param id Header value, may be null
+     * @return true if the id can be used as is
+     */
+    public static boolean isValidId(String id) {
+        if (id == null || id.isEmpty() || id.length() > MAX_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '.' || c == '_' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Generates a random 64-bit id as 16 hex digits
+     */
+    public static String newId() {
+        long bits = ThreadLocalRandom.current().nextLong();
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX[(int) (bits & 0xF)];
+            bits >>>= 4;
+        }
+        return new String(chars);
+    }
+    
+    private synchronized int open(String name, String detail) {
+        if (spanCount == MAX_SPANS) {
+            droppedSpans++;
+            return -1;
+        }
+        if (spanCount == spanNames.length) {
+            int capacity = Math.min(MAX_SPANS, spanCount * 2);
+            spanNames = Arrays.copyOf(spanNames, capacity);
+            spanDetails = Arrays.copyOf(spanDetails, capacity);
+            spanStarts = Arrays.copyOf(spanStarts, capacity);
+            spanDurations = Arrays.copyOf(spanDurations, capacity);
+        }
+        int span = spanCount++;
+        spanNames[span] = name;
+        spanDetails[span] = detail;
+        spanStarts[span] = System.nanoTime() - startNanos;
+        spanDurations[span] = -1;
+        return span;
+    }
+    
+    private synchronized void close(int span) {
+        if (span < spanCount && spanDurations[span] < 0) {
+            spanDurations[span] = System.nanoTime() - startNanos - spanStarts[span];
+        }
+    }
+    
+    /**
+     * Records the matched route template
+     * 
+     * @param route Path template
+     */
+    public void setRoute(String route) {
+        this.route = route;
+    }
+    
+    /**
+     * Marks the request complete
+     * 
+     * @param status Response status
+     */
+    public void finish(int status) {
+        this.status = status;
+        this.durationNanos = System.nanoTime() - startNanos;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getMethod() {
+        return method;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    /**
+     * Route template, or null if the request matched none
+     */
+    public String getRoute() {
+        return route;
+    }
+    
+    public int getStatus() {
+        return status;
+    }
+    
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+    
+    /**
+     * Total time in nanoseconds, or -1 while in progress
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+    
+    /**
+     * Copies the spans recorded so far, in the order they were opened
+     */
+    public synchronized Span[] getSpans() {
+        Span[] spans = new Span[spanCount];
+        for (int i = 0; i < spanCount; i++) {
+            spans[i] = new Span(spanNames[i], spanDetails[i], spanStarts[i], spanDurations[i]);
+        }
+        return spans;
+    }
+    
+    /**
+     * Spans not kept because the trace reached MAX_SPANS
+     */
+    public synchronized int getDroppedSpans() {
+        return droppedSpans;
+    }
+    
+    /**
+     * One timed stage. Times are nanoseconds from the start of the trace;
+     * duration is -1 if the span was never closed.
+     */
+    public record Span(String name, String detail, long offsetNanos, long durationNanos) {
+    }
+}
@@ -0,0 +1,112 @@
+package com.banksim.trace;
+
+import com.banksim.config.ServerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring buffer of the most recent completed traces.
+ * 
+ * Adding is one atomic increment and one array store, with no lock; the
+ * oldest trace is overwritten once the buffer is full. Queries scan the
+ * buffer newest first and are meant for the admin endpoint, not the
+ * request path.
+ * 
+ * Thread-safe singleton implementation.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class TraceBuffer {
+    
+    private static TraceBuffer instance;
+    
+    private final AtomicReferenceArray<Trace> slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    
+    /**
+     * Creates a buffer
+     * 
+     * @param capacity Traces kept, rounded up to a power of two
+     */
+    public TraceBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Trace buffer capacity must be positive");
+        }
+        this.slots = new AtomicReferenceArray<>(capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = slots.length() - 1;
+    }
+    
+    /**
+     * Gets the singleton instance sized by trace.buffer.size
+     * 
+     * @return TraceBuffer instance
+     */
+    public static synchronized TraceBuffer getInstance() {
+        if (instance == null) {
+            instance = new TraceBuffer(ServerConfig.getInstance().getTraceBufferSize());
+        }
+        return instance;
+    }
+    
+    /**
+     * Stores a completed trace, evicting the oldest if full
+     * 
+     * @param trace Completed trace
+     */
+    public void add(Trace trace) {
+        slots.set((int) (next.getAndIncrement() & mask), trace);
+    }
+    
+    /**
+     * Finds a trace by correlation id
+     * 
+     * @param id Request id
+     * @return Most recent trace with that id, or null if none is retained
+     */
+    public Trace find(String id) {
+        long newest = next.get() - 1;
+        for (long i = newest; i >= 0 && i > newest - slots.length(); i--) {
+            Trace trace = slots.get((int) (i & mask));
+            if (trace != null && trace.getId().equals(id)) {
+                return trace;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Lists recent traces, newest first
+     * 
+     * @param limit Most traces returned
+     * @param minDurationMillis Only traces at least this slow
+     * @param routePrefix Only traces whose path starts with this, or null
+     * @return Matching traces
+     */
+    public List<Trace> recent(int limit, long minDurationMillis, String routePrefix) {
+        long minNanos = TimeUnit.MILLISECONDS.toNanos(minDurationMillis);
+        List<Trace> matches = new ArrayList<>(Math.min(limit, slots.length()));
+        long newest = next.get() - 1;
+        for (long i = newest; i >= 0 && i > newest - slots.length() && matches.size() < limit; i--) {
+            Trace trace = slots.get((int) (i & mask));
+            if (trace != null && trace.getDurationNanos() >= minNanos
+                    && (routePrefix == null || trace.getPath().startsWith(routePrefix))) {
+                matches.add(trace);
+            }
+        }
+        return matches;
+    }
+    
+    /**
+     * Number of traces the buffer holds when full
+     */
+    public int capacity() {
+        return slots.length();
+    }
+}
@@ -0,0 +1,59 @@
+package com.banksim.trace;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Gives each request a correlation id and a {@link Trace}.
+ * 
+ * The id is taken from the X-Request-Id header when it is well formed
+ * (see {@link Trace#isValidId}) and generated otherwise, and is echoed in
+ * the response. The trace is bound to the handling thread for the rest
+ * of the chain and stored in the {@link TraceBuffer} when the exchange
+ * completes. Install it first, so queueing in later filters is included.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public class TraceFilter extends Filter {
+    
+    public static final String HEADER = "X-Request-Id";
+    
+    private final TraceBuffer buffer;
+    
+    /**
+     * Creates the filter
+     * 
+     * @param buffer Receives completed traces
+     */
+    public TraceFilter(TraceBuffer buffer) {
+        this.buffer = buffer;
+    }
+    
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        String id = exchange.getRequestHeaders().getFirst(HEADER);
+        if (!Trace.isValidId(id)) {
+            id = Trace.newId();
+        }
+        exchange.getResponseHeaders().set(HEADER, id);
+        
+        Trace trace = new Trace(id, exchange.getRequestMethod(), exchange.getRequestURI().getPath());
+        Trace previous = Trace.attach(trace);
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            trace.finish(exchange.getResponseCode());
+            Trace.attach(previous);
+            buffer.add(trace);
+        }
+    }
+    
+    @Override
+    public String description() {
+        return "Assigns request ids and records traces";
+    }
+}
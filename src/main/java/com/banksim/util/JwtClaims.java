@@ -0,0 +1,96 @@
+package com.banksim.util;
+
+/**
+ * Immutable set of claims carried by a verified JWT.
+ * Handed to controllers as the authenticated principal so they never
+ * re-parse the token to find out who is calling.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+public final class JwtClaims {
+    
+    private final Integer userId;
+    private final String username;
+    private final String role;
+    private final long issuedAt;
+    private final long expiresAt;
+    
+    /**
+     * Creates a claims set
+     * 
+     * @param userId User ID (sub claim)
+     * @param username Username
+     * @param role User role
+     * @param issuedAt Issue timestamp in milliseconds (iat claim)
+     * @param expiresAt Expiration timestamp in milliseconds (exp claim)
+     */
+    public JwtClaims(Integer userId, String username, String role, long issuedAt, long expiresAt) {
+        this.userId = userId;
+        this.username = username;
+        this.role = role;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+    
+    /**
+     * Gets the user ID
+     * @return User ID or null if the token carried no subject
+     */
+    public Integer getUserId() {
+        return userId;
+    }
+    
+    /**
+     * Gets the username
+     * @return Username
+     */
+    public String getUsername() {
+        return username;
+    }
+    
+    /**
+     * Gets the user role
+     * @return Role name (e.g., "ADMIN", "CUSTOMER", "EMPLOYEE")
+     */
+    public String getRole() {
+        return role;
+    }
+    
+    /**
+     * Gets the issue timestamp
+     * @return Issue time in epoch milliseconds
+     */
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+    
+    /**
+     * Gets the expiration timestamp
+     * @return Expiration time in epoch milliseconds
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+    
+    /**
+     * Checks if the claims have expired
+     * 
+     * @param now Current time in epoch milliseconds
+     * @return true if expired, false otherwise
+     */
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+    
+    @Override
+    public String toString() {
+        return "JwtClaims{" +
+                "userId=" + userId +
+                ", username='" + username + '\'' +
+                ", role='" + role + '\'' +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
@@ -0,0 +1,455 @@
+package com.banksim.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single-pass parser for JWT headers and payloads.
+ * 
+ * Decodes Base64-URL straight from the token into a caller-supplied buffer
+ * and walks the JSON bytes once, reading the registered claims into a
+ * {@link JwtClaims} without building intermediate strings or maps.
+ * Quoted commas, colons and escapes inside values are handled, and
+ * unknown members (including nested objects and arrays) are skipped.
+ * 
+ * @author Jorge Pena - REM Consultancy
+ * @version 1.0
+ * @since 2024
+ */
+final class JwtClaimsParser {
+    
+    private static final byte[] SUB = ascii("sub");
+    private static final byte[] USERNAME = ascii("username");
+    private static final byte[] ROLE = ascii("role");
+    private static final byte[] IAT = ascii("iat");
+    private static final byte[] EXP = ascii("exp");
+    private static final byte[] KID = ascii("kid");
+    
+    // Role names resolve to shared instances instead of fresh strings per token
+    private static final String[] KNOWN_ROLES = {"ADMIN", "CUSTOMER", "EMPLOYEE"};
+    private static final byte[][] KNOWN_ROLE_BYTES = {ascii("\"ADMIN\""), ascii("\"CUSTOMER\""), ascii("\"EMPLOYEE\"")};
+    
+    private static final byte[] BASE64_URL = new byte[128];
+    
+    static {
+        Arrays.fill(BASE64_URL, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_URL[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+    
+    private final byte[] json;
+    private final int length;
+    private int pos;
+    private boolean firstMember;
+    
+    private JwtClaimsParser(byte[] json, int length) {
+        this.json = json;
+        this.length = length;
+    }
+    
+    /**
+     * Parses the registered claims of a decoded JWT payload
+     * 
+     * @param json Buffer holding the UTF-8 payload
+     * @param length Number of valid bytes in {@code json}
+     * @return Parsed claims, or null if the payload is malformed or has no exp
+     */
+    static JwtClaims parseClaims(byte[] json, int length) {
+        JwtClaimsParser parser = new JwtClaimsParser(json, length);
+        
+        Integer userId = null;
+        String username = null;
+        String role = null;
+        long issuedAt = 0L;
+        long expiresAt = -1L;
+        
+        if (!parser.beginObject()) {
+            return null;
+        }
+        while (parser.nextMember()) {
+            int keyStart = parser.pos;
+            int keyEnd = parser.skipString();
+            if (keyEnd < 0 || !parser.consume(':')) {
+                return null;
+            }
+            
+            if (parser.keyEquals(keyStart, keyEnd, SUB)) {
+                long sub = parser.readLong();
+                if (sub < Integer.MIN_VALUE || sub > Integer.MAX_VALUE) {
+                    return null;
+                }
+                userId = (int) sub;
+            } else if (parser.keyEquals(keyStart, keyEnd, USERNAME)) {
+                username = parser.readString();
+            } else if (parser.keyEquals(keyStart, keyEnd, ROLE)) {
+                role = parser.readRole();
+            } else if (parser.keyEquals(keyStart, keyEnd, IAT)) {
+                issuedAt = parser.readLong();
+            } else if (parser.keyEquals(keyStart, keyEnd, EXP)) {
+                expiresAt = parser.readLong();
+            } else if (!parser.skipValue()) {
+                return null;
+            }
+            
+            if (parser.failed()) {
+                return null;
+            }
+        }
+        
+        if (parser.failed() || expiresAt < 0) {
+            return null;
+        }
+        return new JwtClaims(userId, username, role, issuedAt, expiresAt);
+    }
+    
+    /**
+     * Reads the kid member of a decoded JWT header
+     * 
+     * @param json Buffer holding the UTF-8 header
+     * @param length Number of valid bytes in {@code json}
+     * @return Key id, or null if absent or malformed
+     */
+    static String parseKeyId(byte[] json, int length) {
+        JwtClaimsParser parser = new JwtClaimsParser(json, length);
+        
+        if (!parser.beginObject()) {
+            return null;
+        }
+        while (parser.nextMember()) {
+            int keyStart = parser.pos;
+            int keyEnd = parser.skipString();
+            if (keyEnd < 0 || !parser.consume(':')) {
+                return null;
+            }
+            if (parser.keyEquals(keyStart, keyEnd, KID)) {
+                return parser.readString();
+            }
+            if (!parser.skipValue()) {
+                return null;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Decodes unpadded Base64-URL text into a byte buffer
+     * 
+     * @param src String holding the encoded segment
+     * @param from Start index (inclusive)
+     * @param to End index (exclusive)
+     * @param dst Destination buffer, at least {@link #decodedLength} bytes
+     * @return Number of decoded bytes, or -1 if the input is not valid Base64-URL
+     */
+    static int decodeBase64Url(String src, int from, int to, byte[] dst) {
+        int out = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = from; i < to; i++) {
+            char c = src.charAt(i);
+            int value = c < 128 ? BASE64_URL[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                dst[out++] = (byte) (bits >> bitCount);
+            }
+        }
+        return bitCount >= 6 ? -1 : out;
+    }
+    
+    /**
+     * Gets the maximum decoded size of an unpadded Base64-URL segment
+     * 
+     * @param encodedLength Number of encoded characters
+     * @return Upper bound on decoded bytes
+     */
+    static int decodedLength(int encodedLength) {
+        return (encodedLength * 3) / 4 + 1;
+    }
+    
+    // ------------------------------------------------------------------
+    // Cursor helpers. Every failure moves pos past the end so callers can
+    // check failed() once per member instead of threading error codes.
+    // ------------------------------------------------------------------
+    
+    private boolean failed() {
+        return pos > length;
+    }
+    
+    private void fail() {
+        pos = length + 1;
+    }
+    
+    private void skipWhitespace() {
+        while (pos < length) {
+            byte b = json[pos];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+    
+    private boolean consume(char expected) {
+        skipWhitespace();
+        if (pos < length && json[pos] == expected) {
+            pos++;
+            return true;
+        }
+        fail();
+        return false;
+    }
+    
+    private boolean beginObject() {
+        firstMember = true;
+        return consume('{');
+    }
+    
+    /**
+     * Advances to the next member key of the current object
+     * 
+     * @return true if positioned on a key's opening quote, false at the closing brace or on error
+     */
+    private boolean nextMember() {
+        skipWhitespace();
+        if (pos >= length) {
+            fail();
+            return false;
+        }
+        if (json[pos] == '}') {
+            pos++;
+            return false;
+        }
+        if (!firstMember) {
+            if (json[pos] != ',') {
+                fail();
+                return false;
+            }
+            pos++;
+            skipWhitespace();
+        }
+        firstMember = false;
+        if (pos >= length || json[pos] != '"') {
+            fail();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Skips a quoted string starting at pos
+     * 
+     * @return Index just past the closing quote, or -1 if unterminated
+     */
+    private int skipString() {
+        if (pos >= length || json[pos] != '"') {
+            fail();
+            return -1;
+        }
+        pos++;
+        while (pos < length) {
+            byte b = json[pos++];
+            if (b == '\\') {
+                pos++;
+            } else if (b == '"') {
+                return pos;
+            }
+        }
+        fail();
+        return -1;
+    }
+    
+    private boolean keyEquals(int keyStart, int keyEnd, byte[] name) {
+        int nameStart = keyStart + 1;
+        if (keyEnd - 1 - nameStart != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (json[nameStart + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Reads the role value, returning a shared constant for known roles
+     */
+    private String readRole() {
+        skipWhitespace();
+        for (int r = 0; r < KNOWN_ROLE_BYTES.length; r++) {
+            byte[] quoted = KNOWN_ROLE_BYTES[r];
+            if (pos + quoted.length <= length
+                    && Arrays.equals(json, pos, pos + quoted.length, quoted, 0, quoted.length)) {
+                pos += quoted.length;
+                return KNOWN_ROLES[r];
+            }
+        }
+        return readString();
+    }
+    
+    /**
+     * Reads a string value, decoding escapes only when present
+     */
+    private String readString() {
+        skipWhitespace();
+        if (pos < length && json[pos] == 'n') {
+            skipLiteral("null");
+            return null;
+        }
+        int start = pos + 1;
+        int end = skipString();
+        if (end < 0) {
+            return null;
+        }
+        
+        int contentEnd = end - 1;
+        for (int i = start; i < contentEnd; i++) {
+            if (json[i] == '\\') {
+                return unescape(start, contentEnd);
+            }
+        }
+        return new String(json, start, contentEnd - start, StandardCharsets.UTF_8);
+    }
+    
+    private String unescape(int start, int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        int runStart = start;
+        for (int i = start; i < end; i++) {
+            if (json[i] != '\\') {
+                continue;
+            }
+            value.append(new String(json, runStart, i - runStart, StandardCharsets.UTF_8));
+            char escaped = (char) json[++i];
+            switch (escaped) {
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    if (i + 4 >= end) {
+                        fail();
+                        return null;
+                    }
+                    int code = 0;
+                    for (int k = 1; k <= 4; k++) {
+                        int digit = Character.digit(json[i + k], 16);
+                        if (digit < 0) {
+                            fail();
+                            return null;
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    value.append((char) code);
+                    i += 4;
+                    break;
+                default: value.append(escaped);
+            }
+            runStart = i + 1;
+        }
+        value.append(new String(json, runStart, end - runStart, StandardCharsets.UTF_8));
+        return value.toString();
+    }
+    
+    /**
+     * Reads an integer that may be written bare or quoted (e.g. "sub":"42")
+     */
+    private long readLong() {
+        skipWhitespace();
+        boolean quoted = pos < length && json[pos] == '"';
+        if (quoted) {
+            pos++;
+        }
+        
+        boolean negative = pos < length && json[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+        
+        int digitsStart = pos;
+        long value = 0;
+        while (pos < length && json[pos] >= '0' && json[pos] <= '9') {
+            if (pos - digitsStart >= 18) {
+                fail();
+                return 0;
+            }
+            value = value * 10 + (json[pos++] - '0');
+        }
+        if (pos == digitsStart || (quoted && (pos >= length || json[pos++] != '"'))) {
+            fail();
+            return 0;
+        }
+        return negative ? -value : value;
+    }
+    
+    /**
+     * Skips any JSON value, including nested objects and arrays
+     */
+    private boolean skipValue() {
+        skipWhitespace();
+        if (pos >= length) {
+            fail();
+            return false;
+        }
+        byte b = json[pos];
+        if (b == '"') {
+            return skipString() >= 0;
+        }
+        if (b == '{' || b == '[') {
+            int depth = 0;
+            while (pos < length) {
+                byte c = json[pos];
+                if (c == '"') {
+                    if (skipString() < 0) {
+                        return false;
+                    }
+                    continue;
+                }
+                pos++;
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if ((c == '}' || c == ']') && --depth == 0) {
+                    return true;
+                }
+            }
+            fail();
+            return false;
+        }
+        // Number or literal: runs until the next structural character
+        int start = pos;
+        while (pos < length && json[pos] != ',' && json[pos] != '}'
+                && json[pos] != ' ' && json[pos] != '\n' && json[pos] != '\r' && json[pos] != '\t') {
+            pos++;
+        }
+        if (pos == start) {
+            fail();
+            return false;
+        }
+        return true;
+    }
+    
+    private boolean skipLiteral(String literal) {
+        if (pos + literal.length() > length) {
+            fail();
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (json[pos + i] != literal.charAt(i)) {
+                fail();
+                return false;
+            }
+        }
+        pos += literal.length();
+        return true;
+    }
+    
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
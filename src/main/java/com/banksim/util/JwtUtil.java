@@ -1,12 +1,20 @@
 package com.banksim.util;
 
 import com.banksim.config.SecurityConfig;
+import com.banksim.jfr.JwtValidationEvent;
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.LatencyHistogram;
+import com.banksim.metrics.MetricsRegistry;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
+import java.security.GeneralSecurityException;
 import java.time.Instant;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 /**
  * JWT (JSON Web Token) utility for generating and validating authentication tokens.
@@ -22,7 +30,27 @@ import java.util.Map;
 public class JwtUtil {
     
     private static final SecurityConfig config = SecurityConfig.getInstance();
-    private static final String HEADER = "{\"alg\":\"HS256\",\"typ\":\"JWT\"}";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_LENGTH = 32;
+    private static final int ENCODED_SIGNATURE_LENGTH = 43;
+    private static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    
+    // Signing keys by kid; every configured key verifies, only the active one signs
+    private static final Map<String, SigningKey> KEYS = loadKeys();
+    private static final SigningKey ACTIVE_KEY = KEYS.get(config.getJwtActiveKeyId());
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+    
+    // Verified tokens keyed by signature, so repeat requests skip the hash and parse
+    private static final int TOKEN_CACHE_MAX_SIZE =
+            Integer.parseInt(config.getProperty("jwt.cache.max.size", "10000"));
+    private static final Map<String, VerifiedToken> TOKEN_CACHE = new ConcurrentHashMap<>();
+    
+    private static final Counter CACHE_HITS = MetricsRegistry.getInstance().counter(
+            "banksim_cache_requests_total", "Cache lookups, by cache and result", "cache", "jwt", "result", "hit");
+    private static final Counter CACHE_MISSES = MetricsRegistry.getInstance().counter(
+            "banksim_cache_requests_total", "Cache lookups, by cache and result", "cache", "jwt", "result", "miss");
+    private static final LatencyHistogram VERIFY_TIME = MetricsRegistry.getInstance().histogram(
+            "banksim_jwt_verify_seconds", "Time to check a token signature and parse its claims");
     
     /**
      * Generates a JWT token for a user
@@ -56,13 +84,12 @@ public class JwtUtil {
                 userId, username, role, Instant.now().toEpochMilli(), expirationTime
             );
             
-            // Encode header and payload
-            String encodedHeader = base64UrlEncode(HEADER);
+            // Encode payload (header is pre-encoded per key)
             String encodedPayload = base64UrlEncode(payload);
             
             // Create signature
-            String dataToSign = encodedHeader + "." + encodedPayload;
-            String signature = createSignature(dataToSign);
+            String dataToSign = ACTIVE_KEY.encodedHeader + "." + encodedPayload;
+            String signature = createSignature(dataToSign, ACTIVE_KEY);
             
             // Return complete token
             return dataToSign + "." + signature;
@@ -94,29 +121,159 @@ public class JwtUtil {
      * @return true if token is valid and not expired, false otherwise
      */
     public static boolean validateToken(String token) {
-        try {
-            String[] parts = token.split("\\.");
-            if (parts.length != 3) {
-                return false;
+        return authenticate(token) != null;
+    }
+    
+    /**
+     * Verifies a JWT token and returns its parsed claims.
+     * 
+     * Tokens that already passed verification are served from a bounded
+     * cache keyed by signature, so a session's repeat requests cost one
+     * hash lookup instead of a signature check and a payload parse.
+     * 
+     * @param token JWT token to verify
+     * @return Parsed claims, or null if the token is invalid or expired
+     */
+    public static JwtClaims authenticate(String token) {
+        if (token == null) {
+            return null;
+        }
+        
+        JwtValidationEvent event = new JwtValidationEvent();
+        event.begin();
+        long now = Instant.now().toEpochMilli();
+        String signature = token.substring(token.lastIndexOf('.') + 1);
+        
+        VerifiedToken cached = TOKEN_CACHE.get(signature);
+        if (cached != null && cached.token.equals(token)) {
+            CACHE_HITS.increment();
+            if (cached.claims.isExpired(now)) {
+                TOKEN_CACHE.remove(signature, cached);
+                return commit(event, true, null);
             }
-            
-            // Verify signature
-            String dataToSign = parts[0] + "." + parts[1];
-            String expectedSignature = createSignature(dataToSign);
-            
-            if (!constantTimeEquals(parts[2], expectedSignature)) {
-                return false;
+            return commit(event, true, cached.claims);
+        }
+        CACHE_MISSES.increment();
+        
+        long start = System.nanoTime();
+        JwtClaims claims = verify(token);
+        VERIFY_TIME.record(System.nanoTime() - start);
+        if (claims == null || claims.isExpired(now)) {
+            return commit(event, false, null);
+        }
+        
+        cacheVerifiedToken(signature, new VerifiedToken(token, claims), now);
+        return commit(event, false, claims);
+    }
+    
+    /**
+     * Ends a validation event, committing it if it is recorded
+     * 
+     * @param event Event begun on entry to authenticate
+     * @param cacheHit true if the token was found in the cache
+     * @param claims Result of the validation
+     * @return claims
+     */
+    private static JwtClaims commit(JwtValidationEvent event, boolean cacheHit, JwtClaims claims) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.cacheHit = cacheHit;
+            event.valid = claims != null;
+            event.commit();
+        }
+        return claims;
+    }
+    
+    /**
+     * Checks the signature of a token and parses its claims
+     * 
+     * @param token JWT token
+     * @return Parsed claims, or null if the signature does not match
+     */
+    private static JwtClaims verify(String token) {
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = token.lastIndexOf('.');
+        if (headerEnd <= 0 || payloadEnd <= headerEnd || token.indexOf('.', headerEnd + 1) != payloadEnd) {
+            return null;
+        }
+        
+        // Find the signing key named by the header's kid
+        Buffers buffers = BUFFERS.get();
+        byte[] decoded = buffers.decoded(JwtClaimsParser.decodedLength(headerEnd));
+        int headerLength = JwtClaimsParser.decodeBase64Url(token, 0, headerEnd, decoded);
+        String keyId = headerLength < 0 ? null : JwtClaimsParser.parseKeyId(decoded, headerLength);
+        SigningKey key = keyId != null ? KEYS.get(keyId) : null;
+        if (key == null) {
+            return null;
+        }
+        
+        // Verify signature
+        int signatureLength = sign(token, payloadEnd, key, buffers);
+        if (!constantTimeEquals(token, payloadEnd + 1, buffers.encoded, signatureLength)) {
+            return null;
+        }
+        
+        return parsePayload(token, headerEnd + 1, payloadEnd, buffers);
+    }
+    
+    /**
+     * Decodes and parses a token payload segment in a single pass
+     * 
+     * @param token JWT token
+     * @param from Start index of the payload segment
+     * @param to End index (exclusive) of the payload segment
+     * @param buffers Per-thread buffers
+     * @return Parsed claims, or null if the payload is malformed
+     */
+    private static JwtClaims parsePayload(String token, int from, int to, Buffers buffers) {
+        byte[] decoded = buffers.decoded(JwtClaimsParser.decodedLength(to - from));
+        int length = JwtClaimsParser.decodeBase64Url(token, from, to, decoded);
+        return length < 0 ? null : JwtClaimsParser.parseClaims(decoded, length);
+    }
+    
+    /**
+     * Adds a verified token to the cache, sweeping expired entries once the
+     * cache reaches its bound and dropping everything if that is not enough.
+     * 
+     * @param signature Token signature (cache key)
+     * @param entry Verified token
+     * @param now Current time in epoch milliseconds
+     */
+    private static void cacheVerifiedToken(String signature, VerifiedToken entry, long now) {
+        if (TOKEN_CACHE.size() >= TOKEN_CACHE_MAX_SIZE) {
+            TOKEN_CACHE.values().removeIf(cached -> cached.claims.isExpired(now));
+            if (TOKEN_CACHE.size() >= TOKEN_CACHE_MAX_SIZE) {
+                TOKEN_CACHE.clear();
             }
-            
-            // Check expiration
-            Map<String, String> claims = extractClaims(token);
-            long expiration = Long.parseLong(claims.get("exp"));
-            
-            return Instant.now().toEpochMilli() < expiration;
-            
-        } catch (Exception e) {
-            return false;
         }
+        TOKEN_CACHE.put(signature, entry);
+    }
+    
+    /**
+     * Removes every verified token from the cache
+     */
+    public static void clearTokenCache() {
+        TOKEN_CACHE.clear();
+    }
+    
+    /**
+     * Gets parsed claims for a token without checking its signature,
+     * reusing the verified-token cache when possible
+     * 
+     * @param token JWT token
+     * @return Parsed claims, or null if the payload cannot be parsed
+     */
+    private static JwtClaims peekClaims(String token) {
+        if (token == null) {
+            return null;
+        }
+        
+        VerifiedToken cached = TOKEN_CACHE.get(token.substring(token.lastIndexOf('.') + 1));
+        if (cached != null && cached.token.equals(token)) {
+            return cached.claims;
+        }
+        
+        return parseClaims(token);
     }
     
     /**
@@ -128,33 +285,44 @@ public class JwtUtil {
     public static Map<String, String> extractClaims(String token) {
         Map<String, String> claims = new HashMap<>();
         
-        try {
-            String[] parts = token.split("\\.");
-            if (parts.length != 3) {
-                return claims;
+        JwtClaims parsed = parseClaims(token);
+        if (parsed != null) {
+            if (parsed.getUserId() != null) {
+                claims.put("sub", String.valueOf(parsed.getUserId()));
             }
-            
-            // Decode payload
-            String payload = base64UrlDecode(parts[1]);
-            
-            // Parse JSON manually (simple key-value extraction)
-            payload = payload.replace("{", "").replace("}", "").replace("\"", "");
-            String[] pairs = payload.split(",");
-            
-            for (String pair : pairs) {
-                String[] keyValue = pair.split(":", 2);
-                if (keyValue.length == 2) {
-                    claims.put(keyValue[0].trim(), keyValue[1].trim());
-                }
+            if (parsed.getUsername() != null) {
+                claims.put("username", parsed.getUsername());
             }
-            
-        } catch (Exception e) {
-            // Return empty claims on error
+            if (parsed.getRole() != null) {
+                claims.put("role", parsed.getRole());
+            }
+            claims.put("iat", String.valueOf(parsed.getIssuedAt()));
+            claims.put("exp", String.valueOf(parsed.getExpiresAt()));
         }
         
         return claims;
     }
     
+    /**
+     * Parses the claims of a JWT token without checking its signature
+     * 
+     * @param token JWT token
+     * @return Parsed claims, or null if the token is malformed
+     */
+    public static JwtClaims parseClaims(String token) {
+        if (token == null) {
+            return null;
+        }
+        
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = token.lastIndexOf('.');
+        if (headerEnd <= 0 || payloadEnd <= headerEnd) {
+            return null;
+        }
+        
+        return parsePayload(token, headerEnd + 1, payloadEnd, BUFFERS.get());
+    }
+    
     /**
      * Extracts user ID from token
      * 
@@ -162,13 +330,8 @@ public class JwtUtil {
      * @return User ID or null if not found
      */
     public static Integer getUserId(String token) {
-        try {
-            Map<String, String> claims = extractClaims(token);
-            String sub = claims.get("sub");
-            return sub != null ? Integer.parseInt(sub) : null;
-        } catch (Exception e) {
-            return null;
-        }
+        JwtClaims claims = peekClaims(token);
+        return claims != null ? claims.getUserId() : null;
     }
     
     /**
@@ -178,8 +341,8 @@ public class JwtUtil {
      * @return Username or null if not found
      */
     public static String getUsername(String token) {
-        Map<String, String> claims = extractClaims(token);
-        return claims.get("username");
+        JwtClaims claims = peekClaims(token);
+        return claims != null ? claims.getUsername() : null;
     }
     
     /**
@@ -189,8 +352,8 @@ public class JwtUtil {
      * @return Role or null if not found
      */
     public static String getRole(String token) {
-        Map<String, String> claims = extractClaims(token);
-        return claims.get("role");
+        JwtClaims claims = peekClaims(token);
+        return claims != null ? claims.getRole() : null;
     }
     
     /**
@@ -200,35 +363,63 @@ public class JwtUtil {
      * @return true if expired, false otherwise
      */
     public static boolean isTokenExpired(String token) {
-        try {
-            Map<String, String> claims = extractClaims(token);
-            long expiration = Long.parseLong(claims.get("exp"));
-            return Instant.now().toEpochMilli() >= expiration;
-        } catch (Exception e) {
-            return true;
-        }
+        JwtClaims claims = peekClaims(token);
+        return claims == null || claims.isExpired(Instant.now().toEpochMilli());
     }
     
     /**
      * Creates HMAC-SHA256 signature for JWT
      * 
      * @param data Data to sign
+     * @param key Signing key
      * @return Base64-URL encoded signature
      */
-    private static String createSignature(String data) {
+    private static String createSignature(String data, SigningKey key) {
+        Buffers buffers = BUFFERS.get();
+        int length = sign(data, data.length(), key, buffers);
+        return new String(buffers.encoded, 0, length, StandardCharsets.US_ASCII);
+    }
+    
+    /**
+     * Computes the HMAC-SHA256 of {@code data[0, end)} with the thread's
+     * pre-initialized Mac and writes its Base64-URL encoding into
+     * {@code buffers.encoded}. The signed data is Base64-URL text, so each
+     * char is copied straight into the reusable input buffer.
+     * 
+     * @param data String holding the signing input
+     * @param end End index (exclusive) of the signing input
+     * @param key Signing key
+     * @param buffers Per-thread buffers
+     * @return Number of encoded signature bytes
+     */
+    private static int sign(String data, int end, SigningKey key, Buffers buffers) {
+        byte[] input = buffers.input(end);
+        for (int i = 0; i < end; i++) {
+            input[i] = (byte) data.charAt(i);
+        }
+        
         try {
-            String secret = config.getJwtSecret();
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            
-            // Simple HMAC implementation
-            String combined = data + secret;
-            byte[] hash = digest.digest(combined.getBytes(StandardCharsets.UTF_8));
-            
-            return base64UrlEncode(hash);
-            
-        } catch (Exception e) {
+            Mac mac = key.macs.get();
+            mac.update(input, 0, end);
+            mac.doFinal(buffers.signature, 0);
+        } catch (GeneralSecurityException e) {
             throw new RuntimeException("Error creating signature", e);
         }
+        
+        return URL_ENCODER.encode(buffers.signature, buffers.encoded);
+    }
+    
+    /**
+     * Builds the signing keys from configuration
+     * 
+     * @return Unmodifiable map of key id to signing key
+     */
+    private static Map<String, SigningKey> loadKeys() {
+        Map<String, SigningKey> keys = new HashMap<>();
+        for (Map.Entry<String, String> entry : config.getJwtKeys().entrySet()) {
+            keys.put(entry.getKey(), new SigningKey(entry.getKey(), entry.getValue()));
+        }
+        return Collections.unmodifiableMap(keys);
     }
     
     /**
@@ -254,40 +445,87 @@ public class JwtUtil {
     }
     
     /**
-     * Base64-URL decodes a string
+     * Constant-time comparison of a token's signature segment against
+     * freshly encoded bytes, to prevent timing attacks
      * 
-     * @param input String to decode
-     * @return Decoded string
+     * @param token JWT token
+     * @param offset Start of the signature segment within {@code token}
+     * @param expected Encoded signature bytes
+     * @param expectedLength Number of valid bytes in {@code expected}
+     * @return true if both signatures are equal, false otherwise
      */
-    private static String base64UrlDecode(String input) {
-        byte[] decoded = Base64.getUrlDecoder().decode(input);
-        return new String(decoded, StandardCharsets.UTF_8);
+    private static boolean constantTimeEquals(String token, int offset, byte[] expected, int expectedLength) {
+        if (token.length() - offset != expectedLength) {
+            return false;
+        }
+        
+        int result = 0;
+        for (int i = 0; i < expectedLength; i++) {
+            result |= token.charAt(offset + i) ^ expected[i];
+        }
+        
+        return result == 0;
     }
     
     /**
-     * Constant-time string comparison to prevent timing attacks
-     * 
-     * @param a First string
-     * @param b Second string
-     * @return true if strings are equal, false otherwise
+     * A configured HMAC key with its pre-encoded token header and one
+     * initialized Mac per thread
      */
-    private static boolean constantTimeEquals(String a, String b) {
-        if (a == null || b == null) {
-            return a == b;
-        }
+    private static final class SigningKey {
+        private final String encodedHeader;
+        private final ThreadLocal<Mac> macs;
         
-        byte[] aBytes = a.getBytes(StandardCharsets.UTF_8);
-        byte[] bBytes = b.getBytes(StandardCharsets.UTF_8);
+        private SigningKey(String keyId, String secret) {
+            this.encodedHeader = base64UrlEncode(
+                "{\"alg\":\"HS256\",\"typ\":\"JWT\",\"kid\":\"" + keyId + "\"}");
+            SecretKeySpec keySpec = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+            this.macs = ThreadLocal.withInitial(() -> {
+                try {
+                    Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                    mac.init(keySpec);
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new RuntimeException("HMAC algorithm not available", e);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Per-thread scratch buffers for signing and verification
+     */
+    private static final class Buffers {
+        private final byte[] signature = new byte[SIGNATURE_LENGTH];
+        private final byte[] encoded = new byte[ENCODED_SIGNATURE_LENGTH];
+        private byte[] input = new byte[512];
+        private byte[] decoded = new byte[512];
         
-        if (aBytes.length != bBytes.length) {
-            return false;
+        private byte[] input(int length) {
+            if (input.length < length) {
+                input = new byte[Math.max(length, input.length * 2)];
+            }
+            return input;
         }
         
-        int result = 0;
-        for (int i = 0; i < aBytes.length; i++) {
-            result |= aBytes[i] ^ bBytes[i];
+        private byte[] decoded(int length) {
+            if (decoded.length < length) {
+                decoded = new byte[Math.max(length, decoded.length * 2)];
+            }
+            return decoded;
         }
+    }
+    
+    /**
+     * Cache entry pairing the full token with its verified claims; the token
+     * is compared on lookup so a reused signature cannot carry another payload
+     */
+    private static final class VerifiedToken {
+        private final String token;
+        private final JwtClaims claims;
         
-        return result == 0;
+        private VerifiedToken(String token, JwtClaims claims) {
+            this.token = token;
+            this.claims = claims;
+        }
     }
 }
@@ -1,6 +1,11 @@
 package com.banksim.util;
 
+import com.banksim.jfr.PasswordHashEvent;
+import com.banksim.metrics.LatencyHistogram;
+import com.banksim.metrics.MetricsRegistry;
+
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -22,6 +27,15 @@ public class PasswordUtil {
     private static final SecureRandom RANDOM = new SecureRandom();
     private static final int DEFAULT_STRENGTH = 10;
     private static final String ALGORITHM = "SHA-256";
+    private static final int MIN_STRENGTH = 4;
+    private static final int MAX_STRENGTH = 31;
+    private static final int HASH_LENGTH = 32;
+    private static final int ENCODED_LENGTH = 44;
+    private static final String PREFIX = "$2a$";
+    private static final char SEPARATOR = '$';
+    private static final ThreadLocal<HashState> STATE = ThreadLocal.withInitial(HashState::new);
+    private static final LatencyHistogram VERIFY_TIME = MetricsRegistry.getInstance().histogram(
+        "banksim_password_verify_seconds", "Time to hash a password attempt and compare it");
     
     /**
      * Hashes a password using BCrypt-style algorithm with salt
@@ -45,25 +59,31 @@ public class PasswordUtil {
             throw new IllegalArgumentException("Password cannot be null or empty");
         }
         
-        if (strength < 4 || strength > 31) {
+        if (strength < MIN_STRENGTH || strength > MAX_STRENGTH) {
             throw new IllegalArgumentException("Strength must be between 4 and 31");
         }
         
-        try {
-            // Generate random salt
-            byte[] saltBytes = new byte[16];
-            RANDOM.nextBytes(saltBytes);
-            String salt = Base64.getEncoder().encodeToString(saltBytes);
-            
-            // Hash password with salt
-            String hash = hashWithSalt(password, salt, strength);
-            
-            // Return in BCrypt-style format
-            return String.format("$2a$%02d$%s$%s", strength, salt, hash);
-            
-        } catch (Exception e) {
-            throw new RuntimeException("Error hashing password", e);
+        // Generate random salt
+        String salt = generateSalt();
+        
+        PasswordHashEvent event = new PasswordHashEvent();
+        event.begin();
+        HashState state = STATE.get();
+        hashWithSalt(state, password, salt, 0, salt.length(), strength);
+        int hashLength = Base64.getEncoder().encode(state.hash, state.encoded);
+        commit(event, "hash", strength, false);
+        
+        // Return in BCrypt-style format: $2a$NN$salt$hash
+        StringBuilder result = new StringBuilder(PREFIX.length() + 4 + salt.length() + hashLength);
+        result.append(PREFIX);
+        if (strength < 10) {
+            result.append('0');
+        }
+        result.append(strength).append(SEPARATOR).append(salt).append(SEPARATOR);
+        for (int i = 0; i < hashLength; i++) {
+            result.append((char) state.encoded[i]);
         }
+        return result.toString();
     }
     
     /**
@@ -78,86 +98,186 @@ public class PasswordUtil {
             return false;
         }
         
-        try {
-            // Parse hash format: $2a$10$salt$hash
-            String[] parts = hashedPassword.split("\\$");
-            if (parts.length != 5) {
-                return false;
-            }
-            
-            int strength = Integer.parseInt(parts[2]);
-            String salt = parts[3];
-            String expectedHash = parts[4];
-            
-            // Hash provided password with same salt
-            String actualHash = hashWithSalt(password, salt, strength);
-            
-            // Constant-time comparison to prevent timing attacks
-            return constantTimeEquals(expectedHash, actualHash);
-            
-        } catch (Exception e) {
+        // Parse hash format: $2a$10$salt$hash by locating the four separators
+        int length = hashedPassword.length();
+        if (length == 0 || hashedPassword.charAt(0) != SEPARATOR) {
+            return false;
+        }
+        int strengthStart = hashedPassword.indexOf(SEPARATOR, 1) + 1;
+        if (strengthStart == 0) {
+            return false;
+        }
+        int saltStart = hashedPassword.indexOf(SEPARATOR, strengthStart) + 1;
+        if (saltStart == 0) {
+            return false;
+        }
+        int hashStart = hashedPassword.indexOf(SEPARATOR, saltStart) + 1;
+        if (hashStart == 0 || hashStart == length || hashedPassword.indexOf(SEPARATOR, hashStart) >= 0) {
             return false;
         }
+        
+        int strength = parseStrength(hashedPassword, strengthStart, saltStart - 1);
+        if (strength < MIN_STRENGTH || strength > MAX_STRENGTH) {
+            return false;
+        }
+        
+        // Hash provided password with same salt
+        PasswordHashEvent event = new PasswordHashEvent();
+        event.begin();
+        long start = System.nanoTime();
+        HashState state = STATE.get();
+        hashWithSalt(state, password, hashedPassword, saltStart, hashStart - 1, strength);
+        int actualLength = Base64.getEncoder().encode(state.hash, state.encoded);
+        
+        // Constant-time comparison to prevent timing attacks
+        boolean matches = constantTimeEquals(hashedPassword, hashStart, state.encoded, actualLength);
+        VERIFY_TIME.record(System.nanoTime() - start);
+        commit(event, "verify", strength, matches);
+        return matches;
+    }
+    
+    private static void commit(PasswordHashEvent event, String operation, int strength, boolean matched) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.strength = strength;
+            event.matched = matched;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Parses the two-digit strength field without allocating a substring
+     * 
+     * @param source Stored hash
+     * @param from Start index (inclusive)
+     * @param to End index (exclusive)
+     * @return Parsed strength or -1 if the field is not a decimal number
+     */
+    private static int parseStrength(String source, int from, int to) {
+        if (from >= to || to - from > 2) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = source.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
     }
     
     /**
-     * Hashes password with provided salt
+     * Hashes password with provided salt into {@code state.hash}.
+     * 
+     * The digest is applied {@code 2^strength} times to UTF-8(password + salt),
+     * each round digesting the previous output in place.
      * 
+     * @param state Per-thread digest and buffers
      * @param password Plain text password
-     * @param salt Base64-encoded salt
-     * @param strength Number of hashing rounds
-     * @return Base64-encoded hash
+     * @param source String holding the Base64-encoded salt
+     * @param saltStart Start index of the salt in {@code source}
+     * @param saltEnd End index (exclusive) of the salt in {@code source}
+     * @param strength Number of hashing rounds as a power of two
      */
-    private static String hashWithSalt(String password, String salt, int strength) {
+    private static void hashWithSalt(HashState state, String password, String source,
+                                     int saltStart, int saltEnd, int strength) {
+        MessageDigest digest = state.digest;
+        byte[] hash = state.hash;
+        digest.reset();
+        
+        // Combine password and salt (salt is Base64, so always ASCII)
+        updateUtf8(state, password);
+        byte[] scratch = state.scratch(saltEnd - saltStart);
+        for (int i = saltStart; i < saltEnd; i++) {
+            scratch[i - saltStart] = (byte) source.charAt(i);
+        }
+        digest.update(scratch, 0, saltEnd - saltStart);
+        
         try {
-            MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
-            
-            // Combine password and salt
-            String combined = password + salt;
-            byte[] input = combined.getBytes(StandardCharsets.UTF_8);
-            
             // Apply multiple rounds of hashing (simulating BCrypt work factor)
-            byte[] hash = input;
-            int rounds = (int) Math.pow(2, strength);
-            for (int i = 0; i < rounds; i++) {
-                hash = digest.digest(hash);
+            int rounds = strength >= MAX_STRENGTH ? Integer.MAX_VALUE : 1 << strength;
+            digest.digest(hash, 0, HASH_LENGTH);
+            for (int i = 1; i < rounds; i++) {
+                digest.update(hash, 0, HASH_LENGTH);
+                digest.digest(hash, 0, HASH_LENGTH);
             }
-            
-            // Return Base64-encoded hash
-            return Base64.getEncoder().encodeToString(hash);
-            
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Hash algorithm not available", e);
+        } catch (DigestException e) {
+            throw new RuntimeException("Error hashing password", e);
         }
     }
     
     /**
-     * Constant-time string comparison to prevent timing attacks
+     * Feeds the UTF-8 encoding of a string into the digest, copying pure
+     * ASCII input through the reusable scratch buffer.
      * 
-     * @param a First string
-     * @param b Second string
-     * @return true if strings are equal, false otherwise
+     * @param state Per-thread digest and buffers
+     * @param value String to encode
      */
-    private static boolean constantTimeEquals(String a, String b) {
-        if (a == null || b == null) {
-            return a == b;
+    private static void updateUtf8(HashState state, String value) {
+        int length = value.length();
+        byte[] scratch = state.scratch(length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                state.digest.update(value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            scratch[i] = (byte) c;
         }
-        
-        byte[] aBytes = a.getBytes(StandardCharsets.UTF_8);
-        byte[] bBytes = b.getBytes(StandardCharsets.UTF_8);
-        
-        if (aBytes.length != bBytes.length) {
+        state.digest.update(scratch, 0, length);
+    }
+    
+    /**
+     * Constant-time comparison of the stored hash against freshly encoded bytes
+     * 
+     * @param expected Stored hash string
+     * @param offset Start of the Base64 hash within {@code expected}
+     * @param actual Encoded hash bytes
+     * @param actualLength Number of valid bytes in {@code actual}
+     * @return true if both encodings are equal, false otherwise
+     */
+    private static boolean constantTimeEquals(String expected, int offset, byte[] actual, int actualLength) {
+        if (expected.length() - offset != actualLength) {
             return false;
         }
         
         int result = 0;
-        for (int i = 0; i < aBytes.length; i++) {
-            result |= aBytes[i] ^ bBytes[i];
+        for (int i = 0; i < actualLength; i++) {
+            result |= expected.charAt(offset + i) ^ actual[i];
         }
         
         return result == 0;
     }
     
+    /**
+     * Per-thread hashing state: a reusable digest plus output buffers, so the
+     * 2^strength rounds run without allocating.
+     */
+    private static final class HashState {
+        private final MessageDigest digest;
+        private final byte[] hash = new byte[HASH_LENGTH];
+        private final byte[] encoded = new byte[ENCODED_LENGTH];
+        private byte[] scratch = new byte[64];
+        
+        private HashState() {
+            try {
+                digest = MessageDigest.getInstance(ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("Hash algorithm not available", e);
+            }
+        }
+        
+        private byte[] scratch(int length) {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            return scratch;
+        }
+    }
+    
     /**
      * Generates a random salt
      * 
@@ -0,0 +1,31 @@
+package com.banksim;
+
+import com.banksim.service.AccountVersions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for per-account ETag versions
+ */
+@DisplayName("Account Version Tests")
+class AccountVersionsTest {
+    
+    @Test
+    @DisplayName("Should keep a weak tag stable until the account changes")
+    void testTagChangesOnlyOnBump() {
+        AccountVersions versions = new AccountVersions();
+        
+        String before = versions.etag(42);
+        assertThat(before).startsWith("W/\"42.").endsWith(".0\"");
+        assertThat(versions.etag(42)).isEqualTo(before);
+        assertThat(versions.etag(7)).isNotEqualTo(before);
+        
+        versions.bump(42);
+        
+        assertThat(versions.version(42)).isEqualTo(1);
+        assertThat(versions.etag(42)).isNotEqualTo(before);
+        assertThat(versions.version(7)).isZero();
+    }
+}
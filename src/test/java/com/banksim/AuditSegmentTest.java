@@ -0,0 +1,187 @@
+package com.banksim;
+
+import com.banksim.audit.AuditSegmentVerifier;
+import com.banksim.audit.AuditSegmentWriter;
+import com.banksim.audit.AuditWriter;
+import com.banksim.model.AuditLog;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for hash-chained audit segment files and their verifier
+ */
+@DisplayName("Audit Segment Tests")
+class AuditSegmentTest {
+    
+    private static final String KEY = "test-segment-key";
+    
+    @TempDir
+    Path dir;
+    
+    private AuditSegmentWriter writer(int maxRecords) {
+        return writer(maxRecords, 60000);
+    }
+    
+    private AuditSegmentWriter writer(int maxRecords, long sealInterval) {
+        return new AuditSegmentWriter(Map.of("audit.segment.dir", dir.toString(), "audit.segment.key", KEY,
+            "audit.segment.max.records", String.valueOf(maxRecords),
+            "audit.segment.seal.interval", String.valueOf(sealInterval), "audit.segment.fsync", "false")::get);
+    }
+    
+    private AuditSegmentVerifier.Report verify(String key) throws Exception {
+        return new AuditSegmentVerifier(key.getBytes(StandardCharsets.UTF_8), 4).verify(dir);
+    }
+    
+    private static List<AuditLog> entries(int from, int count) {
+        List<AuditLog> entries = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            AuditLog entry = new AuditLog(i, "TRANSFER", "TRANSACTION", i);
+            entry.setNewValue("{\"amount\":\"" + i + ".00\"}");
+            entries.add(entry);
+        }
+        return entries;
+    }
+    
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+        }
+    }
+    
+    @Test
+    @DisplayName("Should chain records across sealed segments and verify them")
+    void testRoundTrip() throws Exception {
+        AuditSegmentWriter writer = writer(10);
+        assertThat(writer.append(entries(0, 7))).isTrue();
+        assertThat(writer.append(entries(7, 18))).isTrue();
+        writer.close();
+        
+        assertThat(segments()).hasSize(3);
+        AuditSegmentVerifier.Report report = verify(KEY);
+        assertThat(report.problems()).isEmpty();
+        assertThat(report.records()).isEqualTo(25);
+        assertThat(report.segments()).isEqualTo(3);
+    }
+    
+    @Test
+    @DisplayName("Should detect an edited record, a removed segment and a chain keyed with another key")
+    void testTampering() throws Exception {
+        AuditSegmentWriter writer = writer(10);
+        writer.append(entries(0, 30));
+        writer.close();
+        
+        // Records are keyed too, so a chain rebuilt without the key fails from its first record
+        assertThat(verify("another-key").problems()).contains(
+            "audit.checkpoint: checkpoint signature does not verify",
+            "audit-0000000000000000001.seg: hash mismatch at record 1",
+            "audit-0000000000000000011.seg: hash mismatch at record 11",
+            "audit-0000000000000000021.seg: hash mismatch at record 21");
+        
+        Path middle = segments().get(1);
+        String original = Files.readString(middle);
+        Files.writeString(middle, original.replace("\"userId\":15,", "\"userId\":95,"));
+        assertThat(verify(KEY).problems()).anyMatch(problem -> problem.contains("hash mismatch at record 16"));
+        
+        Files.delete(middle);
+        assertThat(verify(KEY).problems()).anyMatch(problem -> problem.contains("does not continue the chain"));
+    }
+    
+    @Test
+    @DisplayName("Should detect the newest segments deleted and refuse to continue the shorter chain")
+    void testTruncation() throws Exception {
+        AuditSegmentWriter writer = writer(10);
+        writer.append(entries(0, 30));
+        writer.close();
+        assertThat(Files.readString(dir.resolve("audit.checkpoint"))).contains(" last=30 ");
+        
+        Files.delete(segments().get(2));
+        assertThat(verify(KEY).problems())
+            .containsExactly("chain ends before record 30, the last sealed according to the checkpoint");
+        assertThat(writer(10).append(entries(30, 1))).isFalse();
+        
+        Files.delete(dir.resolve("audit.checkpoint"));
+        assertThat(verify(KEY).problems()).containsExactly("audit.checkpoint: missing, though segments exist");
+        assertThat(writer(10).append(entries(30, 1))).isFalse();
+    }
+    
+    @Test
+    @DisplayName("Should seal a segment once its interval is up, without waiting for it to fill")
+    void testSealInterval() throws Exception {
+        AuditSegmentWriter writer = writer(100, 300);
+        writer.append(entries(0, 3));
+        writer.sealIfDue();
+        assertThat(Files.readString(segments().get(0))).doesNotContain("#END");
+        
+        Thread.sleep(400);
+        writer.sealIfDue();
+        assertThat(Files.readString(segments().get(0))).contains("#END count=3");
+        assertThat(Files.readString(dir.resolve("audit.checkpoint"))).contains(" last=3 ");
+        
+        assertThat(writer.append(entries(3, 2))).isTrue();
+        writer.close();
+        AuditSegmentVerifier.Report report = verify(KEY);
+        assertThat(report.problems()).isEmpty();
+        assertThat(report.segments()).isEqualTo(2);
+    }
+    
+    @Test
+    @DisplayName("Should not seal an open segment whose records fail under the key")
+    void testRecoveryRefusesForgedRecords() throws Exception {
+        writer(100).append(entries(0, 5));
+        Path open = segments().get(0);
+        Files.writeString(open, Files.readString(open).replace("\"userId\":3,", "\"userId\":93,"));
+        
+        assertThat(writer(100).append(entries(5, 1))).isFalse();
+        assertThat(Files.readString(open)).doesNotContain("#END");
+    }
+    
+    @Test
+    @DisplayName("Should seal a segment left open by a crash and continue its chain")
+    void testRecovery() throws Exception {
+        writer(100).append(entries(0, 5));
+        Path open = segments().get(0);
+        // A record cut short by the crash
+        Files.writeString(open, "0123abc", StandardOpenOption.APPEND);
+        
+        AuditSegmentWriter restarted = writer(100);
+        assertThat(restarted.append(entries(5, 3))).isTrue();
+        restarted.close();
+        
+        assertThat(Files.readString(open)).contains("#END count=5").doesNotContain("0123abc");
+        AuditSegmentVerifier.Report report = verify(KEY);
+        assertThat(report.problems()).isEmpty();
+        assertThat(report.records()).isEqualTo(8);
+    }
+    
+    @Test
+    @DisplayName("Should append queued entries from the audit writer and seal on drain")
+    void testAuditWriterAppends() throws Exception {
+        List<AuditLog> stored = new ArrayList<>();
+        AuditWriter auditWriter = new AuditWriter(Map.of("audit.batch.size", "4")::get,
+            entries -> stored.addAll(entries), writer(100));
+        auditWriter.start();
+        for (AuditLog entry : entries(0, 10)) {
+            auditWriter.record(entry);
+        }
+        assertThat(auditWriter.drain(5000)).isTrue();
+        
+        assertThat(stored).hasSize(10);
+        AuditSegmentVerifier.Report report = verify(KEY);
+        assertThat(report.problems()).isEmpty();
+        assertThat(report.records()).isEqualTo(10);
+        assertThat(Files.readString(segments().get(0))).contains("#END count=10");
+    }
+}
@@ -0,0 +1,143 @@
+package com.banksim;
+
+import com.banksim.audit.AuditWriter;
+import com.banksim.model.AuditLog;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for the asynchronous audit writer
+ */
+@DisplayName("Audit Writer Tests")
+class AuditWriterTest {
+    
+    private static AuditWriter writer(Map<String, String> settings, AuditWriter.Sink sink) {
+        return new AuditWriter(settings::get, sink);
+    }
+    
+    private static AuditLog entry(int i) {
+        return new AuditLog(i, "TEST", "USER", i);
+    }
+    
+    @Test
+    @DisplayName("Should write queued entries in batches and drain on shutdown")
+    void testBatching() throws Exception {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        List<AuditLog> stored = Collections.synchronizedList(new ArrayList<>());
+        AuditWriter writer = writer(Map.of("audit.batch.size", "10", "audit.flush.interval", "60000"), entries -> {
+            batchSizes.add(entries.size());
+            stored.addAll(entries);
+        });
+        writer.start();
+        
+        for (int i = 0; i < 25; i++) {
+            assertThat(writer.record(entry(i))).isTrue();
+        }
+        assertThat(writer.drain(5000)).isTrue();
+        
+        assertThat(stored).extracting(AuditLog::getUserId).hasSize(25).doesNotHaveDuplicates();
+        assertThat(batchSizes).allMatch(size -> size <= 10);
+        assertThat(writer.getQueueDepth()).isZero();
+        assertThat(writer.record(entry(99))).isFalse();
+    }
+    
+    @Test
+    @DisplayName("Should drop entries when the queue is full")
+    void testDropOverflow() throws Exception {
+        List<AuditLog> stored = Collections.synchronizedList(new ArrayList<>());
+        AuditWriter writer = writer(Map.of("audit.queue.capacity", "3"), stored::addAll);
+        
+        // Not started, so nothing leaves the queue
+        for (int i = 0; i < 3; i++) {
+            assertThat(writer.record(entry(i))).isTrue();
+        }
+        assertThat(writer.record(entry(3))).isFalse();
+        assertThat(writer.getQueueDepth()).isEqualTo(3);
+        
+        writer.start();
+        assertThat(writer.drain(5000)).isTrue();
+        assertThat(stored).extracting(AuditLog::getUserId).containsExactly(0, 1, 2);
+    }
+    
+    @Test
+    @DisplayName("Should let the caller write when the queue is full under caller-writes")
+    void testCallerWrites() {
+        List<String> writers = Collections.synchronizedList(new ArrayList<>());
+        AuditWriter writer = writer(Map.of("audit.queue.capacity", "1", "audit.overflow", "caller-writes"),
+            entries -> writers.add(Thread.currentThread().getName()));
+        
+        assertThat(writer.record(entry(1))).isTrue();
+        assertThat(writer.record(entry(2))).isTrue();
+        assertThat(writers).containsExactly(Thread.currentThread().getName());
+    }
+    
+    @Test
+    @DisplayName("Should wait for the commit in sync mode and report failures")
+    void testSyncDurability() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AuditWriter writer = writer(Map.of("audit.durability", "sync", "audit.flush.interval", "60000"),
+            entries -> {
+                if (entries.get(0).getUserId() < 0) {
+                    attempts.incrementAndGet();
+                    throw new SQLException("constraint violation");
+                }
+            });
+        writer.start();
+        
+        assertThat(writer.record(entry(1))).isTrue();
+        assertThat(writer.record(entry(-1))).isFalse();
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(writer.drain(5000)).isTrue();
+    }
+    
+    @Test
+    @DisplayName("Should write or report as dropped every entry recorded during a drain")
+    void testRecordDuringDrain() throws Exception {
+        List<AuditLog> stored = Collections.synchronizedList(new ArrayList<>());
+        AuditWriter writer = writer(Map.of("audit.flush.interval", "1"), stored::addAll);
+        writer.start();
+        AtomicInteger accepted = new AtomicInteger();
+        
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    if (writer.record(entry(i))) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        Thread.sleep(5);
+        assertThat(writer.drain(5000)).isTrue();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertThat(stored).hasSize(accepted.get());
+        assertThat(writer.getQueueDepth()).isZero();
+    }
+    
+    @Test
+    @DisplayName("Should record nothing when audit is disabled")
+    void testDisabled() {
+        AuditWriter writer = writer(Map.of("audit.enabled", "false"), entries -> {
+            throw new AssertionError("Disabled writer must not write");
+        });
+        writer.start();
+        
+        assertThat(writer.isEnabled()).isFalse();
+        assertThat(writer.record(entry(1))).isFalse();
+        assertThat(writer.getQueueDepth()).isZero();
+    }
+}
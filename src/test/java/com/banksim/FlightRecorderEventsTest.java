@@ -0,0 +1,60 @@
+package com.banksim;
+
+import com.banksim.jfr.AmountRange;
+import com.banksim.jfr.PasswordHashEvent;
+import com.banksim.util.PasswordUtil;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for the BankSim flight recorder events
+ */
+@DisplayName("Flight Recorder Events Tests")
+class FlightRecorderEventsTest {
+    
+    @Test
+    @DisplayName("Should bucket amounts by order of magnitude")
+    void testAmountRange() {
+        assertThat(AmountRange.of(new BigDecimal("9.99"))).isEqualTo("<10");
+        assertThat(AmountRange.of(new BigDecimal("10"))).isEqualTo("10-100");
+        assertThat(AmountRange.of(new BigDecimal("2500.00"))).isEqualTo("1K-10K");
+        assertThat(AmountRange.of(new BigDecimal("1000000"))).isEqualTo(">=100K");
+        assertThat(AmountRange.of(null)).isEqualTo("none");
+    }
+    
+    @Test
+    @DisplayName("Should record password hashing and verification")
+    void testPasswordHashEvents(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("test.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PasswordHashEvent.class);
+            recording.start();
+            String hash = PasswordUtil.hashPassword("Secret123", 4);
+            PasswordUtil.verifyPassword("Secret123", hash);
+            PasswordUtil.verifyPassword("Wrong123", hash);
+            recording.stop();
+            recording.dump(file);
+        }
+        
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+            .filter(event -> event.getEventType().getName().equals("com.banksim.PasswordHash"))
+            .collect(Collectors.toList());
+        assertThat(events).hasSize(3);
+        assertThat(events.get(0).getString("operation")).isEqualTo("hash");
+        assertThat(events.get(0).getInt("strength")).isEqualTo(4);
+        assertThat(events.get(1).getBoolean("matched")).isTrue();
+        assertThat(events.get(2).getString("operation")).isEqualTo("verify");
+        assertThat(events.get(2).getBoolean("matched")).isFalse();
+    }
+}
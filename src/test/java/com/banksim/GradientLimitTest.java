@@ -0,0 +1,114 @@
+package com.banksim;
+
+import com.banksim.server.AdmissionController;
+import com.banksim.server.GradientLimit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for adaptive admission control
+ */
+@DisplayName("Adaptive Limit Tests")
+class GradientLimitTest {
+    
+    private static final long MILLIS = 1_000_000L;
+    
+    @Test
+    @DisplayName("Should grow while latency stays at baseline and the server is busy")
+    void testGrowsUnderSteadyLatency() {
+        GradientLimit limit = new GradientLimit(10, 2, 100, 2.0, 0);
+        
+        for (int i = 0; i < 200; i++) {
+            limit.onSample(10 * MILLIS, limit.getLimit(), false);
+        }
+        
+        assertThat(limit.getLimit()).isGreaterThan(10);
+    }
+    
+    @Test
+    @DisplayName("Should not grow while mostly idle")
+    void testNoGrowthWhenAppLimited() {
+        GradientLimit limit = new GradientLimit(10, 2, 100, 2.0, 0);
+        
+        for (int i = 0; i < 200; i++) {
+            limit.onSample(10 * MILLIS, 1, false);
+        }
+        
+        assertEquals(10, limit.getLimit());
+    }
+    
+    @Test
+    @DisplayName("Should shrink when latency climbs well above baseline")
+    void testShrinksOnLatency() {
+        GradientLimit limit = new GradientLimit(50, 2, 100, 2.0, 0);
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(10 * MILLIS, 50, false);
+        }
+        int before = limit.getLimit();
+        
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(200 * MILLIS, limit.getLimit(), false);
+        }
+        
+        assertThat(limit.getLimit()).isLessThan(before);
+    }
+    
+    @Test
+    @DisplayName("Should back off on overload and respect the minimum")
+    void testBackoffFloor() {
+        GradientLimit limit = new GradientLimit(10, 3, 100, 2.0, 0);
+        
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(0, 10, true);
+        }
+        
+        assertEquals(3, limit.getLimit());
+        assertThrows(IllegalArgumentException.class, () -> new GradientLimit(1, 2, 10, 2.0, 0));
+    }
+    
+    @Test
+    @DisplayName("Should only recompute the limit when a window closes")
+    void testWindowedUpdates() throws Exception {
+        GradientLimit slow = new GradientLimit(10, 2, 100, 2.0, 60_000);
+        for (int i = 0; i < 200; i++) {
+            slow.onSample(10 * MILLIS, 10, true);
+        }
+        assertEquals(10, slow.getLimit());
+        
+        // Samples from many threads at once land in the same few windows
+        GradientLimit limit = new GradientLimit(10, 2, 100, 2.0, 1);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    limit.onSample(10 * MILLIS, limit.getLimit(), false);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertThat(limit.getLimit()).isBetween(10, 100);
+        // A sample racing a window close can land in the sum but not the count,
+        // which skews a window of one or two samples
+        assertThat(limit.getBaselineRtt()).isBetween(5 * MILLIS, 20 * MILLIS);
+    }
+    
+    @Test
+    @DisplayName("Should classify paths by configured priority")
+    void testClassify() {
+        AdmissionController controller = new AdmissionController(new GradientLimit(10, 1, 10, 2.0, 0),
+            List.of("/api/transactions/transfer"), List.of("/api/tests/"));
+        
+        assertEquals(AdmissionController.Priority.CRITICAL, controller.classify("/api/transactions/transfer"));
+        assertEquals(AdmissionController.Priority.NORMAL, controller.classify("/api/transactions/statement/1"));
+        assertEquals(AdmissionController.Priority.LOW, controller.classify("/api/tests/run-all"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.banksim;
+
+import com.banksim.jdbc.InstrumentedJdbc;
+import com.banksim.metrics.MetricsRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for the instrumented JDBC layer, against a fake driver
+ */
+@DisplayName("Instrumented JDBC Tests")
+class InstrumentedJdbcTest {
+    
+    @Test
+    @DisplayName("Should replace literals and collapse whitespace in templates")
+    void testTemplate() {
+        assertThat(InstrumentedJdbc.template("SELECT *\n  FROM accounts WHERE account_number = 'ES12''34' LIMIT 10"))
+            .isEqualTo("SELECT * FROM accounts WHERE account_number = ? LIMIT ?");
+        assertThat(InstrumentedJdbc.template("UPDATE t2 SET balance = -12.50 WHERE id = ?"))
+            .isEqualTo("UPDATE t2 SET balance = -? WHERE id = ?");
+    }
+    
+    @Test
+    @DisplayName("Should count rows, updates and errors per template")
+    void testStatementMetrics() throws SQLException {
+        InstrumentedJdbc jdbc = new InstrumentedJdbc(false, -1);
+        try (Connection conn = jdbc.wrap(fakeConnection(3))) {
+            assertThat(jdbc.getOpenConnections()).isEqualTo(1);
+            
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM test_rows WHERE id = ?")) {
+                stmt.setInt(1, 7);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    // Drain
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE test_rows SET x = ?")) {
+                assertThat(stmt.executeUpdate()).isEqualTo(2);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM test_rows")) {
+                assertThatThrownBy(stmt::execute).isInstanceOf(SQLException.class).hasMessage("boom");
+            }
+        }
+        assertThat(jdbc.getOpenConnections()).isZero();
+        
+        assertThat(MetricsRegistry.getInstance().scrape())
+            .contains("banksim_db_statement_rows_total{statement=\"SELECT * FROM test_rows WHERE id = ?\"} 3\n")
+            .contains("banksim_db_statement_rows_total{statement=\"UPDATE test_rows SET x = ?\"} 2\n")
+            .contains("banksim_db_statement_errors_total{statement=\"DELETE FROM test_rows\"} 1\n")
+            .contains("banksim_db_statement_duration_seconds_count{statement=\"UPDATE test_rows SET x = ?\"} 1\n");
+    }
+    
+    @Test
+    @DisplayName("Should log slow statements with parameter types but not values")
+    void testSlowLogRedacted() throws SQLException {
+        InstrumentedJdbc jdbc = new InstrumentedJdbc(false, 0);
+        PrintStream original = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try (Connection conn = jdbc.wrap(fakeConnection(0));
+             PreparedStatement stmt = conn.prepareStatement("UPDATE test_users SET password = ? WHERE id = ?")) {
+            stmt.setString(1, "s3cret-value");
+            stmt.setInt(2, 42);
+            stmt.executeUpdate();
+        } finally {
+            System.setOut(original);
+        }
+        
+        assertThat(captured.toString())
+            .contains("Slow statement")
+            .contains("UPDATE test_users SET password = ? WHERE id = ? params=[String, Int]")
+            .doesNotContain("s3cret-value")
+            .doesNotContain("42");
+    }
+    
+    /**
+     * Connection whose queries return rows rows, updates report 2 and
+     * execute() fails
+     */
+    private static Connection fakeConnection(int rows) {
+        return proxy(Connection.class, (proxy, method, args) -> {
+            if (method.getName().equals("prepareStatement")) {
+                return fakeStatement(rows);
+            }
+            return null;
+        });
+    }
+    
+    private static PreparedStatement fakeStatement(int rows) {
+        return proxy(PreparedStatement.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "executeQuery":
+                    AtomicInteger remaining = new AtomicInteger(rows);
+                    return proxy(ResultSet.class, (rs, m, a) ->
+                        m.getName().equals("next") ? remaining.getAndDecrement() > 0 : null);
+                case "executeUpdate":
+                    return 2;
+                case "execute":
+                    throw new SQLException("boom");
+                default:
+                    return null;
+            }
+        });
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+}
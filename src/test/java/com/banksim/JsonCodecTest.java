@@ -0,0 +1,200 @@
+package com.banksim;
+
+import com.banksim.json.JsonReader;
+import com.banksim.json.JsonWriter;
+import com.banksim.json.ModelJson;
+import com.banksim.model.Transaction;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the streaming JSON reader and writer
+ */
+@DisplayName("JSON Codec Tests")
+class JsonCodecTest {
+    
+    private static JsonReader reader(String json) {
+        return new JsonReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    @Test
+    @DisplayName("Should read quoted and bare scalars and skip unknown fields")
+    void testReadFields() throws IOException {
+        JsonReader reader = reader("{\"accountId\": 7, \"amount\": \"100.50\", \"extra\": {\"a\": [1, {\"b\": null}]},"
+            + " \"description\": \"Rent, \\\"May\\\"\", \"flag\": true}");
+        
+        Long accountId = null;
+        BigDecimal amount = null;
+        String description = null;
+        Boolean flag = null;
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "accountId": accountId = reader.nextLong(); break;
+                case "amount": amount = reader.nextBigDecimal(); break;
+                case "description": description = reader.nextString(); break;
+                case "flag": flag = reader.nextBoolean(); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        
+        assertEquals(7L, accountId);
+        assertEquals(new BigDecimal("100.50"), amount);
+        assertEquals("Rent, \"May\"", description);
+        assertEquals(Boolean.TRUE, flag);
+        assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+    }
+    
+    @Test
+    @DisplayName("Should decode multi-byte UTF-8 and unicode escapes")
+    void testReadUnicode() throws IOException {
+        JsonReader reader = reader("{\"name\": \"Peña \\u00e9 💰\"}");
+        
+        reader.beginObject();
+        assertEquals("name", reader.nextName());
+        assertEquals("Peña é 💰", reader.nextString());
+        assertFalse(reader.hasNext());
+        reader.endObject();
+    }
+    
+    @Test
+    @DisplayName("Should reject malformed documents")
+    void testMalformed() {
+        assertThrows(JsonReader.JsonParseException.class, () -> {
+            JsonReader reader = reader("{\"a\": 1,}");
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.nextName();
+                reader.skipValue();
+            }
+            reader.endObject();
+        });
+        assertThrows(JsonReader.JsonParseException.class, () -> {
+            JsonReader reader = reader("{\"a\" 1}");
+            reader.beginObject();
+            reader.nextName();
+        });
+        assertThrows(JsonReader.JsonParseException.class, () -> {
+            JsonReader reader = reader("{\"a\": \"open");
+            reader.beginObject();
+            reader.nextName();
+            reader.nextString();
+        });
+        assertThrows(JsonReader.JsonParseException.class, () -> JsonReader.require(null, "accountId"));
+    }
+    
+    @Test
+    @DisplayName("Should reject deeply nested and oversized bodies instead of overflowing")
+    void testLimits() throws IOException {
+        // What an unauthenticated login body can carry in an unknown field
+        String deep = "[".repeat(50_000) + "]".repeat(50_000);
+        assertThrows(JsonReader.JsonParseException.class, () -> {
+            JsonReader reader = reader("{\"username\": \"a\", \"extra\": " + deep + "}");
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.nextName();
+                reader.skipValue();
+            }
+        });
+        assertThrows(JsonReader.JsonParseException.class, () -> reader(deep).nextValue());
+        
+        String limit = "[".repeat(JsonReader.MAX_DEPTH) + "]".repeat(JsonReader.MAX_DEPTH);
+        assertThat(reader(limit).nextValue()).isInstanceOf(List.class);
+        reader(limit).skipValue();
+        assertThrows(JsonReader.JsonParseException.class, () -> reader("[" + limit + "]").nextValue());
+        
+        String large = "\"" + "a".repeat((int) JsonReader.MAX_BYTES) + "\"";
+        assertThrows(JsonReader.JsonParseException.class, () -> reader(large).nextString());
+    }
+    
+    @Test
+    @DisplayName("Should write escaped, nested documents")
+    void testWrite() throws IOException {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("passed", true);
+        nested.put("ids", List.of(1, 2L));
+        
+        JsonWriter json = new JsonWriter();
+        json.beginObject()
+            .name("text").value("line\n\"quoted\" \\ é\u0001")
+            .name("count").value(-1234567890123L)
+            .name("missing").value((String) null)
+            .name("nested").value(nested)
+            .name("empty").beginArray().endArray()
+            .endObject();
+        
+        assertEquals("{\"text\":\"line\\n\\\"quoted\\\" \\\\ é\\u0001\",\"count\":-1234567890123,"
+            + "\"missing\":null,\"nested\":{\"passed\":true,\"ids\":[1,2]},\"empty\":[]}", json.toString());
+        
+        // Reading back yields the original string
+        JsonReader reader = reader(json.toString());
+        reader.beginObject();
+        reader.nextName();
+        assertEquals("line\n\"quoted\" \\ é\u0001", reader.nextString());
+    }
+    
+    @Test
+    @DisplayName("Should flush to the stream when the buffer fills")
+    void testStreamingWrite() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter json = new JsonWriter(out);
+        
+        json.beginArray();
+        for (int i = 0; i < 1000; i++) {
+            json.value("item-" + i);
+        }
+        json.endArray();
+        json.flush();
+        
+        String written = out.toString(StandardCharsets.UTF_8);
+        assertThat(written).startsWith("[\"item-0\",").endsWith(",\"item-999\"]");
+        assertThat(json.capacity()).isEqualTo(1024);
+    }
+    
+    @Test
+    @DisplayName("Should serialize a transaction with amounts as strings")
+    void testWriteTransaction() throws IOException {
+        Transaction transaction = new Transaction(3, Transaction.TransactionType.DEPOSIT,
+            new BigDecimal("25.00"), new BigDecimal("0.00"), new BigDecimal("25.00"), "Cash");
+        
+        JsonWriter json = new JsonWriter();
+        ModelJson.writeTransaction(json, transaction);
+        
+        assertThat(json.toString())
+            .startsWith("{\"id\":null,\"transactionUuid\":\"" + transaction.getTransactionUuid() + "\"")
+            .contains("\"accountId\":3,\"transactionType\":\"DEPOSIT\",\"amount\":\"25.00\"")
+            .contains("\"description\":\"Cash\"");
+    }
+    
+    @Test
+    @DisplayName("Should read untyped values and embed pre-encoded JSON")
+    void testNextValueAndRawValue() throws IOException {
+        Object value = reader("{\"amount\": 10.5, \"tags\": [\"a\", true, null]}").nextValue();
+        
+        assertThat(value).isInstanceOf(Map.class);
+        Map<?, ?> map = (Map<?, ?>) value;
+        assertThat(map.get("amount")).isEqualTo(new BigDecimal("10.5"));
+        assertThat(map.get("tags")).isEqualTo(Arrays.asList("a", true, null));
+        
+        byte[] body = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+        JsonWriter json = new JsonWriter();
+        json.beginArray().rawValue(body, 0, body.length).rawValue(body, 0, body.length).endArray();
+        
+        assertThat(json.toString()).isEqualTo("[{\"success\":true},{\"success\":true}]");
+    }
+}
@@ -0,0 +1,140 @@
+package com.banksim;
+
+import com.banksim.config.SecurityConfig;
+import com.banksim.util.JwtClaims;
+import com.banksim.util.JwtUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JwtUtil
+ */
+@DisplayName("JWT Utility Tests")
+class JwtUtilTest {
+    
+    @BeforeEach
+    void setUp() {
+        JwtUtil.clearTokenCache();
+    }
+    
+    @Test
+    @DisplayName("Should authenticate a freshly generated token")
+    void testAuthenticateValidToken() {
+        String token = JwtUtil.generateToken(42, "jdoe", "CUSTOMER");
+        
+        JwtClaims claims = JwtUtil.authenticate(token);
+        
+        assertNotNull(claims);
+        assertEquals(42, claims.getUserId());
+        assertEquals("jdoe", claims.getUsername());
+        assertEquals("CUSTOMER", claims.getRole());
+        assertTrue(JwtUtil.validateToken(token));
+    }
+    
+    @Test
+    @DisplayName("Should serve repeat validations from the verified-token cache")
+    void testRepeatAuthenticationIsCached() {
+        String token = JwtUtil.generateToken(42, "jdoe", "CUSTOMER");
+        
+        JwtClaims first = JwtUtil.authenticate(token);
+        JwtClaims second = JwtUtil.authenticate(new String(token));
+        
+        assertThat(second).isSameAs(first);
+        assertEquals(42, JwtUtil.getUserId(token));
+    }
+    
+    @Test
+    @DisplayName("Should reject a token whose payload was swapped under a cached signature")
+    void testRejectTamperedPayload() {
+        String token = JwtUtil.generateToken(42, "jdoe", "CUSTOMER");
+        String other = JwtUtil.generateToken(1, "admin", "ADMIN");
+        assertNotNull(JwtUtil.authenticate(token));
+        
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + other.split("\\.")[1] + "." + parts[2];
+        
+        assertNull(JwtUtil.authenticate(forged));
+    }
+    
+    @Test
+    @DisplayName("Should reject expired and malformed tokens")
+    void testRejectExpiredAndMalformed() {
+        String expired = JwtUtil.generateToken(42, "jdoe", "CUSTOMER", Instant.now().toEpochMilli() - 1000);
+        
+        assertNull(JwtUtil.authenticate(expired));
+        assertNull(JwtUtil.authenticate("not-a-token"));
+        assertNull(JwtUtil.authenticate(null));
+        assertTrue(JwtUtil.isTokenExpired(expired));
+    }
+    
+    @Test
+    @DisplayName("Should sign with standard HMAC-SHA256 under the active kid")
+    void testSignatureIsHmacSha256() throws Exception {
+        SecurityConfig config = SecurityConfig.getInstance();
+        String kid = config.getJwtActiveKeyId();
+        String token = JwtUtil.generateToken(42, "jdoe", "CUSTOMER");
+        String[] parts = token.split("\\.");
+        
+        String header = new String(Base64.getUrlDecoder().decode(parts[0]), StandardCharsets.UTF_8);
+        assertThat(header).contains("\"alg\":\"HS256\"").contains("\"kid\":\"" + kid + "\"");
+        
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(config.getJwtKeys().get(kid).getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] expected = mac.doFinal((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+        
+        assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString(expected), parts[2]);
+    }
+    
+    @Test
+    @DisplayName("Should reject tokens naming an unknown kid")
+    void testRejectUnknownKeyId() {
+        String token = JwtUtil.generateToken(42, "jdoe", "CUSTOMER");
+        String[] parts = token.split("\\.");
+        String header = Base64.getUrlEncoder().withoutPadding().encodeToString(
+            "{\"alg\":\"HS256\",\"typ\":\"JWT\",\"kid\":\"retired\"}".getBytes(StandardCharsets.UTF_8));
+        
+        assertNull(JwtUtil.authenticate(header + "." + parts[1] + "." + parts[2]));
+    }
+    
+    @Test
+    @DisplayName("Should parse claims whose values contain quoted commas, colons and escapes")
+    void testParseQuotedSeparators() {
+        String payload = "{ \"sub\" : \"7\", \"username\":\"a,b:c \\\"q\\\" \\u00e9\", "
+                + "\"extra\":{\"x\":[1,\"}\"]}, \"role\":\"ADMIN\", \"iat\":10, \"exp\":20 }";
+        String token = "e30." + encode(payload) + ".sig";
+        
+        JwtClaims claims = JwtUtil.parseClaims(token);
+        
+        assertNotNull(claims);
+        assertEquals(7, claims.getUserId());
+        assertEquals("a,b:c \"q\" \u00e9", claims.getUsername());
+        assertEquals("ADMIN", claims.getRole());
+        assertEquals(10L, claims.getIssuedAt());
+        assertEquals(20L, claims.getExpiresAt());
+        assertThat(JwtUtil.extractClaims(token)).containsEntry("username", "a,b:c \"q\" \u00e9");
+    }
+    
+    @Test
+    @DisplayName("Should reject malformed payloads")
+    void testParseMalformedPayloads() {
+        assertNull(JwtUtil.parseClaims("e30." + encode("{\"sub\":\"1\",\"exp\":") + ".sig"));
+        assertNull(JwtUtil.parseClaims("e30." + encode("{\"sub\":\"1\"}") + ".sig"));
+        assertNull(JwtUtil.parseClaims("e30." + encode("{\"sub\":\"1\" \"exp\":5}") + ".sig"));
+        assertNull(JwtUtil.parseClaims("e30.!!!.sig"));
+        assertThat(JwtUtil.extractClaims("garbage")).isEmpty();
+    }
+    
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
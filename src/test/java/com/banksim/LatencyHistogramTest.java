@@ -0,0 +1,77 @@
+package com.banksim;
+
+import com.banksim.metrics.LatencyHistogram;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Unit tests for the latency histogram
+ */
+@DisplayName("Latency Histogram Tests")
+class LatencyHistogramTest {
+    
+    @Test
+    @DisplayName("Should report percentiles within the bucket precision")
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        
+        assertThat(histogram.getCount()).isEqualTo(10_000);
+        assertThat((double) histogram.getValueAtPercentile(50))
+            .isCloseTo(5_000_000, within(5_000_000 * 0.016));
+        assertThat((double) histogram.getValueAtPercentile(99))
+            .isCloseTo(9_900_000, within(9_900_000 * 0.016));
+        assertThat((double) histogram.getValueAtPercentile(99.9))
+            .isCloseTo(9_990_000, within(9_990_000 * 0.016));
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(10_000_000);
+        assertThat(histogram.getMax()).isEqualTo(10_000_000);
+    }
+    
+    @Test
+    @DisplayName("Should keep small values exact")
+    void testSmallValuesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(100);
+        
+        assertThat(histogram.getValueAtPercentile(50)).isEqualTo(3);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(100);
+        assertThat(histogram.getSum()).isEqualTo(103);
+        assertThat(histogram.getMean()).isEqualTo(51.5);
+    }
+    
+    @Test
+    @DisplayName("Should count values at or below a bound")
+    void testCountAtOrBelow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+        
+        assertThat(histogram.getCountAtOrBelow(TimeUnit.MILLISECONDS.toNanos(20))).isEqualTo(2);
+        assertThat(histogram.getCountAtOrBelow(TimeUnit.SECONDS.toNanos(1))).isEqualTo(3);
+        assertThat(histogram.getCountAtOrBelow(0)).isZero();
+    }
+    
+    @Test
+    @DisplayName("Should clamp values above the trackable range and reset")
+    void testClampAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram(TimeUnit.SECONDS.toNanos(1));
+        histogram.record(TimeUnit.SECONDS.toNanos(5));
+        
+        assertThat(histogram.getCount()).isEqualTo(1);
+        assertThat(histogram.getMax()).isEqualTo(TimeUnit.SECONDS.toNanos(5));
+        assertThat(histogram.getCountAtOrBelow(TimeUnit.SECONDS.toNanos(1))).isEqualTo(1);
+        
+        histogram.reset();
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getValueAtPercentile(99)).isZero();
+    }
+}
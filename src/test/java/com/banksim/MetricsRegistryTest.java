@@ -0,0 +1,105 @@
+package com.banksim;
+
+import com.banksim.metrics.Counter;
+import com.banksim.metrics.LatencyHistogram;
+import com.banksim.metrics.MetricsRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for the metrics registry and its Prometheus export
+ */
+@DisplayName("Metrics Registry Tests")
+class MetricsRegistryTest {
+    
+    private final MetricsRegistry registry = MetricsRegistry.getInstance();
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    @DisplayName("Should return the same counter for the same name and labels")
+    void testCounterRegistration() {
+        Counter deposits = registry.counter("test_ops_total", "Operations", "type", "deposit");
+        Counter again = registry.counter("test_ops_total", "Operations", "type", "deposit");
+        Counter withdrawals = registry.counter("test_ops_total", "Operations", "type", "withdrawal");
+        deposits.increment();
+        again.add(2);
+        
+        assertThat(again).isSameAs(deposits);
+        assertThat(withdrawals).isNotSameAs(deposits);
+        assertThat(registry.scrape())
+            .contains("# HELP test_ops_total Operations\n# TYPE test_ops_total counter\n")
+            .contains("test_ops_total{type=\"deposit\"} 3\n")
+            .contains("test_ops_total{type=\"withdrawal\"} 0\n");
+    }
+    
+    @Test
+    @DisplayName("Should export histograms as cumulative buckets in seconds")
+    void testHistogramExport() {
+        LatencyHistogram histogram = registry.histogram("test_latency_seconds", "Latency", "route", "/a");
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(300));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(20));
+        histogram.record(TimeUnit.SECONDS.toNanos(30));
+        
+        String text = registry.scrape();
+        assertThat(text)
+            .contains("# TYPE test_latency_seconds histogram\n")
+            .contains("test_latency_seconds_bucket{route=\"/a\",le=\"0.0005\"} 1\n")
+            .contains("test_latency_seconds_bucket{route=\"/a\",le=\"0.01\"} 1\n")
+            .contains("test_latency_seconds_bucket{route=\"/a\",le=\"0.025\"} 2\n")
+            .contains("test_latency_seconds_bucket{route=\"/a\",le=\"10\"} 2\n")
+            .contains("test_latency_seconds_bucket{route=\"/a\",le=\"+Inf\"} 3\n")
+            .contains("test_latency_seconds_sum{route=\"/a\"} 30.0203\n")
+            .contains("test_latency_seconds_count{route=\"/a\"} 3\n");
+    }
+    
+    @Test
+    @DisplayName("Should read gauges at scrape time and escape label values")
+    void testGaugesAndEscaping() {
+        AtomicLong queue = new AtomicLong(4);
+        registry.gauge("test_queue_length", "Queue length", queue::get, "name", "a\"b\\c");
+        registry.counterFunction("test_external_total", "External count", () -> 7);
+        
+        assertThat(registry.scrape()).contains("test_queue_length{name=\"a\\\"b\\\\c\"} 4\n")
+            .contains("# TYPE test_external_total counter\ntest_external_total 7\n");
+        queue.set(9);
+        assertThat(registry.scrape()).contains("test_queue_length{name=\"a\\\"b\\\\c\"} 9\n");
+    }
+    
+    @Test
+    @DisplayName("Should reject a name reused with another type or unpaired labels")
+    void testInvalidRegistration() {
+        registry.counter("test_conflict_total", "Conflict");
+        
+        assertThatThrownBy(() -> registry.histogram("test_conflict_total", "Conflict"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> registry.counter("test_unpaired_total", "Unpaired", "type"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    @DisplayName("Should write the final metrics to a file, replacing an earlier one")
+    void testWriteTo() throws Exception {
+        Counter shutdowns = registry.counter("test_shutdown_writes_total", "Writes");
+        Path file = dir.resolve("logs/metrics.prom");
+        
+        shutdowns.increment();
+        registry.writeTo(file);
+        assertThat(Files.readString(file)).contains("test_shutdown_writes_total 1\n");
+        
+        shutdowns.increment();
+        registry.writeTo(file);
+        assertThat(Files.readString(file)).contains("test_shutdown_writes_total 2\n");
+        assertThat(Files.list(file.getParent())).containsExactly(file);
+    }
+}
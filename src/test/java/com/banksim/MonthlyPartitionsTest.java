@@ -0,0 +1,56 @@
+package com.banksim;
+
+import com.banksim.maintenance.MonthlyPartitions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for monthly partition naming and retention
+ */
+@DisplayName("Monthly Partitions Tests")
+class MonthlyPartitionsTest {
+    
+    @Test
+    @DisplayName("Should name partitions by table and month and parse them back")
+    void testNames() {
+        assertThat(MonthlyPartitions.partitionName("audit_logs", YearMonth.of(2024, 5)))
+            .isEqualTo("audit_logs_y2024m05");
+        assertThat(MonthlyPartitions.monthOf("audit_logs", "audit_logs_y2024m05")).isEqualTo(YearMonth.of(2024, 5));
+        assertThat(MonthlyPartitions.monthOf("audit_logs", "audit_logs_default")).isNull();
+        assertThat(MonthlyPartitions.monthOf("audit_logs", "audit_logs_y2024m13")).isNull();
+        assertThat(MonthlyPartitions.monthOf("transactions", "audit_logs_y2024m05")).isNull();
+    }
+    
+    @Test
+    @DisplayName("Should create half-open monthly ranges")
+    void testCreateSql() {
+        assertThat(MonthlyPartitions.createSql("transactions", YearMonth.of(2024, 12)))
+            .isEqualTo("CREATE TABLE IF NOT EXISTS transactions_y2024m12 PARTITION OF transactions "
+                + "FOR VALUES FROM ('2024-12-01') TO ('2025-01-01')");
+    }
+    
+    @Test
+    @DisplayName("Should create the current month and the months ahead")
+    void testUpcoming() {
+        assertThat(MonthlyPartitions.upcoming(LocalDate.of(2024, 11, 30), 2))
+            .containsExactly(YearMonth.of(2024, 11), YearMonth.of(2024, 12), YearMonth.of(2025, 1));
+    }
+    
+    @Test
+    @DisplayName("Should expire a month only when all of its rows are past retention")
+    void testExpiry() {
+        LocalDate today = LocalDate.of(2025, 3, 15);
+        
+        // Cutoff is 2025-02-13: January ends before it, February does not
+        assertThat(MonthlyPartitions.isExpired(YearMonth.of(2025, 1), today, 30)).isTrue();
+        assertThat(MonthlyPartitions.isExpired(YearMonth.of(2025, 2), today, 30)).isFalse();
+        assertThat(MonthlyPartitions.isExpired(YearMonth.of(2024, 2), today, 365)).isTrue();
+        assertThat(MonthlyPartitions.isExpired(YearMonth.of(2024, 3), today, 365)).isFalse();
+        assertThat(MonthlyPartitions.isExpired(YearMonth.of(2000, 1), today, 0)).isFalse();
+    }
+}
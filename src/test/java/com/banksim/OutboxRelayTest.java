@@ -0,0 +1,231 @@
+package com.banksim;
+
+import com.banksim.model.LedgerEvent;
+import com.banksim.outbox.OutboxFileSink;
+import com.banksim.outbox.OutboxRelay;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for the outbox relay and its file sink, over an in-memory outbox
+ */
+@DisplayName("Outbox Relay Tests")
+class OutboxRelayTest {
+    
+    @TempDir
+    Path dir;
+    
+    /**
+     * Outbox table stand-in: committed events by offset, and the ids of
+     * transactions still running
+     */
+    private static final class MemorySource implements OutboxRelay.Source {
+        final ConcurrentSkipListMap<Long, LedgerEvent> committed = new ConcurrentSkipListMap<>();
+        final ConcurrentSkipListSet<Long> running = new ConcurrentSkipListSet<>();
+        final AtomicLong nextTransaction = new AtomicLong(1);
+        final AtomicInteger tableReads = new AtomicInteger();
+        
+        void commit(long... offsets) {
+            for (long offset : offsets) {
+                committed.put(offset, event(offset));
+            }
+        }
+        
+        long begin() {
+            long id = nextTransaction.getAndIncrement();
+            running.add(id);
+            return id;
+        }
+        
+        /**
+         * Ends a transaction, committing its events; none for a rollback
+         */
+        void end(long id, long... offsets) {
+            commit(offsets);
+            running.remove(id);
+        }
+        
+        @Override
+        public List<LedgerEvent> findAfter(long after, long upTo, int limit) {
+            tableReads.incrementAndGet();
+            List<LedgerEvent> events = new ArrayList<>();
+            for (LedgerEvent event : committed.subMap(after, false, upTo, true).values()) {
+                if (events.size() == limit) {
+                    break;
+                }
+                events.add(event);
+            }
+            return events;
+        }
+        
+        @Override
+        public long latestOffset() {
+            return committed.isEmpty() ? 0 : committed.lastKey();
+        }
+        
+        @Override
+        public long oldestRunningTransaction() {
+            return running.isEmpty() ? nextTransaction.get() : running.first();
+        }
+        
+        @Override
+        public long nextTransaction() {
+            return nextTransaction.get();
+        }
+        
+        @Override
+        public void awaitChange(long timeoutMillis) throws InterruptedException {
+            Thread.sleep(Math.min(timeoutMillis, 5));
+        }
+        
+        @Override
+        public int deleteOlderThan(int retentionDays) {
+            return 0;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    private static LedgerEvent event(long offset) {
+        return new LedgerEvent(offset, "CREATED", (int) offset, UUID.randomUUID(), 1, null, "DEPOSIT",
+            new BigDecimal("10.00"), new BigDecimal(offset * 10 + ".00"), null, "COMPLETED", LocalDateTime.now());
+    }
+    
+    private static List<Long> offsets(List<LedgerEvent> events) {
+        List<Long> offsets = new ArrayList<>();
+        for (LedgerEvent event : events) {
+            offsets.add(event.offset());
+        }
+        return offsets;
+    }
+    
+    @Test
+    @DisplayName("Should relay events in order from the newest offset at startup")
+    void testRelaysInOrder() throws Exception {
+        MemorySource source = new MemorySource();
+        source.commit(1, 2);
+        OutboxRelay relay = new OutboxRelay(Map.of("outbox.batch.size", "2")::get, source);
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        relay.subscribe(events -> received.addAll(offsets(events)));
+        
+        assertThat(relay.poll()).isZero();
+        assertThat(relay.getPosition()).isEqualTo(2);
+        
+        source.commit(3, 4, 5);
+        assertThat(relay.poll()).isEqualTo(2);
+        assertThat(relay.poll()).isEqualTo(1);
+        assertThat(received).containsExactly(3L, 4L, 5L);
+    }
+    
+    @Test
+    @DisplayName("Should wait for a missing offset while its transaction runs and skip it once rolled back")
+    void testGaps() throws Exception {
+        MemorySource source = new MemorySource();
+        OutboxRelay relay = new OutboxRelay(Map.<String, String>of()::get, source);
+        relay.resumeFrom(0);
+        
+        // Offset 3 is still committing when 4 is read, for as long as it takes
+        long writing = source.begin();
+        source.commit(1, 2, 4);
+        assertThat(relay.poll()).isEqualTo(2);
+        Thread.sleep(100);
+        assertThat(relay.poll()).isZero();
+        source.end(writing, 3);
+        assertThat(relay.poll()).isEqualTo(2);
+        assertThat(relay.getPosition()).isEqualTo(4);
+        
+        // Offset 5 rolled back and never appears
+        long rolledBack = source.begin();
+        source.commit(6);
+        assertThat(relay.poll()).isZero();
+        // A transaction begun after the gap was seen cannot hold it
+        source.begin();
+        assertThat(relay.poll()).isZero();
+        source.end(rolledBack);
+        assertThat(relay.poll()).isEqualTo(1);
+        assertThat(relay.getPosition()).isEqualTo(6);
+    }
+    
+    @Test
+    @DisplayName("Should serve recent reads from memory and older offsets from the table")
+    void testReads() throws Exception {
+        MemorySource source = new MemorySource();
+        OutboxRelay relay = new OutboxRelay(Map.of("outbox.buffer.size", "3")::get, source);
+        relay.resumeFrom(0);
+        source.commit(1, 2, 3, 4, 5);
+        relay.poll();
+        
+        int reads = source.tableReads.get();
+        assertThat(offsets(relay.read(2, 10))).containsExactly(3L, 4L, 5L);
+        assertThat(offsets(relay.read(3, 1))).containsExactly(4L);
+        assertThat(relay.read(5, 10)).isEmpty();
+        assertThat(source.tableReads.get()).isEqualTo(reads);
+        
+        // Committed but not yet relayed events stay hidden from readers
+        source.commit(6);
+        assertThat(offsets(relay.read(0, 10))).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(source.tableReads.get()).isEqualTo(reads + 1);
+    }
+    
+    @Test
+    @DisplayName("Should wake long-poll readers when events are relayed")
+    void testAwaitAfter() throws Exception {
+        MemorySource source = new MemorySource();
+        OutboxRelay relay = new OutboxRelay(Map.<String, String>of()::get, source);
+        relay.resumeFrom(0);
+        assertThat(relay.awaitAfter(0, 20)).isFalse();
+        
+        relay.start();
+        try {
+            long start = System.nanoTime();
+            source.commit(1);
+            assertThat(relay.awaitAfter(0, 5000)).isTrue();
+            assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(1000);
+            assertThat(offsets(relay.read(0, 10))).containsExactly(1L);
+        } finally {
+            relay.stop();
+        }
+        assertThat(relay.awaitAfter(1, 5000)).isFalse();
+    }
+    
+    @Test
+    @DisplayName("Should append events to a file and resume after its last complete line")
+    void testFileSink() throws Exception {
+        Path file = dir.resolve("events/ledger.jsonl");
+        OutboxFileSink sink = new OutboxFileSink(file, false);
+        assertThat(sink.getLastOffset()).isZero();
+        sink.onEvents(List.of(event(1), event(2)));
+        sink.close();
+        // A line cut short by a crash
+        Files.writeString(file, "{\"offset\":3,\"ty", StandardOpenOption.APPEND);
+        
+        OutboxFileSink reopened = new OutboxFileSink(file, false);
+        assertThat(reopened.getLastOffset()).isEqualTo(2);
+        reopened.onEvents(List.of(event(2), event(3)));
+        reopened.close();
+        
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(2)).startsWith("{\"offset\":3,\"type\":\"CREATED\"").contains("\"amount\":\"10.00\"");
+    }
+}
@@ -0,0 +1,82 @@
+package com.banksim;
+
+import com.banksim.util.PasswordUtil;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PasswordUtil
+ */
+@DisplayName("Password Utility Tests")
+class PasswordUtilTest {
+    
+    @Test
+    @DisplayName("Should verify a freshly hashed password")
+    void testHashAndVerify() {
+        String hash = PasswordUtil.hashPassword("Abcd1234", 4);
+        
+        assertThat(hash).startsWith("$2a$04$");
+        assertTrue(PasswordUtil.verifyPassword("Abcd1234", hash));
+        assertFalse(PasswordUtil.verifyPassword("Abcd1235", hash));
+    }
+    
+    @ParameterizedTest(name = "Legacy hash for: {0}")
+    @ValueSource(strings = {"Abcd1234", "Pass1234", "contraseña1A", "p@$$w0rd"})
+    @DisplayName("Should verify hashes produced by the original String.format implementation")
+    void testVerifyLegacyHashes(String password) throws Exception {
+        String salt = PasswordUtil.generateSalt();
+        String legacy = legacyHash(password, salt, 5);
+        
+        assertTrue(PasswordUtil.verifyPassword(password, legacy));
+        assertFalse(PasswordUtil.verifyPassword(password + "x", legacy));
+    }
+    
+    @Test
+    @DisplayName("Should produce output identical to the original implementation")
+    void testHashFormatMatchesLegacy() throws Exception {
+        String hash = PasswordUtil.hashPassword("Abcd1234", 6);
+        String salt = hash.split("\\$")[3];
+        
+        assertEquals(legacyHash("Abcd1234", salt, 6), hash);
+    }
+    
+    @ParameterizedTest(name = "Malformed hash: {0}")
+    @ValueSource(strings = {"", "plain", "$2a$10$salt", "$2a$xx$salt$hash", "$2a$99$salt$hash",
+                            "$2a$10$salt$hash$extra", "$2a$10$salt$", "2a$10$salt$hash$"})
+    @DisplayName("Should reject malformed stored hashes")
+    void testRejectMalformedHashes(String stored) {
+        assertFalse(PasswordUtil.verifyPassword("Abcd1234", stored));
+    }
+    
+    @Test
+    @DisplayName("Should reject null arguments")
+    void testNullArguments() {
+        assertFalse(PasswordUtil.verifyPassword(null, "$2a$04$salt$hash"));
+        assertFalse(PasswordUtil.verifyPassword("Abcd1234", null));
+        assertThrows(IllegalArgumentException.class, () -> PasswordUtil.hashPassword(null));
+        assertThrows(IllegalArgumentException.class, () -> PasswordUtil.hashPassword("Abcd1234", 3));
+    }
+    
+    /**
+     * Reference copy of the original hashing path, kept to guard compatibility
+     * with hashes already stored in users.password_hash.
+     */
+    private static String legacyHash(String password, String salt, int strength) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hash = (password + salt).getBytes(StandardCharsets.UTF_8);
+        int rounds = (int) Math.pow(2, strength);
+        for (int i = 0; i < rounds; i++) {
+            hash = digest.digest(hash);
+        }
+        return String.format("$2a$%02d$%s$%s", strength, salt, Base64.getEncoder().encodeToString(hash));
+    }
+}
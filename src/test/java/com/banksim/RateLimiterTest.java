@@ -0,0 +1,78 @@
+package com.banksim;
+
+import com.banksim.server.RateLimiter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RateLimiter
+ */
+@DisplayName("Rate Limiter Tests")
+class RateLimiterTest {
+    
+    private static final long SECOND = 1_000_000_000L;
+    
+    private RateLimiter limiter;
+    
+    @BeforeEach
+    void setUp() {
+        Map<String, String> config = new HashMap<>();
+        config.put("ratelimit.default", "10,5");
+        config.put("ratelimit.role.ADMIN", "100,50");
+        config.put("ratelimit.group.statements", "1,2");
+        config.put("ratelimit.group.statements.ADMIN", "2,4");
+        config.put("ratelimit.idle.timeout", "1000");
+        limiter = new RateLimiter(config::get);
+    }
+    
+    @Test
+    @DisplayName("Should allow a full burst then deny with the time to the next token")
+    void testBurstThenDeny() {
+        RateLimiter.Group group = limiter.group("accounts");
+        long now = 5 * SECOND;
+        
+        for (int remaining = 4; remaining >= 0; remaining--) {
+            assertEquals(remaining, group.acquire(1, "CUSTOMER", now));
+        }
+        
+        long denied = group.acquire(1, "CUSTOMER", now);
+        assertThat(denied).isNegative();
+        assertEquals(SECOND / 10, -denied);
+        
+        // One token refills after 100ms at 10 req/s
+        assertEquals(0, group.acquire(1, "CUSTOMER", now + SECOND / 10));
+    }
+    
+    @Test
+    @DisplayName("Should keep separate buckets per user and resolve rates by group and role")
+    void testPerUserAndPolicy() {
+        RateLimiter.Group statements = limiter.group("statements");
+        long now = 0;
+        
+        assertEquals(1, statements.acquire(1, "CUSTOMER", now));
+        assertEquals(0, statements.acquire(1, "CUSTOMER", now));
+        assertThat(statements.acquire(1, "CUSTOMER", now)).isNegative();
+        
+        assertEquals(1, statements.acquire(2, "CUSTOMER", now));
+        assertEquals(3, statements.acquire(3, "ADMIN", now));
+        assertEquals(49, limiter.group("accounts").acquire(3, "ADMIN", now));
+    }
+    
+    @Test
+    @DisplayName("Should evict buckets that have been idle and full")
+    void testEvictIdle() {
+        RateLimiter.Group group = limiter.group("accounts");
+        group.acquire(1, "CUSTOMER", 0);
+        group.acquire(2, "CUSTOMER", 3 * SECOND);
+        
+        assertEquals(1, limiter.evictIdle(3 * SECOND));
+        assertEquals(1, group.size());
+    }
+}
@@ -0,0 +1,78 @@
+package com.banksim;
+
+import com.banksim.server.ResponseCompression;
+import com.banksim.server.ResponseCompression.Encoding;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for negotiated response compression
+ */
+@DisplayName("Response Compression Tests")
+class ResponseCompressionTest {
+    
+    private static final byte[] BODY = "{\"accountNumber\":\"ACC-0001\",\"balance\":1250.00}"
+        .repeat(200).getBytes(StandardCharsets.UTF_8);
+    
+    @Test
+    @DisplayName("Should prefer gzip and honor q=0")
+    void testNegotiate() {
+        assertThat(ResponseCompression.negotiate("gzip, deflate, br")).isEqualTo(Encoding.GZIP);
+        assertThat(ResponseCompression.negotiate("deflate")).isEqualTo(Encoding.DEFLATE);
+        assertThat(ResponseCompression.negotiate("gzip;q=0, deflate;q=0.5")).isEqualTo(Encoding.DEFLATE);
+        assertThat(ResponseCompression.negotiate("*")).isEqualTo(Encoding.GZIP);
+        assertThat(ResponseCompression.negotiate("*, gzip;q=0")).isNull();
+        assertThat(ResponseCompression.negotiate("identity")).isNull();
+        assertThat(ResponseCompression.negotiate(null)).isNull();
+    }
+    
+    @Test
+    @DisplayName("Should round-trip gzip through reused deflaters")
+    void testGzipRoundTrip() throws IOException {
+        ResponseCompression compression = new ResponseCompression(true, 1024, 6);
+        
+        for (int i = 0; i < 3; i++) {
+            byte[] compressed = compress(compression, Encoding.GZIP);
+            assertThat(compressed.length).isLessThan(BODY.length);
+            assertThat(readAll(new GZIPInputStream(new ByteArrayInputStream(compressed)))).isEqualTo(BODY);
+        }
+    }
+    
+    @Test
+    @DisplayName("Should round-trip deflate as zlib data")
+    void testDeflateRoundTrip() throws IOException {
+        ResponseCompression compression = new ResponseCompression(true, 1024, 1);
+        
+        byte[] compressed = compress(compression, Encoding.DEFLATE);
+        
+        assertThat(readAll(new InflaterInputStream(new ByteArrayInputStream(compressed)))).isEqualTo(BODY);
+    }
+    
+    private static byte[] compress(ResponseCompression compression, Encoding encoding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream os = compression.wrap(out, encoding)) {
+            // Uneven writes exercise input spanning the deflate buffer
+            for (int off = 0; off < BODY.length; off += 777) {
+                os.write(BODY, off, Math.min(777, BODY.length - off));
+            }
+        }
+        return out.toByteArray();
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+}
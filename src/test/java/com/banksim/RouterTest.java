@@ -0,0 +1,133 @@
+package com.banksim;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Router
+ */
+@DisplayName("Router Tests")
+class RouterTest {
+    
+    private static final Route NOOP = (exchange, params) -> { };
+    
+    private Router router;
+    private Route getAccount;
+    private Route getBalance;
+    private Route getCustomerAccounts;
+    
+    @BeforeEach
+    void setUp() {
+        getAccount = (exchange, params) -> { };
+        getBalance = (exchange, params) -> { };
+        getCustomerAccounts = (exchange, params) -> { };
+        
+        router = new Router()
+            .post("/api/accounts", NOOP)
+            .get("/api/accounts/{accountId:long}", getAccount)
+            .get("/api/accounts/{accountId:long}/balance", getBalance)
+            .get("/api/accounts/customer/{customerId:long}", getCustomerAccounts)
+            .get("/api/files/{name}", NOOP);
+    }
+    
+    @Test
+    @DisplayName("Should match templates and extract typed parameters")
+    void testMatch() {
+        PathParams params = new PathParams("/api/accounts/42/balance");
+        Router.Node node = router.resolve("/api/accounts/42/balance", params);
+        
+        assertNotNull(node);
+        assertSame(getBalance, node.handler("GET"));
+        assertEquals(42L, params.getLong("accountId"));
+        assertEquals("42", params.get("accountId"));
+    }
+    
+    @Test
+    @DisplayName("Should prefer literal segments over parameters")
+    void testLiteralPrecedence() {
+        PathParams params = new PathParams("/api/accounts/customer/7");
+        Router.Node node = router.resolve("/api/accounts/customer/7", params);
+        
+        assertSame(getCustomerAccounts, node.handler("GET"));
+        assertEquals(7L, params.getLong("customerId"));
+        assertNull(params.get("accountId"));
+    }
+    
+    @Test
+    @DisplayName("Should not match non-numeric, empty or unknown segments")
+    void testNoMatch() {
+        assertNull(router.resolve("/api/accounts/abc", new PathParams("/api/accounts/abc")));
+        assertNull(router.resolve("/api/accounts/", new PathParams("/api/accounts/")));
+        assertNull(router.resolve("/api/accounts/1/history", new PathParams("/api/accounts/1/history")));
+        assertNull(router.resolve("/api", new PathParams("/api")));
+        
+        PathParams params = new PathParams("/api/files/report.pdf");
+        assertNotNull(router.resolve("/api/files/report.pdf", params));
+        assertEquals("report.pdf", params.get("name"));
+    }
+    
+    @Test
+    @DisplayName("Should report allowed methods for a matched path")
+    void testAllowedMethods() {
+        Router.Node node = router.resolve("/api/accounts", new PathParams("/api/accounts"));
+        
+        assertNull(node.handler("GET"));
+        assertEquals("POST, OPTIONS", node.allow());
+    }
+    
+    @Test
+    @DisplayName("Should reject duplicate and conflicting registrations")
+    void testInvalidRegistrations() {
+        assertThrows(IllegalArgumentException.class, () -> router.get("/api/accounts/{accountId:long}", NOOP));
+        assertThrows(IllegalArgumentException.class, () -> router.get("/api/accounts/{id:long}/owner", NOOP));
+        assertThrows(IllegalArgumentException.class, () -> router.get("/api/{x:int}", NOOP));
+        assertThrows(IllegalArgumentException.class, () -> router.get("api/accounts", NOOP));
+        
+        assertThat(router.getRoutes()).hasSize(5).contains("GET /api/accounts/{accountId:long}/balance");
+    }
+    
+    @Test
+    @DisplayName("Should reject out-of-range numeric parameters on read")
+    void testLongOverflow() {
+        String path = "/api/accounts/99999999999999999999";
+        PathParams params = new PathParams(path);
+        
+        assertNotNull(router.resolve(path, params));
+        assertThrows(NumberFormatException.class, () -> params.getLong("accountId"));
+    }
+    
+    @Test
+    @DisplayName("Should answer 400 to an overflowing id and allow the request headers in CORS")
+    void testOverflowAndCorsOverHttp() throws Exception {
+        router.get("/api/items/{itemId:long}", (exchange, params) -> {
+            params.getLong("itemId");
+            exchange.sendResponseHeaders(204, -1);
+        });
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/", router);
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            HttpURLConnection overflow = (HttpURLConnection) new URL(base + "/api/items/99999999999999999999")
+                .openConnection();
+            assertEquals(400, overflow.getResponseCode());
+            
+            HttpURLConnection preflight = (HttpURLConnection) new URL(base + "/api/items/1").openConnection();
+            preflight.setRequestMethod("OPTIONS");
+            assertEquals(204, preflight.getResponseCode());
+            assertThat(preflight.getHeaderField("Access-Control-Allow-Headers"))
+                .contains("If-None-Match", "X-Request-Id");
+        } finally {
+            server.stop(0);
+        }
+    }
+}
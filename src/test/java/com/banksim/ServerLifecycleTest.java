@@ -0,0 +1,167 @@
+package com.banksim;
+
+import com.banksim.server.ExecutorFilter;
+import com.banksim.server.ServerExecutors;
+import com.banksim.server.ServerLifecycle;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for graceful shutdown and contexts with their own executor
+ */
+@DisplayName("Server Lifecycle Tests")
+class ServerLifecycleTest {
+    
+    @Test
+    @DisplayName("Should finish in-flight requests before running shutdown tasks")
+    void testDrainsBeforeShutdownTasks() throws Exception {
+        List<String> events = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        server.setExecutor(executor);
+        ServerLifecycle lifecycle = new ServerLifecycle(server, executor, 5000);
+        HttpContext context = server.createContext("/", exchange -> {
+            started.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add("request");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        context.getFilters().add(lifecycle.requestTracker());
+        lifecycle.onDrain("queue", timeout -> events.add("drain"));
+        lifecycle.onShutdown("pool", () -> events.add("close"));
+        server.start();
+        
+        int port = server.getAddress().getPort();
+        CompletableFuture<Integer> status = CompletableFuture.supplyAsync(() -> {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/")
+                    .openConnection();
+                return connection.getResponseCode();
+            } catch (Exception e) {
+                return -1;
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        
+        lifecycle.shutdown();
+        
+        assertThat(status.get(5, TimeUnit.SECONDS)).isEqualTo(200);
+        assertThat(events).containsExactly("request", "drain", "close");
+        assertThat(lifecycle.getInFlight()).isZero();
+        assertThat(executor.isShutdown()).isTrue();
+    }
+    
+    @Test
+    @DisplayName("Should stop at once when idle and leave the drain tasks the deadline")
+    void testIdleShutdown() throws Exception {
+        long[] drainTimeout = new long[1];
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        server.setExecutor(executor);
+        ServerLifecycle lifecycle = new ServerLifecycle(server, executor, 5000);
+        server.createContext("/", exchange -> exchange.close()).getFilters().add(lifecycle.requestTracker());
+        lifecycle.onDrain("queue", timeout -> {
+            drainTimeout[0] = timeout;
+            return true;
+        });
+        server.start();
+        
+        long started = System.nanoTime();
+        lifecycle.shutdown();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        
+        assertThat(elapsed).isLessThan(2000);
+        assertThat(drainTimeout[0]).isGreaterThan(3000);
+        assertThat(executor.isShutdown()).isTrue();
+    }
+    
+    @Test
+    @DisplayName("Should run a context on its own executor, keep its requests in flight and turn them away when full")
+    void testContextOnOwnExecutor() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> threads = new CopyOnWriteArrayList<>();
+        
+        // One server thread: other contexts only answer if the waiting request does not hold it
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        ExecutorService waiting = ServerExecutors.newBoundedExecutor("events-worker-", 1);
+        server.setExecutor(executor);
+        ServerLifecycle lifecycle = new ServerLifecycle(server, executor, 5000);
+        HttpContext context = server.createContext("/wait", exchange -> {
+            threads.add(Thread.currentThread().getName());
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        context.getFilters().add(lifecycle.requestTracker());
+        context.getFilters().add(new ExecutorFilter(waiting, "test"));
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        
+        try {
+            int port = server.getAddress().getPort();
+            CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> get(port, "/wait"));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            
+            assertThat(get(port, "/wait")).isEqualTo(503);
+            assertThat(get(port, "/")).isEqualTo(204);
+            // Still counted after the server thread handed it off, so shutdown would wait for it
+            assertThat(lifecycle.getInFlight()).isEqualTo(1);
+            
+            release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(200);
+            assertThat(threads).singleElement().asString().startsWith("events-worker-");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (lifecycle.getInFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(lifecycle.getInFlight()).isZero();
+        } finally {
+            release.countDown();
+            server.stop(0);
+            executor.shutdownNow();
+            waiting.shutdownNow();
+        }
+    }
+    
+    private static int get(int port, String path) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path)
+                .openConnection();
+            return connection.getResponseCode();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.banksim;
+
+import com.banksim.server.StaticAssets;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for in-memory static asset serving
+ */
+@DisplayName("Static Asset Tests")
+class StaticAssetsTest {
+    
+    @TempDir
+    Path root;
+    
+    @Test
+    @DisplayName("Should load assets once with strong ETags and gzip variants")
+    void testLoadsAndPrecompresses() throws IOException {
+        String html = "<html><body>" + "<p>BankSim</p>".repeat(500) + "</body></html>";
+        Files.writeString(root.resolve("index.html"), html);
+        Files.createDirectories(root.resolve("css"));
+        Files.writeString(root.resolve("css/app.css"), "body{margin:0}");
+        
+        StaticAssets assets = new StaticAssets(root, 3600, 1 << 20);
+        
+        assertThat(assets.size()).isEqualTo(2);
+        StaticAssets.Asset index = assets.find("/");
+        assertThat(index.getContentType()).startsWith("text/html");
+        assertThat(index.getEtag()).startsWith("\"").endsWith("\"");
+        assertThat(new GZIPInputStream(new ByteArrayInputStream(index.getGzipped())).readAllBytes())
+            .isEqualTo(html.getBytes());
+        // Too small to be worth a compressed variant
+        assertThat(assets.find("/css/app.css").getGzipped()).isNull();
+        assertThat(assets.find("/../secret")).isNull();
+    }
+    
+    @Test
+    @DisplayName("Should memory-map large files and change ETag on reload")
+    void testMapsAndReloads() throws IOException {
+        Path data = root.resolve("data.json");
+        Files.writeString(data, "{\"v\":1}");
+        
+        StaticAssets assets = new StaticAssets(root, 3600, 4);
+        StaticAssets.Asset before = assets.find("/data.json");
+        assertThat(before.isMapped()).isTrue();
+        
+        Files.writeString(data, "{\"v\":2}");
+        assets.reload();
+        
+        assertThat(assets.find("/data.json").getEtag()).isNotEqualTo(before.getEtag());
+    }
+}
@@ -0,0 +1,90 @@
+package com.banksim;
+
+import com.banksim.jdbc.InstrumentedJdbc;
+import com.banksim.trace.Trace;
+import com.banksim.trace.TraceBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for request traces and the trace buffer
+ */
+@DisplayName("Request Trace Tests")
+class TraceTest {
+    
+    @Test
+    @DisplayName("Should accept only short, header-safe request ids")
+    void testValidIds() {
+        assertThat(Trace.isValidId("req-1_a.B")).isTrue();
+        assertThat(Trace.isValidId(Trace.newId())).isTrue();
+        assertThat(Trace.isValidId(null)).isFalse();
+        assertThat(Trace.isValidId("")).isFalse();
+        assertThat(Trace.isValidId("a".repeat(65))).isFalse();
+        assertThat(Trace.isValidId("x */ DROP TABLE users")).isFalse();
+        assertThat(Trace.isValidId("line\r\nbreak")).isFalse();
+    }
+    
+    @Test
+    @DisplayName("Should record spans only while a trace is attached")
+    void testSpans() {
+        assertThat(Trace.begin("orphan")).isEqualTo(-1);
+        
+        Trace trace = new Trace("t1", "POST", "/api/transactions/deposit");
+        Trace previous = Trace.attach(trace);
+        try {
+            int outer = Trace.begin("service", "deposit");
+            int inner = Trace.begin("db", "SELECT ?");
+            Trace.end(inner);
+            Trace.end(outer);
+            assertThat(Trace.currentId()).isEqualTo("t1");
+        } finally {
+            Trace.attach(previous);
+        }
+        trace.finish(200);
+        
+        assertThat(Trace.current()).isNull();
+        Trace.Span[] spans = trace.getSpans();
+        assertThat(spans).extracting(Trace.Span::name).containsExactly("service", "db");
+        assertThat(spans[1].detail()).isEqualTo("SELECT ?");
+        assertThat(spans[1].offsetNanos()).isGreaterThanOrEqualTo(spans[0].offsetNanos());
+        assertThat(spans[0].durationNanos()).isGreaterThanOrEqualTo(spans[1].durationNanos());
+        assertThat(trace.getStatus()).isEqualTo(200);
+        assertThat(trace.getDurationNanos()).isGreaterThanOrEqualTo(spans[0].durationNanos());
+    }
+    
+    @Test
+    @DisplayName("Should keep the newest traces and evict the oldest")
+    void testBufferEviction() {
+        TraceBuffer buffer = new TraceBuffer(3);
+        assertThat(buffer.capacity()).isEqualTo(4);
+        
+        for (int i = 0; i < 6; i++) {
+            Trace trace = new Trace("id-" + i, "GET", i % 2 == 0 ? "/api/accounts/1" : "/api/customers/1");
+            trace.finish(200);
+            buffer.add(trace);
+        }
+        
+        assertThat(buffer.find("id-0")).isNull();
+        assertThat(buffer.find("id-5").getPath()).isEqualTo("/api/customers/1");
+        assertThat(buffer.recent(10, 0, null)).extracting(Trace::getId)
+            .containsExactly("id-5", "id-4", "id-3", "id-2");
+        
+        List<Trace> accounts = buffer.recent(10, 0, "/api/accounts");
+        assertThat(accounts).extracting(Trace::getId).containsExactly("id-4", "id-2");
+        assertThat(buffer.recent(1, 0, null)).hasSize(1);
+        assertThat(buffer.recent(10, 60_000, null)).isEmpty();
+    }
+    
+    @Test
+    @DisplayName("Should keep request id comments out of statement templates")
+    void testTemplateDropsComments() {
+        assertThat(InstrumentedJdbc.template("SELECT * FROM users WHERE user_id = ? /* request_id=abc */"))
+            .isEqualTo("SELECT * FROM users WHERE user_id = ?");
+        assertThat(InstrumentedJdbc.template("SELECT 1 -- note\nFROM t"))
+            .isEqualTo("SELECT ? FROM t");
+    }
+}
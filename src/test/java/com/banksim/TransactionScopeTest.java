@@ -0,0 +1,255 @@
+package com.banksim;
+
+import com.banksim.audit.Actor;
+import com.banksim.audit.AuditWriter;
+import com.banksim.config.DatabaseConfig;
+import com.banksim.config.SharedConnection;
+import com.banksim.model.Account;
+import com.banksim.model.AuditLog;
+import com.banksim.model.Transaction;
+import com.banksim.repository.AccountRepository;
+import com.banksim.repository.TransactionRepository;
+import com.banksim.service.TransactionService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that a money movement commits or rolls back as a whole, the same
+ * way on its own and inside a batch's shared connection scope, and is
+ * audited with the user behind it.
+ * 
+ * The repositories write through {@link DatabaseConfig#getConnection()}
+ * to a recording driver, which keeps a write pending until its connection
+ * commits, as a database would.
+ */
+@DisplayName("Transaction Scope Tests")
+class TransactionScopeTest {
+    
+    private static final String URL = "jdbc:banksim:scope-test";
+    private static final String NUMBER = "001-0001-0000000001";
+    
+    // Writes made visible by a commit, or by running in auto-commit mode
+    private static final List<String> committed = new CopyOnWriteArrayList<>();
+    
+    private final List<AuditLog> audited = new CopyOnWriteArrayList<>();
+    private TransactionService service;
+    private FailingTransactions transactions;
+    
+    @BeforeAll
+    static void installDriver() throws SQLException {
+        System.setProperty("db.url", URL);
+        DriverManager.registerDriver(new RecordingDriver());
+    }
+    
+    @BeforeEach
+    void setUp() {
+        committed.clear();
+        transactions = new FailingTransactions();
+        audited.clear();
+        // Synchronous, so entries are written by the time the service returns
+        AuditWriter audit = new AuditWriter(key -> "audit.durability".equals(key) ? "sync" : null,
+            audited::addAll);
+        audit.start();
+        service = new TransactionService(new Accounts(), transactions, audit);
+    }
+    
+    @Test
+    @DisplayName("Should roll back the balance update when recording the transaction fails")
+    void testFailedDepositRollsBack() {
+        transactions.failing = true;
+        
+        assertThrows(TransactionService.TransactionServiceException.class,
+            () -> service.deposit(NUMBER, new BigDecimal("10.00"), "Rolled back", Actor.SYSTEM));
+        
+        assertThat(committed).isEmpty();
+    }
+    
+    @Test
+    @DisplayName("Should roll back the same way inside a batch's shared connection")
+    void testFailedDepositRollsBackInBatch() throws Exception {
+        transactions.failing = true;
+        
+        try (SharedConnection batch = DatabaseConfig.getInstance().shareConnection()) {
+            assertThrows(TransactionService.TransactionServiceException.class,
+                () -> service.deposit(NUMBER, new BigDecimal("10.00"), "Rolled back", Actor.SYSTEM));
+            
+            // A later sub-request on the batch connection does not commit the failed work
+            try (Connection connection = DatabaseConfig.getInstance().getConnection()) {
+                connection.nativeSQL("select");
+            }
+        }
+        
+        assertThat(committed).containsExactly("select");
+    }
+    
+    @Test
+    @DisplayName("Should commit the balance update and the transaction together")
+    void testDepositCommits() throws Exception {
+        service.deposit(NUMBER, new BigDecimal("10.00"), "Committed", Actor.SYSTEM);
+        try (SharedConnection batch = DatabaseConfig.getInstance().shareConnection()) {
+            service.deposit(NUMBER, new BigDecimal("10.00"), "Committed in batch", Actor.SYSTEM);
+        }
+        
+        assertThat(committed).containsExactly("update account", "insert transaction",
+            "update account", "insert transaction");
+    }
+    
+    @Test
+    @DisplayName("Should audit who moved the money and from where")
+    void testAuditsActor() throws Exception {
+        service.deposit(NUMBER, new BigDecimal("10.00"), "Audited", new Actor(7, "10.0.0.1", "curl/8.5"));
+        
+        assertThat(audited).singleElement().satisfies(entry -> {
+            assertThat(entry.getUserId()).isEqualTo(7);
+            assertThat(entry.getIpAddress()).isEqualTo("10.0.0.1");
+            assertThat(entry.getUserAgent()).isEqualTo("curl/8.5");
+            assertThat(entry.getAction()).isEqualTo("DEPOSIT");
+        });
+    }
+    
+    private static void write(String sql) throws SQLException {
+        try (Connection connection = DatabaseConfig.getInstance().getConnection()) {
+            connection.nativeSQL(sql);
+        }
+    }
+    
+    /**
+     * One active account; updates are writes
+     */
+    private static final class Accounts extends AccountRepository {
+        
+        @Override
+        public Optional<Account> findByAccountNumber(String accountNumber) {
+            Account account = new Account(1, accountNumber, "001", "0001", Account.AccountType.CHECKING);
+            account.setAccountId(1);
+            account.setBalance(new BigDecimal("100.00"));
+            return Optional.of(account);
+        }
+        
+        @Override
+        public Account update(Account account) throws SQLException {
+            write("update account");
+            return account;
+        }
+    }
+    
+    /**
+     * Inserts that can be made to fail after the balance update
+     */
+    private static final class FailingTransactions extends TransactionRepository {
+        
+        private boolean failing;
+        
+        @Override
+        public Transaction create(Transaction transaction) throws SQLException {
+            if (failing) {
+                throw new SQLException("Insert failed");
+            }
+            write("insert transaction");
+            return transaction;
+        }
+    }
+    
+    /**
+     * Driver whose connections hold nativeSQL() calls as pending writes
+     * until commit, or apply them at once in auto-commit mode
+     */
+    private static final class RecordingDriver implements Driver {
+        
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            boolean[] autoCommit = {true};
+            List<String> pending = new ArrayList<>();
+            return (Connection) Proxy.newProxyInstance(TransactionScopeTest.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "nativeSQL":
+                            if (autoCommit[0]) {
+                                committed.add((String) args[0]);
+                            } else {
+                                pending.add((String) args[0]);
+                            }
+                            return args[0];
+                        case "setAutoCommit":
+                            // Switching auto-commit back on commits, as JDBC specifies
+                            if ((Boolean) args[0] && !autoCommit[0]) {
+                                committed.addAll(pending);
+                                pending.clear();
+                            }
+                            autoCommit[0] = (Boolean) args[0];
+                            return null;
+                        case "getAutoCommit":
+                            return autoCommit[0];
+                        case "commit":
+                            committed.addAll(pending);
+                            pending.clear();
+                            return null;
+                        case "rollback":
+                            pending.clear();
+                            return null;
+                        case "isClosed":
+                            return false;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+        }
+        
+        @Override
+        public boolean acceptsURL(String url) {
+            return URL.equals(url);
+        }
+        
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+        
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+        
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+        
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+        
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
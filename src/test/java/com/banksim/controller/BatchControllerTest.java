@@ -0,0 +1,310 @@
+package com.banksim.controller;
+
+import com.banksim.PathParams;
+import com.banksim.Router;
+import com.banksim.json.JsonReader;
+import com.banksim.json.JsonResponse;
+import com.banksim.server.ConcurrencyLimitFilter;
+import com.banksim.server.RateLimiter;
+import com.banksim.session.SessionManager;
+import com.banksim.util.JwtClaims;
+import com.banksim.util.JwtUtil;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for the batch endpoint, over a real HTTP server with probe
+ * routes that record how sub-requests ran. In the controller package, as
+ * SecuredRoute and BatchExchange are package-private.
+ */
+@DisplayName("Batch Controller Tests")
+class BatchControllerTest {
+    
+    private final SessionManager sessionManager = SessionManager.getInstance();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final List<String> log = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private ExecutorService executor;
+    private ConcurrencyLimitFilter concurrency;
+    
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Starts a server whose API context has the bulkhead, the batch
+     * endpoint and probe routes. GET and POST /api/probe/{id}?sleep=ms log
+     * the call; GETs count how many run at once, POSTs how many GETs were
+     * running when they started.
+     */
+    private void start(int permits, int maxRequests, int threads) throws IOException {
+        concurrency = new ConcurrencyLimitFilter(permits, 1000);
+        Router router = new Router();
+        new BatchController(sessionManager, concurrency, maxRequests, threads).register(router);
+        RateLimiter.Group probes = RateLimiter.getInstance().group("probe");
+        router.get("/api/probe/{id:long}", SecuredRoute.of(sessionManager, probes, this::handleGet));
+        router.post("/api/probe/{id:long}", SecuredRoute.of(sessionManager, probes, this::handlePost));
+        
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        HttpContext api = server.createContext("/api/", router);
+        api.getFilters().add(concurrency);
+        server.start();
+    }
+    
+    private void handleGet(HttpExchange exchange, PathParams params, JwtClaims principal) throws IOException {
+        long id = params.getLong("id");
+        int running = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(running, Math::max);
+        try {
+            sleep(exchange);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        log.add("GET " + id);
+        JsonResponse.send(exchange, 200, json -> json.beginObject()
+            .name("id").value(id)
+            .name("user").value(principal.getUsername())
+            .endObject());
+    }
+    
+    private void handlePost(HttpExchange exchange, PathParams params, JwtClaims principal) throws IOException {
+        long id = params.getLong("id");
+        log.add("POST " + id + " with " + inFlight.get() + " running");
+        sleep(exchange);
+        JsonResponse.send(exchange, 201, json -> json.beginObject()
+            .name("id").value(id)
+            .name("user").value(principal.getUsername())
+            .endObject());
+    }
+    
+    private static void sleep(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null && query.startsWith("sleep=")) {
+            try {
+                Thread.sleep(Long.parseLong(query.substring(6)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private static String token(int userId, String username) {
+        return JwtUtil.generateToken(userId, username, "ADMIN");
+    }
+    
+    /**
+     * Posts a batch and returns the status and the parsed response body
+     */
+    private Response post(String token, String body) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/api/batch");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        if (token != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + token);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            return new Response(status, (Map<?, ?>) new JsonReader(new ByteArrayInputStream(in.readAllBytes()))
+                .nextValue());
+        }
+    }
+    
+    private record Response(int status, Map<?, ?> body) {
+        
+        List<Map<?, ?>> results() {
+            List<Map<?, ?>> results = new ArrayList<>();
+            for (Object result : (List<?>) body.get("results")) {
+                results.add((Map<?, ?>) result);
+            }
+            return results;
+        }
+        
+        List<Integer> statuses() {
+            List<Integer> statuses = new ArrayList<>();
+            for (Map<?, ?> result : results()) {
+                statuses.add(((BigDecimal) result.get("status")).intValue());
+            }
+            return statuses;
+        }
+        
+        Object field(int index, String name) {
+            Object value = ((Map<?, ?>) results().get(index).get("body")).get(name);
+            return value instanceof BigDecimal ? ((BigDecimal) value).intValue() : value;
+        }
+    }
+    
+    private void awaitPermitsReleased() throws InterruptedException {
+        // The outer request gives its permit back just after the response is sent
+        for (int i = 0; i < 100 && concurrency.getInFlight() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(concurrency.getInFlight()).isZero();
+    }
+    
+    @Test
+    @DisplayName("Should return results in request order")
+    void testResultOrder() throws Exception {
+        start(10, 20, 4);
+        
+        Response response = post(token(9101, "batch-order"), "["
+            + "{\"path\": \"/api/probe/3?sleep=100\"},"
+            + "{\"path\": \"/api/probe/1\"},"
+            + "{\"method\": \"post\", \"path\": \"/api/probe/7\", \"body\": {\"amount\": 5}},"
+            + "{\"path\": \"/api/probe/2?sleep=50\"},"
+            + "{\"path\": \"/api/probe/9\"}]");
+        
+        assertThat(response.status()).isEqualTo(200);
+        assertThat(response.body().get("count")).isEqualTo(new BigDecimal(5));
+        assertThat(response.statuses()).containsExactly(200, 200, 201, 200, 200);
+        List<Object> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(response.field(i, "id"));
+        }
+        assertThat(ids).containsExactly(3, 1, 7, 2, 9);
+    }
+    
+    @Test
+    @DisplayName("Should run consecutive GETs concurrently and writes alone, in order")
+    void testReadsConcurrentWritesSequential() throws Exception {
+        start(10, 20, 4);
+        
+        Response response = post(token(9102, "batch-lanes"), "["
+            + "{\"path\": \"/api/probe/1?sleep=200\"},"
+            + "{\"path\": \"/api/probe/2?sleep=200\"},"
+            + "{\"path\": \"/api/probe/3?sleep=200\"},"
+            + "{\"method\": \"POST\", \"path\": \"/api/probe/4\"},"
+            + "{\"method\": \"POST\", \"path\": \"/api/probe/5\"},"
+            + "{\"path\": \"/api/probe/6?sleep=100\"}]");
+        
+        assertThat(response.statuses()).containsExactly(200, 200, 200, 201, 201, 200);
+        assertThat(maxInFlight.get()).isEqualTo(3);
+        assertThat(log.subList(0, 3)).containsExactlyInAnyOrder("GET 1", "GET 2", "GET 3");
+        assertThat(log.subList(3, 6)).containsExactly("POST 4 with 0 running", "POST 5 with 0 running", "GET 6");
+        awaitPermitsReleased();
+    }
+    
+    @Test
+    @DisplayName("Should run concurrent GETs within the free concurrency permits")
+    void testReadsWithinPermits() throws Exception {
+        // The batch request holds one of the two permits, leaving one extra lane
+        start(2, 20, 4);
+        
+        Response response = post(token(9103, "batch-permits"), "["
+            + "{\"path\": \"/api/probe/1?sleep=150\"},"
+            + "{\"path\": \"/api/probe/2?sleep=150\"},"
+            + "{\"path\": \"/api/probe/3?sleep=150\"},"
+            + "{\"path\": \"/api/probe/4?sleep=150\"}]");
+        
+        assertThat(response.statuses()).containsExactly(200, 200, 200, 200);
+        assertThat(maxInFlight.get()).isEqualTo(2);
+        awaitPermitsReleased();
+        
+        // With every permit taken the run stays on the request thread
+        tearDown();
+        start(1, 20, 4);
+        maxInFlight.set(0);
+        response = post(token(9103, "batch-permits"), "["
+            + "{\"path\": \"/api/probe/1?sleep=50\"},"
+            + "{\"path\": \"/api/probe/2?sleep=50\"}]");
+        assertThat(response.statuses()).containsExactly(200, 200);
+        assertThat(maxInFlight.get()).isEqualTo(1);
+        awaitPermitsReleased();
+    }
+    
+    @Test
+    @DisplayName("Should reject empty batches and batches over the limit")
+    void testMaxRequests() throws Exception {
+        start(10, 3, 4);
+        String token = token(9104, "batch-limit");
+        
+        Response over = post(token, "["
+            + "{\"path\": \"/api/probe/1\"}, {\"path\": \"/api/probe/2\"},"
+            + "{\"path\": \"/api/probe/3\"}, {\"path\": \"/api/probe/4\"}]");
+        assertThat(over.status()).isEqualTo(400);
+        assertThat(over.body().get("error")).isEqualTo("Batch exceeds 3 requests");
+        assertThat(post(token, "[]").status()).isEqualTo(400);
+        assertThat(log).isEmpty();
+        
+        Response atLimit = post(token, "["
+            + "{\"path\": \"/api/probe/1\"}, {\"path\": \"/api/probe/2\"}, {\"path\": \"/api/probe/3\"}]");
+        assertThat(atLimit.statuses()).containsExactly(200, 200, 200);
+    }
+    
+    @Test
+    @DisplayName("Should reject nested batches, streams, long-polls and invalid paths per item")
+    void testRejectedPaths() throws Exception {
+        start(10, 20, 4);
+        
+        Response response = post(token(9105, "batch-paths"), "["
+            + "{\"method\": \"POST\", \"path\": \"/api/batch\", \"body\": []},"
+            + "{\"path\": \"/api/events/ledger/stream\"},"
+            + "{\"path\": \"/api/events/ledger?after=0&wait=30000\"},"
+            + "{\"path\": \"/other/probe/1\"},"
+            + "{\"path\": \"http://[bad\"},"
+            + "{\"path\": \"/api/probe/1\"}]");
+        
+        assertThat(response.status()).isEqualTo(200);
+        assertThat(response.statuses()).containsExactly(400, 400, 400, 400, 400, 200);
+        assertThat(response.field(0, "error")).isEqualTo("Path cannot be batched: /api/batch");
+        assertThat(response.field(1, "error")).isEqualTo("Path cannot be batched: /api/events/ledger/stream");
+        assertThat(response.field(3, "error")).isEqualTo("Invalid batch path: /other/probe/1");
+        assertThat(log).containsExactly("GET 1");
+    }
+    
+    @Test
+    @DisplayName("Should hand the batch caller's principal to secured sub-routes")
+    void testCarriesPrincipal() throws Exception {
+        start(10, 20, 4);
+        
+        assertThat(post(null, "[{\"path\": \"/api/probe/1\"}]").status()).isEqualTo(401);
+        assertThat(log).isEmpty();
+        
+        // The token expires while the first sub-request runs; the later ones
+        // still run as the caller authenticated when the batch arrived
+        String token = JwtUtil.generateToken(9106, "batch-principal", "ADMIN", System.currentTimeMillis() + 500);
+        Response response = post(token, "["
+            + "{\"method\": \"POST\", \"path\": \"/api/probe/1?sleep=800\"},"
+            + "{\"path\": \"/api/probe/2\"},"
+            + "{\"path\": \"/api/probe/3\"}]");
+        
+        assertThat(response.statuses()).containsExactly(201, 200, 200);
+        assertThat(response.field(1, "user")).isEqualTo("batch-principal");
+        assertThat(response.field(2, "user")).isEqualTo("batch-principal");
+        assertThat(sessionManager.authenticate(token)).isNull();
+    }
+}
@@ -0,0 +1,211 @@
+package com.banksim.session;
+
+import com.banksim.util.JwtClaims;
+import com.banksim.util.JwtUtil;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for sessions, their expiry wheel and the shared revocation list.
+ * In the session package, as the wheel and the store are package-private.
+ */
+@DisplayName("Session Manager Tests")
+class SessionManagerTest {
+    
+    // Long enough that the background sweeper never runs during a test
+    private static final long POLL_INTERVAL = 60_000;
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    @DisplayName("Should extend a session on each request and expire it once idle")
+    void testSlidingExpiry() {
+        Session session = new Session("s1", 1, "alice", "CUSTOMER", 10, 1_000);
+        
+        assertThat(session.isExpired(1_900, 1_000)).isFalse();
+        session.touch(1_900);
+        assertThat(session.isExpired(2_500, 1_000)).isFalse();
+        assertThat(session.toClaims(1_000).getExpiresAt()).isEqualTo(2_900);
+        assertThat(session.isExpired(2_900, 1_000)).isTrue();
+        
+        // Out-of-order touches never move the activity back
+        session.touch(1_200);
+        assertThat(session.getLastActivity()).isEqualTo(1_900);
+    }
+    
+    @Test
+    @DisplayName("Should keep a session in use and drop it once idle past the timeout")
+    void testManagerSlidingExpiry() {
+        SessionManager manager = new SessionManager(true, 2_000, 2_000, null, POLL_INTERVAL);
+        try {
+            Session session = manager.createSession(1, "alice", "CUSTOMER", 10);
+            String id = session.getSessionId();
+            long created = session.getCreatedAt();
+            assertThat(manager.getSession(id)).isSameAs(session);
+            
+            // A request just before the timeout carries the session past it
+            session.touch(created + 1_500);
+            manager.sweep(created + 2_500);
+            manager.sweep(created + 3_000);
+            assertThat(manager.getActiveSessionCount()).isEqualTo(1);
+            
+            // Idle past the timeout, the sweep removes it
+            manager.sweep(created + 10_000);
+            assertThat(manager.getActiveSessionCount()).isZero();
+            assertThat(manager.getSession(id)).isNull();
+        } finally {
+            manager.shutdown();
+        }
+    }
+    
+    @Test
+    @DisplayName("Should reschedule touched sessions and remove expired ones when the wheel turns")
+    void testWheelReschedulesAndSweeps() {
+        SessionExpiryWheel wheel = new SessionExpiryWheel(4, 1_000, 0);
+        Session session = new Session("s1", 1, "alice", "CUSTOMER", null, 0);
+        List<Long> checkedAt = new ArrayList<>();
+        long[] nextDeadline = {6_000};
+        SessionExpiryWheel.DeadlineCheck check = s -> {
+            checkedAt.add(s.getLastActivity());
+            return nextDeadline[0];
+        };
+        
+        wheel.schedule(session, 2_500);
+        assertThat(wheel.advance(1_500, check)).isZero();
+        assertThat(checkedAt).isEmpty();
+        
+        // Deadline reached but the session was touched: rescheduled at tick 6,
+        // which is in the same bucket as tick 2 on a four bucket wheel
+        assertThat(wheel.advance(2_000, check)).isZero();
+        assertThat(checkedAt).hasSize(1);
+        assertThat(wheel.advance(5_000, check)).isZero();
+        assertThat(checkedAt).hasSize(1);
+        
+        nextDeadline[0] = -1;
+        assertThat(wheel.advance(6_000, check)).isEqualTo(1);
+        assertThat(checkedAt).hasSize(2);
+        assertThat(wheel.advance(20_000, check)).isZero();
+        assertThat(checkedAt).hasSize(2);
+    }
+    
+    @Test
+    @DisplayName("Should schedule past deadlines on the next tick and drop revoked entries")
+    void testWheelPastDeadlineAndRemove() {
+        SessionExpiryWheel wheel = new SessionExpiryWheel(8, 1_000, 10_000);
+        Session alice = new Session("s1", 1, "alice", "CUSTOMER", null, 0);
+        Session bob = new Session("s2", 2, "bob", "CUSTOMER", null, 0);
+        List<String> checked = new ArrayList<>();
+        
+        wheel.schedule(alice, 0);
+        wheel.schedule(bob, 0);
+        wheel.removeIf(session -> session.getUserId() == 2);
+        
+        assertThat(wheel.advance(11_000, session -> {
+            checked.add(session.getSessionId());
+            return -1;
+        })).isEqualTo(1);
+        assertThat(checked).containsExactly("s1");
+    }
+    
+    @Test
+    @DisplayName("Should share revocations between stores on the same file")
+    void testRevocationAcrossStores() throws Exception {
+        Path file = dir.resolve("revocations/revocations.log");
+        SessionRevocationStore nodeA = new SessionRevocationStore(file);
+        SessionRevocationStore nodeB = new SessionRevocationStore(file);
+        
+        nodeA.revokeUser(7, 1_000);
+        assertThat(nodeA.isUserRevoked(7, 500)).isTrue();
+        assertThat(nodeB.isUserRevoked(7, 500)).isFalse();
+        
+        assertThat(nodeB.poll()).isEqualTo(1);
+        assertThat(nodeB.isUserRevoked(7, 500)).isTrue();
+        assertThat(nodeB.isUserRevoked(7, 1_000)).isTrue();
+        assertThat(nodeB.isUserRevoked(7, 1_500)).isFalse();
+        assertThat(nodeB.poll()).isZero();
+        
+        nodeB.revokeSession("s1", 2_000);
+        assertThat(nodeA.poll()).isEqualTo(1);
+        assertThat(nodeA.isSessionRevoked("s1")).isTrue();
+        
+        // A store opened later loads everything written so far
+        SessionRevocationStore nodeC = new SessionRevocationStore(file);
+        assertThat(nodeC.isUserRevoked(7, 500)).isTrue();
+        assertThat(nodeC.isSessionRevoked("s1")).isTrue();
+        
+        nodeC.prune(1_500);
+        assertThat(nodeC.isUserRevoked(7, 500)).isFalse();
+        assertThat(nodeC.isSessionRevoked("s1")).isTrue();
+    }
+    
+    @Test
+    @DisplayName("Should apply a revocation line only once it is complete")
+    void testPartialRevocationLine() throws Exception {
+        Path file = dir.resolve("revocations.log");
+        SessionRevocationStore store = new SessionRevocationStore(file);
+        
+        Files.writeString(file, "U 9 10", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        assertThat(store.poll()).isZero();
+        assertThat(store.isUserRevoked(9, 1)).isFalse();
+        
+        Files.writeString(file, "00\nbad line\n", StandardOpenOption.APPEND);
+        assertThat(store.poll()).isEqualTo(1);
+        assertThat(store.isUserRevoked(9, 1_000)).isTrue();
+    }
+    
+    @Test
+    @DisplayName("Should reject JWTs issued before the user was locked out")
+    void testLockoutRevokesJwt() throws Exception {
+        SessionManager manager = new SessionManager(false, 1_800_000, 1_800_000,
+            dir.resolve("revocations.log"), POLL_INTERVAL);
+        try {
+            String token = JwtUtil.generateToken(41, "mallory", "CUSTOMER");
+            String other = JwtUtil.generateToken(42, "trent", "CUSTOMER");
+            JwtClaims claims = manager.authenticate(token);
+            assertThat(claims).isNotNull();
+            
+            // What AuthenticationService does when an account is locked
+            manager.revokeUser(41);
+            assertThat(manager.authenticate(token)).isNull();
+            assertThat(manager.isRevoked(41, claims.getIssuedAt())).isTrue();
+            assertThat(manager.authenticate(other)).isNotNull();
+            
+            // Tokens issued after the revocation are accepted
+            Thread.sleep(5);
+            assertThat(manager.authenticate(JwtUtil.generateToken(41, "mallory", "CUSTOMER"))).isNotNull();
+        } finally {
+            manager.shutdown();
+        }
+    }
+    
+    @Test
+    @DisplayName("Should end a user's stateful sessions on revocation")
+    void testRevokeUserEndsSessions() {
+        SessionManager manager = new SessionManager(true, 1_800_000, 1_800_000, null, POLL_INTERVAL);
+        try {
+            Session alice = manager.createSession(1, "alice", "CUSTOMER", 10);
+            Session again = manager.createSession(1, "alice", "CUSTOMER", 10);
+            Session bob = manager.createSession(2, "bob", "CUSTOMER", 20);
+            
+            assertThat(manager.authenticate(alice.getSessionId())).isNotNull();
+            manager.revokeUser(1);
+            
+            assertThat(manager.authenticate(alice.getSessionId())).isNull();
+            assertThat(manager.getSession(again.getSessionId())).isNull();
+            assertThat(manager.getSession(bob.getSessionId())).isSameAs(bob);
+            assertThat(manager.getActiveSessionCount()).isEqualTo(1);
+        } finally {
+            manager.shutdown();
+        }
+    }
+}